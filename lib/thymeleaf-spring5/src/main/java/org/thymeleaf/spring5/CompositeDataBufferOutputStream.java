@@ -0,0 +1,133 @@
+/*
+ * =============================================================================
+ *
+ *   Copyright (c) 2011-2018, The THYMELEAF team (http://www.thymeleaf.org)
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * =============================================================================
+ */
+package org.thymeleaf.spring5;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+
+
+/*
+ * OutputStream that writes output into a list of fixed-size DataBuffers allocated from a DataBufferFactory (which
+ * will normally pool them), instead of into a single buffer that has to be grown (and copied) as output is
+ * produced. Once output is complete, all buffers are joined into a single (composite, if the factory supports it)
+ * DataBuffer.
+ *
+ * @author Daniel Fernandez
+ * @since 3.1.3
+ */
+final class CompositeDataBufferOutputStream extends OutputStream {
+
+    private final DataBufferFactory bufferFactory;
+    private final int bufferSize;
+    private final List<DataBuffer> buffers;
+    private DataBuffer current;
+    private int size;
+
+
+
+    CompositeDataBufferOutputStream(final DataBufferFactory bufferFactory, final int bufferSize) {
+        super();
+        this.bufferFactory = bufferFactory;
+        this.bufferSize = bufferSize;
+        this.buffers = new ArrayList<>(4);
+        this.current = null;
+        this.size = 0;
+    }
+
+
+
+
+    @Override
+    public void write(final int b) {
+        ensureWritable().write((byte) b);
+        this.size++;
+    }
+
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) {
+        if ((off < 0) || (off > b.length) || (len < 0) ||
+                ((off + len) > b.length) || ((off + len) < 0)) {
+            throw new IndexOutOfBoundsException();
+        }
+        int offset = off;
+        int remaining = len;
+        while (remaining > 0) {
+            final DataBuffer buffer = ensureWritable();
+            // Never write more than the buffer can take, so that buffers are never expanded
+            final int count = Math.min(remaining, buffer.writableByteCount());
+            buffer.write(b, offset, count);
+            offset += count;
+            remaining -= count;
+        }
+        this.size += len;
+    }
+
+
+
+
+    int size() {
+        return this.size;
+    }
+
+
+    /*
+     * Joins all the buffers written into a single one. Once this is called, this output stream should not be
+     * used any more.
+     */
+    DataBuffer toDataBuffer() {
+        if (this.buffers.isEmpty()) {
+            return this.bufferFactory.allocateBuffer(0);
+        }
+        if (this.buffers.size() == 1) {
+            return this.buffers.get(0);
+        }
+        return this.bufferFactory.join(this.buffers);
+    }
+
+
+    /*
+     * Releases all the buffers written, in case output could not be completed.
+     */
+    void release() {
+        for (final DataBuffer buffer : this.buffers) {
+            DataBufferUtils.release(buffer);
+        }
+        this.buffers.clear();
+        this.current = null;
+    }
+
+
+
+
+    private DataBuffer ensureWritable() {
+        if (this.current == null || this.current.writableByteCount() == 0) {
+            this.current = this.bufferFactory.allocateBuffer(this.bufferSize);
+            this.buffers.add(this.current);
+        }
+        return this.current;
+    }
+
+}
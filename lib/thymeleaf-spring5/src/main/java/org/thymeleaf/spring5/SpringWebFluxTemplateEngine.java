@@ -33,6 +33,7 @@
 import org.springframework.core.ReactiveAdapterRegistry;
 import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.http.MediaType;
 import org.thymeleaf.IThrottledTemplateProcessor;
 import org.thymeleaf.TemplateEngine;
@@ -48,6 +49,8 @@
 import org.thymeleaf.spring5.context.Contexts;
 import org.thymeleaf.spring5.context.webflux.IReactiveDataDriverContextVariable;
 import org.thymeleaf.spring5.context.webflux.IReactiveSSEDataDriverContextVariable;
+import org.thymeleaf.templatemode.TemplateMode;
+import org.thymeleaf.util.EncodingWriter;
 import org.thymeleaf.util.LoggingUtils;
 import org.thymeleaf.web.IWebExchange;
 import reactor.core.publisher.Flux;
@@ -82,6 +85,9 @@
     private static final String LOG_CATEGORY_DATADRIVEN_INPUT = SpringWebFluxTemplateEngine.class.getName() + ".UPSTREAM.DATA-DRIVEN";
     private static final String LOG_CATEGORY_DATADRIVEN_OUTPUT = SpringWebFluxTemplateEngine.class.getName() + ".DOWNSTREAM.DATA-DRIVEN";
 
+    // Size of each of the buffers output is written into when its size is not limited (i.e. not chunked)
+    private static final int OUTPUT_BUFFER_SIZE = 8192;
+
 
 
 
@@ -189,15 +195,26 @@ private Mono<DataBuffer> createFullStream(
                                         new Object[]{TemplateEngine.threadIndex(), LoggingUtils.loggifyTemplateName(templateName), context.getLocale()});
                             }
 
-                            final DataBuffer dataBuffer = bufferFactory.allocateBuffer();
-                            // OutputStreamWriter object have an 8K buffer, but process(...) will flush it at the end
-                            final OutputStreamWriter writer = new OutputStreamWriter(dataBuffer.asOutputStream(), charset);
+                            // Output will be encoded directly into a list of (pooled) buffers obtained from the
+                            // buffer factory, which will be joined at the end instead of growing a single buffer
+                            final CompositeDataBufferOutputStream outputStream =
+                                    new CompositeDataBufferOutputStream(bufferFactory, OUTPUT_BUFFER_SIZE);
 
                             try {
 
-                                process(templateName, markupSelectors, context, writer);
+                                if (EncodingWriter.isStatelessCharset(charset)) {
+                                    // Byte output allows static texts to be written already encoded
+                                    process(
+                                            new TemplateSpec(templateName, markupSelectors, (TemplateMode) null, null),
+                                            context, outputStream, charset);
+                                } else {
+                                    // OutputStreamWriter objects have an 8K buffer, but process(...) will flush it at the end
+                                    final OutputStreamWriter writer = new OutputStreamWriter(outputStream, charset);
+                                    process(templateName, markupSelectors, context, writer);
+                                }
 
                             } catch (final Throwable t) {
+                                outputStream.release();
                                 logger.error(
                                         String.format(
                                                 "[THYMELEAF][%s] Exception processing template \"%s\": %s",
@@ -207,7 +224,7 @@ private Mono<DataBuffer> createFullStream(
                                 return;
                             }
 
-                            final int bytesProduced = dataBuffer.readableByteCount();
+                            final int bytesProduced = outputStream.size();
 
                             if (logger.isTraceEnabled()) {
                                 logger.trace(
@@ -218,7 +235,7 @@ private Mono<DataBuffer> createFullStream(
                             }
 
                             // This is a Mono<?>, so no need to call "next()" or "complete()"
-                            subscriber.success(dataBuffer);
+                            subscriber.success(outputStream.toDataBuffer());
 
                         });
 
@@ -268,6 +285,7 @@ private Flux<DataBuffer> createChunkedStream(
                         bytesProduced =
                                 throttledProcessor.process(responseMaxChunkSizeBytes, buffer.asOutputStream(), charset);
                     } catch (final Throwable t) {
+                        DataBufferUtils.release(buffer);
                         emitter.error(t);
                         return null;
                     }
@@ -483,22 +501,41 @@ private Flux<DataBuffer> createDataDrivenStream(
                                                 LoggingUtils.loggifyTemplateName(templateName), context.getLocale()});
                             }
 
-                            final DataBuffer buffer =
-                                    (responseMaxChunkSizeBytes != Integer.MAX_VALUE ?
-                                            bufferFactory.allocateBuffer(responseMaxChunkSizeBytes) :
-                                            bufferFactory.allocateBuffer());
+                            // When output size is not limited, output will be written into a list of (pooled) buffers
+                            // that will be joined at the end, instead of growing a single buffer
+                            final DataBuffer limitedBuffer;
+                            final CompositeDataBufferOutputStream unlimitedOutputStream;
+                            if (responseMaxChunkSizeBytes != Integer.MAX_VALUE) {
+                                limitedBuffer = bufferFactory.allocateBuffer(responseMaxChunkSizeBytes);
+                                unlimitedOutputStream = null;
+                            } else {
+                                limitedBuffer = null;
+                                unlimitedOutputStream =
+                                        new CompositeDataBufferOutputStream(bufferFactory, OUTPUT_BUFFER_SIZE);
+                            }
 
                             final int bytesProduced;
                             try {
 
                                 bytesProduced =
-                                        throttledProcessor.process(responseMaxChunkSizeBytes, buffer.asOutputStream(), charset);
+                                        throttledProcessor.process(
+                                                responseMaxChunkSizeBytes,
+                                                (limitedBuffer != null ? limitedBuffer.asOutputStream() : unlimitedOutputStream),
+                                                charset);
 
                             } catch (final Throwable t) {
+                                if (limitedBuffer != null) {
+                                    DataBufferUtils.release(limitedBuffer);
+                                } else {
+                                    unlimitedOutputStream.release();
+                                }
                                 emitter.error(t);
                                 return Boolean.FALSE;
                             }
 
+                            final DataBuffer buffer =
+                                    (limitedBuffer != null ? limitedBuffer : unlimitedOutputStream.toDataBuffer());
+
 
                             if (logger.isTraceEnabled()) {
                                 logger.trace(
@@ -351,13 +351,20 @@ private static ComputedSpelExpression getExpression(
             final IEngineConfiguration configuration, final String spelExpression) {
 
         ComputedSpelExpression exp = null;
+        ICache<String, Object> typedCache = null;
         ICache<ExpressionCacheKey, Object> cache = null;
 
         final ICacheManager cacheManager = configuration.getCacheManager();
         if (cacheManager != null) {
-            cache = cacheManager.getExpressionCache();
-            if (cache != null) {
-                exp = (ComputedSpelExpression) cache.get(new ExpressionCacheKey(EXPRESSION_CACHE_TYPE_SPEL,spelExpression));
+            // A type-specific cache (if available) avoids the creation of an ExpressionCacheKey for each lookup
+            typedCache = cacheManager.getExpressionCache(EXPRESSION_CACHE_TYPE_SPEL);
+            if (typedCache != null) {
+                exp = (ComputedSpelExpression) typedCache.get(spelExpression);
+            } else {
+                cache = cacheManager.getExpressionCache();
+                if (cache != null) {
+                    exp = (ComputedSpelExpression) cache.get(new ExpressionCacheKey(EXPRESSION_CACHE_TYPE_SPEL,spelExpression));
+                }
             }
         }
 
@@ -374,7 +381,9 @@ private static ComputedSpelExpression getExpression(
 
             exp = new ComputedSpelExpression(spelExpressionObject, mightNeedExpressionObjects);
 
-            if (cache != null && null != exp) {
+            if (typedCache != null && null != exp) {
+                typedCache.put(spelExpression, exp);
+            } else if (cache != null && null != exp) {
                 cache.put(new ExpressionCacheKey(EXPRESSION_CACHE_TYPE_SPEL,spelExpression), exp);
             }
 
@@ -19,6 +19,7 @@
  */
 package org.thymeleaf.spring6.view;
 
+import java.io.OutputStream;
 import java.io.Writer;
 import java.lang.reflect.Field;
 import java.nio.charset.Charset;
@@ -50,7 +51,11 @@
 import org.thymeleaf.standard.expression.FragmentExpression;
 import org.thymeleaf.standard.expression.IStandardExpressionParser;
 import org.thymeleaf.standard.expression.StandardExpressions;
+import org.thymeleaf.util.ByteOutputBuffer;
+import org.thymeleaf.util.CharOutputBuffer;
+import org.thymeleaf.util.EncodingWriter;
 import org.thymeleaf.util.FastStringWriter;
+import org.thymeleaf.util.OutputBufferPool;
 import org.thymeleaf.web.IWebExchange;
 import org.thymeleaf.web.servlet.JakartaServletWebApplication;
 
@@ -365,16 +370,68 @@ protected void renderFragment(final Set<String> markupSelectorsToRender, final M
 
         final boolean producePartialOutputWhileProcessing = getProducePartialOutputWhileProcessing();
 
-        // If we have chosen to not output anything until processing finishes, we will use a buffer
-        final Writer templateWriter =
-                (producePartialOutputWhileProcessing? response.getWriter() : new FastStringWriter(1024));
+        if (producePartialOutputWhileProcessing) {
+            viewTemplateEngine.process(templateName, processMarkupSelectors, context, response.getWriter());
+            return;
+        }
 
-        viewTemplateEngine.process(templateName, processMarkupSelectors, context, templateWriter);
+        // If we have chosen to not output anything until processing finishes, we will use a buffer
+        final OutputBufferPool outputBufferPool = viewTemplateEngine.getConfiguration().getOutputBufferPool();
 
-        // If a buffer was used, write it to the web server's output buffers all at once
-        if (!producePartialOutputWhileProcessing) {
+        if (outputBufferPool == null) {
+            final Writer templateWriter = new FastStringWriter(1024);
+            viewTemplateEngine.process(templateName, processMarkupSelectors, context, templateWriter);
             response.getWriter().write(templateWriter.toString());
             response.getWriter().flush();
+            return;
+        }
+
+        // The buffer will be sized according to the output previously produced for this template and selectors
+        final String outputBufferKey =
+                (processMarkupSelectors == null? templateName : templateName + "::" + processMarkupSelectors);
+        final Charset charset = Charset.forName(response.getCharacterEncoding());
+
+        if (!EncodingWriter.isStatelessCharset(charset)) {
+            // Encoding output in charsets like UTF-16 is left to the response's writer
+            final CharOutputBuffer outputBuffer = outputBufferPool.acquireCharBuffer(outputBufferKey);
+            try {
+                viewTemplateEngine.process(templateName, processMarkupSelectors, context, outputBuffer);
+                outputBuffer.writeTo(response.getWriter());
+                response.getWriter().flush();
+            } finally {
+                outputBuffer.release();
+            }
+            return;
+        }
+
+        // The buffer will directly contain the encoded bytes, so that we know the Content-Length of the response
+        final ByteOutputBuffer outputBuffer = outputBufferPool.acquireByteBuffer(outputBufferKey);
+        try {
+
+            final EncodingWriter templateWriter = new EncodingWriter(outputBuffer, charset);
+            viewTemplateEngine.process(templateName, processMarkupSelectors, context, templateWriter);
+            templateWriter.flush();
+
+            OutputStream outputStream;
+            try {
+                outputStream = response.getOutputStream();
+            } catch (final IllegalStateException e) {
+                // The response's writer has already been used (e.g. by a filter), so output has to go through it
+                outputStream = null;
+            }
+
+            if (outputStream == null) {
+                response.getWriter().write(outputBuffer.toString(charset));
+                response.getWriter().flush();
+            } else {
+                // Once processing has finished, write the buffer to the web server's output buffers all at once
+                response.setContentLength(outputBuffer.size());
+                outputBuffer.writeTo(outputStream);
+                outputStream.flush();
+            }
+
+        } finally {
+            outputBuffer.release();
         }
 
     }
@@ -27,6 +27,7 @@
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 
 import org.thymeleaf.cache.ICacheManager;
 import org.thymeleaf.context.IEngineContextFactory;
@@ -52,6 +53,7 @@
 import org.thymeleaf.templatemode.TemplateMode;
 import org.thymeleaf.templateparser.markup.decoupled.IDecoupledTemplateLogicResolver;
 import org.thymeleaf.templateresolver.ITemplateResolver;
+import org.thymeleaf.util.OutputBufferPool;
 import org.thymeleaf.util.Validate;
 
 /**
@@ -75,6 +77,14 @@ public class EngineConfiguration implements IEngineConfiguration {
     private final ICacheManager cacheManager;
     private final IEngineContextFactory engineContextFactory;
     private final IDecoupledTemplateLogicResolver decoupledTemplateLogicResolver;
+    private final long templateParseCoalescingTimeout;
+    private final Executor templateCacheRefreshExecutor;
+    private final int templateCompilationThreshold;
+    private final Executor fragmentInsertionExecutor;
+    private final OutputBufferPool outputBufferPool;
+    private final boolean flushAfterHead;
+    private final boolean packTemplateTexts;
+    private final boolean coalesceTemplateModels;
     private TemplateManager templateManager;
     private final ConcurrentHashMap<TemplateMode,IModelFactory> modelFactories;
 
@@ -89,7 +99,15 @@ public class EngineConfiguration implements IEngineConfiguration {
             final Set<DialectConfiguration> dialectConfigurations,
             final ICacheManager cacheManager,
             final IEngineContextFactory engineContextFactory,
-            final IDecoupledTemplateLogicResolver decoupledTemplateLogicResolver) {
+            final IDecoupledTemplateLogicResolver decoupledTemplateLogicResolver,
+            final long templateParseCoalescingTimeout,
+            final Executor templateCacheRefreshExecutor,
+            final int templateCompilationThreshold,
+            final Executor fragmentInsertionExecutor,
+            final OutputBufferPool outputBufferPool,
+            final boolean flushAfterHead,
+            final boolean packTemplateTexts,
+            final boolean coalesceTemplateModels) {
 
         super();
 
@@ -120,6 +138,22 @@ public class EngineConfiguration implements IEngineConfiguration {
 
         this.decoupledTemplateLogicResolver = decoupledTemplateLogicResolver;
 
+        this.templateParseCoalescingTimeout = templateParseCoalescingTimeout;
+
+        this.templateCacheRefreshExecutor = templateCacheRefreshExecutor;
+
+        this.templateCompilationThreshold = templateCompilationThreshold;
+
+        this.fragmentInsertionExecutor = fragmentInsertionExecutor;
+
+        this.outputBufferPool = outputBufferPool;
+
+        this.flushAfterHead = flushAfterHead;
+
+        this.packTemplateTexts = packTemplateTexts;
+
+        this.coalesceTemplateModels = coalesceTemplateModels;
+
         this.dialectSetConfiguration = DialectSetConfiguration.build(dialectConfigurations);
 
         // NOTE we are NOT initializing the templateManager here, but in #initialize()
@@ -171,6 +205,54 @@ public IDecoupledTemplateLogicResolver getDecoupledTemplateLogicResolver() {
 
 
 
+    public long getTemplateParseCoalescingTimeout() {
+        return this.templateParseCoalescingTimeout;
+    }
+
+
+
+    public Executor getTemplateCacheRefreshExecutor() {
+        return this.templateCacheRefreshExecutor;
+    }
+
+
+
+    public int getTemplateCompilationThreshold() {
+        return this.templateCompilationThreshold;
+    }
+
+
+
+    public Executor getFragmentInsertionExecutor() {
+        return this.fragmentInsertionExecutor;
+    }
+
+
+
+    public OutputBufferPool getOutputBufferPool() {
+        return this.outputBufferPool;
+    }
+
+
+
+    public boolean isFlushAfterHead() {
+        return this.flushAfterHead;
+    }
+
+
+
+    public boolean isPackTemplateTexts() {
+        return this.packTemplateTexts;
+    }
+
+
+
+    public boolean isCoalesceTemplateModels() {
+        return this.coalesceTemplateModels;
+    }
+
+
+
 
     public Set<DialectConfiguration> getDialectConfigurations() {
         return this.dialectSetConfiguration.getDialectConfigurations();
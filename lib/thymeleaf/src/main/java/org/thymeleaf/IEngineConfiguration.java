@@ -21,6 +21,7 @@
 
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executor;
 
 import org.thymeleaf.cache.ICacheManager;
 import org.thymeleaf.context.IEngineContextFactory;
@@ -45,6 +46,7 @@
 import org.thymeleaf.templatemode.TemplateMode;
 import org.thymeleaf.templateparser.markup.decoupled.IDecoupledTemplateLogicResolver;
 import org.thymeleaf.templateresolver.ITemplateResolver;
+import org.thymeleaf.util.OutputBufferPool;
 
 /**
  * <p>
@@ -101,6 +103,116 @@ public interface IEngineConfiguration {
 
     public TemplateManager getTemplateManager();
 
+    /**
+     * <p>
+     *   Returns the maximum time (in milliseconds) a thread missing the template cache will wait for another
+     *   thread that is already parsing the same template, instead of parsing it itself. A value of zero or less
+     *   means concurrent cache misses will not be coalesced.
+     * </p>
+     *
+     * @return the coalescing timeout in milliseconds.
+     * @since 3.1.3
+     */
+    public default long getTemplateParseCoalescingTimeout() {
+        return TemplateEngine.DEFAULT_TEMPLATE_PARSE_COALESCING_TIMEOUT;
+    }
+
+    /**
+     * <p>
+     *   Returns the executor to be used for refreshing template cache entries in the background, or null
+     *   if a default executor should be created by the engine when needed.
+     * </p>
+     *
+     * @return the template cache refresh executor, can be null.
+     * @since 3.1.3
+     */
+    public default Executor getTemplateCacheRefreshExecutor() {
+        return null;
+    }
+
+    /**
+     * <p>
+     *   Returns the number of times a template has to be processed from the template cache before it is
+     *   compiled into a form that is faster to process. A value of zero or less means templates will never be compiled.
+     * </p>
+     *
+     * @return the template compilation threshold.
+     * @since 3.1.3
+     */
+    public default int getTemplateCompilationThreshold() {
+        return 0;
+    }
+
+    /**
+     * <p>
+     *   Returns the executor to be used for processing fragments marked as asynchronous concurrently with the
+     *   rest of the template they are inserted into, or null if all fragment insertions should be processed
+     *   synchronously.
+     * </p>
+     *
+     * @return the fragment insertion executor, can be null.
+     * @since 3.1.3
+     */
+    public default Executor getFragmentInsertionExecutor() {
+        return null;
+    }
+
+    /**
+     * <p>
+     *   Returns the pool of output buffers to be used when the output of a template or fragment has to be
+     *   completely buffered before being written anywhere else, or null if no buffer pooling should be performed.
+     * </p>
+     *
+     * @return the output buffer pool, can be null.
+     * @since 3.1.3
+     */
+    public default OutputBufferPool getOutputBufferPool() {
+        return null;
+    }
+
+    /**
+     * <p>
+     *   Returns whether output should be flushed right after writing the {@code </head>} close tag of
+     *   HTML templates, so that the head of the document can reach the client (and the resources it references
+     *   can start being requested) while the rest of the template is still being processed.
+     * </p>
+     *
+     * @return whether output should be flushed after the head of HTML templates.
+     * @since 3.1.3
+     */
+    public default boolean isFlushAfterHead() {
+        return false;
+    }
+
+    /**
+     * <p>
+     *   Returns whether the texts of cached templates should be kept packed into a single {@link String} per
+     *   template instead of as separate text events, which reduces the memory retained by the template cache
+     *   at the cost of creating text events each time a cached template is processed.
+     * </p>
+     *
+     * @return whether the texts of cached templates should be packed.
+     * @since 3.1.3
+     */
+    public default boolean isPackTemplateTexts() {
+        return false;
+    }
+
+    /**
+     * <p>
+     *   Returns whether the runs of static markup in cached templates (i.e. markup not affected by any
+     *   processors) should be merged into single text events containing their already-serialized output.
+     *   Note that, when enabled, processors manipulating cached models will see these merged texts instead of
+     *   the original elements, comments or CDATA sections.
+     * </p>
+     *
+     * @return whether the static markup of cached templates should be coalesced.
+     * @since 3.1.3
+     */
+    public default boolean isCoalesceTemplateModels() {
+        return false;
+    }
+
     public IModelFactory getModelFactory(final TemplateMode templateMode);
 
 }
@@ -19,7 +19,12 @@
  */
 package org.thymeleaf;
 
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
 import java.util.Set;
 
 import org.thymeleaf.context.IContext;
@@ -202,6 +207,78 @@ public interface ITemplateEngine {
     public void process(final TemplateSpec templateSpec, final IContext context, final Writer writer);
 
 
+    /**
+     * <p>
+     * Process the specified template (usually the template name). Output will be encoded using the specified
+     * charset and written to the specified output stream as it is generated from processing the template.
+     * </p>
+     * <p>
+     * This is actually a convenience method that will internally create a {@link TemplateSpec} and then
+     * call {@link #process(TemplateSpec, IContext, OutputStream, Charset)}.
+     * </p>
+     *
+     * @param template     the template; depending on the template resolver this might be a template name or even
+     *                     the template contents (e.g. StringTemplateResolver).
+     * @param context      the context.
+     * @param outputStream the output stream the results will be output to.
+     * @param charset      the charset to be used for encoding output.
+     * @since 3.1.3
+     */
+    public default void process(
+            final String template, final IContext context, final OutputStream outputStream, final Charset charset) {
+        process(new TemplateSpec(template, null, null, null, null), context, outputStream, charset);
+    }
+
+
+    /**
+     * <p>
+     * Process a template starting from a {@link TemplateSpec}. Output will be encoded using the specified
+     * charset and written to the specified output stream as it is generated from processing the template.
+     * </p>
+     * <p>
+     * Implementations can use this byte-oriented form of output in order to avoid encoding the static parts of
+     * templates again every time they are processed. The default implementation simply writes output through an
+     * {@link OutputStreamWriter}.
+     * </p>
+     *
+     * @param templateSpec the template spec containing the template to be resolved (usually its name only),
+     *                     template selectors if they are to be applied, a template mode if it should be forced
+     *                     (instead of computing it at resolution time), and other attributes.
+     * @param context      the context.
+     * @param outputStream the output stream the results will be output to.
+     * @param charset      the charset to be used for encoding output.
+     * @since 3.1.3
+     */
+    public default void process(
+            final TemplateSpec templateSpec, final IContext context, final OutputStream outputStream, final Charset charset) {
+        process(templateSpec, context, new OutputStreamWriter(outputStream, charset));
+    }
+
+
+    /**
+     * <p>
+     * Process a template starting from a {@link TemplateSpec}. Output will be encoded using the specified
+     * charset and written to the specified channel as it is generated from processing the template.
+     * </p>
+     * <p>
+     * The default implementation simply writes output through a writer obtained from
+     * {@link Channels#newWriter(WritableByteChannel, java.nio.charset.CharsetEncoder, int)}.
+     * </p>
+     *
+     * @param templateSpec the template spec containing the template to be resolved (usually its name only),
+     *                     template selectors if they are to be applied, a template mode if it should be forced
+     *                     (instead of computing it at resolution time), and other attributes.
+     * @param context      the context.
+     * @param channel      the channel the results will be output to.
+     * @param charset      the charset to be used for encoding output.
+     * @since 3.1.3
+     */
+    public default void process(
+            final TemplateSpec templateSpec, final IContext context, final WritableByteChannel channel, final Charset charset) {
+        process(templateSpec, context, Channels.newWriter(channel, charset.newEncoder(), -1));
+    }
+
+
     /**
      * <p>
      * Process the specified template (usually the template name). Output will be generated from processing the
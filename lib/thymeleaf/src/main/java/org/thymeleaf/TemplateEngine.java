@@ -19,15 +19,26 @@
  */
 package org.thymeleaf;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Writer;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -52,8 +63,10 @@
 import org.thymeleaf.templateparser.markup.decoupled.StandardDecoupledTemplateLogicResolver;
 import org.thymeleaf.templateresolver.ITemplateResolver;
 import org.thymeleaf.templateresolver.StringTemplateResolver;
+import org.thymeleaf.util.EncodingWriter;
 import org.thymeleaf.util.FastStringWriter;
 import org.thymeleaf.util.LoggingUtils;
+import org.thymeleaf.util.OutputBufferPool;
 import org.thymeleaf.util.Validate;
 
 
@@ -244,6 +257,16 @@ public class TemplateEngine implements ITemplateEngine {
     private static final Logger logger = LoggerFactory.getLogger(TemplateEngine.class);
     private static final Logger timerLogger = LoggerFactory.getLogger(TIMER_LOGGER_NAME);
 
+    /**
+     * <p>
+     *   Default maximum time (in milliseconds) that a thread missing the template cache will wait for another
+     *   thread already parsing the same template: {@value}
+     * </p>
+     *
+     * @since 3.1.3
+     */
+    public static final long DEFAULT_TEMPLATE_PARSE_COALESCING_TIMEOUT = 10000L;
+
     private static final int NANOS_IN_SECOND = 1000000;
 
     private volatile boolean initialized = false;
@@ -255,6 +278,14 @@ public class TemplateEngine implements ITemplateEngine {
     private ICacheManager cacheManager = null;
     private IEngineContextFactory engineContextFactory = null;
     private IDecoupledTemplateLogicResolver decoupledTemplateLogicResolver = null;
+    private long templateParseCoalescingTimeout = DEFAULT_TEMPLATE_PARSE_COALESCING_TIMEOUT;
+    private Executor templateCacheRefreshExecutor = null;
+    private int templateCompilationThreshold = 0;
+    private Executor fragmentInsertionExecutor = null;
+    private OutputBufferPool outputBufferPool = null;
+    private boolean flushAfterHead = false;
+    private boolean packTemplateTexts = false;
+    private boolean coalesceTemplateModels = false;
 
 
     private IEngineConfiguration configuration = null;
@@ -342,7 +373,10 @@ final void initialize() {
                             new EngineConfiguration(
                                     this.templateResolvers, this.messageResolvers, this.linkBuilders,
                                     this.dialectConfigurations, this.cacheManager, this.engineContextFactory,
-                                    this.decoupledTemplateLogicResolver);
+                                    this.decoupledTemplateLogicResolver, this.templateParseCoalescingTimeout,
+                                    this.templateCacheRefreshExecutor, this.templateCompilationThreshold,
+                                    this.fragmentInsertionExecutor, this.outputBufferPool, this.flushAfterHead,
+                                    this.packTemplateTexts, this.coalesceTemplateModels);
                     ((EngineConfiguration)this.configuration).initialize();
 
                     this.initialized = true;
@@ -821,6 +855,378 @@ public void setDecoupledTemplateLogicResolver(final IDecoupledTemplateLogicResol
         this.decoupledTemplateLogicResolver = decoupledTemplateLogicResolver;
     }
 
+
+    /**
+     * <p>
+     *   Returns the maximum time (in milliseconds) that a thread missing the template cache will wait
+     *   for another thread that is already parsing the same template, instead of resolving and parsing
+     *   the template itself.
+     * </p>
+     * <p>
+     *   By default, {@link #DEFAULT_TEMPLATE_PARSE_COALESCING_TIMEOUT} is used.
+     * </p>
+     *
+     * @return the template parse coalescing timeout, in milliseconds.
+     * @since 3.1.3
+     */
+    public final long getTemplateParseCoalescingTimeout() {
+        if (this.initialized) {
+            return this.configuration.getTemplateParseCoalescingTimeout();
+        }
+        return this.templateParseCoalescingTimeout;
+    }
+
+    /**
+     * <p>
+     *   Sets the maximum time (in milliseconds) that a thread missing the template cache will wait
+     *   for another thread that is already parsing the same template, instead of resolving and parsing
+     *   the template itself. Waiting threads will use the model parsed by that other thread, or fail
+     *   with the same cause if that other thread fails. If this timeout is reached, the waiting thread
+     *   will simply go on and parse the template itself.
+     * </p>
+     * <p>
+     *   A value of zero or less disables the coalescing of concurrent template cache misses.
+     * </p>
+     * <p>
+     *   This operation can only be executed before processing templates for the first
+     *   time. Once a template is processed, the template engine is considered to be
+     *   <i>initialized</i>, and from then on any attempt to change its configuration
+     *   will result in an exception.
+     * </p>
+     *
+     * @param templateParseCoalescingTimeout the timeout, in milliseconds.
+     * @since 3.1.3
+     */
+    public void setTemplateParseCoalescingTimeout(final long templateParseCoalescingTimeout) {
+        checkNotInitialized();
+        this.templateParseCoalescingTimeout = templateParseCoalescingTimeout;
+    }
+
+
+    /**
+     * <p>
+     *   Returns the {@link Executor} that will be used for refreshing template cache entries in the
+     *   background, when their validity asks for it (see
+     *   {@link org.thymeleaf.cache.IRefreshableCacheEntryValidity}).
+     * </p>
+     * <p>
+     *   If null (the default), a small pool of daemon threads will be created for this purpose the first
+     *   time a background refresh is needed.
+     * </p>
+     *
+     * @return the template cache refresh executor, or null if the default one is to be used.
+     * @since 3.1.3
+     */
+    public final Executor getTemplateCacheRefreshExecutor() {
+        if (this.initialized) {
+            return this.configuration.getTemplateCacheRefreshExecutor();
+        }
+        return this.templateCacheRefreshExecutor;
+    }
+
+    /**
+     * <p>
+     *   Sets the {@link Executor} that will be used for refreshing template cache entries in the
+     *   background, when their validity asks for it (see
+     *   {@link org.thymeleaf.cache.IRefreshableCacheEntryValidity}). This executor is not managed by
+     *   the template engine, so it will not be shut down by it.
+     * </p>
+     * <p>
+     *   This operation can only be executed before processing templates for the first
+     *   time. Once a template is processed, the template engine is considered to be
+     *   <i>initialized</i>, and from then on any attempt to change its configuration
+     *   will result in an exception.
+     * </p>
+     *
+     * @param templateCacheRefreshExecutor the executor, or null for using the default one.
+     * @since 3.1.3
+     */
+    public void setTemplateCacheRefreshExecutor(final Executor templateCacheRefreshExecutor) {
+        checkNotInitialized();
+        this.templateCacheRefreshExecutor = templateCacheRefreshExecutor;
+    }
+
+
+    /**
+     * <p>
+     *   Returns the number of times a template has to be processed from the template cache before it is
+     *   compiled into a form that is faster to process.
+     * </p>
+     * <p>
+     *   By default this is zero, meaning templates are never compiled.
+     * </p>
+     *
+     * @return the template compilation threshold.
+     * @since 3.1.3
+     */
+    public final int getTemplateCompilationThreshold() {
+        if (this.initialized) {
+            return this.configuration.getTemplateCompilationThreshold();
+        }
+        return this.templateCompilationThreshold;
+    }
+
+    /**
+     * <p>
+     *   Sets the number of times a template has to be processed from the template cache before it is
+     *   compiled into a form that is faster to process. Compiling a template merges all of its static markup into pre-serialized
+     *   texts, and completely static templates will be output directly without any processing. Templates
+     *   that cannot be compiled will simply keep on being processed as usual.
+     * </p>
+     * <p>
+     *   Only cached templates that are processed by means of the {@code process(...)} methods are compiled
+     *   (i.e. not those processed in a throttled way or inserted as fragments). A value of zero or less (the
+     *   default) disables template compilation.
+     * </p>
+     * <p>
+     *   This operation can only be executed before processing templates for the first
+     *   time. Once a template is processed, the template engine is considered to be
+     *   <i>initialized</i>, and from then on any attempt to change its configuration
+     *   will result in an exception.
+     * </p>
+     *
+     * @param templateCompilationThreshold the number of executions after which templates are compiled.
+     * @since 3.1.3
+     */
+    public void setTemplateCompilationThreshold(final int templateCompilationThreshold) {
+        checkNotInitialized();
+        this.templateCompilationThreshold = templateCompilationThreshold;
+    }
+
+
+    /**
+     * <p>
+     *   Returns the executor used for processing asynchronous fragment insertions concurrently with the
+     *   rest of the template they are inserted into.
+     * </p>
+     * <p>
+     *   By default this is null, meaning all fragment insertions are processed synchronously.
+     * </p>
+     *
+     * @return the fragment insertion executor, can be null.
+     * @since 3.1.3
+     */
+    public final Executor getFragmentInsertionExecutor() {
+        if (this.initialized) {
+            return this.configuration.getFragmentInsertionExecutor();
+        }
+        return this.fragmentInsertionExecutor;
+    }
+
+    /**
+     * <p>
+     *   Sets the executor to be used for processing asynchronous fragment insertions concurrently with the
+     *   rest of the template they are inserted into.
+     * </p>
+     * <p>
+     *   Only fragments whose holder element is marked with the {@code th:concurrent} attribute, and which are
+     *   inserted by means of {@code th:insert} or {@code th:replace}, are processed this way. Such fragments
+     *   are processed against a snapshot of the variables available at the point of insertion, and their output
+     *   is stitched into the template output in document order once ready. When output cannot be deferred (e.g.
+     *   because the template is being processed in a throttled way) the output of these fragments is simply
+     *   waited for at the point of insertion.
+     * </p>
+     * <p>
+     *   This operation can only be executed before processing templates for the first
+     *   time. Once a template is processed, the template engine is considered to be
+     *   <i>initialized</i>, and from then on any attempt to change its configuration
+     *   will result in an exception.
+     * </p>
+     *
+     * @param fragmentInsertionExecutor the executor, or null for processing all fragment insertions synchronously.
+     * @since 3.1.3
+     */
+    public void setFragmentInsertionExecutor(final Executor fragmentInsertionExecutor) {
+        checkNotInitialized();
+        this.fragmentInsertionExecutor = fragmentInsertionExecutor;
+    }
+
+
+    /**
+     * <p>
+     *   Returns the pool of output buffers used when the output of a template or fragment has to be completely
+     *   buffered before being written anywhere else (e.g. when inserting fragments by means of {@code th:include},
+     *   or when rendering views without producing partial output).
+     * </p>
+     * <p>
+     *   By default no pool is used ({@code null}), so output buffers are simply allocated when needed.
+     * </p>
+     *
+     * @return the output buffer pool, can be null.
+     * @since 3.1.3
+     */
+    public final OutputBufferPool getOutputBufferPool() {
+        if (this.initialized) {
+            return this.configuration.getOutputBufferPool();
+        }
+        return this.outputBufferPool;
+    }
+
+    /**
+     * <p>
+     *   Sets the pool of output buffers to be used when the output of a template or fragment has to be
+     *   completely buffered. The pool keeps a moving estimate of the output size of each template so that
+     *   the buffers it hands out do not need to grow during processing. Note the recycled buffers will be
+     *   retained in memory by the pool, up to the maximum configured for it (see {@link OutputBufferPool}).
+     * </p>
+     * <p>
+     *   This operation can only be executed before processing templates for the first
+     *   time. Once a template is processed, the template engine is considered to be
+     *   <i>initialized</i>, and from then on any attempt to change its configuration
+     *   will result in an exception.
+     * </p>
+     *
+     * @param outputBufferPool the output buffer pool, or null for not pooling output buffers at all.
+     * @since 3.1.3
+     */
+    public void setOutputBufferPool(final OutputBufferPool outputBufferPool) {
+        checkNotInitialized();
+        this.outputBufferPool = outputBufferPool;
+    }
+
+
+    /**
+     * <p>
+     *   Returns whether output will be flushed right after writing the {@code </head>} close tag of
+     *   HTML templates.
+     * </p>
+     * <p>
+     *   By default this is false.
+     * </p>
+     *
+     * @return whether output will be flushed after the head of HTML templates.
+     * @since 3.1.3
+     */
+    public final boolean isFlushAfterHead() {
+        if (this.initialized) {
+            return this.configuration.isFlushAfterHead();
+        }
+        return this.flushAfterHead;
+    }
+
+    /**
+     * <p>
+     *   Sets whether output should be flushed right after writing the {@code </head>} close tag of HTML
+     *   templates, so that the head of the document can reach the client (and the CSS and JavaScript resources
+     *   referenced there can start being requested) while the rest of the template is still being processed.
+     * </p>
+     * <p>
+     *   Explicit flush points can also be set in templates by means of the {@code th:flush} attribute. When
+     *   templates are processed in a throttled way, flush points also end the chunk of output being produced.
+     *   Flush points have no effect when output is being completely buffered.
+     * </p>
+     * <p>
+     *   This operation can only be executed before processing templates for the first
+     *   time. Once a template is processed, the template engine is considered to be
+     *   <i>initialized</i>, and from then on any attempt to change its configuration
+     *   will result in an exception.
+     * </p>
+     *
+     * @param flushAfterHead whether output should be flushed after the head of HTML templates.
+     * @since 3.1.3
+     */
+    public void setFlushAfterHead(final boolean flushAfterHead) {
+        checkNotInitialized();
+        this.flushAfterHead = flushAfterHead;
+    }
+
+
+    /**
+     * <p>
+     *   Returns whether the texts of cached templates will be kept packed.
+     * </p>
+     * <p>
+     *   By default this is false.
+     * </p>
+     *
+     * @return whether the texts of cached templates will be packed.
+     * @since 3.1.3
+     */
+    public final boolean isPackTemplateTexts() {
+        if (this.initialized) {
+            return this.configuration.isPackTemplateTexts();
+        }
+        return this.packTemplateTexts;
+    }
+
+    /**
+     * <p>
+     *   Sets whether the texts of cached templates should be kept packed into a single {@link String} per
+     *   template, with their locations kept at arrays, instead of as one text event (and one {@link String})
+     *   per text. Text events are then created only when a cached template is processed and an event has to
+     *   be handed to processors, and static texts are written directly from the packed form.
+     * </p>
+     * <p>
+     *   This reduces the memory retained by the template cache (for typical HTML pages, cached models take
+     *   around 20% less memory than without packing), at the cost of some more short-lived objects being
+     *   created each time a cached template is processed. Note that, when enabled, the text events obtained
+     *   from a cached template model will be different objects each time they are requested.
+     * </p>
+     * <p>
+     *   This operation can only be executed before processing templates for the first
+     *   time. Once a template is processed, the template engine is considered to be
+     *   <i>initialized</i>, and from then on any attempt to change its configuration
+     *   will result in an exception.
+     * </p>
+     *
+     * @param packTemplateTexts whether the texts of cached templates should be packed.
+     * @since 3.1.3
+     */
+    public void setPackTemplateTexts(final boolean packTemplateTexts) {
+        checkNotInitialized();
+        this.packTemplateTexts = packTemplateTexts;
+    }
+
+
+    /**
+     * <p>
+     *   Returns whether the runs of static markup in cached templates will be coalesced into single texts.
+     * </p>
+     * <p>
+     *   By default this is false.
+     * </p>
+     *
+     * @return whether the static markup of cached templates will be coalesced.
+     * @since 3.1.3
+     */
+    public final boolean isCoalesceTemplateModels() {
+        if (this.initialized) {
+            return this.configuration.isCoalesceTemplateModels();
+        }
+        return this.coalesceTemplateModels;
+    }
+
+    /**
+     * <p>
+     *   Sets whether the runs of static markup in cached templates (elements with no processors together with
+     *   their bodies, and texts, comments and CDATA sections that no inlining would modify) should be merged
+     *   into single text events containing their already-serialized output, so that they are handled and
+     *   written as one event each time the template is processed. Compiled templates (see
+     *   {@link #setTemplateCompilationThreshold(int)}) are always coalesced, independently of this setting.
+     * </p>
+     * <p>
+     *   Coalescing is automatically skipped for template modes with pre-processors or post-processors, or with
+     *   text, comment or CDATA section processors other than the standard ones, and nothing is merged in the
+     *   body of elements with element model processors. However, any other custom processors that inspect or
+     *   manipulate cached models (e.g. fragments obtained from the template manager, or models built by means
+     *   of {@link org.thymeleaf.model.IModelVisitor}s) will see merged texts instead of the original static
+     *   elements, comments or CDATA sections, which is why this is disabled by default.
+     * </p>
+     * <p>
+     *   This operation can only be executed before processing templates for the first
+     *   time. Once a template is processed, the template engine is considered to be
+     *   <i>initialized</i>, and from then on any attempt to change its configuration
+     *   will result in an exception.
+     * </p>
+     *
+     * @param coalesceTemplateModels whether the static markup of cached templates should be coalesced.
+     * @since 3.1.3
+     */
+    public void setCoalesceTemplateModels(final boolean coalesceTemplateModels) {
+        checkNotInitialized();
+        this.coalesceTemplateModels = coalesceTemplateModels;
+    }
+
     
     /**
      * <p>
@@ -1025,6 +1431,211 @@ public void clearTemplateCacheFor(final String templateName) {
         }
         this.configuration.getTemplateManager().clearCachesFor(templateName);
     }
+
+
+
+
+    /**
+     * <p>
+     *   Warms up the template cache by resolving and parsing the specified templates (in parallel) using the
+     *   {@link ForkJoinPool#commonPool() common ForkJoinPool}.
+     * </p>
+     * <p>
+     *   See {@link #warmUp(Collection, Executor)} for more info.
+     * </p>
+     *
+     * @param templates the names of the templates to be parsed.
+     * @return the report of the warm-up operation.
+     * @since 3.1.3
+     */
+    public final TemplateWarmUpReport warmUp(final String... templates) {
+        Validate.notNull(templates, "Templates cannot be null");
+        final List<TemplateSpec> templateSpecs = new ArrayList<TemplateSpec>(templates.length);
+        for (final String template : templates) {
+            templateSpecs.add(new TemplateSpec(template, null, null, null, null));
+        }
+        return warmUp(templateSpecs, null);
+    }
+
+
+    /**
+     * <p>
+     *   Warms up the template cache by resolving and parsing the specified templates (in parallel) using the
+     *   {@link ForkJoinPool#commonPool() common ForkJoinPool}.
+     * </p>
+     * <p>
+     *   See {@link #warmUp(Collection, Executor)} for more info.
+     * </p>
+     *
+     * @param templateSpecs the specifications of the templates to be parsed.
+     * @return the report of the warm-up operation.
+     * @since 3.1.3
+     */
+    public final TemplateWarmUpReport warmUp(final Collection<TemplateSpec> templateSpecs) {
+        return warmUp(templateSpecs, null);
+    }
+
+
+    /**
+     * <p>
+     *   Warms up the template cache by resolving and parsing the specified templates in parallel using the
+     *   specified {@link Executor}, so that the first executions of these templates do not need to pay the
+     *   cost of parsing them. This method will block until all templates have been parsed (or failed to).
+     * </p>
+     * <p>
+     *   Templates are cached with the same template selectors, template mode and template resolution attributes
+     *   specified at their {@link TemplateSpec}, so these should match the ones that will be used for processing
+     *   them afterwards. Templates that are already cached are not parsed again, and templates deemed non-cacheable
+     *   by their template resolvers are parsed but not cached.
+     * </p>
+     * <p>
+     *   Failures (e.g. templates that cannot be resolved) do not stop the warm-up of the rest of the templates: they are
+     *   included in the returned {@link TemplateWarmUpReport} instead.
+     * </p>
+     * <p>
+     *   Applications using Spring can call this method once the application context has been refreshed, for
+     *   example from an {@code ApplicationListener<ContextRefreshedEvent>} that has access to the template engine
+     *   configured for the {@code ThymeleafViewResolver}.
+     * </p>
+     *
+     * @param templateSpecs the specifications of the templates to be parsed.
+     * @param executor the executor to be used for parsing the templates. If null, the
+     *                 {@link ForkJoinPool#commonPool() common ForkJoinPool} will be used.
+     * @return the report of the warm-up operation.
+     * @since 3.1.3
+     */
+    public final TemplateWarmUpReport warmUp(final Collection<TemplateSpec> templateSpecs, final Executor executor) {
+
+        if (!this.initialized) {
+            initialize();
+        }
+
+        Validate.notNull(templateSpecs, "Template Specifications cannot be null");
+        Validate.containsNoNulls(templateSpecs, "Template Specifications cannot contain nulls");
+
+        final TemplateManager templateManager = this.configuration.getTemplateManager();
+        final Executor warmUpExecutor = (executor != null ? executor : ForkJoinPool.commonPool());
+
+        final long startNanos = System.nanoTime();
+
+        final List<WarmUpTask> tasks = new ArrayList<WarmUpTask>(templateSpecs.size());
+        final CountDownLatch latch = new CountDownLatch(templateSpecs.size());
+        for (final TemplateSpec templateSpec : templateSpecs) {
+            final WarmUpTask task = new WarmUpTask(templateManager, templateSpec, latch);
+            tasks.add(task);
+            try {
+                warmUpExecutor.execute(task);
+            } catch (final RejectedExecutionException e) {
+                // The executor cannot accept any more tasks, so we will just parse this one ourselves
+                task.run();
+            }
+        }
+
+        try {
+            latch.await();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TemplateProcessingException("Interrupted while waiting for the template cache warm-up to finish", e);
+        }
+
+        final List<TemplateWarmUpReport.Result> results = new ArrayList<TemplateWarmUpReport.Result>(tasks.size());
+        for (final WarmUpTask task : tasks) {
+            results.add(task.result);
+        }
+
+        final TemplateWarmUpReport report = new TemplateWarmUpReport(results, System.nanoTime() - startNanos);
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("[THYMELEAF] TEMPLATE ENGINE WARMED UP TEMPLATE CACHE: {}", report);
+        }
+
+        return report;
+
+    }
+
+
+
+
+    /**
+     * <p>
+     *   Parses the specified templates and writes them to a <em>precompiled template archive</em>, which can be
+     *   later loaded by means of {@link #loadTemplateArchive(File)} (usually at application startup) so that
+     *   the template cache is filled with these templates without the need to parse them.
+     * </p>
+     * <p>
+     *   See {@link TemplateManager#writeTemplateArchive(Collection, OutputStream)} for more info.
+     * </p>
+     *
+     * @param templateSpecs the templates to be written to the archive.
+     * @param outputStream the stream the archive will be written to. It will not be closed.
+     * @return the number of templates actually written to the archive.
+     * @since 3.1.3
+     */
+    public final int writeTemplateArchive(final Collection<TemplateSpec> templateSpecs, final OutputStream outputStream) {
+        if (!this.initialized) {
+            initialize();
+        }
+        return this.configuration.getTemplateManager().writeTemplateArchive(templateSpecs, outputStream);
+    }
+
+
+    /**
+     * <p>
+     *   Loads a <em>precompiled template archive</em> (written by {@link #writeTemplateArchive(Collection, OutputStream)})
+     *   into the template cache. Archived templates that have been modified since the archive was written
+     *   will be ignored.
+     * </p>
+     * <p>
+     *   See {@link TemplateManager#loadTemplateArchive(File)} for more info.
+     * </p>
+     *
+     * @param archiveFile the archive file.
+     * @return the number of templates put into the template cache.
+     * @since 3.1.3
+     */
+    public final int loadTemplateArchive(final File archiveFile) {
+        if (!this.initialized) {
+            initialize();
+        }
+        return this.configuration.getTemplateManager().loadTemplateArchive(archiveFile);
+    }
+
+
+
+
+    private static final class WarmUpTask implements Runnable {
+
+        private final TemplateManager templateManager;
+        private final TemplateSpec templateSpec;
+        private final CountDownLatch latch;
+        // Published to the waiting thread by means of the CountDownLatch
+        private TemplateWarmUpReport.Result result = null;
+
+        WarmUpTask(final TemplateManager templateManager, final TemplateSpec templateSpec, final CountDownLatch latch) {
+            super();
+            this.templateManager = templateManager;
+            this.templateSpec = templateSpec;
+            this.latch = latch;
+        }
+
+        public void run() {
+            final long startNanos = System.nanoTime();
+            Throwable failure = null;
+            try {
+                this.templateManager.warmUp(this.templateSpec);
+            } catch (final Exception e) {
+                failure = e;
+                logger.warn("[THYMELEAF] Could not warm up template cache for template \"{}\"", this.templateSpec.getTemplate(), e);
+            } catch (final Error e) {
+                failure = e;
+                logger.warn("[THYMELEAF] Could not warm up template cache for template \"{}\"", this.templateSpec.getTemplate(), e);
+            } finally {
+                this.result = new TemplateWarmUpReport.Result(this.templateSpec, System.nanoTime() - startNanos, failure);
+                this.latch.countDown();
+            }
+        }
+
+    }
     
     
     
@@ -1154,6 +1765,28 @@ public final void process(final TemplateSpec templateSpec, final IContext contex
 
 
 
+    public final void process(
+            final String template, final IContext context, final OutputStream outputStream, final Charset charset) {
+        process(new TemplateSpec(template, null, null, null, null), context, outputStream, charset);
+    }
+
+
+    public final void process(
+            final TemplateSpec templateSpec, final IContext context, final OutputStream outputStream, final Charset charset) {
+        // Static template texts will be written already encoded, only dynamic output will need to be encoded
+        process(templateSpec, context, new EncodingWriter(outputStream, charset));
+    }
+
+
+    public final void process(
+            final TemplateSpec templateSpec, final IContext context, final WritableByteChannel channel, final Charset charset) {
+        // Static template texts will be written already encoded, only dynamic output will need to be encoded
+        process(templateSpec, context, new EncodingWriter(channel, charset));
+    }
+
+
+
+
     public final IThrottledTemplateProcessor processThrottled(final String template, final IContext context) {
         return processThrottled(new TemplateSpec(template, null, null, null, null), context);
     }
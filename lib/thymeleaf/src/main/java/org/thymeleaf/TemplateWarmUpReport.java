@@ -0,0 +1,162 @@
+/*
+ * =============================================================================
+ *
+ *   Copyright (c) 2011-2022, The THYMELEAF team (http://www.thymeleaf.org)
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * =============================================================================
+ */
+package org.thymeleaf;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * <p>
+ *   Report on the results of warming up the template cache by means of
+ *   {@link TemplateEngine#warmUp(java.util.Collection, java.util.concurrent.Executor)}, containing
+ *   one {@link Result} for each of the templates that were asked to be parsed.
+ * </p>
+ * <p>
+ *   Objects of this class are immutable.
+ * </p>
+ *
+ * @author Daniel Fern&aacute;ndez
+ *
+ * @since 3.1.3
+ *
+ */
+public final class TemplateWarmUpReport {
+
+    private final List<Result> results;
+    private final long elapsedNanos;
+
+
+
+    TemplateWarmUpReport(final List<Result> results, final long elapsedNanos) {
+        super();
+        this.results = Collections.unmodifiableList(new ArrayList<Result>(results));
+        this.elapsedNanos = elapsedNanos;
+    }
+
+
+    /**
+     * @return the results for each of the templates, in the same order they were specified.
+     */
+    public List<Result> getResults() {
+        return this.results;
+    }
+
+    /**
+     * @return the results for the templates that could not be parsed.
+     */
+    public List<Result> getFailures() {
+        final List<Result> failures = new ArrayList<Result>(2);
+        for (final Result result : this.results) {
+            if (!result.isSuccess()) {
+                failures.add(result);
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * @return whether all templates could be parsed successfully.
+     */
+    public boolean isSuccess() {
+        for (final Result result : this.results) {
+            if (!result.isSuccess()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the time (in nanoseconds) elapsed since the warm-up started until all templates were parsed.
+     */
+    public long getElapsedNanos() {
+        return this.elapsedNanos;
+    }
+
+
+    @Override
+    public String toString() {
+        return "TemplateWarmUpReport{templates=" + this.results.size() + ", failures=" + getFailures().size() +
+                ", elapsedNanos=" + this.elapsedNanos + "}";
+    }
+
+
+
+
+    /**
+     * <p>
+     *   Result of warming up a single template.
+     * </p>
+     *
+     * @since 3.1.3
+     */
+    public static final class Result {
+
+        private final TemplateSpec templateSpec;
+        private final long parseNanos;
+        private final Throwable failure;
+
+
+        Result(final TemplateSpec templateSpec, final long parseNanos, final Throwable failure) {
+            super();
+            this.templateSpec = templateSpec;
+            this.parseNanos = parseNanos;
+            this.failure = failure;
+        }
+
+        /**
+         * @return the specification of the template.
+         */
+        public TemplateSpec getTemplateSpec() {
+            return this.templateSpec;
+        }
+
+        /**
+         * @return the time (in nanoseconds) it took to resolve and parse the template, or to fail doing so.
+         */
+        public long getParseNanos() {
+            return this.parseNanos;
+        }
+
+        /**
+         * @return the exception that prevented the template from being parsed, or null if it was successful.
+         */
+        public Throwable getFailure() {
+            return this.failure;
+        }
+
+        /**
+         * @return whether the template could be parsed (or was already cached).
+         */
+        public boolean isSuccess() {
+            return (this.failure == null);
+        }
+
+        @Override
+        public String toString() {
+            return "Result{template=" + this.templateSpec + ", parseNanos=" + this.parseNanos +
+                    (this.failure != null ? ", failure=" + this.failure : "") + "}";
+        }
+
+    }
+
+}
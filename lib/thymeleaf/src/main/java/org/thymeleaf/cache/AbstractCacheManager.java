@@ -21,6 +21,7 @@
 
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.thymeleaf.engine.TemplateModel;
 
@@ -51,6 +52,9 @@ public abstract class AbstractCacheManager implements ICacheManager {
     private volatile ICache<ExpressionCacheKey,Object> expressionCache;
     private volatile boolean expressionCacheInitialized = false;
 
+    private final ConcurrentHashMap<String,TypedExpressionCache> typedExpressionCaches =
+            new ConcurrentHashMap<String, TypedExpressionCache>(8, 0.75f, 1);
+
     
     protected AbstractCacheManager() {
         super();
@@ -81,6 +85,21 @@ public final ICache<ExpressionCacheKey, Object> getExpressionCache() {
         return this.expressionCache;
     }
 
+    public final ICache<String, Object> getExpressionCache(final String type) {
+        TypedExpressionCache typedExpressionCache = this.typedExpressionCaches.get(type);
+        if (typedExpressionCache == null) {
+            synchronized(this) {
+                typedExpressionCache = this.typedExpressionCaches.get(type);
+                if (typedExpressionCache == null) {
+                    // A null cache will also be stored so that we don't try to initialize it again
+                    typedExpressionCache = new TypedExpressionCache(initializeExpressionCache(type));
+                    this.typedExpressionCaches.put(type, typedExpressionCache);
+                }
+            }
+        }
+        return typedExpressionCache.cache;
+    }
+
     
     public <K, V> ICache<K, V> getSpecificCache(final String name) {
         // No specific caches are used by default
@@ -105,6 +124,12 @@ public void clearAllCaches() {
         if (expressionCacheObj != null) {
             expressionCacheObj.clear();
         }
+
+        for (final TypedExpressionCache typedExpressionCache : this.typedExpressionCaches.values()) {
+            if (typedExpressionCache.cache != null) {
+                typedExpressionCache.cache.clear();
+            }
+        }
         
         final List<String> allSpecificCacheNamesObj = getAllSpecificCacheNames();
         if (allSpecificCacheNamesObj != null) {
@@ -122,5 +147,34 @@ public void clearAllCaches() {
     protected abstract ICache<TemplateCacheKey,TemplateModel> initializeTemplateCache();
 
     protected abstract ICache<ExpressionCacheKey,Object> initializeExpressionCache();
-    
+
+    /**
+     * <p>
+     *   Initializes the type-specific expression cache for the specified type. Returning
+     *   {@code null} (the default behaviour) means artifacts of this type will be stored at
+     *   the shared expression cache.
+     * </p>
+     *
+     * @param type the type of the expression artifacts to be cached
+     * @return the type-specific cache, or {@code null} if the shared expression cache should be used.
+     * @since 3.1.3
+     */
+    protected ICache<String,Object> initializeExpressionCache(final String type) {
+        return null;
+    }
+
+
+
+
+    private static final class TypedExpressionCache {
+
+        private final ICache<String,Object> cache; // might be null
+
+        TypedExpressionCache(final ICache<String, Object> cache) {
+            super();
+            this.cache = cache;
+        }
+
+    }
+
 }
@@ -0,0 +1,52 @@
+/*
+ * =============================================================================
+ *
+ *   Copyright (c) 2011-2022, The THYMELEAF team (http://www.thymeleaf.org)
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * =============================================================================
+ */
+package org.thymeleaf.cache;
+
+/**
+ * <p>
+ *   Eviction policies that can be applied by {@link StandardCache} instances when they are configured
+ *   with a maximum size.
+ * </p>
+ * <ul>
+ *   <li>{@link #FIFO}: entries are evicted in insertion order, no matter how often they are accessed.
+ *       This is the default and historical behaviour.</li>
+ *   <li>{@link #WINDOW_TINY_LFU}: new entries are first admitted into a small LRU <em>window</em>, and
+ *       they are only allowed into the <em>main</em> (segmented LRU) space if their estimated access
+ *       frequency is higher than that of the entry that would be evicted in their place. Frequencies
+ *       are estimated by means of a compact, periodically aged count-min sketch. This policy offers
+ *       much higher hit ratios for caches in which a reduced set of entries is accessed very often and a
+ *       large set of them is accessed only occasionally, as is usually the case with template caches.</li>
+ * </ul>
+ * <p>
+ *   When using {@link #WINDOW_TINY_LFU}, reading from and writing to the cache never blocks: accesses
+ *   and insertions are recorded in buffers that are drained in batches by whichever thread can acquire
+ *   the cache's maintenance lock without waiting.
+ * </p>
+ *
+ * @author Daniel Fern&aacute;ndez
+ *
+ * @since 3.1.3
+ *
+ */
+public enum CacheEvictionPolicy {
+
+    FIFO, WINDOW_TINY_LFU
+
+}
@@ -49,6 +49,52 @@
      * @param value the value to be cached
      */
     public void put(final K key, final V value);
+
+    /**
+     * <p>
+     *   Replace the value cached for a key, or insert it if no value exists for that key. Other
+     *   threads retrieving the key at the same time should obtain either the old or the new value.
+     * </p>
+     * <p>
+     *   The default implementation simply clears the key and then puts the new value, which leaves
+     *   a short time window in which the key is not cached. Implementations should override it when
+     *   they are able to perform the replacement atomically.
+     * </p>
+     *
+     * @param key the key of the entry
+     * @param value the new value to be cached
+     * @since 3.1.3
+     */
+    public default void replace(final K key, final V value) {
+        clearKey(key);
+        put(key, value);
+    }
+
+    /**
+     * <p>
+     *   Replace the value cached for a key, but only if the key is currently cached with the specified
+     *   (old) value, compared by identity. Nothing is inserted if the key is not cached. Other threads
+     *   retrieving the key at the same time should obtain either the old or the new value.
+     * </p>
+     * <p>
+     *   The default implementation checks the currently cached value and then calls
+     *   {@link #replace(Object, Object)}, which is not atomic. Implementations should override it when
+     *   they are able to perform the replacement atomically.
+     * </p>
+     *
+     * @param key the key of the entry
+     * @param oldValue the value expected to be currently cached for the key
+     * @param newValue the new value to be cached
+     * @return whether the value has been replaced
+     * @since 3.1.3
+     */
+    public default boolean replace(final K key, final V oldValue, final V newValue) {
+        if (get(key) != oldValue) {
+            return false;
+        }
+        replace(key, newValue);
+        return true;
+    }
     
     /**
      * <p>
@@ -0,0 +1,45 @@
+/*
+ * =============================================================================
+ *
+ *   Copyright (c) 2011-2022, The THYMELEAF team (http://www.thymeleaf.org)
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * =============================================================================
+ */
+package org.thymeleaf.cache;
+
+import java.io.Serializable;
+
+/**
+ * <p>
+ *   Computes the <i>weight</i> of entries being put into an {@link ICache} object, usually an
+ *   estimation of the memory (in bytes) they retain. Caches configured with a maximum weight
+ *   will evict entries until the total weight of the remaining ones is under that limit.
+ * </p>
+ * <p>
+ *   The weight of an entry is computed only once, when it is put into the cache.
+ * </p>
+ *
+ * @author Daniel Fern&aacute;ndez
+ *
+ * @since 3.1.3
+ *
+ * @param <K> The type of the cache map keys
+ * @param <V> The type of the cache map values
+ */
+public interface ICacheEntryWeigher<K,V> extends Serializable {
+
+    public long weigh(final K key, final V value);
+
+}
@@ -105,6 +105,32 @@ public interface ICacheManager {
      */
     public ICache<ExpressionCacheKey,Object> getExpressionCache();
 
+
+    /**
+     * <p>
+     *   Returns the cache of expression evaluation artifacts of a specific <em>type</em>
+     *   (for example {@code "ognl"} or {@code "expr"}), keyed directly by the expressions themselves.
+     * </p>
+     * <p>
+     *   Using a separate cache per type avoids the need to create composite {@link ExpressionCacheKey}
+     *   objects for each cache lookup, and allows each type of expression artifact to be sized
+     *   according to its own usage patterns.
+     * </p>
+     * <p>
+     *   Implementations may return {@code null} for any (or all) types, in which case artifacts of
+     *   that type will be stored at the shared cache returned by {@link #getExpressionCache()}. This
+     *   is the default behaviour.
+     * </p>
+     *
+     * @param type the type of the expression artifacts to be cached
+     * @return the type-specific cache of expression artifacts, or {@code null} if the shared
+     *         expression cache should be used for this type.
+     * @since 3.1.3
+     */
+    public default ICache<String,Object> getExpressionCache(final String type) {
+        return null;
+    }
+
     
     /**
      * <p>
@@ -0,0 +1,55 @@
+/*
+ * =============================================================================
+ *
+ *   Copyright (c) 2011-2022, The THYMELEAF team (http://www.thymeleaf.org)
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * =============================================================================
+ */
+package org.thymeleaf.cache;
+
+/**
+ * <p>
+ *   Extension of {@link ICacheEntryValidity} for template resolutions that, while still valid,
+ *   can ask for their cache entries to be <em>refreshed ahead</em> of their expiration.
+ * </p>
+ * <p>
+ *   When a cached template whose validity says it needs a refresh is retrieved from the template
+ *   cache, the engine will keep using the cached version while the template is re-resolved and
+ *   re-parsed in the background, and the new version will replace the old one at the cache once
+ *   ready. Entries that are no longer valid (see {@link #isCacheStillValid()}) are still reloaded
+ *   synchronously.
+ * </p>
+ * <p>
+ *   A typical implementation is {@link TTLCacheEntryValidity} when created with a refresh TTL.
+ * </p>
+ *
+ * @author Daniel Fern&aacute;ndez
+ *
+ * @since 3.1.3
+ *
+ */
+public interface IRefreshableCacheEntryValidity extends ICacheEntryValidity {
+
+    /**
+     * <p>
+     *   Returns whether the template resolution, though still valid, should be refreshed.
+     *   Will only be ever called if {@link #isCacheable()} returns true.
+     * </p>
+     *
+     * @return whether the (cached) template resolution should be refreshed in the background.
+     */
+    public boolean isCacheRefreshNeeded();
+
+}
@@ -20,11 +20,15 @@
 package org.thymeleaf.cache;
 
 import java.lang.ref.SoftReference;
-import java.util.Arrays;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
 
 import org.slf4j.Logger;
 import org.thymeleaf.TemplateEngine;
@@ -53,7 +57,10 @@
     private final String name;
     private final boolean useSoftReferences;
     private final int maxSize;
-    private final CacheDataContainer<K,V> dataContainer;
+    private final CacheEvictionPolicy evictionPolicy;
+    private final long maxWeight;
+    private final ICacheEntryWeigher<? super K, ? super V> entryWeigher;
+    private final ICacheDataContainer<K,V> dataContainer;
     private final ICacheEntryValidityChecker<? super K, ? super V> entryValidityChecker;
 
     private final boolean traceExecution;
@@ -65,6 +72,7 @@
     private final AtomicLong putCount;
     private final AtomicLong hitCount;
     private final AtomicLong missCount;
+    private volatile StandardCache<?,?> statisticsTarget = null;
 
 
 
@@ -98,23 +106,85 @@ public StandardCache(final String name, final boolean useSoftReferences,
     public StandardCache(final String name, final boolean useSoftReferences,
             final int initialCapacity, final int maxSize, final ICacheEntryValidityChecker<? super K, ? super V> entryValidityChecker,
             final Logger logger, final boolean enableCounters) {
+        this(name, useSoftReferences, initialCapacity, maxSize, entryValidityChecker, logger, enableCounters,
+                CacheEvictionPolicy.FIFO);
+    }
+
+    /**
+     *
+     * @param name the name of the cache.
+     * @param useSoftReferences whether entries should be held by means of soft references.
+     * @param initialCapacity the initial capacity of the cache.
+     * @param maxSize the maximum size of the cache (-1 for no limit).
+     * @param entryValidityChecker the validity checker to be applied by default, can be null.
+     * @param logger the logger to be used, can be null.
+     * @param enableCounters whether put/get/hit/miss counters should be enabled.
+     * @param evictionPolicy the eviction policy to be applied when the cache reaches its maximum size.
+     * @since 3.1.3
+     */
+    public StandardCache(final String name, final boolean useSoftReferences,
+            final int initialCapacity, final int maxSize, final ICacheEntryValidityChecker<? super K, ? super V> entryValidityChecker,
+            final Logger logger, final boolean enableCounters, final CacheEvictionPolicy evictionPolicy) {
+        this(name, useSoftReferences, initialCapacity, maxSize, entryValidityChecker, logger, enableCounters,
+                evictionPolicy, -1L, null);
+    }
+
+    /**
+     *
+     * @param name the name of the cache.
+     * @param useSoftReferences whether entries should be held by means of soft references.
+     * @param initialCapacity the initial capacity of the cache.
+     * @param maxSize the maximum size of the cache (-1 for no limit).
+     * @param entryValidityChecker the validity checker to be applied by default, can be null.
+     * @param logger the logger to be used, can be null.
+     * @param enableCounters whether put/get/hit/miss counters should be enabled.
+     * @param evictionPolicy the eviction policy to be applied when the cache reaches its maximum size. Caches
+     *                       limited by weight only support {@link CacheEvictionPolicy#FIFO}.
+     * @param maxWeight the maximum total weight of the entries in the cache (-1 for no limit).
+     * @param entryWeigher the weigher used for computing the weight of each entry, can only be null if
+     *                     there is no limit in weight.
+     * @since 3.1.3
+     */
+    public StandardCache(final String name, final boolean useSoftReferences,
+            final int initialCapacity, final int maxSize, final ICacheEntryValidityChecker<? super K, ? super V> entryValidityChecker,
+            final Logger logger, final boolean enableCounters, final CacheEvictionPolicy evictionPolicy,
+            final long maxWeight, final ICacheEntryWeigher<? super K, ? super V> entryWeigher) {
 
         super();
 
         Validate.notEmpty(name, "Name cannot be null or empty");
         Validate.isTrue(initialCapacity > 0, "Initial capacity must be > 0");
         Validate.isTrue(maxSize != 0, "Cache max size must be either -1 (no limit) or > 0");
+        Validate.notNull(evictionPolicy, "Eviction policy cannot be null");
+        Validate.isTrue(maxWeight != 0L, "Cache max weight must be either -1 (no limit) or > 0");
+        Validate.isTrue(
+                maxWeight < 0L || entryWeigher != null,
+                "An entry weigher must be specified for caches limited by weight");
+        Validate.isTrue(
+                maxWeight < 0L || evictionPolicy == CacheEvictionPolicy.FIFO,
+                "Caches limited by weight only support the " + CacheEvictionPolicy.FIFO + " eviction policy");
 
         this.name = name;
         this.useSoftReferences = useSoftReferences;
         this.maxSize = maxSize;
+        this.evictionPolicy = evictionPolicy;
+        this.maxWeight = maxWeight;
+        this.entryWeigher = (maxWeight > 0L ? entryWeigher : null);
         this.entryValidityChecker = entryValidityChecker;
 
         this.logger = logger;
         this.traceExecution = (logger != null && logger.isTraceEnabled());
         this.enableCounters = (this.traceExecution || enableCounters);
-        this.dataContainer =
-                new CacheDataContainer<K,V>(this.name, initialCapacity, maxSize, this.traceExecution, this.logger);
+        if (maxWeight > 0L) {
+            this.dataContainer =
+                    new WeightedCacheDataContainer<K,V>(this.name, initialCapacity, maxSize, maxWeight, this.traceExecution, this.logger);
+        } else if (maxSize > 0 && evictionPolicy == CacheEvictionPolicy.WINDOW_TINY_LFU) {
+            this.dataContainer =
+                    new WindowTinyLfuCacheDataContainer<K,V>(this.name, initialCapacity, maxSize, this.traceExecution, this.logger);
+        } else {
+            this.dataContainer =
+                    new CacheDataContainer<K,V>(this.name, initialCapacity, maxSize, this.traceExecution, this.logger);
+        }
 
         this.getCount = new AtomicLong(0);
         this.putCount = new AtomicLong(0);
@@ -122,12 +192,15 @@ public StandardCache(final String name, final boolean useSoftReferences,
         this.missCount = new AtomicLong(0);
 
         if (this.logger != null) {
-            if (this.maxSize < 0) {
+            if (this.maxWeight > 0L) {
+                this.logger.trace("[THYMELEAF][CACHE_INITIALIZE] Initializing cache {}. Max size: {}. Max weight: {}. Soft references {}.",
+                        new Object[] {this.name, Integer.valueOf(this.maxSize), Long.valueOf(this.maxWeight), (this.useSoftReferences? "are used" : "not used")});
+            } else if (this.maxSize < 0) {
                 this.logger.trace("[THYMELEAF][CACHE_INITIALIZE] Initializing cache {}. Soft references {}.",
                         this.name, (this.useSoftReferences? "are used" : "not used"));
             } else {
-                this.logger.trace("[THYMELEAF][CACHE_INITIALIZE] Initializing cache {}. Max size: {}. Soft references {}.",
-                        new Object[] {this.name, Integer.valueOf(this.maxSize), (this.useSoftReferences? "are used" : "not used")});
+                this.logger.trace("[THYMELEAF][CACHE_INITIALIZE] Initializing cache {}. Max size: {}. Eviction policy: {}. Soft references {}.",
+                        new Object[] {this.name, Integer.valueOf(this.maxSize), this.evictionPolicy, (this.useSoftReferences? "are used" : "not used")});
             }
         }
 
@@ -142,9 +215,10 @@ public StandardCache(final String name, final boolean useSoftReferences,
 
     public void put(final K key, final V value) {
 
-        incrementReportEntity(this.putCount);
+        countPut();
 
-        final CacheEntry<V> entry = new CacheEntry<V>(value, this.useSoftReferences);
+        final long weight = (this.entryWeigher != null ? this.entryWeigher.weigh(key, value) : 0L);
+        final CacheEntry<V> entry = new CacheEntry<V>(value, this.useSoftReferences, weight);
 
         // newSize will be -1 if traceExecution is false
         final int newSize = this.dataContainer.put(key, entry);
@@ -161,6 +235,81 @@ public void put(final K key, final V value) {
 
 
 
+    /**
+     * <p>
+     *   Replaces the value cached for a key (or inserts it if there is none) atomically, without
+     *   affecting the position of the entry regarding eviction.
+     * </p>
+     *
+     * @param key the key of the entry
+     * @param value the new value to be cached
+     * @since 3.1.3
+     */
+    @Override
+    public void replace(final K key, final V value) {
+
+        countPut();
+
+        final long weight = (this.entryWeigher != null ? this.entryWeigher.weigh(key, value) : 0L);
+        final CacheEntry<V> entry = new CacheEntry<V>(value, this.useSoftReferences, weight);
+
+        // newSize will be -1 if traceExecution is false
+        final int newSize = this.dataContainer.replace(key, entry);
+
+        if (this.traceExecution) {
+            this.logger.trace(
+                    "[THYMELEAF][{}][{}][CACHE_REPLACE][{}] Replacing cache entry in cache \"{}\" for key \"{}\". New size is {}.",
+                    new Object[] {TemplateEngine.threadIndex(), this.name, Integer.valueOf(newSize), this.name, key, Integer.valueOf(newSize)});
+            outputReportIfNeeded();
+        }
+
+    }
+
+
+
+    /**
+     * <p>
+     *   Replaces the value cached for a key atomically, but only if the key is currently cached with the
+     *   specified (old) value, compared by identity. The position of the entry regarding eviction is not affected.
+     * </p>
+     *
+     * @param key the key of the entry
+     * @param oldValue the value expected to be currently cached for the key
+     * @param newValue the new value to be cached
+     * @return whether the value has been replaced
+     * @since 3.1.3
+     */
+    @Override
+    public boolean replace(final K key, final V oldValue, final V newValue) {
+
+        final CacheEntry<V> current = this.dataContainer.get(key);
+        if (current == null || current.getValue() != oldValue) {
+            return false;
+        }
+
+        countPut();
+
+        final long weight = (this.entryWeigher != null ? this.entryWeigher.weigh(key, newValue) : 0L);
+        final CacheEntry<V> entry = new CacheEntry<V>(newValue, this.useSoftReferences, weight);
+
+        if (!this.dataContainer.replace(key, current, entry)) {
+            return false;
+        }
+
+        if (this.traceExecution) {
+            final Integer newSize = Integer.valueOf(this.dataContainer.size());
+            this.logger.trace(
+                    "[THYMELEAF][{}][{}][CACHE_REPLACE][{}] Replacing cache entry in cache \"{}\" for key \"{}\". New size is {}.",
+                    new Object[] {TemplateEngine.threadIndex(), this.name, newSize, this.name, key, newSize});
+            outputReportIfNeeded();
+        }
+
+        return true;
+
+    }
+
+
+
     public V get(final K key) {
         return get(key, this.entryValidityChecker);
     }
@@ -169,11 +318,11 @@ public V get(final K key) {
 
     public V get(final K key, final ICacheEntryValidityChecker<? super K, ? super V> validityChecker) {
 
-        incrementReportEntity(this.getCount);
+        countGet();
         final CacheEntry<V> resultEntry = this.dataContainer.get(key);
 
         if (resultEntry == null) {
-            incrementReportEntity(this.missCount);
+            countMiss();
             if (this.traceExecution) {
                 this.logger.trace(
                         "[THYMELEAF][{}][{}][CACHE_MISS] Cache miss in cache \"{}\" for key \"{}\".",
@@ -187,7 +336,7 @@ public V get(final K key, final ICacheEntryValidityChecker<? super K, ? super V>
                 resultEntry.getValueIfStillValid(this.name, key, validityChecker, this.traceExecution, this.logger);
         if (resultValue == null) {
             final int newSize = this.dataContainer.remove(key);
-            incrementReportEntity(this.missCount);
+            countMiss();
             if (this.traceExecution) {
                 this.logger.trace(
                         "[THYMELEAF][{}][{}][CACHE_REMOVE][{}] Removing cache entry in cache \"{}\" (Entry \"{}\" is not valid anymore). New size is {}.",
@@ -200,7 +349,7 @@ public V get(final K key, final ICacheEntryValidityChecker<? super K, ? super V>
             return null;
         }
 
-        incrementReportEntity(this.hitCount);
+        countHit();
         if (this.traceExecution) {
             this.logger.trace(
                     "[THYMELEAF][{}][{}][CACHE_HIT] Cache hit in cache \"{}\" for key \"{}\".",
@@ -273,6 +422,47 @@ public int getMaxSize() {
         return this.maxSize;
     }
 
+    /**
+     * <p>
+     *   Returns the eviction policy applied by this cache when it reaches its maximum size.
+     * </p>
+     *
+     * @return the eviction policy.
+     * @since 3.1.3
+     */
+    public CacheEvictionPolicy getEvictionPolicy() {
+        return this.evictionPolicy;
+    }
+
+    /**
+     * @return whether this cache is limited by the total weight of its entries.
+     * @since 3.1.3
+     */
+    public boolean hasMaxWeight() {
+        return (this.maxWeight > 0L);
+    }
+
+    /**
+     * @return the maximum total weight of the entries in this cache, -1 if not limited by weight.
+     * @since 3.1.3
+     */
+    public long getMaxWeight() {
+        return this.maxWeight;
+    }
+
+    /**
+     * <p>
+     *   Returns the total weight of the entries currently held by this cache, as computed by its
+     *   {@link ICacheEntryWeigher} when they were put into it.
+     * </p>
+     *
+     * @return the total weight of the cache entries, -1 if this cache is not limited by weight.
+     * @since 3.1.3
+     */
+    public long getWeight() {
+        return this.dataContainer.weight();
+    }
+
     public boolean getUseSoftReferences() {
         return this.useSoftReferences;
     }
@@ -325,6 +515,51 @@ private void incrementReportEntity(final AtomicLong entity) {
     }
 
 
+    /*
+     * Counters are also incremented at the cache whose statistics are reported to (if any), so that it
+     * reflects the total activity of a group of caches (see StandardCacheManager).
+     */
+    private void countGet() {
+        incrementReportEntity(this.getCount);
+        if (this.statisticsTarget != null) {
+            this.statisticsTarget.countGet();
+        }
+    }
+
+
+    private void countPut() {
+        incrementReportEntity(this.putCount);
+        if (this.statisticsTarget != null) {
+            this.statisticsTarget.countPut();
+        }
+    }
+
+
+    private void countHit() {
+        incrementReportEntity(this.hitCount);
+        if (this.statisticsTarget != null) {
+            this.statisticsTarget.countHit();
+        }
+    }
+
+
+    private void countMiss() {
+        incrementReportEntity(this.missCount);
+        if (this.statisticsTarget != null) {
+            this.statisticsTarget.countMiss();
+        }
+    }
+
+
+    /*
+     * Makes the put/get/hit/miss counters of this cache be also reported to the specified cache. Must be
+     * called before the cache is used.
+     */
+    void reportStatisticsTo(final StandardCache<?,?> statisticsTarget) {
+        this.statisticsTarget = statisticsTarget;
+    }
+
+
     private void outputReportIfNeeded() {
 
         final long currentTime = System.currentTimeMillis();
@@ -361,7 +596,51 @@ private void outputReportIfNeeded() {
 
 
 
-    static final class CacheDataContainer<K,V> {
+    /*
+     * Common interface for the containers holding the actual cache entries, each of them in charge
+     * of applying a specific eviction policy when the cache is size-limited.
+     *
+     * put(), replace() and remove() return the new size of the container only when execution is being traced (and -1
+     * otherwise), in order to avoid the cost of computing the size of the underlying map when not needed. The
+     * conditional version of replace() only replaces the entry if it is (by identity) the specified old one.
+     *
+     * weight() returns the total weight of the entries in the container, or -1 if entries are not weighed.
+     */
+    interface ICacheDataContainer<K,V> {
+
+        CacheEntry<V> get(final Object key);
+
+        Set<K> keySet();
+
+        int put(final K key, final CacheEntry<V> value);
+
+        int replace(final K key, final CacheEntry<V> value);
+
+        boolean replace(final K key, final CacheEntry<V> oldValue, final CacheEntry<V> value);
+
+        int remove(final K key);
+
+        void clear();
+
+        int size();
+
+        long weight();
+
+    }
+
+
+
+
+    /*
+     * Size-limited containers keep the insertion order of their keys in a lock-free FIFO queue. Removals (either
+     * explicit or because of soft references having been cleared) only remove the entry from the map, leaving a
+     * stale node in the queue which will be discarded when reached by eviction, so that all operations are
+     * constant-time. Nodes are the values of the map itself, so stale nodes are those no longer mapped to their
+     * keys, and replacing the value of an entry does not change its position in the queue. In order to avoid the
+     * queue growing indefinitely with stale nodes when entries are removed but no eviction is needed, the queue is
+     * purged of them once it doubles the maximum size of the cache.
+     */
+    static final class CacheDataContainer<K,V> implements ICacheDataContainer<K,V> {
 
         private final String name;
         private final boolean sizeLimit;
@@ -369,9 +648,11 @@ private void outputReportIfNeeded() {
         private final boolean traceExecution;
         private final Logger logger;
 
-        private final ConcurrentHashMap<K,CacheEntry<V>> container;
-        private final Object[] fifo;
-        private int fifoPointer;
+        private final ConcurrentHashMap<K,FifoNode<K,V>> container;
+        private final ConcurrentLinkedQueue<FifoNode<K,V>> fifo; // null if there is no size limit
+        private final AtomicInteger size;
+        private final AtomicInteger fifoLength;
+        private final AtomicBoolean purging;
 
 
         CacheDataContainer(final String name, final int initialCapacity,
@@ -380,16 +661,13 @@ private void outputReportIfNeeded() {
             super();
 
             this.name = name;
-            this.container = new ConcurrentHashMap<K,CacheEntry<V>>(initialCapacity, 0.9f, 2);
+            this.container = new ConcurrentHashMap<K,FifoNode<K,V>>(initialCapacity, 0.9f, 2);
             this.maxSize = maxSize;
             this.sizeLimit = (maxSize >= 0);
-            if (this.sizeLimit) {
-                this.fifo = new Object[this.maxSize];
-                Arrays.fill(this.fifo, null);
-            } else {
-                this.fifo = null;
-            }
-            this.fifoPointer = 0;
+            this.fifo = (this.sizeLimit ? new ConcurrentLinkedQueue<FifoNode<K,V>>() : null);
+            this.size = new AtomicInteger(0);
+            this.fifoLength = new AtomicInteger(0);
+            this.purging = new AtomicBoolean(false);
             this.traceExecution = traceExecution;
             this.logger = logger;
 
@@ -398,7 +676,8 @@ private void outputReportIfNeeded() {
 
         public CacheEntry<V> get(final Object key) {
             // FIFO is not used for this --> better performance, but no LRU (only insertion order will apply)
-            return this.container.get(key);
+            final FifoNode<K,V> node = this.container.get(key);
+            return (node == null ? null : node.value);
         }
 
 
@@ -409,119 +688,180 @@ public Set<K> keySet() {
             // java.lang.NoSuchMethodError when executed in Java 6 or 7.
             // By adding the cast, we are binding bytecode not to the specific keySet() method of ConcurrentHashMap,
             // but to the one defined at the java.util.Map interface, which simply returns java.util.Set.
-            return ((Map<K,CacheEntry<V>>)this.container).keySet();
+            return ((Map<K,FifoNode<K,V>>)this.container).keySet();
         }
 
 
         public int put(final K key, final CacheEntry<V> value) {
-            if (this.traceExecution) {
-                return putWithTracing(key, value);
-            }
-            return putWithoutTracing(key, value);
-        }
 
+            putIfAbsent(key, value);
 
-        private int putWithoutTracing(final K key, final CacheEntry<V> value) {
             // If we are not tracing, it's better to avoid the size() operation which has
             // some performance implications in ConcurrentHashMap (iteration and counting these maps
-            // is slow if they are big)
+            // is slow if they are big). When not in 'trace' mode, will always return -1
+            return (this.traceExecution ? this.container.size() : -1);
 
-            final CacheEntry<V> existing = this.container.putIfAbsent(key, value);
-            if (existing != null) {
-                // When not in 'trace' mode, will always return -1
-                return -1;
+        }
+
+
+        public int replace(final K key, final CacheEntry<V> value) {
+            // The FIFO does not need to be updated, as the node (if still present) is already in it. The value
+            // is set atomically with respect to the removal of the node (e.g. by a concurrent eviction), so that
+            // the new value cannot be set on a node that is no longer in the container.
+            final FifoNode<K,V> node =
+                    this.container.computeIfPresent(key, new BiFunction<K, FifoNode<K,V>, FifoNode<K,V>>() {
+                        public FifoNode<K,V> apply(final K k, final FifoNode<K,V> existing) {
+                            existing.value = value;
+                            return existing;
+                        }
+                    });
+            if (node == null && !putIfAbsent(key, value)) {
+                // Some other thread put the key in the meantime, so it is now present and can be replaced
+                return replace(key, value);
             }
+            return (this.traceExecution ? this.container.size() : -1);
+        }
 
-            if (this.sizeLimit) {
-                synchronized (this.fifo) {
-                    final Object removedKey = this.fifo[this.fifoPointer];
-                    if (removedKey != null) {
-                        this.container.remove(removedKey);
+
+        public boolean replace(final K key, final CacheEntry<V> oldValue, final CacheEntry<V> value) {
+            final boolean[] replaced = new boolean[] { false };
+            this.container.computeIfPresent(key, new BiFunction<K, FifoNode<K,V>, FifoNode<K,V>>() {
+                public FifoNode<K,V> apply(final K k, final FifoNode<K,V> existing) {
+                    if (existing.value == oldValue) {
+                        existing.value = value;
+                        replaced[0] = true;
                     }
-                    this.fifo[this.fifoPointer] = key;
-                    this.fifoPointer = (this.fifoPointer + 1) % this.maxSize;
+                    return existing;
                 }
+            });
+            return replaced[0];
+        }
+
+
+        private boolean putIfAbsent(final K key, final CacheEntry<V> value) {
+            final FifoNode<K,V> node = new FifoNode<K,V>(key, value);
+            if (this.container.putIfAbsent(key, node) != null) {
+                return false;
             }
+            if (this.sizeLimit) {
+                this.size.incrementAndGet();
+                enqueue(node);
+                evictIfNeeded();
+            }
+            return true;
+        }
 
-            return -1;
 
+        public int remove(final K key) {
+            final FifoNode<K,V> removed = this.container.remove(key);
+            if (removed == null) {
+                // When tracing is active, this means nothing was removed
+                return -1;
+            }
+            if (this.sizeLimit) {
+                // Its FIFO node is now stale, and will be discarded when reached
+                this.size.decrementAndGet();
+            }
+            return (this.traceExecution ? this.container.size() : -1);
         }
 
-        private synchronized int putWithTracing(final K key, final CacheEntry<V> value) {
 
-            final CacheEntry<V> existing = this.container.putIfAbsent(key, value);
-            if (existing == null) {
-                if (this.sizeLimit) {
-                    final Object removedKey = this.fifo[this.fifoPointer];
-                    if (removedKey != null) {
-                        final CacheEntry<V> removed = this.container.remove(removedKey);
-                        if (removed != null) {
-                            final Integer newSize = Integer.valueOf(this.container.size());
-                            this.logger.trace(
-                                    "[THYMELEAF][{}][{}][CACHE_REMOVE][{}] Max size exceeded for cache \"{}\". Removing entry for key \"{}\". New size is {}.",
-                                    new Object[] {TemplateEngine.threadIndex(), this.name, newSize, this.name, removedKey, newSize});
-                        }
-                    }
-                    this.fifo[this.fifoPointer] = key;
-                    this.fifoPointer = (this.fifoPointer + 1) % this.maxSize;
+        public void clear() {
+            if (this.sizeLimit) {
+                for (final K key : keySet()) {
+                    remove(key);
                 }
+                purgeStaleNodes();
+            } else {
+                this.container.clear();
             }
+        }
+
+
+        public int size() {
             return this.container.size();
+        }
+
 
+        public long weight() {
+            return -1L;
         }
 
 
-        public int remove(final K key) {
-            if (this.traceExecution) {
-                return removeWithTracing(key);
+        private void enqueue(final FifoNode<K,V> node) {
+            this.fifo.offer(node);
+            if (this.fifoLength.incrementAndGet() > 2 * this.maxSize + 16) {
+                purgeStaleNodes();
             }
-            return removeWithoutTracing(key);
         }
 
 
-        private int removeWithoutTracing(final K key) {
-            // FIFO is also updated to avoid 'removed' keys remaining at FIFO (which could end up reducing cache size to 1)
-            final CacheEntry<V> removed = this.container.remove(key);
-            if (removed != null) {
-                if (this.sizeLimit && key != null) {
-                    for (int i = 0; i < this.maxSize; i++) {
-                        if (key.equals(this.fifo[i])) {
-                            this.fifo[i] = null;
-                            break;
-                        }
+        private void evictIfNeeded() {
+            int currentSize;
+            while ((currentSize = this.size.get()) > this.maxSize) {
+                // Reserve the eviction first, so that concurrent puts do not evict more entries than needed
+                if (this.size.compareAndSet(currentSize, currentSize - 1)) {
+                    if (!evictOldest()) {
+                        this.size.incrementAndGet();
+                        return;
                     }
                 }
             }
-            return -1;
         }
 
 
-        private synchronized int removeWithTracing(final K key) {
-            // FIFO is also updated to avoid 'removed' keys remaining at FIFO (which could end up reducing cache size to 1)
-            final CacheEntry<V> removed = this.container.remove(key);
-            if (removed == null) {
-                // When tracing is active, this means nothing was removed
-                return -1;
-            }
-            if (this.sizeLimit && key != null) {
-                for (int i = 0; i < this.maxSize; i++) {
-                    if (key.equals(this.fifo[i])) {
-                        this.fifo[i] = null;
-                        break;
+        private boolean evictOldest() {
+            FifoNode<K,V> node;
+            while ((node = this.fifo.poll()) != null) {
+                this.fifoLength.decrementAndGet();
+                if (this.container.remove(node.key, node)) {
+                    if (this.traceExecution) {
+                        final Integer newSize = Integer.valueOf(this.container.size());
+                        this.logger.trace(
+                                "[THYMELEAF][{}][{}][CACHE_REMOVE][{}] Max size exceeded for cache \"{}\". Removing entry for key \"{}\". New size is {}.",
+                                new Object[] {TemplateEngine.threadIndex(), this.name, newSize, this.name, node.key, newSize});
                     }
+                    return true;
                 }
+                // Stale node: its entry had already been removed
             }
-            return this.container.size();
+            return false;
         }
 
 
-        public void clear() {
-            this.container.clear();
+        private void purgeStaleNodes() {
+            if (!this.purging.compareAndSet(false, true)) {
+                // Some other thread is already doing it
+                return;
+            }
+            try {
+                final Iterator<FifoNode<K,V>> nodes = this.fifo.iterator();
+                while (nodes.hasNext()) {
+                    final FifoNode<K,V> node = nodes.next();
+                    if (this.container.get(node.key) != node) {
+                        nodes.remove();
+                        this.fifoLength.decrementAndGet();
+                    }
+                }
+            } finally {
+                this.purging.set(false);
+            }
         }
 
+    }
 
-        public int size() {
-            return this.container.size();
+
+
+
+    static final class FifoNode<K,V> {
+
+        final K key;
+        volatile CacheEntry<V> value;
+
+        FifoNode(final K key, final CacheEntry<V> value) {
+            super();
+            this.key = key;
+            this.value = value;
         }
 
     }
@@ -533,6 +873,7 @@ public int size() {
 
         private final SoftReference<V> cachedValueReference;
         private final long creationTimeInMillis;
+        private final long weight;
 
         // Although we will use the reference for normal operation for cleaner code, this
         // variable will act as an "anchor" to avoid the value to be cleaned if we don't
@@ -541,13 +882,14 @@ public int size() {
         private final V cachedValueAnchor;
 
 
-        CacheEntry(final V cachedValue, final boolean useSoftReferences) {
+        CacheEntry(final V cachedValue, final boolean useSoftReferences, final long weight) {
 
             super();
 
             this.cachedValueReference = new SoftReference<V>(cachedValue);
             this.cachedValueAnchor = (!useSoftReferences? cachedValue : null);
             this.creationTimeInMillis = System.currentTimeMillis();
+            this.weight = weight;
 
         }
 
@@ -573,10 +915,18 @@ public <K> V getValueIfStillValid(final String cacheMapName,
             return null;
         }
 
+        public V getValue() {
+            return this.cachedValueReference.get();
+        }
+
         public long getCreationTimeInMillis() {
             return this.creationTimeInMillis;
         }
 
+        public long getWeight() {
+            return this.weight;
+        }
+
     }
 
 
@@ -19,6 +19,8 @@
  */
 package org.thymeleaf.cache;
 
+import java.util.concurrent.ConcurrentHashMap;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.thymeleaf.TemplateEngine;
@@ -56,9 +58,36 @@
  *       set, {@code org.thymeleaf.TemplateEngine.cache.${cacheName}} will be used.</li>
  *   <li>An (optional) <i>validity checker</i> implementing {@link ICacheEntryValidityChecker},
  *       which will be applied on each entry upon retrieval from cache in order to ensure
- *       it is still valid and can be used.
+ *       it is still valid and can be used.</li>
+ *   <li>The <i>eviction policy</i> ({@link CacheEvictionPolicy}) to be applied when the cache
+ *       reaches its maximum size. Defaults to {@link CacheEvictionPolicy#FIFO}.</li>
  * </ul>
  * <p>
+ *   Besides, the template cache can be limited by the estimated amount of memory retained by the
+ *   parsed templates it holds (see {@link TemplateModel#getWeight()}) by setting a <i>maximum weight</i>
+ *   in bytes by means of {@link #setTemplateCacheMaxWeight(long)}. Entries will then be evicted (in
+ *   insertion order) until the template cache is under both its maximum size and its maximum weight. The
+ *   weight currently in use can be obtained by calling {@link #getTemplateCacheWeight()}.
+ * </p>
+ * <p>
+ *   Expression artifacts are stored in a separate cache per artifact type (e.g. {@code "expr"},
+ *   {@code "ognl"}, {@code "each"}...) keyed directly by the expression {@code String}
+ *   (see {@link ICacheManager#getExpressionCache(String)}). All these caches share the expression cache
+ *   configuration, but their maximum size can be set separately for each type by means of
+ *   {@link #setExpressionCacheMaxSize(String, int)}. Note that if an expression cache validity checker
+ *   is set, all expression artifacts will be stored at the shared expression cache instead, so that the
+ *   checker can be applied on them.
+ * </p>
+ * <p>
+ *   Unless a specific size is set for a type, the expression cache maximum size is split among the
+ *   types used by the Standard or SpringStandard dialects ({@code "expr"}, {@code "ognl"} or
+ *   {@code "spel"}, {@code "each"}, {@code "aseq"}, {@code "eseq"} and {@code "fsig"}, see
+ *   {@link #DEFAULT_EXPRESSION_CACHE_TYPE_SHARES}), so that the total amount of cached expression artifacts
+ *   stays within that maximum size. Counters (hits, misses...) of the type-specific caches are also
+ *   reported at the shared expression cache, so that statistics obtained from
+ *   {@link ICacheManager#getExpressionCache()} reflect all expression caching activity.
+ * </p>
+ * <p>
  *   Note a class with this name existed since 2.0.0, but it was completely reimplemented
  *   in Thymeleaf 3.0
  * </p>
@@ -106,6 +135,27 @@ public class StandardCacheManager extends AbstractCacheManager {
      */
     public static final ICacheEntryValidityChecker<TemplateCacheKey,TemplateModel> DEFAULT_TEMPLATE_CACHE_VALIDITY_CHECKER = new StandardParsedTemplateEntryValidator();
 
+    /**
+     * Default template cache eviction policy: {@link CacheEvictionPolicy#FIFO}
+     *
+     * @since 3.1.3
+     */
+    public static final CacheEvictionPolicy DEFAULT_TEMPLATE_CACHE_EVICTION_POLICY = CacheEvictionPolicy.FIFO;
+
+    /**
+     * Default template cache max weight: {@value} (no limit in weight)
+     *
+     * @since 3.1.3
+     */
+    public static final long DEFAULT_TEMPLATE_CACHE_MAX_WEIGHT = -1L;
+
+    /**
+     * Default template cache weigher: an instance of {@link StandardParsedTemplateEntryWeigher}.
+     *
+     * @since 3.1.3
+     */
+    public static final ICacheEntryWeigher<TemplateCacheKey,TemplateModel> DEFAULT_TEMPLATE_CACHE_WEIGHER = new StandardParsedTemplateEntryWeigher();
+
     
     /**
      * Default expression cache name: {@value}
@@ -142,6 +192,21 @@ public class StandardCacheManager extends AbstractCacheManager {
      */
     public static final ICacheEntryValidityChecker<ExpressionCacheKey,Object> DEFAULT_EXPRESSION_CACHE_VALIDITY_CHECKER = null;
 
+    /**
+     * Default expression cache eviction policy: {@link CacheEvictionPolicy#FIFO}
+     *
+     * @since 3.1.3
+     */
+    public static final CacheEvictionPolicy DEFAULT_EXPRESSION_CACHE_EVICTION_POLICY = CacheEvictionPolicy.FIFO;
+
+    /**
+     * Number of parts the expression cache maximum size is split into for computing the maximum size of
+     * each type-specific expression cache that has no specific size set: {@value}
+     *
+     * @since 3.1.3
+     */
+    public static final int DEFAULT_EXPRESSION_CACHE_TYPE_SHARES = 6;
+
     
     
     
@@ -152,6 +217,9 @@ public class StandardCacheManager extends AbstractCacheManager {
     private boolean templateCacheUseSoftReferences = DEFAULT_TEMPLATE_CACHE_USE_SOFT_REFERENCES;
     private String templateCacheLoggerName = DEFAULT_TEMPLATE_CACHE_LOGGER_NAME;
     private ICacheEntryValidityChecker<TemplateCacheKey,TemplateModel> templateCacheValidityChecker = DEFAULT_TEMPLATE_CACHE_VALIDITY_CHECKER;
+    private CacheEvictionPolicy templateCacheEvictionPolicy = DEFAULT_TEMPLATE_CACHE_EVICTION_POLICY;
+    private long templateCacheMaxWeight = DEFAULT_TEMPLATE_CACHE_MAX_WEIGHT;
+    private ICacheEntryWeigher<TemplateCacheKey,TemplateModel> templateCacheWeigher = DEFAULT_TEMPLATE_CACHE_WEIGHER;
 
     private String expressionCacheName = DEFAULT_EXPRESSION_CACHE_NAME;
     private int expressionCacheInitialSize = DEFAULT_EXPRESSION_CACHE_INITIAL_SIZE;
@@ -160,6 +228,8 @@ public class StandardCacheManager extends AbstractCacheManager {
     private boolean expressionCacheUseSoftReferences = DEFAULT_EXPRESSION_CACHE_USE_SOFT_REFERENCES;
     private String expressionCacheLoggerName = DEFAULT_EXPRESSION_CACHE_LOGGER_NAME;
     private ICacheEntryValidityChecker<ExpressionCacheKey,Object> expressionCacheValidityChecker = DEFAULT_EXPRESSION_CACHE_VALIDITY_CHECKER;
+    private CacheEvictionPolicy expressionCacheEvictionPolicy = DEFAULT_EXPRESSION_CACHE_EVICTION_POLICY;
+    private final ConcurrentHashMap<String,Integer> expressionCacheMaxSizesByType = new ConcurrentHashMap<String, Integer>(8);
     
     
     
@@ -178,7 +248,8 @@ protected final ICache<TemplateCacheKey, TemplateModel> initializeTemplateCache(
         return new StandardCache<TemplateCacheKey, TemplateModel>(
                 getTemplateCacheName(), getTemplateCacheUseSoftReferences(), 
                 getTemplateCacheInitialSize(), maxSize,
-                getTemplateCacheValidityChecker(), getTemplateCacheLogger(), getTemplateCacheEnableCounters());
+                getTemplateCacheValidityChecker(), getTemplateCacheLogger(), getTemplateCacheEnableCounters(),
+                getTemplateCacheEvictionPolicy(), getTemplateCacheMaxWeight(), getTemplateCacheWeigher());
     }
 
     
@@ -191,7 +262,35 @@ protected final ICache<ExpressionCacheKey, Object> initializeExpressionCache() {
         return new StandardCache<ExpressionCacheKey, Object>(
                 getExpressionCacheName(), getExpressionCacheUseSoftReferences(), 
                 getExpressionCacheInitialSize(), maxSize,
-                getExpressionCacheValidityChecker(), getExpressionCacheLogger(), getExpressionCacheEnableCounters());
+                getExpressionCacheValidityChecker(), getExpressionCacheLogger(), getExpressionCacheEnableCounters(),
+                getExpressionCacheEvictionPolicy());
+    }
+
+
+    @Override
+    protected final ICache<String, Object> initializeExpressionCache(final String type) {
+        if (getExpressionCacheMaxSize() == 0 || getExpressionCacheValidityChecker() != null) {
+            // No expression cache at all, or we need to apply a checker on ExpressionCacheKeys: shared cache
+            return null;
+        }
+        final int maxSize = getExpressionCacheMaxSize(type);
+        if (maxSize == 0) {
+            return null;
+        }
+        final int initialSize =
+                (maxSize > 0 ? Math.min(getExpressionCacheInitialSize(), maxSize) : getExpressionCacheInitialSize());
+        final StandardCache<String, Object> typedCache = new StandardCache<String, Object>(
+                getExpressionCacheName() + "[" + type + "]", getExpressionCacheUseSoftReferences(),
+                initialSize, maxSize,
+                null, getExpressionCacheLogger(), getExpressionCacheEnableCounters(),
+                getExpressionCacheEvictionPolicy());
+        // Statistics of the typed caches are rolled up into the shared expression cache, so that the
+        // counters in getExpressionCache() keep reflecting the activity of all expression caching
+        final ICache<ExpressionCacheKey, Object> sharedCache = getExpressionCache();
+        if (sharedCache instanceof StandardCache) {
+            typedCache.reportStatisticsTo((StandardCache<?,?>) sharedCache);
+        }
+        return typedCache;
     }
     
     
@@ -224,6 +323,48 @@ public String getTemplateCacheLoggerName() {
     public ICacheEntryValidityChecker<TemplateCacheKey,TemplateModel> getTemplateCacheValidityChecker() {
         return this.templateCacheValidityChecker;
     }
+
+    /**
+     * @return the eviction policy for the template cache.
+     * @since 3.1.3
+     */
+    public CacheEvictionPolicy getTemplateCacheEvictionPolicy() {
+        return this.templateCacheEvictionPolicy;
+    }
+
+    /**
+     * @return the maximum total weight (estimated retained bytes) for the template cache, -1 if no limit.
+     * @since 3.1.3
+     */
+    public long getTemplateCacheMaxWeight() {
+        return this.templateCacheMaxWeight;
+    }
+
+    /**
+     * @return the weigher used for computing the weight of template cache entries.
+     * @since 3.1.3
+     */
+    public ICacheEntryWeigher<TemplateCacheKey,TemplateModel> getTemplateCacheWeigher() {
+        return this.templateCacheWeigher;
+    }
+
+    /**
+     * <p>
+     *   Returns the total weight (estimated retained bytes) of the entries currently held by the
+     *   template cache.
+     * </p>
+     *
+     * @return the weight of the template cache, or -1 if there is no template cache or it is not limited
+     *         by weight.
+     * @since 3.1.3
+     */
+    public long getTemplateCacheWeight() {
+        final ICache<TemplateCacheKey,TemplateModel> templateCache = getTemplateCache();
+        if (templateCache instanceof StandardCache) {
+            return ((StandardCache<TemplateCacheKey,TemplateModel>) templateCache).getWeight();
+        }
+        return -1L;
+    }
     
     public final Logger getTemplateCacheLogger() {
         final String loggerName = getTemplateCacheLoggerName();
@@ -255,6 +396,30 @@ public int getExpressionCacheInitialSize() {
     public int getExpressionCacheMaxSize() {
         return this.expressionCacheMaxSize;
     }
+
+    /**
+     * <p>
+     *   Returns the maximum size of the cache for expression artifacts of the specified type. If no
+     *   specific size has been set for the type, this is the value of {@link #getExpressionCacheMaxSize()}
+     *   divided by {@link #DEFAULT_EXPRESSION_CACHE_TYPE_SHARES} (and at least 1), or that same value if it
+     *   means no limit ({@code -1}) or no cache ({@code 0}).
+     * </p>
+     *
+     * @param type the type of expression artifacts (e.g. {@code "expr"}, {@code "ognl"}).
+     * @return the maximum size of the cache for the type.
+     * @since 3.1.3
+     */
+    public int getExpressionCacheMaxSize(final String type) {
+        final Integer maxSize = this.expressionCacheMaxSizesByType.get(type);
+        if (maxSize != null) {
+            return maxSize.intValue();
+        }
+        final int sharedMaxSize = getExpressionCacheMaxSize();
+        if (sharedMaxSize <= 0) {
+            return sharedMaxSize;
+        }
+        return Math.max(1, sharedMaxSize / DEFAULT_EXPRESSION_CACHE_TYPE_SHARES);
+    }
     
     public String getExpressionCacheLoggerName() {
         return this.expressionCacheLoggerName;
@@ -264,6 +429,14 @@ public ICacheEntryValidityChecker<ExpressionCacheKey,Object> getExpressionCacheV
         return this.expressionCacheValidityChecker;
     }
 
+    /**
+     * @return the eviction policy for the expression cache.
+     * @since 3.1.3
+     */
+    public CacheEvictionPolicy getExpressionCacheEvictionPolicy() {
+        return this.expressionCacheEvictionPolicy;
+    }
+
     public final Logger getExpressionCacheLogger() {
         final String loggerName = getExpressionCacheLoggerName();
         if (loggerName != null) {
@@ -303,6 +476,36 @@ public void setTemplateCacheValidityChecker(final ICacheEntryValidityChecker<Tem
     public void setTemplateCacheEnableCounters(boolean templateCacheEnableCounters) {
         this.templateCacheEnableCounters = templateCacheEnableCounters;
     }
+
+    /**
+     * @param templateCacheEvictionPolicy the eviction policy for the template cache.
+     * @since 3.1.3
+     */
+    public void setTemplateCacheEvictionPolicy(final CacheEvictionPolicy templateCacheEvictionPolicy) {
+        this.templateCacheEvictionPolicy = templateCacheEvictionPolicy;
+    }
+
+    /**
+     * <p>
+     *   Sets the maximum total weight for the template cache, i.e. the budget (in bytes) for the
+     *   estimated memory retained by the cached templates. Note caches limited by weight only
+     *   support the {@link CacheEvictionPolicy#FIFO} eviction policy.
+     * </p>
+     *
+     * @param templateCacheMaxWeight the maximum weight, -1 for no limit.
+     * @since 3.1.3
+     */
+    public void setTemplateCacheMaxWeight(final long templateCacheMaxWeight) {
+        this.templateCacheMaxWeight = templateCacheMaxWeight;
+    }
+
+    /**
+     * @param templateCacheWeigher the weigher used for computing the weight of template cache entries.
+     * @since 3.1.3
+     */
+    public void setTemplateCacheWeigher(final ICacheEntryWeigher<TemplateCacheKey,TemplateModel> templateCacheWeigher) {
+        this.templateCacheWeigher = templateCacheWeigher;
+    }
     
     
     public void setExpressionCacheName(final String expressionCacheName) {
@@ -313,10 +516,46 @@ public void setExpressionCacheInitialSize(final int expressionCacheInitialSize)
         this.expressionCacheInitialSize = expressionCacheInitialSize;
     }
 
+    /**
+     * <p>
+     *   Sets the maximum size of the expression cache. Unless a specific size is set for them by means of
+     *   {@link #setExpressionCacheMaxSize(String, int)}, this size is split among the type-specific
+     *   expression caches (see {@link #DEFAULT_EXPRESSION_CACHE_TYPE_SHARES}), so that the total number of
+     *   cached expression artifacts stays within this value.
+     * </p>
+     *
+     * @param expressionCacheMaxSize the maximum size of the expression cache(s).
+     */
     public void setExpressionCacheMaxSize(final int expressionCacheMaxSize) {
         this.expressionCacheMaxSize = expressionCacheMaxSize;
     }
 
+    /**
+     * <p>
+     *   Sets the maximum size of the cache for expression artifacts of a specific type, e.g.
+     *   {@code "expr"} (standard expressions), {@code "ognl"} (OGNL expressions), {@code "spel"}
+     *   (SpringEL expressions), {@code "each"} ({@code th:each} specifications), {@code "aseq"}
+     *   (assignation sequences), {@code "eseq"} (expression sequences) or {@code "fsig"}
+     *   (fragment signatures).
+     * </p>
+     * <p>
+     *   Types with a specific size set do not take their share of {@link #setExpressionCacheMaxSize(int)},
+     *   so the total number of cached expression artifacts can exceed that value when sizes set this way
+     *   add up to more than it.
+     * </p>
+     * <p>
+     *   Same as for {@link #setExpressionCacheMaxSize(int)}, {@code -1} means no limit. A value of
+     *   {@code 0} means artifacts of this type will be stored at the shared expression cache.
+     * </p>
+     *
+     * @param type the type of expression artifacts.
+     * @param maxSize the maximum size of the cache for the type.
+     * @since 3.1.3
+     */
+    public void setExpressionCacheMaxSize(final String type, final int maxSize) {
+        this.expressionCacheMaxSizesByType.put(type, Integer.valueOf(maxSize));
+    }
+
     public void setExpressionCacheUseSoftReferences(final boolean expressionCacheUseSoftReferences) {
         this.expressionCacheUseSoftReferences = expressionCacheUseSoftReferences;
     }
@@ -332,6 +571,14 @@ public void setExpressionCacheValidityChecker(final ICacheEntryValidityChecker<E
     public void setExpressionCacheEnableCounters(boolean expressionCacheEnableCounters) {
         this.expressionCacheEnableCounters = expressionCacheEnableCounters;
     }
+
+    /**
+     * @param expressionCacheEvictionPolicy the eviction policy for the expression cache.
+     * @since 3.1.3
+     */
+    public void setExpressionCacheEvictionPolicy(final CacheEvictionPolicy expressionCacheEvictionPolicy) {
+        this.expressionCacheEvictionPolicy = expressionCacheEvictionPolicy;
+    }
     
     
     
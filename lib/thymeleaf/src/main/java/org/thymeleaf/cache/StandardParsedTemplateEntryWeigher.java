@@ -0,0 +1,49 @@
+/*
+ * =============================================================================
+ *
+ *   Copyright (c) 2011-2022, The THYMELEAF team (http://www.thymeleaf.org)
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * =============================================================================
+ */
+package org.thymeleaf.cache;
+
+
+import org.thymeleaf.engine.TemplateModel;
+
+/**
+ * <p>
+ *   Weighs template cache entries by the estimated amount of memory retained by the
+ *   parsed template (see {@link TemplateModel#getWeight()}).
+ * </p>
+ *
+ * @author Daniel Fern&aacute;ndez
+ *
+ * @since 3.1.3
+ *
+ */
+public final class StandardParsedTemplateEntryWeigher
+        implements ICacheEntryWeigher<TemplateCacheKey,TemplateModel> {
+
+    private static final long serialVersionUID = 6630857931235546127L;
+
+    public StandardParsedTemplateEntryWeigher() {
+        super();
+    }
+
+    public long weigh(final TemplateCacheKey key, final TemplateModel value) {
+        return value.getWeight();
+    }
+
+}
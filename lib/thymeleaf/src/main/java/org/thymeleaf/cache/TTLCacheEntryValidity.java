@@ -25,6 +25,12 @@
  *   that uses a TTL (time-to-live) expressed in milliseconds to
  *   compute the validity of template cache entries.
  * </p>
+ * <p>
+ *   Optionally, a <em>refresh TTL</em> (shorter than the TTL) can be specified. Once it has passed, cache
+ *   entries will still be considered valid, but will ask for being refreshed in the background (see
+ *   {@link IRefreshableCacheEntryValidity}) so that requests do not need to wait for the template to be
+ *   resolved and parsed again when the TTL expires.
+ * </p>
  * 
  * @author Daniel Fern&aacute;ndez
  * 
@@ -32,9 +38,10 @@
  *
  */
 public class TTLCacheEntryValidity
-        implements ICacheEntryValidity {
+        implements IRefreshableCacheEntryValidity {
     
     private final long cacheTTLMs;
+    private final long cacheRefreshTTLMs;
     private final long creationTimeInMillis;
 
     
@@ -46,8 +53,24 @@
      * @param cacheTTLMs the TTL to be applied to the template resolution.
      */
     public TTLCacheEntryValidity(final long cacheTTLMs) {
+        this(cacheTTLMs, -1L);
+    }
+
+
+    /**
+     * <p>
+     *   Creates a new instance of this validity implementation, specifying a refresh TTL.
+     * </p>
+     *
+     * @param cacheTTLMs the TTL to be applied to the template resolution.
+     * @param cacheRefreshTTLMs the TTL after which the template resolution should be refreshed in
+     *                          the background, or -1 if no background refresh should be performed.
+     * @since 3.1.3
+     */
+    public TTLCacheEntryValidity(final long cacheTTLMs, final long cacheRefreshTTLMs) {
         super();
         this.cacheTTLMs = cacheTTLMs;
+        this.cacheRefreshTTLMs = cacheRefreshTTLMs;
         this.creationTimeInMillis = System.currentTimeMillis();
     }
     
@@ -63,6 +86,20 @@ public TTLCacheEntryValidity(final long cacheTTLMs) {
     public long getCacheTTLMs() {
         return this.cacheTTLMs;
     }
+
+
+    /**
+     * <p>
+     *   Returns the TTL in milliseconds after which templates should be refreshed in the
+     *   background, or -1 if no background refresh should be performed.
+     * </p>
+     *
+     * @return the refresh TTL in milliseconds
+     * @since 3.1.3
+     */
+    public long getCacheRefreshTTLMs() {
+        return this.cacheRefreshTTLMs;
+    }
     
 
     /**
@@ -92,5 +129,23 @@ public boolean isCacheStillValid() {
         final long currentTimeInMillis = System.currentTimeMillis();
         return (currentTimeInMillis < this.creationTimeInMillis + this.cacheTTLMs);
     }
+
+
+    /**
+     * <p>
+     *   Returns whether the template resolution should be refreshed in the background, which will
+     *   happen if a refresh TTL has been specified and it has already passed.
+     * </p>
+     *
+     * @return whether the (cached) template resolution should be refreshed.
+     * @since 3.1.3
+     */
+    public boolean isCacheRefreshNeeded() {
+        if (this.cacheRefreshTTLMs < 0L) {
+            return false;
+        }
+        final long currentTimeInMillis = System.currentTimeMillis();
+        return (currentTimeInMillis >= this.creationTimeInMillis + this.cacheRefreshTTLMs);
+    }
     
 }
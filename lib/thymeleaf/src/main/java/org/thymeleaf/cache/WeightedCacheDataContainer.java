@@ -0,0 +1,228 @@
+/*
+ * =============================================================================
+ *
+ *   Copyright (c) 2011-2022, The THYMELEAF team (http://www.thymeleaf.org)
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * =============================================================================
+ */
+package org.thymeleaf.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.thymeleaf.TemplateEngine;
+
+
+/**
+ * <p>
+ *   Data container for {@link StandardCache} used when the cache is limited by the total <i>weight</i> of its
+ *   entries (as computed by an {@link ICacheEntryWeigher}) instead of (or besides) by their number.
+ * </p>
+ * <p>
+ *   Eviction is performed in insertion order ({@link CacheEvictionPolicy#FIFO}) until both the total weight
+ *   and the number of entries are under their limits. Note this means an entry weighing more than the maximum
+ *   weight of the whole cache will never remain in it.
+ * </p>
+ * <p>
+ *   Reads do not require any locking, but insertions and removals are serialized so that the total weight
+ *   is always consistent with the entries being held.
+ * </p>
+ *
+ * @author Daniel Fern&aacute;ndez
+ *
+ * @since 3.1.3
+ *
+ * @param <K> The type of the cache keys
+ * @param <V> The type of the cache values
+ */
+final class WeightedCacheDataContainer<K,V> implements StandardCache.ICacheDataContainer<K,V> {
+
+    private final String name;
+    private final int maxSize;
+    private final long maxWeight;
+    private final boolean traceExecution;
+    private final Logger logger;
+
+    private final ConcurrentHashMap<K,StandardCache.CacheEntry<V>> container;
+
+    // Insertion-ordered weights of the entries in the container. Only accessed while holding its monitor.
+    private final LinkedHashMap<K,Long> weights;
+    private volatile long totalWeight;
+
+
+
+    WeightedCacheDataContainer(final String name, final int initialCapacity,
+            final int maxSize, final long maxWeight, final boolean traceExecution, final Logger logger) {
+
+        super();
+
+        this.name = name;
+        this.maxSize = maxSize;
+        this.maxWeight = maxWeight;
+        this.traceExecution = traceExecution;
+        this.logger = logger;
+
+        this.container = new ConcurrentHashMap<K,StandardCache.CacheEntry<V>>(initialCapacity, 0.9f, 2);
+        this.weights = new LinkedHashMap<K,Long>(initialCapacity);
+        this.totalWeight = 0L;
+
+    }
+
+
+
+
+    public StandardCache.CacheEntry<V> get(final Object key) {
+        return this.container.get(key);
+    }
+
+
+    public Set<K> keySet() {
+        // Cast needed for binary compatibility of ConcurrentHashMap#keySet() between Java versions
+        return ((Map<K,StandardCache.CacheEntry<V>>)this.container).keySet();
+    }
+
+
+    public int put(final K key, final StandardCache.CacheEntry<V> value) {
+
+        synchronized (this.weights) {
+
+            final StandardCache.CacheEntry<V> existing = this.container.putIfAbsent(key, value);
+            if (existing == null) {
+
+                final long weight = value.getWeight();
+                this.weights.put(key, Long.valueOf(weight));
+                this.totalWeight += weight;
+                evictIfNeeded();
+
+            }
+
+        }
+
+        return (this.traceExecution ? this.container.size() : -1);
+
+    }
+
+
+    public int replace(final K key, final StandardCache.CacheEntry<V> value) {
+
+        synchronized (this.weights) {
+
+            final StandardCache.CacheEntry<V> replaced = this.container.replace(key, value);
+            if (replaced == null) {
+                return put(key, value);
+            }
+
+            // Replacing the weight of an existing key does not change its insertion order
+            final long weight = value.getWeight();
+            final Long oldWeight = this.weights.put(key, Long.valueOf(weight));
+            this.totalWeight += weight - (oldWeight != null ? oldWeight.longValue() : 0L);
+            evictIfNeeded();
+
+        }
+
+        return (this.traceExecution ? this.container.size() : -1);
+
+    }
+
+
+    public boolean replace(final K key, final StandardCache.CacheEntry<V> oldValue, final StandardCache.CacheEntry<V> value) {
+
+        synchronized (this.weights) {
+
+            if (!this.container.replace(key, oldValue, value)) {
+                return false;
+            }
+
+            final long weight = value.getWeight();
+            final Long oldWeight = this.weights.put(key, Long.valueOf(weight));
+            this.totalWeight += weight - (oldWeight != null ? oldWeight.longValue() : 0L);
+            evictIfNeeded();
+
+        }
+
+        return true;
+
+    }
+
+
+    // Must be called while holding the monitor of the weights map
+    private void evictIfNeeded() {
+
+        long newTotalWeight = this.totalWeight;
+
+        final Iterator<Map.Entry<K,Long>> eldest = this.weights.entrySet().iterator();
+        while (eldest.hasNext() &&
+                (newTotalWeight > this.maxWeight || (this.maxSize > 0 && this.weights.size() > this.maxSize))) {
+            final Map.Entry<K,Long> evicted = eldest.next();
+            eldest.remove();
+            this.container.remove(evicted.getKey());
+            newTotalWeight -= evicted.getValue().longValue();
+            if (this.traceExecution) {
+                final Integer newSize = Integer.valueOf(this.container.size());
+                this.logger.trace(
+                        "[THYMELEAF][{}][{}][CACHE_REMOVE][{}] Max size or weight exceeded for cache \"{}\". Removing entry for key \"{}\". New size is {}.",
+                        new Object[] {TemplateEngine.threadIndex(), this.name, newSize, this.name, evicted.getKey(), newSize});
+            }
+        }
+
+        this.totalWeight = newTotalWeight;
+
+    }
+
+
+    public int remove(final K key) {
+
+        synchronized (this.weights) {
+
+            final StandardCache.CacheEntry<V> removed = this.container.remove(key);
+            if (removed == null) {
+                return -1;
+            }
+            final Long weight = this.weights.remove(key);
+            if (weight != null) {
+                this.totalWeight -= weight.longValue();
+            }
+
+        }
+
+        return (this.traceExecution ? this.container.size() : -1);
+
+    }
+
+
+    public void clear() {
+        synchronized (this.weights) {
+            this.container.clear();
+            this.weights.clear();
+            this.totalWeight = 0L;
+        }
+    }
+
+
+    public int size() {
+        return this.container.size();
+    }
+
+
+    public long weight() {
+        return this.totalWeight;
+    }
+
+
+}
@@ -0,0 +1,585 @@
+/*
+ * =============================================================================
+ *
+ *   Copyright (c) 2011-2022, The THYMELEAF team (http://www.thymeleaf.org)
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * =============================================================================
+ */
+package org.thymeleaf.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.thymeleaf.TemplateEngine;
+
+
+/**
+ * <p>
+ *   Size-limited data container for {@link StandardCache} implementing the
+ *   {@link CacheEvictionPolicy#WINDOW_TINY_LFU} eviction policy.
+ * </p>
+ * <p>
+ *   Entries are stored in a {@link ConcurrentHashMap}, and policy bookkeeping is kept apart from it so that
+ *   neither {@code get} nor {@code put} operations need to block:
+ * </p>
+ * <ul>
+ *   <li>Reads are recorded (key only) in a set of striped, lossy ring buffers. If a buffer is full,
+ *       the read is simply not recorded, which only affects the accuracy of the frequency estimations.</li>
+ *   <li>Insertions and removals are recorded in an unbounded queue, so that none of them is lost.</li>
+ *   <li>Both buffers are drained (and evictions performed) by any thread able to acquire the
+ *       maintenance lock <em>without waiting</em> for it.</li>
+ * </ul>
+ * <p>
+ *   As a consequence, the container might temporarily hold a few entries more than its maximum size
+ *   until the pending insertions are drained.
+ * </p>
+ * <p>
+ *   Policy structure: a <em>window</em> LRU queue (1% of the maximum size) receives all new entries. Entries
+ *   leaving the window become <em>candidates</em> for the <em>main</em> space, a segmented LRU divided into a
+ *   <em>probation</em> (20%) and a <em>protected</em> (80%) segment. When the cache exceeds its maximum size,
+ *   the candidate leaving the window competes against the least recently used entry in probation (or in protected,
+ *   if probation is empty), and the one with the lower estimated frequency (as per a {@link FrequencySketch})
+ *   is evicted.
+ * </p>
+ *
+ * @author Daniel Fern&aacute;ndez
+ *
+ * @since 3.1.3
+ *
+ * @param <K> The type of the cache keys
+ * @param <V> The type of the cache values
+ */
+final class WindowTinyLfuCacheDataContainer<K,V> implements StandardCache.ICacheDataContainer<K,V> {
+
+    private static final int READ_BUFFER_SIZE = 64; // Must be a power of 2
+    private static final int READ_BUFFER_MASK = READ_BUFFER_SIZE - 1;
+    private static final int READ_BUFFER_DRAIN_THRESHOLD = READ_BUFFER_SIZE / 2;
+    private static final int MAX_READ_BUFFERS = 64; // Must be a power of 2
+
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+
+
+    private final String name;
+    private final int maxSize;
+    private final boolean traceExecution;
+    private final Logger logger;
+
+    private final ConcurrentHashMap<K,StandardCache.CacheEntry<V>> container;
+
+    private final ReentrantLock maintenanceLock;
+    private volatile boolean drainRequired;
+    private final ReadBuffer[] readBuffers;
+    private final int readBuffersMask;
+    private final ConcurrentLinkedQueue<WriteEvent<K>> writeBuffer;
+
+    // All the fields below are only accessed while holding the maintenance lock
+    private final FrequencySketch sketch;
+    private final Map<Object,Node<K>> nodes;
+    private final NodeQueue<K> window;
+    private final NodeQueue<K> probation;
+    private final NodeQueue<K> protectedSegment;
+    private final int windowMaxSize;
+    private final int protectedMaxSize;
+
+
+
+    WindowTinyLfuCacheDataContainer(final String name, final int initialCapacity,
+            final int maxSize, final boolean traceExecution, final Logger logger) {
+
+        super();
+
+        this.name = name;
+        this.maxSize = maxSize;
+        this.traceExecution = traceExecution;
+        this.logger = logger;
+
+        this.container = new ConcurrentHashMap<K,StandardCache.CacheEntry<V>>(initialCapacity, 0.9f, 2);
+
+        this.maintenanceLock = new ReentrantLock();
+        this.drainRequired = false;
+        int readBufferCount = 1;
+        while (readBufferCount < Runtime.getRuntime().availableProcessors() && readBufferCount < MAX_READ_BUFFERS) {
+            readBufferCount <<= 1;
+        }
+        this.readBuffers = new ReadBuffer[readBufferCount];
+        for (int i = 0; i < readBufferCount; i++) {
+            this.readBuffers[i] = new ReadBuffer();
+        }
+        this.readBuffersMask = readBufferCount - 1;
+        this.writeBuffer = new ConcurrentLinkedQueue<WriteEvent<K>>();
+
+        this.sketch = new FrequencySketch(maxSize);
+        this.nodes = new HashMap<Object,Node<K>>(Math.min(initialCapacity, maxSize));
+        this.window = new NodeQueue<K>();
+        this.probation = new NodeQueue<K>();
+        this.protectedSegment = new NodeQueue<K>();
+        this.windowMaxSize = Math.max(1, maxSize / 100);
+        this.protectedMaxSize = ((maxSize - this.windowMaxSize) * 80) / 100;
+
+    }
+
+
+
+
+    public StandardCache.CacheEntry<V> get(final Object key) {
+        final StandardCache.CacheEntry<V> entry = this.container.get(key);
+        if (entry != null) {
+            recordRead(key);
+        }
+        return entry;
+    }
+
+
+    public Set<K> keySet() {
+        // Cast needed for binary compatibility of ConcurrentHashMap#keySet() between Java versions
+        return ((Map<K,StandardCache.CacheEntry<V>>)this.container).keySet();
+    }
+
+
+    public int put(final K key, final StandardCache.CacheEntry<V> value) {
+        final StandardCache.CacheEntry<V> existing = this.container.putIfAbsent(key, value);
+        if (existing == null) {
+            recordWrite(key, true);
+        }
+        return (this.traceExecution ? this.container.size() : -1);
+    }
+
+
+    public int replace(final K key, final StandardCache.CacheEntry<V> value) {
+        // Policy bookkeeping does not need to change, as the key (if still present) already has its node
+        if (this.container.replace(key, value) == null) {
+            return put(key, value);
+        }
+        return (this.traceExecution ? this.container.size() : -1);
+    }
+
+
+    public boolean replace(final K key, final StandardCache.CacheEntry<V> oldValue, final StandardCache.CacheEntry<V> value) {
+        return this.container.replace(key, oldValue, value);
+    }
+
+
+    public int remove(final K key) {
+        final StandardCache.CacheEntry<V> removed = this.container.remove(key);
+        if (removed == null) {
+            return -1;
+        }
+        recordWrite(key, false);
+        return (this.traceExecution ? this.container.size() : -1);
+    }
+
+
+    public void clear() {
+        this.maintenanceLock.lock();
+        try {
+            this.container.clear();
+            this.writeBuffer.clear();
+            for (int i = 0; i < this.readBuffers.length; i++) {
+                this.readBuffers[i].discard();
+            }
+            this.nodes.clear();
+            this.window.clear();
+            this.probation.clear();
+            this.protectedSegment.clear();
+            this.sketch.clear();
+        } finally {
+            this.maintenanceLock.unlock();
+        }
+    }
+
+
+    public int size() {
+        return this.container.size();
+    }
+
+
+    public long weight() {
+        return -1L;
+    }
+
+
+
+
+    /*
+     * ---------------------------------------
+     * Recording of events and buffer draining
+     * ---------------------------------------
+     */
+
+    private void recordRead(final Object key) {
+        final ReadBuffer readBuffer = this.readBuffers[readBufferIndex()];
+        final int pending = readBuffer.offer(key);
+        if (pending >= READ_BUFFER_DRAIN_THRESHOLD) {
+            drainIfPossible();
+        }
+    }
+
+
+    private void recordWrite(final K key, final boolean addition) {
+        this.writeBuffer.add(new WriteEvent<K>(key, addition));
+        // This flag is set BEFORE trying to acquire the lock, so that if we do not succeed, the thread
+        // currently holding it is guaranteed to notice there is more work to do once it releases the lock.
+        this.drainRequired = true;
+        drainIfPossible();
+    }
+
+
+    private int readBufferIndex() {
+        final long id = Thread.currentThread().getId();
+        return ((int) ((id * 0x9E3779B97F4A7C15L) >>> 32)) & this.readBuffersMask;
+    }
+
+
+    private void drainIfPossible() {
+        while (this.maintenanceLock.tryLock()) {
+            try {
+                this.drainRequired = false;
+                for (int i = 0; i < this.readBuffers.length; i++) {
+                    this.readBuffers[i].drainTo(this);
+                }
+                WriteEvent<K> event;
+                while ((event = this.writeBuffer.poll()) != null) {
+                    if (event.addition) {
+                        onAddition(event.key);
+                    } else {
+                        onRemoval(event.key);
+                    }
+                }
+            } finally {
+                this.maintenanceLock.unlock();
+            }
+            if (!this.drainRequired) {
+                return;
+            }
+        }
+    }
+
+
+
+
+    /*
+     * -----------------------------------------------------
+     * Policy (only executed while holding maintenance lock)
+     * -----------------------------------------------------
+     */
+
+    private void onRead(final Object key) {
+
+        this.sketch.increment(key);
+
+        final Node<K> node = this.nodes.get(key);
+        if (node == null) {
+            return;
+        }
+
+        switch (node.segment) {
+            case WINDOW:
+                this.window.moveToTail(node);
+                break;
+            case PROBATION:
+                // Accessed while in probation -> gets promoted to the protected segment
+                this.probation.remove(node);
+                node.segment = PROTECTED;
+                this.protectedSegment.addTail(node);
+                while (this.protectedSegment.size > this.protectedMaxSize) {
+                    final Node<K> demoted = this.protectedSegment.pollHead();
+                    demoted.segment = PROBATION;
+                    this.probation.addTail(demoted);
+                }
+                break;
+            default:
+                this.protectedSegment.moveToTail(node);
+                break;
+        }
+
+    }
+
+
+    private void onAddition(final K key) {
+
+        if (!this.container.containsKey(key)) {
+            // Already removed before we could process the addition (its removal event is still to come)
+            return;
+        }
+
+        final Node<K> existing = this.nodes.get(key);
+        if (existing != null) {
+            // Removal + re-addition already processed as a whole: consider it an access
+            onRead(key);
+            return;
+        }
+
+        this.sketch.increment(key);
+
+        final Node<K> node = new Node<K>(key);
+        node.segment = WINDOW;
+        this.nodes.put(key, node);
+        this.window.addTail(node);
+
+        evictIfNeeded();
+
+    }
+
+
+    private void onRemoval(final K key) {
+
+        if (this.container.containsKey(key)) {
+            // Removed but then re-added before we could process the removal: node is kept
+            return;
+        }
+
+        final Node<K> node = this.nodes.remove(key);
+        if (node != null) {
+            queueFor(node).remove(node);
+        }
+
+    }
+
+
+    private void evictIfNeeded() {
+
+        // Entries overflowing the window become candidates for entering the main space, which they do at the
+        // tail (MRU side) of the probation segment. If the cache is full, each candidate has to compete against
+        // the victim the main space would evict: the LRU entry in probation (or in protected if probation is empty)
+        while (this.window.size > this.windowMaxSize) {
+
+            final Node<K> candidate = this.window.pollHead();
+            final Node<K> victim =
+                    (this.nodes.size() <= this.maxSize ?
+                            null : (this.probation.head != null ? this.probation.head : this.protectedSegment.head));
+
+            candidate.segment = PROBATION;
+            this.probation.addTail(candidate);
+
+            if (victim != null) {
+                // TinyLFU admission: the candidate only gets in if it is more popular than the victim
+                final int victimFrequency = this.sketch.frequency(victim.key);
+                final int candidateFrequency = this.sketch.frequency(candidate.key);
+                evict(candidateFrequency > victimFrequency ? victim : candidate);
+            }
+
+        }
+
+        // Any excess still remaining (e.g. the main space being empty) is evicted in LRU order
+        while (this.nodes.size() > this.maxSize) {
+            if (this.probation.head != null) {
+                evict(this.probation.head);
+            } else if (this.protectedSegment.head != null) {
+                evict(this.protectedSegment.head);
+            } else {
+                evict(this.window.head);
+            }
+        }
+
+    }
+
+
+    private void evict(final Node<K> node) {
+
+        queueFor(node).remove(node);
+        this.nodes.remove(node.key);
+
+        final StandardCache.CacheEntry<V> removed = this.container.remove(node.key);
+        if (this.traceExecution && removed != null) {
+            final Integer newSize = Integer.valueOf(this.container.size());
+            this.logger.trace(
+                    "[THYMELEAF][{}][{}][CACHE_REMOVE][{}] Max size exceeded for cache \"{}\". Removing entry for key \"{}\". New size is {}.",
+                    new Object[] {TemplateEngine.threadIndex(), this.name, newSize, this.name, node.key, newSize});
+        }
+
+    }
+
+
+    private NodeQueue<K> queueFor(final Node<K> node) {
+        switch (node.segment) {
+            case WINDOW:
+                return this.window;
+            case PROBATION:
+                return this.probation;
+            default:
+                return this.protectedSegment;
+        }
+    }
+
+
+
+
+    /*
+     * Lossy, bounded, multiple-producer single-consumer buffer for recording reads. The consumer is
+     * always a thread holding the maintenance lock.
+     */
+    private static final class ReadBuffer {
+
+        private final AtomicReferenceArray<Object> buffer = new AtomicReferenceArray<Object>(READ_BUFFER_SIZE);
+        private final AtomicLong writeCounter = new AtomicLong(0L);
+        private volatile long readCounter = 0L;
+
+        ReadBuffer() {
+            super();
+        }
+
+        int offer(final Object key) {
+            final long writes = this.writeCounter.get();
+            final long pending = writes - this.readCounter;
+            if (pending < READ_BUFFER_SIZE && this.writeCounter.compareAndSet(writes, writes + 1)) {
+                this.buffer.lazySet((int) (writes & READ_BUFFER_MASK), key);
+            }
+            // If the buffer is full or there was contention, the read is just not recorded
+            return (int) pending;
+        }
+
+        void drainTo(final WindowTinyLfuCacheDataContainer<?,?> container) {
+            long reads = this.readCounter;
+            final long writes = this.writeCounter.get();
+            while (reads < writes) {
+                final int index = (int) (reads & READ_BUFFER_MASK);
+                final Object key = this.buffer.get(index);
+                if (key == null) {
+                    // Slot reserved by a producer but not published yet
+                    break;
+                }
+                this.buffer.lazySet(index, null);
+                container.onRead(key);
+                reads++;
+            }
+            this.readCounter = reads;
+        }
+
+        void discard() {
+            long reads = this.readCounter;
+            final long writes = this.writeCounter.get();
+            while (reads < writes) {
+                final int index = (int) (reads & READ_BUFFER_MASK);
+                if (this.buffer.getAndSet(index, null) == null) {
+                    break;
+                }
+                reads++;
+            }
+            this.readCounter = reads;
+        }
+
+    }
+
+
+
+
+    private static final class WriteEvent<K> {
+
+        final K key;
+        final boolean addition;
+
+        WriteEvent(final K key, final boolean addition) {
+            super();
+            this.key = key;
+            this.addition = addition;
+        }
+
+    }
+
+
+
+
+    private static final class Node<K> {
+
+        final K key;
+        int segment;
+        Node<K> previous;
+        Node<K> next;
+
+        Node(final K key) {
+            super();
+            this.key = key;
+        }
+
+    }
+
+
+
+
+    /*
+     * Doubly-linked access-order queue: head is the least recently used node, tail the most recently used.
+     */
+    private static final class NodeQueue<K> {
+
+        Node<K> head;
+        Node<K> tail;
+        int size;
+
+        NodeQueue() {
+            super();
+        }
+
+        void addTail(final Node<K> node) {
+            node.previous = this.tail;
+            node.next = null;
+            if (this.tail == null) {
+                this.head = node;
+            } else {
+                this.tail.next = node;
+            }
+            this.tail = node;
+            this.size++;
+        }
+
+        Node<K> pollHead() {
+            final Node<K> node = this.head;
+            if (node != null) {
+                remove(node);
+            }
+            return node;
+        }
+
+        void remove(final Node<K> node) {
+            if (node.previous == null) {
+                this.head = node.next;
+            } else {
+                node.previous.next = node.next;
+            }
+            if (node.next == null) {
+                this.tail = node.previous;
+            } else {
+                node.next.previous = node.previous;
+            }
+            node.previous = null;
+            node.next = null;
+            this.size--;
+        }
+
+        void moveToTail(final Node<K> node) {
+            if (node != this.tail) {
+                remove(node);
+                addTail(node);
+            }
+        }
+
+        void clear() {
+            this.head = null;
+            this.tail = null;
+            this.size = 0;
+        }
+
+    }
+
+
+}
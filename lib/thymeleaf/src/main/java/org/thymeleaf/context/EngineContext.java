@@ -221,6 +221,30 @@ public Set<String> getVariableNames() {
     }
 
 
+    public Map<String,Object> getVariablesSnapshot() {
+
+        final Map<String,Object> snapshot = new HashMap<String, Object>();
+        int n = this.index + 1;
+        int i = 0;
+        while (n-- != 0) {
+            if (this.maps[i] != null) {
+                for (final Map.Entry<String,Object> mapEntry : this.maps[i].entrySet()) {
+                    final Object value = mapEntry.getValue();
+                    if (value == NON_EXISTING) {
+                        snapshot.remove(mapEntry.getKey());
+                        continue;
+                    }
+                    // Lazy variables are copied as such, without resolving them
+                    snapshot.put(mapEntry.getKey(), (value == NULL? null : value));
+                }
+            }
+            i++;
+        }
+        return snapshot;
+
+    }
+
+
     public void setVariable(final String name, final Object value) {
 
         ensureLevelInitialized(DEFAULT_MAP_SIZE);
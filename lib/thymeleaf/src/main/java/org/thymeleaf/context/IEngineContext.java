@@ -19,6 +19,7 @@
  */
 package org.thymeleaf.context;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -221,4 +222,30 @@ public interface IEngineContext extends ITemplateContext {
      */
     public int level();
 
+    /**
+     * <p>
+     *   Returns a snapshot of all the variables currently visible in this context (local ones included),
+     *   which can be used for processing parts of the template in a different context, e.g. in a different
+     *   thread. The returned map is a copy and will not reflect any further changes to this context.
+     * </p>
+     * <p>
+     *   Implementations should avoid resolving lazy variables ({@link ILazyContextVariable}) when
+     *   creating the snapshot, so that they can be resolved only if actually needed. The default
+     *   implementation simply copies the values returned by {@link #getVariable(String)}.
+     * </p>
+     * <p>
+     *   <strong>This method should only be called internally</strong>.
+     * </p>
+     *
+     * @return a map containing the variables visible at the current level.
+     * @since 3.1.3
+     */
+    public default Map<String,Object> getVariablesSnapshot() {
+        final Map<String,Object> snapshot = new HashMap<String, Object>();
+        for (final String name : getVariableNames()) {
+            snapshot.put(name, getVariable(name));
+        }
+        return snapshot;
+    }
+
 }
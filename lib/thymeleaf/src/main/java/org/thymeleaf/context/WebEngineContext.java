@@ -25,6 +25,7 @@
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
@@ -176,6 +177,11 @@ public Set<String> getVariableNames() {
     }
 
 
+    public Map<String,Object> getVariablesSnapshot() {
+        return this.exchangeAttributeMap.getVariablesSnapshot();
+    }
+
+
     public void setVariable(final String name, final Object value) {
         if (SESSION_VARIABLE_NAME.equals(name) ||
                 PARAM_VARIABLE_NAME.equals(name) ||
@@ -659,6 +665,16 @@ public Set<String> getVariableNames() {
         }
 
 
+        public Map<String,Object> getVariablesSnapshot() {
+            final Map<String,Object> snapshot = new HashMap<String, Object>();
+            for (final String name : this.webExchange.getAllAttributeNames()) {
+                // Lazy variables are copied as such, without resolving them
+                snapshot.put(name, this.webExchange.getAttributeValue(name));
+            }
+            return snapshot;
+        }
+
+
         private int searchNameInIndex(final String name, final int idx) {
             int n = this.levelSizes[idx];
             if (name == null) {
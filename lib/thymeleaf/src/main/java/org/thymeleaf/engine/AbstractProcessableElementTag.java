@@ -198,6 +198,20 @@ boolean hasAssociatedProcessors() {
     }
 
 
+    /*
+     * Computes the associated processors (i.e. the processor execution plan) of all the tags in a model that
+     * is going to be cached. Tags are immutable so these will never change, and this way they are computed only
+     * once instead of at the first execution of each tag.
+     */
+    static void computeAssociatedProcessors(final IEngineTemplateEvent[] queue) {
+        for (int i = 0; i < queue.length; i++) {
+            if (queue[i] instanceof AbstractProcessableElementTag) {
+                ((AbstractProcessableElementTag) queue[i]).getAssociatedProcessors();
+            }
+        }
+    }
+
+
 
 
     private IElementProcessor[] computeProcessors() {
@@ -69,6 +69,18 @@ abstract class AbstractTextualTemplateEvent extends AbstractTemplateEvent implem
     }
 
 
+    /*
+     * Used for events created from already-analyzed contents, so that these analyses are not repeated
+     */
+    AbstractTextualTemplateEvent(
+            final CharSequence content, final String templateName, final int line, final int col,
+            final boolean whitespace, final boolean inlineable) {
+        this(content, templateName, line, col);
+        this.computedContentIsWhitespace = Boolean.valueOf(whitespace);
+        this.computedContentIsInlineable = Boolean.valueOf(inlineable);
+    }
+
+
 
 
     protected final String getContentText() {
@@ -134,6 +146,13 @@ protected final CharSequence contentSubSequence(final int start, final int end)
 
 
 
+    final CharSequence getContentCharSequence() {
+        return this.contentCharSeq;
+    }
+
+
+
+
     final boolean isWhitespace() {
         Boolean w = this.computedContentIsWhitespace;
         if (w == null) {
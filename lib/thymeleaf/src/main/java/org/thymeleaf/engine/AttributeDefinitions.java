@@ -27,9 +27,6 @@
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.thymeleaf.exceptions.ConfigurationException;
 import org.thymeleaf.processor.element.IElementProcessor;
@@ -541,10 +538,11 @@ public TextAttributeDefinition forCSSName(final char[] attributeName, final int
 
 
     /*
-     * This repository class is thread-safe. The reason for this is that it not only contains the
-     * standard attributes, but will also contain new instances of AttributeDefinition created during processing (created
-     * when asking the repository for them when they do not exist yet). As any thread can create a new attribute,
-     * this has to be lock-protected.
+     * This repository class is thread-safe. The reason for this is that it not only contains the standard attributes,
+     * but will also contain new instances of AttributeDefinition created during processing (created when asking the
+     * repository for them when they do not exist yet). As any thread can create a new attribute, its contents are
+     * kept in immutable snapshots that are replaced (copy-on-write) when new names are added, so that lookups need no
+     * locking.
      */
     static final class AttributeDefinitionRepository {
 
@@ -556,12 +554,8 @@ static final class AttributeDefinitionRepository {
         private final List<String> standardRepositoryNames; // read-only, no sync needed
         private final List<AttributeDefinition> standardRepository; // read-only, no sync needed
 
-        private final List<String> repositoryNames;  // read-write, sync will be needed
-        private final List<AttributeDefinition> repository;  // read-write, sync will be needed
-
-        private final ReadWriteLock lock = new ReentrantReadWriteLock(true);
-        private final Lock readLock = this.lock.readLock();
-        private final Lock writeLock = this.lock.writeLock();
+        // read-write, but never modified once published: new names replace it with a new copy (copy-on-write)
+        private volatile NameRepositorySnapshot<AttributeDefinition> repository;
 
 
         AttributeDefinitionRepository(final TemplateMode templateMode, final Map<TemplateMode, Set<IElementProcessor>> elementProcessorsByTemplateMode) {
@@ -574,8 +568,7 @@ static final class AttributeDefinitionRepository {
             this.standardRepositoryNames = (templateMode == TemplateMode.HTML ? new ArrayList<String>(150) : null);
             this.standardRepository = (templateMode == TemplateMode.HTML ? new ArrayList<AttributeDefinition>(150) : null);
 
-            this.repositoryNames = new ArrayList<String>(500);
-            this.repository = new ArrayList<AttributeDefinition>(500);
+            this.repository = new NameRepositorySnapshot<AttributeDefinition>();
 
         }
 
@@ -598,34 +591,26 @@ AttributeDefinition getAttribute(final char[] text, final int offset, final int
 
             /*
              * We did not find it in the repository of standard elements, so let's try in the read+write one,
-             * which does require synchronization through a readwrite lock.
+             * which is an immutable snapshot and does not need any synchronization either.
              */
 
-            this.readLock.lock();
-            try {
-
-                /*
-                 * First look for the element in the namespaced repository
-                 */
-                index = binarySearch(this.templateMode.isCaseSensitive(), this.repositoryNames, text, offset, len);
+            final NameRepositorySnapshot<AttributeDefinition> repository = this.repository;
 
-                if (index >= 0) {
-                    return this.repository.get(index);
-                }
+            /*
+             * First look for the element in the namespaced repository
+             */
+            index = binarySearch(this.templateMode.isCaseSensitive(), repository.names, text, offset, len);
 
-            } finally {
-                this.readLock.unlock();
+            if (index >= 0) {
+                return repository.values.get(index);
             }
 
 
             /*
-             * NOT FOUND. We need to obtain a write lock and store the text
+             * NOT FOUND. We need to store the text, making sure no other thread is storing names at the same time
              */
-            this.writeLock.lock();
-            try {
+            synchronized (this) {
                 return storeAttribute(text, offset, len);
-            } finally {
-                this.writeLock.unlock();
             }
 
         }
@@ -649,34 +634,26 @@ AttributeDefinition getAttribute(final String completeAttributeName) {
 
             /*
              * We did not find it in the repository of standard elements, so let's try in the read+write one,
-             * which does require synchronization through a readwrite lock.
+             * which is an immutable snapshot and does not need any synchronization either.
              */
 
-            this.readLock.lock();
-            try {
-
-                /*
-                 * First look for the element in the namespaced repository
-                 */
-                index = binarySearch(this.templateMode.isCaseSensitive(), this.repositoryNames, completeAttributeName);
+            final NameRepositorySnapshot<AttributeDefinition> repository = this.repository;
 
-                if (index >= 0) {
-                    return this.repository.get(index);
-                }
+            /*
+             * First look for the element in the namespaced repository
+             */
+            index = binarySearch(this.templateMode.isCaseSensitive(), repository.names, completeAttributeName);
 
-            } finally {
-                this.readLock.unlock();
+            if (index >= 0) {
+                return repository.values.get(index);
             }
 
 
             /*
-             * NOT FOUND. We need to obtain a write lock and store the text
+             * NOT FOUND. We need to store the text, making sure no other thread is storing names at the same time
              */
-            this.writeLock.lock();
-            try {
+            synchronized (this) {
                 return storeAttribute(completeAttributeName);
-            } finally {
-                this.writeLock.unlock();
             }
 
         }
@@ -700,34 +677,26 @@ AttributeDefinition getAttribute(final String prefix, final String attributeName
 
             /*
              * We did not find it in the repository of standard elements, so let's try in the read+write one,
-             * which does require synchronization through a readwrite lock.
+             * which is an immutable snapshot and does not need any synchronization either.
              */
 
-            this.readLock.lock();
-            try {
+            final NameRepositorySnapshot<AttributeDefinition> repository = this.repository;
 
-                /*
-                 * First look for the element in the namespaced repository
-                 */
-                index = binarySearch(this.templateMode.isCaseSensitive(), this.repositoryNames, prefix, attributeName);
-
-                if (index >= 0) {
-                    return this.repository.get(index);
-                }
+            /*
+             * First look for the element in the namespaced repository
+             */
+            index = binarySearch(this.templateMode.isCaseSensitive(), repository.names, prefix, attributeName);
 
-            } finally {
-                this.readLock.unlock();
+            if (index >= 0) {
+                return repository.values.get(index);
             }
 
 
             /*
-             * NOT FOUND. We need to obtain a write lock and store the text
+             * NOT FOUND. We need to store the text, making sure no other thread is storing names at the same time
              */
-            this.writeLock.lock();
-            try {
+            synchronized (this) {
                 return storeAttribute(prefix, attributeName);
-            } finally {
-                this.writeLock.unlock();
             }
 
         }
@@ -735,10 +704,12 @@ AttributeDefinition getAttribute(final String prefix, final String attributeName
 
         private AttributeDefinition storeAttribute(final char[] text, final int offset, final int len) {
 
-            int index = binarySearch(this.templateMode.isCaseSensitive(), this.repositoryNames, text, offset, len);
+            final NameRepositorySnapshot<AttributeDefinition> repository = this.repository;
+
+            final int index = binarySearch(this.templateMode.isCaseSensitive(), repository.names, text, offset, len);
             if (index >= 0) {
                 // It was already added while we were waiting for the lock!
-                return this.repository.get(index);
+                return repository.values.get(index);
             }
 
             final Set<IElementProcessor> elementProcessors = this.elementProcessorsByTemplateMode.get(this.templateMode);
@@ -755,17 +726,8 @@ private AttributeDefinition storeAttribute(final char[] text, final int offset,
                         buildTextAttributeDefinition(this.templateMode, AttributeNames.forTextName(text, offset, len), elementProcessors);
             }
 
-            final String[] completeAttributeNames = attributeDefinition.attributeName.completeAttributeNames;
-
-            for (final String completeAttributeName : completeAttributeNames) {
-
-                index = binarySearch(this.templateMode.isCaseSensitive(), this.repositoryNames, completeAttributeName);
-
-                // binary Search returned (-(insertion point) - 1)
-                this.repositoryNames.add(((index + 1) * -1), completeAttributeName);
-                this.repository.add(((index + 1) * -1), attributeDefinition);
-
-            }
+            // Publish a new copy of the repository containing the new names
+            this.repository = repository.with(this.templateMode.isCaseSensitive(), attributeDefinition.attributeName.completeAttributeNames, attributeDefinition);
 
             return attributeDefinition;
 
@@ -774,10 +736,12 @@ private AttributeDefinition storeAttribute(final char[] text, final int offset,
 
         private AttributeDefinition storeAttribute(final String attributeName) {
 
-            int index = binarySearch(this.templateMode.isCaseSensitive(), this.repositoryNames, attributeName);
+            final NameRepositorySnapshot<AttributeDefinition> repository = this.repository;
+
+            final int index = binarySearch(this.templateMode.isCaseSensitive(), repository.names, attributeName);
             if (index >= 0) {
                 // It was already added while we were waiting for the lock!
-                return this.repository.get(index);
+                return repository.values.get(index);
             }
 
             final Set<IElementProcessor> elementProcessors = this.elementProcessorsByTemplateMode.get(this.templateMode);
@@ -794,17 +758,8 @@ private AttributeDefinition storeAttribute(final String attributeName) {
                         buildTextAttributeDefinition(this.templateMode, AttributeNames.forTextName(attributeName), elementProcessors);
             }
 
-            final String[] completeAttributeNames = attributeDefinition.attributeName.completeAttributeNames;
-
-            for (final String completeAttributeName : completeAttributeNames) {
-
-                index = binarySearch(this.templateMode.isCaseSensitive(), this.repositoryNames, completeAttributeName);
-
-                // binary Search returned (-(insertion point) - 1)
-                this.repositoryNames.add(((index + 1) * -1), completeAttributeName);
-                this.repository.add(((index + 1) * -1), attributeDefinition);
-
-            }
+            // Publish a new copy of the repository containing the new names
+            this.repository = repository.with(this.templateMode.isCaseSensitive(), attributeDefinition.attributeName.completeAttributeNames, attributeDefinition);
 
             return attributeDefinition;
 
@@ -813,10 +768,12 @@ private AttributeDefinition storeAttribute(final String attributeName) {
 
         private AttributeDefinition storeAttribute(final String prefix, final String attributeName) {
 
-            int index = binarySearch(this.templateMode.isCaseSensitive(), this.repositoryNames, prefix, attributeName);
+            final NameRepositorySnapshot<AttributeDefinition> repository = this.repository;
+
+            final int index = binarySearch(this.templateMode.isCaseSensitive(), repository.names, prefix, attributeName);
             if (index >= 0) {
                 // It was already added while we were waiting for the lock!
-                return this.repository.get(index);
+                return repository.values.get(index);
             }
 
             final Set<IElementProcessor> elementProcessors = this.elementProcessorsByTemplateMode.get(this.templateMode);
@@ -833,17 +790,8 @@ private AttributeDefinition storeAttribute(final String prefix, final String att
                         buildTextAttributeDefinition(this.templateMode, AttributeNames.forTextName(prefix, attributeName), elementProcessors);
             }
 
-            final String[] completeAttributeNames = attributeDefinition.attributeName.completeAttributeNames;
-
-            for (final String completeAttributeName : completeAttributeNames) {
-
-                index = binarySearch(this.templateMode.isCaseSensitive(), this.repositoryNames, completeAttributeName);
-
-                // binary Search returned (-(insertion point) - 1)
-                this.repositoryNames.add(((index + 1) * -1), completeAttributeName);
-                this.repository.add(((index + 1) * -1), attributeDefinition);
-
-            }
+            // Publish a new copy of the repository containing the new names
+            this.repository = repository.with(this.templateMode.isCaseSensitive(), attributeDefinition.attributeName.completeAttributeNames, attributeDefinition);
 
             return attributeDefinition;
 
@@ -865,15 +813,10 @@ private AttributeDefinition storeStandardAttribute(final AttributeDefinition att
                 // binary Search returned (-(insertion point) - 1)
                 this.standardRepositoryNames.add(((index + 1) * -1), completeAttributeName);
                 this.standardRepository.add(((index + 1) * -1), attributeDefinition);
-
-                index = binarySearch(this.templateMode.isCaseSensitive(), this.repositoryNames, completeAttributeName);
-
-                // binary Search returned (-(insertion point) - 1)
-                this.repositoryNames.add(((index + 1) * -1), completeAttributeName);
-                this.repository.add(((index + 1) * -1), attributeDefinition);
-
             }
 
+            this.repository = this.repository.with(this.templateMode.isCaseSensitive(), completeAttributeNames, attributeDefinition);
+
             return attributeDefinition;
 
         }
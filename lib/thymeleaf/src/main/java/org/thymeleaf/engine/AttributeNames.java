@@ -19,11 +19,7 @@
  */
 package org.thymeleaf.engine;
 
-import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.thymeleaf.templatemode.TemplateMode;
 import org.thymeleaf.util.TextUtils;
@@ -517,19 +513,16 @@ private AttributeNames() {
 
     /*
      * This repository class is thread-safe, as it will contain new instances of AttributeName created during
-     * processing (created when asking the repository for them when they do not exist yet). As any thread can
-     * create a new attribute, this has to be lock-protected.
+     * processing (created when asking the repository for them when they do not exist yet). As any thread can create a
+     * new attribute, its contents are kept in immutable snapshots that are replaced (copy-on-write) when new names are
+     * added, so that lookups need no locking.
      */
     static final class AttributeNamesRepository {
 
         private final TemplateMode templateMode;
 
-        private final List<String> repositoryNames;  // read-write, sync will be needed
-        private final List<AttributeName> repository;  // read-write, sync will be needed
-
-        private final ReadWriteLock lock = new ReentrantReadWriteLock(true);
-        private final Lock readLock = this.lock.readLock();
-        private final Lock writeLock = this.lock.writeLock();
+        // read-write, but never modified once published: new names replace it with a new copy (copy-on-write)
+        private volatile NameRepositorySnapshot<AttributeName> repository;
 
 
         AttributeNamesRepository(final TemplateMode templateMode) {
@@ -538,8 +531,7 @@ static final class AttributeNamesRepository {
 
             this.templateMode = templateMode;
 
-            this.repositoryNames = new ArrayList<String>(500);
-            this.repository = new ArrayList<AttributeName>(500);
+            this.repository = new NameRepositorySnapshot<AttributeName>();
 
         }
 
@@ -548,31 +540,23 @@ AttributeName getAttribute(final char[] text, final int offset, final int len) {
 
             int index;
 
-            this.readLock.lock();
-            try {
-
-                /*
-                 * First look for the element in the namespaced repository
-                 */
-                index = binarySearch(this.templateMode.isCaseSensitive(), this.repositoryNames, text, offset, len);
+            final NameRepositorySnapshot<AttributeName> repository = this.repository;
 
-                if (index >= 0) {
-                    return this.repository.get(index);
-                }
+            /*
+             * First look for the element in the namespaced repository
+             */
+            index = binarySearch(this.templateMode.isCaseSensitive(), repository.names, text, offset, len);
 
-            } finally {
-                this.readLock.unlock();
+            if (index >= 0) {
+                return repository.values.get(index);
             }
 
 
             /*
-             * NOT FOUND. We need to obtain a write lock and store the text
+             * NOT FOUND. We need to store the text, making sure no other thread is storing names at the same time
              */
-            this.writeLock.lock();
-            try {
+            synchronized (this) {
                 return storeAttribute(text, offset, len);
-            } finally {
-                this.writeLock.unlock();
             }
 
         }
@@ -582,31 +566,23 @@ AttributeName getAttribute(final String completeAttributeName) {
 
             int index;
 
-            this.readLock.lock();
-            try {
-
-                /*
-                 * First look for the element in the namespaced repository
-                 */
-                index = binarySearch(this.templateMode.isCaseSensitive(), this.repositoryNames, completeAttributeName);
+            final NameRepositorySnapshot<AttributeName> repository = this.repository;
 
-                if (index >= 0) {
-                    return this.repository.get(index);
-                }
+            /*
+             * First look for the element in the namespaced repository
+             */
+            index = binarySearch(this.templateMode.isCaseSensitive(), repository.names, completeAttributeName);
 
-            } finally {
-                this.readLock.unlock();
+            if (index >= 0) {
+                return repository.values.get(index);
             }
 
 
             /*
-             * NOT FOUND. We need to obtain a write lock and store the text
+             * NOT FOUND. We need to store the text, making sure no other thread is storing names at the same time
              */
-            this.writeLock.lock();
-            try {
+            synchronized (this) {
                 return storeAttribute(completeAttributeName);
-            } finally {
-                this.writeLock.unlock();
             }
 
         }
@@ -616,31 +592,23 @@ AttributeName getAttribute(final String prefix, final String attributeName) {
 
             int index;
 
-            this.readLock.lock();
-            try {
+            final NameRepositorySnapshot<AttributeName> repository = this.repository;
 
-                /*
-                 * First look for the element in the namespaced repository
-                 */
-                index = binarySearch(this.templateMode.isCaseSensitive(), this.repositoryNames, prefix, attributeName);
-
-                if (index >= 0) {
-                    return this.repository.get(index);
-                }
+            /*
+             * First look for the element in the namespaced repository
+             */
+            index = binarySearch(this.templateMode.isCaseSensitive(), repository.names, prefix, attributeName);
 
-            } finally {
-                this.readLock.unlock();
+            if (index >= 0) {
+                return repository.values.get(index);
             }
 
 
             /*
-             * NOT FOUND. We need to obtain a write lock and store the text
+             * NOT FOUND. We need to store the text, making sure no other thread is storing names at the same time
              */
-            this.writeLock.lock();
-            try {
+            synchronized (this) {
                 return storeAttribute(prefix, attributeName);
-            } finally {
-                this.writeLock.unlock();
             }
 
         }
@@ -648,10 +616,12 @@ AttributeName getAttribute(final String prefix, final String attributeName) {
 
         private AttributeName storeAttribute(final char[] text, final int offset, final int len) {
 
-            int index = binarySearch(this.templateMode.isCaseSensitive(), this.repositoryNames, text, offset, len);
+            final NameRepositorySnapshot<AttributeName> repository = this.repository;
+
+            final int index = binarySearch(this.templateMode.isCaseSensitive(), repository.names, text, offset, len);
             if (index >= 0) {
                 // It was already added while we were waiting for the lock!
-                return this.repository.get(index);
+                return repository.values.get(index);
             }
 
             final AttributeName name;
@@ -663,17 +633,8 @@ private AttributeName storeAttribute(final char[] text, final int offset, final
                 name = buildTextAttributeName(text, offset, len);
             }
 
-            final String[] completeAttributeNames = name.completeAttributeNames;
-
-            for (final String completeAttributeName : completeAttributeNames) {
-
-                index = binarySearch(this.templateMode.isCaseSensitive(), this.repositoryNames, completeAttributeName);
-
-                // binary Search returned (-(insertion point) - 1)
-                this.repositoryNames.add(((index + 1) * -1), completeAttributeName);
-                this.repository.add(((index + 1) * -1), name);
-
-            }
+            // Publish a new copy of the repository containing the new names
+            this.repository = repository.with(this.templateMode.isCaseSensitive(), name.completeAttributeNames, name);
 
             return name;
 
@@ -682,10 +643,12 @@ private AttributeName storeAttribute(final char[] text, final int offset, final
 
         private AttributeName storeAttribute(final String attributeName) {
 
-            int index = binarySearch(this.templateMode.isCaseSensitive(), this.repositoryNames, attributeName);
+            final NameRepositorySnapshot<AttributeName> repository = this.repository;
+
+            final int index = binarySearch(this.templateMode.isCaseSensitive(), repository.names, attributeName);
             if (index >= 0) {
                 // It was already added while we were waiting for the lock!
-                return this.repository.get(index);
+                return repository.values.get(index);
             }
 
             final AttributeName name;
@@ -697,17 +660,8 @@ private AttributeName storeAttribute(final String attributeName) {
                 name = buildTextAttributeName(attributeName);
             }
 
-            final String[] completeAttributeNames = name.completeAttributeNames;
-
-            for (final String completeAttributeName : completeAttributeNames) {
-
-                index = binarySearch(this.templateMode.isCaseSensitive(), this.repositoryNames, completeAttributeName);
-
-                // binary Search returned (-(insertion point) - 1)
-                this.repositoryNames.add(((index + 1) * -1), completeAttributeName);
-                this.repository.add(((index + 1) * -1), name);
-
-            }
+            // Publish a new copy of the repository containing the new names
+            this.repository = repository.with(this.templateMode.isCaseSensitive(), name.completeAttributeNames, name);
 
             return name;
 
@@ -716,10 +670,12 @@ private AttributeName storeAttribute(final String attributeName) {
 
         private AttributeName storeAttribute(final String prefix, final String attributeName) {
 
-            int index = binarySearch(this.templateMode.isCaseSensitive(), this.repositoryNames, prefix, attributeName);
+            final NameRepositorySnapshot<AttributeName> repository = this.repository;
+
+            final int index = binarySearch(this.templateMode.isCaseSensitive(), repository.names, prefix, attributeName);
             if (index >= 0) {
                 // It was already added while we were waiting for the lock!
-                return this.repository.get(index);
+                return repository.values.get(index);
             }
 
             final AttributeName name;
@@ -731,17 +687,8 @@ private AttributeName storeAttribute(final String prefix, final String attribute
                 name = buildTextAttributeName(prefix, attributeName);
             }
 
-            final String[] completeAttributeNames = name.completeAttributeNames;
-
-            for (final String completeAttributeName : completeAttributeNames) {
-
-                index = binarySearch(this.templateMode.isCaseSensitive(), this.repositoryNames, completeAttributeName);
-
-                // binary Search returned (-(insertion point) - 1)
-                this.repositoryNames.add(((index + 1) * -1), completeAttributeName);
-                this.repository.add(((index + 1) * -1), name);
-
-            }
+            // Publish a new copy of the repository containing the new names
+            this.repository = repository.with(this.templateMode.isCaseSensitive(), name.completeAttributeNames, name);
 
             return name;
 
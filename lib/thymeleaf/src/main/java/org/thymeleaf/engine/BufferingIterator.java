@@ -0,0 +1,92 @@
+/*
+ * =============================================================================
+ *
+ *   Copyright (c) 2011-2022, The THYMELEAF team (http://www.thymeleaf.org)
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * =============================================================================
+ */
+package org.thymeleaf.engine;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/*
+ * Iterator wrapper used for iterated objects whose size cannot be known in advance (iterators, streams of unknown
+ * size, etc.) Elements are consumed lazily from the wrapped iterator, unless the remaining elements are requested
+ * to be counted (e.g. because the template needs the size of the iteration), in which case they are buffered.
+ *
+ * @author Daniel Fernandez
+ * @since 3.1.3
+ *
+ */
+final class BufferingIterator implements Iterator<Object> {
+
+    private final Iterator<?> iterator;
+    private List<Object> buffer;
+    private int bufferPos;
+
+
+
+    BufferingIterator(final Iterator<?> iterator) {
+        super();
+        this.iterator = iterator;
+        this.buffer = null;
+        this.bufferPos = 0;
+    }
+
+
+    public boolean hasNext() {
+        if (this.buffer != null && this.bufferPos < this.buffer.size()) {
+            return true;
+        }
+        return this.iterator.hasNext();
+    }
+
+
+    public Object next() {
+        if (this.buffer != null && this.bufferPos < this.buffer.size()) {
+            final Object next = this.buffer.get(this.bufferPos);
+            // Already iterated elements are not retained
+            this.buffer.set(this.bufferPos++, null);
+            return next;
+        }
+        if (!this.iterator.hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return this.iterator.next();
+    }
+
+
+    public void remove() {
+        throw new UnsupportedOperationException("Cannot remove from an iteration buffer");
+    }
+
+
+    /*
+     * Returns the amount of elements not yet returned by next(), buffering all of them.
+     */
+    int countRemaining() {
+        if (this.buffer == null) {
+            this.buffer = new ArrayList<Object>();
+        }
+        while (this.iterator.hasNext()) {
+            this.buffer.add(this.iterator.next());
+        }
+        return this.buffer.size() - this.bufferPos;
+    }
+
+}
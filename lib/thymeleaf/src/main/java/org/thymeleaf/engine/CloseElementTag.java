@@ -40,6 +40,10 @@
     final String trailingWhiteSpace; // can be null if there is none
     final boolean unmatched;
 
+    // Iteration models computed the last time the element closed by this tag was iterated (see th:each). As
+    // close tags of cached templates are shared by all executions, these can be reused by later iterations.
+    volatile IteratedGatheringModelProcessable.IterationModels iterationModels = null;
+
 
 
 
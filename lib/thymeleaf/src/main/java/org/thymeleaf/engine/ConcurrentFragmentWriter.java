@@ -0,0 +1,187 @@
+/*
+ * =============================================================================
+ *
+ *   Copyright (c) 2011-2022, The THYMELEAF team (http://www.thymeleaf.org)
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * =============================================================================
+ */
+package org.thymeleaf.engine;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.thymeleaf.util.FastStringWriter;
+
+
+/**
+ * <p>
+ *   Writer wrapping the output writer of a template execution when asynchronous fragment insertion is enabled,
+ *   in charge of stitching the output of fragments processed concurrently into the template output in document
+ *   order.
+ * </p>
+ * <p>
+ *   As long as no asynchronous fragment output is pending, all output is directly written to the wrapped writer.
+ *   Once the output of a fragment is deferred, all output coming afterwards is buffered until the output of
+ *   every preceding fragment is ready. Completed output is written to the wrapped writer each time a fragment
+ *   is deferred or this writer is flushed, and {@link #finish()} waits for all pending fragments at the end of
+ *   the template execution.
+ * </p>
+ * <p>
+ *   Objects of this class are <strong>not</strong> thread-safe, and are meant to be used only by the thread
+ *   executing the template.
+ * </p>
+ *
+ * @author Daniel Fern&aacute;ndez
+ *
+ * @since 3.1.3
+ *
+ */
+final class ConcurrentFragmentWriter extends Writer {
+
+    private final Writer writer;
+    // Contains ConcurrentProcessingCharSequence and FastStringWriter objects, in output order
+    private final List<Object> pending;
+    private FastStringWriter buffer;
+
+
+
+    ConcurrentFragmentWriter(final Writer writer) {
+        super();
+        this.writer = writer;
+        this.pending = new ArrayList<Object>(4);
+        this.buffer = null;
+    }
+
+
+
+    void defer(final ConcurrentProcessingCharSequence fragmentOutput) throws IOException {
+        this.pending.add(fragmentOutput);
+        // Anything written after this fragment will need to go to a new buffer
+        this.buffer = null;
+        writeCompleted();
+    }
+
+
+    void finish() throws IOException {
+        final int pendingSize = this.pending.size();
+        for (int i = 0; i < pendingSize; i++) {
+            writePending(this.pending.get(i));
+        }
+        this.pending.clear();
+        this.buffer = null;
+    }
+
+
+    void cancel() {
+        for (final Object pendingOutput : this.pending) {
+            if (pendingOutput instanceof ConcurrentProcessingCharSequence) {
+                ((ConcurrentProcessingCharSequence) pendingOutput).cancel();
+            }
+        }
+        this.pending.clear();
+        this.buffer = null;
+    }
+
+
+    private void writeCompleted() throws IOException {
+        final int pendingSize = this.pending.size();
+        int i = 0;
+        while (i < pendingSize) {
+            final Object pendingOutput = this.pending.get(i);
+            if (pendingOutput instanceof ConcurrentProcessingCharSequence &&
+                    !((ConcurrentProcessingCharSequence) pendingOutput).isDone()) {
+                break;
+            }
+            writePending(pendingOutput);
+            i++;
+        }
+        if (i == pendingSize) {
+            this.pending.clear();
+            this.buffer = null;
+        } else if (i > 0) {
+            this.pending.subList(0, i).clear();
+        }
+    }
+
+
+    private void writePending(final Object pendingOutput) throws IOException {
+        if (pendingOutput instanceof ConcurrentProcessingCharSequence) {
+            this.writer.write(((ConcurrentProcessingCharSequence) pendingOutput).getText());
+        } else {
+            this.writer.write(pendingOutput.toString());
+        }
+    }
+
+
+    private Writer output() {
+        if (this.pending.isEmpty()) {
+            return this.writer;
+        }
+        if (this.buffer == null) {
+            this.buffer = new FastStringWriter(256);
+            this.pending.add(this.buffer);
+        }
+        return this.buffer;
+    }
+
+
+
+
+    @Override
+    public void write(final int c) throws IOException {
+        output().write(c);
+    }
+
+
+    @Override
+    public void write(final String str) throws IOException {
+        output().write(str);
+    }
+
+
+    @Override
+    public void write(final String str, final int off, final int len) throws IOException {
+        output().write(str, off, len);
+    }
+
+
+    @Override
+    public void write(final char[] cbuf) throws IOException {
+        output().write(cbuf);
+    }
+
+
+    @Override
+    public void write(final char[] cbuf, final int off, final int len) throws IOException {
+        output().write(cbuf, off, len);
+    }
+
+
+    @Override
+    public void flush() throws IOException {
+        writeCompleted();
+        this.writer.flush();
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        finish();
+        this.writer.close();
+    }
+
+}
@@ -0,0 +1,134 @@
+/*
+ * =============================================================================
+ *
+ *   Copyright (c) 2011-2022, The THYMELEAF team (http://www.thymeleaf.org)
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * =============================================================================
+ */
+package org.thymeleaf.engine;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.thymeleaf.exceptions.TemplateProcessingException;
+import org.thymeleaf.util.IWritableCharSequence;
+
+
+/**
+ * <p>
+ *   CharSequence representing the output of a fragment being processed concurrently with the template it has
+ *   been inserted into.
+ * </p>
+ * <p>
+ *   When written to a {@link ConcurrentFragmentWriter}, the output of the fragment is not waited for, and is
+ *   instead deferred so that the writer can stitch it into the template output once it is ready. When written
+ *   to any other writer (or when its contents are accessed in any other way), the output of the fragment will
+ *   be waited for. If by then the executor has not yet started processing the fragment, the waiting thread will
+ *   process it itself, so that nested asynchronous fragments can never starve a bounded executor.
+ * </p>
+ *
+ * @author Daniel Fern&aacute;ndez
+ *
+ * @since 3.1.3
+ *
+ */
+final class ConcurrentProcessingCharSequence implements IWritableCharSequence {
+
+    private final FutureTask<String> task;
+
+
+
+    ConcurrentProcessingCharSequence(final FutureTask<String> task) {
+        super();
+        this.task = task;
+    }
+
+
+
+    boolean isDone() {
+        return this.task.isDone();
+    }
+
+
+    void cancel() {
+        this.task.cancel(false);
+    }
+
+
+    String getText() {
+
+        // If the executor has not started processing the fragment yet, this will process it in the current
+        // thread. Otherwise it will be a no-op, and we will simply wait for the result.
+        this.task.run();
+
+        try {
+            return this.task.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TemplateProcessingException(
+                    "Interrupted while waiting for the processing of an asynchronous fragment", e);
+        } catch (final CancellationException e) {
+            throw new TemplateProcessingException(
+                    "Processing of an asynchronous fragment was cancelled", e);
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new TemplateProcessingException(
+                    "An error happened during the processing of an asynchronous fragment", cause);
+        }
+
+    }
+
+
+
+
+    public void write(final Writer writer) throws IOException {
+        if (writer instanceof ConcurrentFragmentWriter) {
+            ((ConcurrentFragmentWriter) writer).defer(this);
+            return;
+        }
+        writer.write(getText());
+    }
+
+
+    public int length() {
+        return getText().length();
+    }
+
+
+    public char charAt(final int index) {
+        return getText().charAt(index);
+    }
+
+
+    public CharSequence subSequence(final int start, final int end) {
+        return getText().subSequence(start, end);
+    }
+
+
+    @Override
+    public String toString() {
+        return getText();
+    }
+
+}
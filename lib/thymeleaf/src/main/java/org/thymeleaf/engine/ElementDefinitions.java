@@ -25,9 +25,6 @@
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.thymeleaf.exceptions.ConfigurationException;
 import org.thymeleaf.processor.element.IElementProcessor;
@@ -637,10 +634,11 @@ public TextElementDefinition forCSSName(final char[] elementName, final int elem
 
 
     /*
-     * This repository class is thread-safe. The reason for this is that it not only contains the
-     * standard elements, but will also contain new instances of ElementDefinition created during processing (created
-     * when asking the repository for them when they do not exist yet). As any thread can create a new element,
-     * this has to be lock-protected.
+     * This repository class is thread-safe. The reason for this is that it not only contains the standard elements,
+     * but will also contain new instances of ElementDefinition created during processing (created when asking the
+     * repository for them when they do not exist yet). As any thread can create a new element, its contents are kept
+     * in immutable snapshots that are replaced (copy-on-write) when new names are added, so that lookups need no
+     * locking.
      */
     static final class ElementDefinitionRepository {
 
@@ -652,12 +650,8 @@ static final class ElementDefinitionRepository {
         private final List<String> standardRepositoryNames; // read-only, no sync needed
         private final List<ElementDefinition> standardRepository; // read-only, no sync needed
 
-        private final List<String> repositoryNames;  // read-write, sync will be needed
-        private final List<ElementDefinition> repository;  // read-write, sync will be needed
-
-        private final ReadWriteLock lock = new ReentrantReadWriteLock(true);
-        private final Lock readLock = this.lock.readLock();
-        private final Lock writeLock = this.lock.writeLock();
+        // read-write, but never modified once published: new names replace it with a new copy (copy-on-write)
+        private volatile NameRepositorySnapshot<ElementDefinition> repository;
 
 
         ElementDefinitionRepository(final TemplateMode templateMode, final Map<TemplateMode, Set<IElementProcessor>> elementProcessorsByTemplateMode) {
@@ -670,8 +664,7 @@ static final class ElementDefinitionRepository {
             this.standardRepositoryNames = (templateMode == TemplateMode.HTML ? new ArrayList<String>(150) : null);
             this.standardRepository = (templateMode == TemplateMode.HTML ? new ArrayList<ElementDefinition>(150) : null);
 
-            this.repositoryNames = new ArrayList<String>(150);
-            this.repository = new ArrayList<ElementDefinition>(150);
+            this.repository = new NameRepositorySnapshot<ElementDefinition>();
 
         }
 
@@ -695,34 +688,26 @@ ElementDefinition getElement(final char[] text, final int offset, final int len)
 
             /*
              * We did not find it in the repository of standard elements, so let's try in the read+write one,
-             * which does require synchronization through a readwrite lock.
+             * which is an immutable snapshot and does not need any synchronization either.
              */
 
-            this.readLock.lock();
-            try {
-
-                /*
-                 * First look for the element in the namespaced repository
-                 */
-                index = binarySearch(this.templateMode.isCaseSensitive(), this.repositoryNames, text, offset, len);
+            final NameRepositorySnapshot<ElementDefinition> repository = this.repository;
 
-                if (index >= 0) {
-                    return this.repository.get(index);
-                }
+            /*
+             * First look for the element in the namespaced repository
+             */
+            index = binarySearch(this.templateMode.isCaseSensitive(), repository.names, text, offset, len);
 
-            } finally {
-                this.readLock.unlock();
+            if (index >= 0) {
+                return repository.values.get(index);
             }
 
 
             /*
-             * NOT FOUND. We need to obtain a write lock and store the text
+             * NOT FOUND. We need to store the text, making sure no other thread is storing names at the same time
              */
-            this.writeLock.lock();
-            try {
+            synchronized (this) {
                 return storeElement(text, offset, len);
-            } finally {
-                this.writeLock.unlock();
             }
 
         }
@@ -746,34 +731,26 @@ ElementDefinition getElement(final String completeElementName) {
 
             /*
              * We did not find it in the repository of standard elements, so let's try in the read+write one,
-             * which does require synchronization through a readwrite lock.
+             * which is an immutable snapshot and does not need any synchronization either.
              */
 
-            this.readLock.lock();
-            try {
-
-                /*
-                 * First look for the element in the namespaced repository
-                 */
-                index = binarySearch(this.templateMode.isCaseSensitive(), this.repositoryNames, completeElementName);
+            final NameRepositorySnapshot<ElementDefinition> repository = this.repository;
 
-                if (index >= 0) {
-                    return this.repository.get(index);
-                }
+            /*
+             * First look for the element in the namespaced repository
+             */
+            index = binarySearch(this.templateMode.isCaseSensitive(), repository.names, completeElementName);
 
-            } finally {
-                this.readLock.unlock();
+            if (index >= 0) {
+                return repository.values.get(index);
             }
 
 
             /*
-             * NOT FOUND. We need to obtain a write lock and store the text
+             * NOT FOUND. We need to store the text, making sure no other thread is storing names at the same time
              */
-            this.writeLock.lock();
-            try {
+            synchronized (this) {
                 return storeElement(completeElementName);
-            } finally {
-                this.writeLock.unlock();
             }
 
         }
@@ -797,34 +774,26 @@ ElementDefinition getElement(final String prefix, final String elementName) {
 
             /*
              * We did not find it in the repository of standard elements, so let's try in the read+write one,
-             * which does require synchronization through a readwrite lock.
+             * which is an immutable snapshot and does not need any synchronization either.
              */
 
-            this.readLock.lock();
-            try {
+            final NameRepositorySnapshot<ElementDefinition> repository = this.repository;
 
-                /*
-                 * First look for the element in the namespaced repository
-                 */
-                index = binarySearch(this.templateMode.isCaseSensitive(), this.repositoryNames, prefix, elementName);
-
-                if (index >= 0) {
-                    return this.repository.get(index);
-                }
+            /*
+             * First look for the element in the namespaced repository
+             */
+            index = binarySearch(this.templateMode.isCaseSensitive(), repository.names, prefix, elementName);
 
-            } finally {
-                this.readLock.unlock();
+            if (index >= 0) {
+                return repository.values.get(index);
             }
 
 
             /*
-             * NOT FOUND. We need to obtain a write lock and store the text
+             * NOT FOUND. We need to store the text, making sure no other thread is storing names at the same time
              */
-            this.writeLock.lock();
-            try {
+            synchronized (this) {
                 return storeElement(prefix, elementName);
-            } finally {
-                this.writeLock.unlock();
             }
 
         }
@@ -832,10 +801,12 @@ ElementDefinition getElement(final String prefix, final String elementName) {
 
         private ElementDefinition storeElement(final char[] text, final int offset, final int len) {
 
-            int index = binarySearch(this.templateMode.isCaseSensitive(), this.repositoryNames, text, offset, len);
+            final NameRepositorySnapshot<ElementDefinition> repository = this.repository;
+
+            final int index = binarySearch(this.templateMode.isCaseSensitive(), repository.names, text, offset, len);
             if (index >= 0) {
                 // It was already added while we were waiting for the lock!
-                return this.repository.get(index);
+                return repository.values.get(index);
             }
 
             final Set<IElementProcessor> elementProcessors = this.elementProcessorsByTemplateMode.get(this.templateMode);
@@ -852,17 +823,8 @@ private ElementDefinition storeElement(final char[] text, final int offset, fina
                         buildTextElementDefinition(this.templateMode, ElementNames.forTextName(text, offset, len), elementProcessors);
             }
 
-            final String[] completeElementNames = elementDefinition.elementName.completeElementNames;
-
-            for (final String completeElementName : completeElementNames) {
-
-                index = binarySearch(this.templateMode.isCaseSensitive(), this.repositoryNames, completeElementName);
-
-                // binary Search returned (-(insertion point) - 1)
-                this.repositoryNames.add(((index + 1) * -1), completeElementName);
-                this.repository.add(((index + 1) * -1), elementDefinition);
-
-            }
+            // Publish a new copy of the repository containing the new names
+            this.repository = repository.with(this.templateMode.isCaseSensitive(), elementDefinition.elementName.completeElementNames, elementDefinition);
 
             return elementDefinition;
 
@@ -871,10 +833,12 @@ private ElementDefinition storeElement(final char[] text, final int offset, fina
 
         private ElementDefinition storeElement(final String text) {
 
-            int index = binarySearch(this.templateMode.isCaseSensitive(), this.repositoryNames, text);
+            final NameRepositorySnapshot<ElementDefinition> repository = this.repository;
+
+            final int index = binarySearch(this.templateMode.isCaseSensitive(), repository.names, text);
             if (index >= 0) {
                 // It was already added while we were waiting for the lock!
-                return this.repository.get(index);
+                return repository.values.get(index);
             }
 
             final Set<IElementProcessor> elementProcessors = this.elementProcessorsByTemplateMode.get(this.templateMode);
@@ -891,17 +855,8 @@ private ElementDefinition storeElement(final String text) {
                         buildTextElementDefinition(this.templateMode, ElementNames.forTextName(text), elementProcessors);
             }
 
-            final String[] completeElementNames = elementDefinition.elementName.completeElementNames;
-
-            for (final String completeElementName : completeElementNames) {
-
-                index = binarySearch(this.templateMode.isCaseSensitive(), this.repositoryNames, completeElementName);
-
-                // binary Search returned (-(insertion point) - 1)
-                this.repositoryNames.add(((index + 1) * -1), completeElementName);
-                this.repository.add(((index + 1) * -1), elementDefinition);
-
-            }
+            // Publish a new copy of the repository containing the new names
+            this.repository = repository.with(this.templateMode.isCaseSensitive(), elementDefinition.elementName.completeElementNames, elementDefinition);
 
             return elementDefinition;
 
@@ -910,10 +865,12 @@ private ElementDefinition storeElement(final String text) {
 
         private ElementDefinition storeElement(final String prefix, final String elementName) {
 
-            int index = binarySearch(this.templateMode.isCaseSensitive(), this.repositoryNames, prefix, elementName);
+            final NameRepositorySnapshot<ElementDefinition> repository = this.repository;
+
+            final int index = binarySearch(this.templateMode.isCaseSensitive(), repository.names, prefix, elementName);
             if (index >= 0) {
                 // It was already added while we were waiting for the lock!
-                return this.repository.get(index);
+                return repository.values.get(index);
             }
 
             final Set<IElementProcessor> elementProcessors = this.elementProcessorsByTemplateMode.get(this.templateMode);
@@ -930,17 +887,8 @@ private ElementDefinition storeElement(final String prefix, final String element
                         buildTextElementDefinition(this.templateMode, ElementNames.forTextName(prefix, elementName), elementProcessors);
             }
 
-            final String[] completeElementNames = elementDefinition.elementName.completeElementNames;
-
-            for (final String completeElementName : completeElementNames) {
-
-                index = binarySearch(this.templateMode.isCaseSensitive(), this.repositoryNames, completeElementName);
-
-                // binary Search returned (-(insertion point) - 1)
-                this.repositoryNames.add(((index + 1) * -1), completeElementName);
-                this.repository.add(((index + 1) * -1), elementDefinition);
-
-            }
+            // Publish a new copy of the repository containing the new names
+            this.repository = repository.with(this.templateMode.isCaseSensitive(), elementDefinition.elementName.completeElementNames, elementDefinition);
 
             return elementDefinition;
 
@@ -962,15 +910,10 @@ private ElementDefinition storeStandardElement(final ElementDefinition elementDe
                 // binary Search returned (-(insertion point) - 1)
                 this.standardRepositoryNames.add(((index + 1) * -1), completeElementName);
                 this.standardRepository.add(((index + 1) * -1), elementDefinition);
-
-                index = binarySearch(this.templateMode.isCaseSensitive(), this.repositoryNames, completeElementName);
-
-                // binary Search returned (-(insertion point) - 1)
-                this.repositoryNames.add(((index + 1) * -1), completeElementName);
-                this.repository.add(((index + 1) * -1), elementDefinition);
-
             }
 
+            this.repository = this.repository.with(this.templateMode.isCaseSensitive(), completeElementNames, elementDefinition);
+
             return elementDefinition;
 
         }
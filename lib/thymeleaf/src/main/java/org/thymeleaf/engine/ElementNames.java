@@ -19,11 +19,7 @@
  */
 package org.thymeleaf.engine;
 
-import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.thymeleaf.templatemode.TemplateMode;
 import org.thymeleaf.util.TextUtils;
@@ -503,20 +499,17 @@ private ElementNames() {
 
 
     /*
-     * This repository class is thread-safe, as it will contain new instances of ElementName created during
-     * processing (created when asking the repository for them when they do not exist yet). As any thread can
-     * create a new element, this has to be lock-protected.
+     * This repository class is thread-safe, as it will contain new instances of ElementName created during processing
+     * (created when asking the repository for them when they do not exist yet). As any thread can create a new
+     * element, its contents are kept in immutable snapshots that are replaced (copy-on-write) when new names are
+     * added, so that lookups need no locking.
      */
     static final class ElementNamesRepository {
 
         private final TemplateMode templateMode;
 
-        private final List<String> repositoryNames;  // read-write, sync will be needed
-        private final List<ElementName> repository;  // read-write, sync will be needed
-
-        private final ReadWriteLock lock = new ReentrantReadWriteLock(true);
-        private final Lock readLock = this.lock.readLock();
-        private final Lock writeLock = this.lock.writeLock();
+        // read-write, but never modified once published: new names replace it with a new copy (copy-on-write)
+        private volatile NameRepositorySnapshot<ElementName> repository;
 
 
         ElementNamesRepository(final TemplateMode templateMode) {
@@ -525,8 +518,7 @@ static final class ElementNamesRepository {
 
             this.templateMode = templateMode;
 
-            this.repositoryNames = new ArrayList<String>(500);
-            this.repository = new ArrayList<ElementName>(500);
+            this.repository = new NameRepositorySnapshot<ElementName>();
 
         }
 
@@ -535,31 +527,23 @@ ElementName getElement(final char[] text, final int offset, final int len) {
 
             int index;
 
-            this.readLock.lock();
-            try {
-
-                /*
-                 * First look for the element in the namespaced repository
-                 */
-                index = binarySearch(this.templateMode.isCaseSensitive(), this.repositoryNames, text, offset, len);
+            final NameRepositorySnapshot<ElementName> repository = this.repository;
 
-                if (index >= 0) {
-                    return this.repository.get(index);
-                }
+            /*
+             * First look for the element in the namespaced repository
+             */
+            index = binarySearch(this.templateMode.isCaseSensitive(), repository.names, text, offset, len);
 
-            } finally {
-                this.readLock.unlock();
+            if (index >= 0) {
+                return repository.values.get(index);
             }
 
 
             /*
-             * NOT FOUND. We need to obtain a write lock and store the text
+             * NOT FOUND. We need to store the text, making sure no other thread is storing names at the same time
              */
-            this.writeLock.lock();
-            try {
+            synchronized (this) {
                 return storeElement(text, offset, len);
-            } finally {
-                this.writeLock.unlock();
             }
 
         }
@@ -569,31 +553,23 @@ ElementName getElement(final String completeElementName) {
 
             int index;
 
-            this.readLock.lock();
-            try {
-
-                /*
-                 * First look for the element in the namespaced repository
-                 */
-                index = binarySearch(this.templateMode.isCaseSensitive(), this.repositoryNames, completeElementName);
+            final NameRepositorySnapshot<ElementName> repository = this.repository;
 
-                if (index >= 0) {
-                    return this.repository.get(index);
-                }
+            /*
+             * First look for the element in the namespaced repository
+             */
+            index = binarySearch(this.templateMode.isCaseSensitive(), repository.names, completeElementName);
 
-            } finally {
-                this.readLock.unlock();
+            if (index >= 0) {
+                return repository.values.get(index);
             }
 
 
             /*
-             * NOT FOUND. We need to obtain a write lock and store the text
+             * NOT FOUND. We need to store the text, making sure no other thread is storing names at the same time
              */
-            this.writeLock.lock();
-            try {
+            synchronized (this) {
                 return storeElement(completeElementName);
-            } finally {
-                this.writeLock.unlock();
             }
 
         }
@@ -603,31 +579,23 @@ ElementName getElement(final String prefix, final String elementName) {
 
             int index;
 
-            this.readLock.lock();
-            try {
+            final NameRepositorySnapshot<ElementName> repository = this.repository;
 
-                /*
-                 * First look for the element in the namespaced repository
-                 */
-                index = binarySearch(this.templateMode.isCaseSensitive(), this.repositoryNames, prefix, elementName);
-
-                if (index >= 0) {
-                    return this.repository.get(index);
-                }
+            /*
+             * First look for the element in the namespaced repository
+             */
+            index = binarySearch(this.templateMode.isCaseSensitive(), repository.names, prefix, elementName);
 
-            } finally {
-                this.readLock.unlock();
+            if (index >= 0) {
+                return repository.values.get(index);
             }
 
 
             /*
-             * NOT FOUND. We need to obtain a write lock and store the text
+             * NOT FOUND. We need to store the text, making sure no other thread is storing names at the same time
              */
-            this.writeLock.lock();
-            try {
+            synchronized (this) {
                 return storeElement(prefix, elementName);
-            } finally {
-                this.writeLock.unlock();
             }
 
         }
@@ -635,10 +603,12 @@ ElementName getElement(final String prefix, final String elementName) {
 
         private ElementName storeElement(final char[] text, final int offset, final int len) {
 
-            int index = binarySearch(this.templateMode.isCaseSensitive(), this.repositoryNames, text, offset, len);
+            final NameRepositorySnapshot<ElementName> repository = this.repository;
+
+            final int index = binarySearch(this.templateMode.isCaseSensitive(), repository.names, text, offset, len);
             if (index >= 0) {
                 // It was already added while we were waiting for the lock!
-                return this.repository.get(index);
+                return repository.values.get(index);
             }
 
             final ElementName name;
@@ -650,17 +620,8 @@ private ElementName storeElement(final char[] text, final int offset, final int
                 name = buildTextElementName(text, offset, len);
             }
 
-            final String[] completeElementNames = name.completeElementNames;
-
-            for (final String completeElementName : completeElementNames) {
-
-                index = binarySearch(this.templateMode.isCaseSensitive(), this.repositoryNames, completeElementName);
-
-                // binary Search returned (-(insertion point) - 1)
-                this.repositoryNames.add(((index + 1) * -1), completeElementName);
-                this.repository.add(((index + 1) * -1), name);
-
-            }
+            // Publish a new copy of the repository containing the new names
+            this.repository = repository.with(this.templateMode.isCaseSensitive(), name.completeElementNames, name);
 
             return name;
 
@@ -669,10 +630,12 @@ private ElementName storeElement(final char[] text, final int offset, final int
 
         private ElementName storeElement(final String elementName) {
 
-            int index = binarySearch(this.templateMode.isCaseSensitive(), this.repositoryNames, elementName);
+            final NameRepositorySnapshot<ElementName> repository = this.repository;
+
+            final int index = binarySearch(this.templateMode.isCaseSensitive(), repository.names, elementName);
             if (index >= 0) {
                 // It was already added while we were waiting for the lock!
-                return this.repository.get(index);
+                return repository.values.get(index);
             }
 
             final ElementName name;
@@ -684,17 +647,8 @@ private ElementName storeElement(final String elementName) {
                 name = buildTextElementName(elementName);
             }
 
-            final String[] completeElementNames = name.completeElementNames;
-
-            for (final String completeElementName : completeElementNames) {
-
-                index = binarySearch(this.templateMode.isCaseSensitive(), this.repositoryNames, completeElementName);
-
-                // binary Search returned (-(insertion point) - 1)
-                this.repositoryNames.add(((index + 1) * -1), completeElementName);
-                this.repository.add(((index + 1) * -1), name);
-
-            }
+            // Publish a new copy of the repository containing the new names
+            this.repository = repository.with(this.templateMode.isCaseSensitive(), name.completeElementNames, name);
 
             return name;
 
@@ -703,10 +657,12 @@ private ElementName storeElement(final String elementName) {
 
         private ElementName storeElement(final String prefix, final String elementName) {
 
-            int index = binarySearch(this.templateMode.isCaseSensitive(), this.repositoryNames, prefix, elementName);
+            final NameRepositorySnapshot<ElementName> repository = this.repository;
+
+            final int index = binarySearch(this.templateMode.isCaseSensitive(), repository.names, prefix, elementName);
             if (index >= 0) {
                 // It was already added while we were waiting for the lock!
-                return this.repository.get(index);
+                return repository.values.get(index);
             }
 
             final ElementName name;
@@ -718,17 +674,8 @@ private ElementName storeElement(final String prefix, final String elementName)
                 name = buildTextElementName(prefix, elementName);
             }
 
-            final String[] completeElementNames = name.completeElementNames;
-
-            for (final String completeElementName : completeElementNames) {
-
-                index = binarySearch(this.templateMode.isCaseSensitive(), this.repositoryNames, completeElementName);
-
-                // binary Search returned (-(insertion point) - 1)
-                this.repositoryNames.add(((index + 1) * -1), completeElementName);
-                this.repository.add(((index + 1) * -1), name);
-
-            }
+            // Publish a new copy of the repository containing the new names
+            this.repository = repository.with(this.templateMode.isCaseSensitive(), name.completeElementNames, name);
 
             return name;
 
@@ -42,6 +42,10 @@ final class ElementProcessorIterator {
 
     private int last = -1;
 
+    // While the tag being iterated has not been modified, its (immutable) processor plan is iterated directly.
+    // As processors are then executed in the plan's order, the ones visited are simply those up to 'last'.
+    private IElementProcessor[] plan = null;
+
     // These are the structures used to keep track of the iterated processors, as well as whether they have
     // been visited or not.
     private IElementProcessor[] processors = null;
@@ -70,6 +74,7 @@ final class ElementProcessorIterator {
 
 
     void reset() {
+        this.plan = null;
         this.size = 0;
         this.last = -1;
         this.currentTag = null;
@@ -92,9 +97,27 @@ IElementProcessor next(final AbstractProcessableElementTag tag) {
         this.lastWasRepeated = false;
 
         if (this.currentTag != tag) { // tags are immutable, so we will use them as a marker of being updated
-            recompute(tag);
-            this.currentTag = tag;
-            this.last = -1;
+            if (this.currentTag == null) {
+                // First time we see this tag, so nothing has been executed yet: its processor plan can be used as is
+                this.plan = tag.getAssociatedProcessors();
+                this.currentTag = tag;
+                this.last = -1;
+            } else {
+                materializePlan();
+                recompute(tag);
+                this.currentTag = tag;
+                this.last = -1;
+            }
+        }
+
+        if (this.plan != null) {
+            final int i = this.last + 1;
+            if (i < this.plan.length) {
+                this.last = i;
+                return this.plan[i];
+            }
+            this.last = this.plan.length;
+            return null;
         }
 
         if (this.processors == null) {
@@ -124,6 +147,10 @@ private IElementProcessor computeRepeatedLast(final AbstractProcessableElementTa
             throw new TemplateProcessingException("Cannot return last processor to be repeated: changes were made and processor recompute is needed!");
         }
 
+        if (this.plan != null) {
+            return this.plan[this.last];
+        }
+
         if (this.processors == null) {
             throw new TemplateProcessingException("Cannot return last processor to be repeated: no processors in tag!");
         }
@@ -145,7 +172,7 @@ void setLastToBeRepeated(final AbstractProcessableElementTag tag) {
             throw new TemplateProcessingException("Cannot set last processor to be repeated: processor recompute is needed!");
         }
 
-        if (this.processors == null) {
+        if ((this.plan == null && this.processors == null) || (this.plan != null && this.plan.length == 0)) {
             throw new TemplateProcessingException("Cannot set last processor to be repeated: no processors in tag!");
         }
 
@@ -154,6 +181,32 @@ void setLastToBeRepeated(final AbstractProcessableElementTag tag) {
     }
 
 
+    /*
+     * Converts the state of the iteration of a processor plan into the visited-tracking structures, needed once
+     * the tag is modified and processors have to be recomputed.
+     */
+    private void materializePlan() {
+
+        if (this.plan == null) {
+            return;
+        }
+
+        final int planSize = this.plan.length;
+        if (this.processors == null || planSize > this.processors.length) {
+            this.processors = new IElementProcessor[Math.max(planSize, 4)]; // minimum size = 4
+            this.visited = new boolean[Math.max(planSize, 4)]; // minimum size = 4
+        }
+        System.arraycopy(this.plan, 0, this.processors, 0, planSize);
+        final int visitedCount = Math.min(this.last + 1, planSize);
+        Arrays.fill(this.visited, 0, visitedCount, true);
+        Arrays.fill(this.visited, visitedCount, planSize, false);
+        this.size = planSize;
+
+        this.plan = null;
+
+    }
+
+
     private void recompute(final AbstractProcessableElementTag tag) {
 
         // Before recomputing the iterator itself, we have to make sure that the associated processors are up-to-date
@@ -265,6 +318,7 @@ private void recompute(final AbstractProcessableElementTag tag) {
 
     void resetAsCloneOf(final ElementProcessorIterator original) {
 
+        this.plan = original.plan; // plans are immutable, so they can be shared
         this.size = original.size;
         this.last = original.last;
         this.currentTag = original.currentTag;
@@ -0,0 +1,100 @@
+/*
+ * =============================================================================
+ *
+ *   Copyright (c) 2011-2022, The THYMELEAF team (http://www.thymeleaf.org)
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * =============================================================================
+ */
+package org.thymeleaf.engine;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import org.thymeleaf.util.IWritableCharSequence;
+
+
+/**
+ * <p>
+ *   Empty {@link CharSequence} that, when written to output, flushes the output written so far so that it can
+ *   reach its destination (e.g. the client) before the rest of the template is processed.
+ * </p>
+ * <p>
+ *   When a template is being processed in a throttled way, flush points also end the chunk of output being
+ *   produced (if any output has been produced for it yet), so that this chunk can be sent before any more
+ *   processing takes place.
+ * </p>
+ * <p>
+ *   Flush points have no effect when output is being buffered (e.g. when inserting fragments by means of
+ *   {@code th:include}, or when rendering views without producing partial output).
+ * </p>
+ * <p>
+ *   Meant for <strong>internal use only</strong>.
+ * </p>
+ *
+ * @author Daniel Fern&aacute;ndez
+ *
+ * @since 3.1.3
+ *
+ */
+public final class FlushPointCharSequence implements IWritableCharSequence {
+
+    public static final FlushPointCharSequence INSTANCE = new FlushPointCharSequence();
+
+
+
+    private FlushPointCharSequence() {
+        super();
+    }
+
+
+
+
+    static void flush(final Writer writer) throws IOException {
+        if (writer instanceof ThrottledTemplateWriter) {
+            ((ThrottledTemplateWriter) writer).flushPoint();
+        } else {
+            writer.flush();
+        }
+    }
+
+
+
+
+    public void write(final Writer writer) throws IOException {
+        flush(writer);
+    }
+
+
+    public int length() {
+        return 0;
+    }
+
+
+    public char charAt(final int index) {
+        throw new IndexOutOfBoundsException("Index out of range: " + index);
+    }
+
+
+    public CharSequence subSequence(final int start, final int end) {
+        return "".subSequence(start, end);
+    }
+
+
+    @Override
+    public String toString() {
+        return "";
+    }
+
+}
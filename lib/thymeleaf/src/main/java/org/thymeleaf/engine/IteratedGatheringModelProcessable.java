@@ -25,7 +25,9 @@
 import java.util.Enumeration;
 import java.util.Iterator;
 import java.util.Map;
-import java.util.stream.Stream;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.BaseStream;
 
 import org.thymeleaf.IEngineConfiguration;
 import org.thymeleaf.context.IEngineContext;
@@ -80,7 +82,14 @@ enum IterationWhiteSpaceHandling {ZERO_ITER, SINGLE_ITER, MULTIPLE_ITER}
         this.context = context;
         this.templateMode = context.getTemplateMode();
 
-        this.iterator = computeIteratedObjectIterator(iteratedObject);
+        /*
+         * Streams (including primitive ones) are iterated through their spliterator, as it can tell us their
+         * size (if known) without needing to consume them
+         */
+        final Object iterated =
+                (iteratedObject instanceof BaseStream<?,?>? ((BaseStream<?,?>) iteratedObject).spliterator() : iteratedObject);
+        final Iterator<?> iteratedObjectIterator = computeIteratedObjectIterator(iterated);
+        final Integer iteratedObjectSize = computeIteratedObjectSize(iterated);
 
         this.iterVariableName = iterVariableName;
 
@@ -93,7 +102,16 @@ enum IterationWhiteSpaceHandling {ZERO_ITER, SINGLE_ITER, MULTIPLE_ITER}
 
         this.iterStatusVariable = new IterationStatusVar();
         this.iterStatusVariable.index = 0;
-        this.iterStatusVariable.size = computeIteratedObjectSize(iteratedObject);
+        this.iterStatusVariable.size = iteratedObjectSize;
+
+        if (iteratedObjectSize == null && !(iteratedObjectIterator instanceof DataDrivenTemplateIterator)) {
+            // Size will only be computed if it is actually asked for, so that iteration can remain lazy otherwise
+            final BufferingIterator bufferingIterator = new BufferingIterator(iteratedObjectIterator);
+            this.iterator = bufferingIterator;
+            this.iterStatusVariable.sizeSource = bufferingIterator;
+        } else {
+            this.iterator = iteratedObjectIterator;
+        }
 
         this.precedingWhitespace = precedingWhitespace;
 
@@ -183,6 +201,7 @@ public boolean process() {
                         iterationWhiteSpaceHandling = IterationWhiteSpaceHandling.MULTIPLE_ITER;
                     } else {
                         iterationWhiteSpaceHandling = IterationWhiteSpaceHandling.SINGLE_ITER;
+                        this.iterStatusVariable.last = true;
                     }
                 } else {
                     iterationWhiteSpaceHandling = IterationWhiteSpaceHandling.ZERO_ITER;
@@ -195,7 +214,7 @@ public boolean process() {
              * Once the type of iteration we have has been determined, compute the models that will be used
              * for the first, the middle and the last iterations
              */
-            this.iterationModels = computeIterationModels(iterationWhiteSpaceHandling);
+            this.iterationModels = obtainIterationModels(iterationWhiteSpaceHandling);
 
         }
 
@@ -276,6 +295,14 @@ public boolean process() {
                  */
                 this.iterStatusVariable.current = this.iterator.next();
 
+                /*
+                 * Determine if this is the last iteration, in case we do not know the size. Data driven iterators
+                 * cannot tell, as not having more data at a moment does not mean no more data will come.
+                 */
+                if (this.dataDrivenIterator == null) {
+                    this.iterStatusVariable.last = !this.iterator.hasNext();
+                }
+
                 iterationIsNew = true;
 
             }
@@ -365,7 +392,16 @@ private boolean processIterationModel(final TemplateFlowController flowControlle
          * PERFORM THE EXECUTION on the gathered queue, which now does not live at the current exec level, but
          * at the previous one (we protected it by increasing execution level before)
          */
-        this.iterOffset += this.iterModel.process(getProcessorTemplateHandler(), this.iterOffset, flowController);
+        /*
+         * Note iteration models might have been computed for a previous execution of this same iteration, so the
+         * first tag they contain is not necessarily the one that was gathered now (which might have been modified
+         * by the processors executed on it before iteration started). We always process the one gathered now.
+         */
+        this.iterOffset +=
+                this.iterModel.process(
+                        getProcessorTemplateHandler(), this.iterOffset, flowController,
+                        (this.iterModel == this.iterationModels.modelFirst? 0 : this.iterationModels.openTagPos),
+                        getInnerModel().queue[0]);
 
         /*
          * Check if we have completed the iteration, returning false if not
@@ -426,6 +462,10 @@ private static Integer computeIteratedObjectSize(final Object iteratedObject) {
         if (iteratedObject instanceof Iterator<?>) {
             return null; // Cannot determine before actually iterating
         }
+        if (iteratedObject instanceof Spliterator<?>) {
+            final long size = ((Spliterator<?>) iteratedObject).getExactSizeIfKnown();
+            return (size >= 0L && size <= Integer.MAX_VALUE? Integer.valueOf((int) size) : null);
+        }
         return Integer.valueOf(1); // In this case, we will iterate the object as a collection of size 1
     }
 
@@ -492,8 +532,8 @@ public void remove() {
 
             };
         }
-        if (iteratedObject instanceof Stream<?>) {
-            return ((Stream<?>)iteratedObject).iterator();
+        if (iteratedObject instanceof Spliterator<?>) {
+            return Spliterators.iterator((Spliterator<?>)iteratedObject);
         }
         return Collections.singletonList(iteratedObject).iterator();
     }
@@ -504,6 +544,37 @@ public void remove() {
 
 
 
+    /*
+     * Obtains the iteration models, reusing the ones computed by a previous execution of this iteration if they were
+     * computed from the same gathered events. These are kept at the close tag of the iterated element, which for
+     * cached templates will be shared by every execution.
+     */
+    private IterationModels obtainIterationModels(final IterationWhiteSpaceHandling iterationWhiteSpaceHandling) {
+
+        if (iterationWhiteSpaceHandling != IterationWhiteSpaceHandling.MULTIPLE_ITER) {
+            // Computing these involves no copies of the gathered model
+            return computeIterationModels(iterationWhiteSpaceHandling);
+        }
+
+        final Model innerModel = getInnerModel();
+        final IEngineTemplateEvent lastEvent = innerModel.queue[innerModel.queueSize - 1];
+        if (!(lastEvent instanceof CloseElementTag)) {
+            return computeIterationModels(iterationWhiteSpaceHandling);
+        }
+
+        final CloseElementTag closeElementTag = (CloseElementTag) lastEvent;
+        IterationModels iterationModels = closeElementTag.iterationModels;
+        if (iterationModels == null || !iterationModels.isComputedFrom(innerModel, this.precedingWhitespace)) {
+            iterationModels = computeIterationModels(iterationWhiteSpaceHandling);
+            closeElementTag.iterationModels = iterationModels;
+        }
+        return iterationModels;
+
+    }
+
+
+
+
     /*
      * Internal-only method, meant to reshape the gathered model so that white space is adequately handled
      * during iteration. As a result, this method will produce different Model object for the first, the middle
@@ -530,7 +601,7 @@ private IterationModels computeIterationModels(final IterationWhiteSpaceHandling
          * If there is only one iteration, we need to perform no modifications at all, whichever the template mode
          */
         if (iterationWhiteSpaceHandling == IterationWhiteSpaceHandling.SINGLE_ITER) {
-            return new IterationModels(innerModel, innerModel, innerModel);
+            return new IterationModels(innerModel, this.precedingWhitespace, 0, innerModel, innerModel, innerModel);
         }
 
 
@@ -541,9 +612,9 @@ private IterationModels computeIterationModels(final IterationWhiteSpaceHandling
             if (this.precedingWhitespace != null) {
                 final Model modelWithWhiteSpace = new Model(innerModel);
                 modelWithWhiteSpace.insert(0, this.precedingWhitespace);
-                return new IterationModels(innerModel, modelWithWhiteSpace, modelWithWhiteSpace);
+                return new IterationModels(innerModel, this.precedingWhitespace, 1, innerModel, modelWithWhiteSpace, modelWithWhiteSpace);
             }
-            return new IterationModels(innerModel, innerModel, innerModel);
+            return new IterationModels(innerModel, this.precedingWhitespace, 0, innerModel, innerModel, innerModel);
         }
 
 
@@ -588,7 +659,7 @@ private IterationModels computeIterationModels(final IterationWhiteSpaceHandling
 
         if (innerModel.size() <= 2) {
             // This does only contain the template open + close events -- nothing to be done
-            return new IterationModels(innerModel, innerModel, innerModel);
+            return new IterationModels(innerModel, this.precedingWhitespace, 0, innerModel, innerModel, innerModel);
         }
 
         int firstBodyEventCutPoint = -1;
@@ -651,7 +722,7 @@ private IterationModels computeIterationModels(final IterationWhiteSpaceHandling
          */
         if (firstBodyEventCutPoint < 0 || lastBodyEventCutPoint < 0) {
             // We don't have the scenario required for performing the needed whitespace collapsing operation
-            return new IterationModels(innerModel, innerModel, innerModel);
+            return new IterationModels(innerModel, this.precedingWhitespace, 0, innerModel, innerModel, innerModel);
         }
 
 
@@ -675,7 +746,7 @@ private IterationModels computeIterationModels(final IterationWhiteSpaceHandling
             final Model modelLast = new Model(innerModel);
             modelLast.replace(1, textForLast);
 
-            return new IterationModels(modelFirst, modelMiddle, modelLast);
+            return new IterationModels(innerModel, this.precedingWhitespace, 0, modelFirst, modelMiddle, modelLast);
 
         }
 
@@ -697,7 +768,7 @@ private IterationModels computeIterationModels(final IterationWhiteSpaceHandling
             modelMiddle.replace(gatheredModelSize - 2, tailTextForFirstAndMiddle);
         }
 
-        return new IterationModels(modelFirst, modelMiddle, modelLast);
+        return new IterationModels(innerModel, this.precedingWhitespace, 0, modelFirst, modelMiddle, modelLast);
 
     }
 
@@ -705,17 +776,25 @@ private IterationModels computeIterationModels(final IterationWhiteSpaceHandling
 
 
 
-    private static final class IterationModels  {
+    static final class IterationModels  {
 
-        static IterationModels EMPTY = new IterationModels(null, null, null);
+        static IterationModels EMPTY = new IterationModels(null, null, 0, null, null, null);
 
+        final Model gatheredModel;
+        final Text precedingWhitespace;
+        final int openTagPos;
         final Model modelFirst;
         final Model modelMiddle;
         final Model modelLast;
         final boolean empty;
 
-        IterationModels(final Model modelFirst, final Model modelMiddle, final Model modelLast) {
+        IterationModels(
+                final Model gatheredModel, final Text precedingWhitespace, final int openTagPos,
+                final Model modelFirst, final Model modelMiddle, final Model modelLast) {
             super();
+            this.gatheredModel = gatheredModel;
+            this.precedingWhitespace = precedingWhitespace;
+            this.openTagPos = openTagPos;
             this.modelFirst = modelFirst;
             this.modelMiddle = modelMiddle;
             this.modelLast = modelLast;
@@ -726,6 +805,29 @@ boolean isEmpty() {
             return this.empty;
         }
 
+        /*
+         * Checks whether these models were computed from the same events (except the first tag, which will
+         * be replaced when processing) and preceding whitespace.
+         */
+        boolean isComputedFrom(final Model gatheredModel, final Text precedingWhitespace) {
+            if (!TemplateModelTexts.isSameText(this.precedingWhitespace, precedingWhitespace) ||
+                    this.gatheredModel.queueSize != gatheredModel.queueSize) {
+                return false;
+            }
+            final IEngineTemplateEvent[] queue = this.gatheredModel.queue;
+            final IEngineTemplateEvent[] otherQueue = gatheredModel.queue;
+            int n = gatheredModel.queueSize;
+            while (n-- > 1) {
+                // Texts of cached models are created each time these are processed (see TemplateModelTexts)
+                if (queue[n] != otherQueue[n] &&
+                        !(queue[n] instanceof Text && otherQueue[n] instanceof Text &&
+                                TemplateModelTexts.isSameText((Text) queue[n], (Text) otherQueue[n]))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
     }
 
 
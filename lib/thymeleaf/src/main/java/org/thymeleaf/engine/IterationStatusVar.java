@@ -31,6 +31,8 @@ public final class IterationStatusVar {
     int index;
     Integer size; // it can be null if we don't know the size of the iterated object beforehand!
     Object current;
+    boolean last; // only used when we don't know the size of the iterated object
+    BufferingIterator sizeSource; // used for computing the size (only if asked for) when not known beforehand
 
     IterationStatusVar() {
         super();
@@ -45,10 +47,14 @@ public int getCount() {
     }
 
     public boolean hasSize() {
-        return this.size != null;
+        return this.size != null || this.sizeSource != null;
     }
 
     public Integer getSize() {
+        if (this.size == null && this.sizeSource != null) {
+            // Computing the size requires reading (and buffering) all of the elements still to be iterated
+            this.size = Integer.valueOf(this.index + 1 + this.sizeSource.countRemaining());
+        }
         return this.size;
     }
 
@@ -70,7 +76,10 @@ public boolean isFirst() {
     }
 
     public boolean isLast() {
-        return (this.index == this.size - 1);
+        if (this.size == null) {
+            return this.last;
+        }
+        return (this.index == this.size.intValue() - 1);
     }
 
     @Override
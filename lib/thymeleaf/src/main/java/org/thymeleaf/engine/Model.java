@@ -100,7 +100,7 @@ final class Model implements IModel {
 
             final TemplateModel templateModel = (TemplateModel) model;
             this.queue = new IEngineTemplateEvent[templateModel.queue.length + INITIAL_EVENT_QUEUE_SIZE/2];
-            System.arraycopy(templateModel.queue, 1, this.queue, 0, templateModel.queue.length - 2);
+            templateModel.copyEvents(1, this.queue, 0, templateModel.queue.length - 2);
             this.queueSize = templateModel.queue.length - 2;
 
         } else {
@@ -251,7 +251,7 @@ private void doInsertTemplateModel(final int pos, final TemplateModel model) {
         // Make room for the new events (if necessary because pos < this.queueSize)
         System.arraycopy(this.queue, pos, this.queue, pos + insertionSize, this.queueSize - pos);
         // Copy the new events to their new position
-        System.arraycopy(model.queue, 1, this.queue, pos, insertionSize);
+        model.copyEvents(1, this.queue, pos, insertionSize);
         this.queueSize += insertionSize;
     }
 
@@ -305,6 +305,33 @@ int process(final ITemplateHandler handler, final int offset, final TemplateFlow
     }
 
 
+    /*
+     * Equivalent to process(handler, offset, controller), but handling the specified replacement event instead of
+     * the one at position replacedPos. This allows reusing a model whose contents only differ at one position.
+     */
+    int process(
+            final ITemplateHandler handler, final int offset, final TemplateFlowController controller,
+            final int replacedPos, final IEngineTemplateEvent replacement) {
+
+        if (this.queueSize == 0 || offset >= this.queueSize) {
+            return 0;
+        }
+
+        int i = offset;
+        while (i < this.queueSize && (controller == null || !controller.stopProcessing)) {
+            if (i == replacedPos) {
+                replacement.beHandled(handler);
+                i++;
+            } else {
+                this.queue[i++].beHandled(handler);
+            }
+        }
+
+        return (i - offset);
+
+    }
+
+
 
 
 
@@ -34,6 +34,7 @@
 import org.thymeleaf.model.ITemplateStart;
 import org.thymeleaf.model.IText;
 import org.thymeleaf.model.IXMLDeclaration;
+import org.thymeleaf.templatemode.TemplateMode;
 import org.thymeleaf.util.Validate;
 
 
@@ -63,7 +64,21 @@ public ModelBuilderTemplateHandler(final IEngineConfiguration configuration, fin
 
 
     public TemplateModel getModel() {
-        return new TemplateModel(this.configuration, this.templateData, this.events.toArray(new IEngineTemplateEvent[this.events.size()]));
+        final IEngineTemplateEvent[] queue = this.events.toArray(new IEngineTemplateEvent[this.events.size()]);
+        if (this.templateData.getValidity().isCacheable()) {
+            // Models that will be cached get their static event runs merged into pre-serialized texts (if so
+            // configured), and are then compacted (and get their texts packed, if so configured), so that they are
+            // faster to process and retain less memory while in cache
+            final TemplateMode templateMode = this.templateData.getTemplateMode();
+            final IEngineTemplateEvent[] coalesced =
+                    (this.configuration.isCoalesceTemplateModels() ?
+                            TemplateModelCoalescer.coalesce(this.configuration, templateMode, queue) : queue);
+            final IEngineTemplateEvent[] compacted = TemplateModelCompactor.compact(coalesced);
+            AbstractProcessableElementTag.computeAssociatedProcessors(compacted);
+            return new TemplateModel(
+                    this.configuration, this.templateData, compacted, this.configuration.isPackTemplateTexts());
+        }
+        return new TemplateModel(this.configuration, this.templateData, queue);
     }
 
 
@@ -0,0 +1,110 @@
+/*
+ * =============================================================================
+ *
+ *   Copyright (c) 2011-2022, The THYMELEAF team (http://www.thymeleaf.org)
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * =============================================================================
+ */
+package org.thymeleaf.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.thymeleaf.util.TextUtils;
+
+/*
+ * Immutable snapshot of the names (sorted) and their associated values contained in one of the element/attribute
+ * name or definition repositories. Repositories never modify a snapshot once published: adding new names creates
+ * a new copy of the snapshot that replaces the previous one (copy-on-write), so that looking up names only
+ * requires reading a volatile reference, without any locking nor allocation.
+ *
+ * @author Daniel Fernandez
+ * @since 3.1.3
+ *
+ */
+final class NameRepositorySnapshot<T> {
+
+    final List<String> names;
+    final List<T> values;
+
+
+
+    NameRepositorySnapshot() {
+        this(new ArrayList<String>(0), new ArrayList<T>(0));
+    }
+
+
+    private NameRepositorySnapshot(final List<String> names, final List<T> values) {
+        super();
+        this.names = names;
+        this.values = values;
+    }
+
+
+
+    NameRepositorySnapshot<T> with(final boolean caseSensitive, final String[] newNames, final T value) {
+
+        final List<String> newRepositoryNames = new ArrayList<String>(this.names.size() + newNames.length);
+        final List<T> newRepositoryValues = new ArrayList<T>(this.values.size() + newNames.length);
+        newRepositoryNames.addAll(this.names);
+        newRepositoryValues.addAll(this.values);
+
+        int index;
+        for (final String newName : newNames) {
+
+            index = binarySearch(caseSensitive, newRepositoryNames, newName);
+
+            // binary Search returned (-(insertion point) - 1)
+            newRepositoryNames.add(((index + 1) * -1), newName);
+            newRepositoryValues.add(((index + 1) * -1), value);
+
+        }
+
+        return new NameRepositorySnapshot<T>(newRepositoryNames, newRepositoryValues);
+
+    }
+
+
+    private static int binarySearch(final boolean caseSensitive, final List<String> values, final String text) {
+
+        int low = 0;
+        int high = values.size() - 1;
+
+        int mid, cmp;
+        String midVal;
+
+        while (low <= high) {
+
+            mid = (low + high) >>> 1;
+            midVal = values.get(mid);
+
+            cmp = TextUtils.compareTo(caseSensitive, midVal, text);
+
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                // Found!!
+                return mid;
+            }
+
+        }
+
+        return -(low + 1);  // Not Found!! We return (-(insertion point) - 1), to guarantee all non-founds are < 0
+
+    }
+
+}
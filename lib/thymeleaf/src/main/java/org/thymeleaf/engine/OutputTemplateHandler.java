@@ -31,6 +31,7 @@
 import org.thymeleaf.model.IStandaloneElementTag;
 import org.thymeleaf.model.IText;
 import org.thymeleaf.model.IXMLDeclaration;
+import org.thymeleaf.templatemode.TemplateMode;
 
 
 /**
@@ -43,6 +44,7 @@ public final class OutputTemplateHandler extends AbstractTemplateHandler {
 
 
     private final Writer writer;
+    private final boolean flushAfterHead;
 
 
 
@@ -54,11 +56,27 @@ public final class OutputTemplateHandler extends AbstractTemplateHandler {
      * @param writer the writer to which output will be written.
      */
     public OutputTemplateHandler(final Writer writer) {
+        this(writer, false);
+    }
+
+
+    /**
+     * <p>
+     *   Creates a new instance of this handler.
+     * </p>
+     *
+     * @param writer the writer to which output will be written.
+     * @param flushAfterHead whether output should be flushed after writing the {@code </head>} close tag
+     *                       of HTML templates.
+     * @since 3.1.3
+     */
+    public OutputTemplateHandler(final Writer writer, final boolean flushAfterHead) {
         super();
         if (writer == null) {
             throw new IllegalArgumentException("Writer cannot be null");
         }
         this.writer = writer;
+        this.flushAfterHead = flushAfterHead;
     }
 
 
@@ -157,6 +175,9 @@ public void handleCloseElement(final ICloseElementTag closeElementTag) {
 
         try {
             closeElementTag.write(this.writer);
+            if (this.flushAfterHead && isHeadCloseTag(closeElementTag)) {
+                FlushPointCharSequence.flush(this.writer);
+            }
         } catch (final Exception e) {
             throw new TemplateOutputException(
                     "An error happened during template rendering",
@@ -228,6 +249,12 @@ public void handleProcessingInstruction(final IProcessingInstruction processingI
     }
 
 
-    
-    
-}
\ No newline at end of file
+
+
+    private static boolean isHeadCloseTag(final ICloseElementTag closeElementTag) {
+        return closeElementTag.getTemplateMode() == TemplateMode.HTML &&
+                "head".equalsIgnoreCase(closeElementTag.getElementCompleteName());
+    }
+
+
+}
@@ -200,6 +200,11 @@ public void setNext(final ITemplateHandler next) {
     @Override
     public void setContext(final ITemplateContext context) {
 
+        // Handlers can be reused (see ProcessorTemplateHandlerPool), in which case the structures that only depend on
+        // the configuration and the template mode do not need to be computed again
+        final IEngineConfiguration previousConfiguration = this.configuration;
+        final TemplateMode previousTemplateMode = this.templateMode;
+
         this.context = context;
         Validate.notNull(this.context, "Context cannot be null");
         Validate.notNull(this.context.getTemplateMode(), "Template Mode returned by context cannot be null");
@@ -224,10 +229,25 @@ public void setContext(final ITemplateContext context) {
             this.engineContext = null;
         }
 
+        final boolean reused =
+                (this.modelController != null &&
+                        previousConfiguration == this.configuration && previousTemplateMode == this.templateMode);
+
         // Instance the gatherer
-        this.modelController = new TemplateModelController(this.configuration, this.templateMode, this, this.engineContext);
+        if (reused) {
+            this.modelController.reset(this.engineContext);
+        } else {
+            this.modelController = new TemplateModelController(this.configuration, this.templateMode, this, this.engineContext);
+        }
         this.modelController.setTemplateFlowController(this.flowController); // Might have been already initialized or not
-        this.decreaseContextLevelProcessable = new DecreaseContextLevelProcessable(this.engineContext, this.flowController);
+        // Only needed if throttled (if the flow controller is set afterwards, it will be created then)
+        this.decreaseContextLevelProcessable =
+                (this.throttleEngine ? new DecreaseContextLevelProcessable(this.engineContext, this.flowController) : null);
+
+        if (reused) {
+            // Processor arrays were already initialized for this configuration and template mode
+            return;
+        }
 
         // Obtain all processor sets and compute sizes
         final Set<ITemplateBoundariesProcessor> templateBoundariesProcessorSet = this.configuration.getTemplateBoundariesProcessors(this.templateMode);
@@ -259,6 +279,40 @@ public void setContext(final ITemplateContext context) {
 
 
 
+    /*
+     * Drops every reference to the objects used during the last execution of this handler (contexts, next handler,
+     * gathered models...) so that it can be kept in a pool for being reused without retaining them. The handler will
+     * be reinitialized at the next call to setContext(...).
+     */
+    void release() {
+        this.next = null;
+        this.context = null;
+        this.engineContext = null;
+        this.flowController = null;
+        this.throttleEngine = false;
+        this.initialContextLevel = null;
+        this.currentGatheringModel = null;
+        this.pendingProcessings = null;
+        this.pendingProcessingsSize = 0;
+        this.decreaseContextLevelProcessable = null;
+        if (this.modelController != null) {
+            this.modelController.reset(null);
+        }
+        // Structure handlers are reset before being used, but they still keep whatever the last processor set
+        this.elementTagStructureHandler.reset();
+        this.elementModelStructureHandler.reset();
+        this.templateBoundariesStructureHandler.reset();
+        this.cdataSectionStructureHandler.reset();
+        this.commentStructureHandler.reset();
+        this.docTypeStructureHandler.reset();
+        this.processingInstructionStructureHandler.reset();
+        this.textStructureHandler.reset();
+        this.xmlDeclarationStructureHandler.reset();
+    }
+
+
+
+
     public void setFlowController(final TemplateFlowController flowController) {
         this.flowController = flowController;
         this.throttleEngine = (this.flowController != null);
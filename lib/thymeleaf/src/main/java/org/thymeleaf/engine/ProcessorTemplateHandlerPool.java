@@ -0,0 +1,93 @@
+/*
+ * =============================================================================
+ *
+ *   Copyright (c) 2011-2022, The THYMELEAF team (http://www.thymeleaf.org)
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * =============================================================================
+ */
+package org.thymeleaf.engine;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+
+/**
+ * <p>
+ *   Bounded pool of reusable {@link ProcessorTemplateHandler} objects, so that the processor handler needed for
+ *   each execution of a template (and fragment), together with its structure handlers, its model controller and
+ *   its processor arrays, does not need to be created and initialized again every time.
+ * </p>
+ * <p>
+ *   Handlers are not bound to threads: they are acquired for a single execution and released afterwards, so
+ *   nested executions (e.g. fragment insertion) simply use different handlers. The pool never blocks: if no
+ *   handler is available a new one is created, and if the pool is full when releasing, the handler is simply
+ *   discarded. No locks nor thread-locals are used, so it is safe to be used from virtual threads.
+ * </p>
+ * <p>
+ *   Handlers used for throttled processing, or whose execution fails, are never returned to the pool.
+ * </p>
+ * <p>
+ *   Objects of this class are thread-safe.
+ * </p>
+ *
+ * @author Daniel Fern&aacute;ndez
+ *
+ * @since 3.1.3
+ *
+ */
+final class ProcessorTemplateHandlerPool {
+
+    private static final int DEFAULT_POOL_SIZE = Math.min(64, Runtime.getRuntime().availableProcessors() * 4);
+
+    private final AtomicReferenceArray<ProcessorTemplateHandler> handlers;
+
+
+
+    ProcessorTemplateHandlerPool() {
+        this(DEFAULT_POOL_SIZE);
+    }
+
+
+    ProcessorTemplateHandlerPool(final int poolSize) {
+        super();
+        this.handlers = new AtomicReferenceArray<ProcessorTemplateHandler>(poolSize);
+    }
+
+
+
+    ProcessorTemplateHandler acquire() {
+        final int poolSize = this.handlers.length();
+        for (int i = 0; i < poolSize; i++) {
+            final ProcessorTemplateHandler handler = this.handlers.get(i);
+            if (handler != null && this.handlers.compareAndSet(i, handler, null)) {
+                return handler;
+            }
+        }
+        return new ProcessorTemplateHandler();
+    }
+
+
+    void release(final ProcessorTemplateHandler handler) {
+        // Drop any references to the objects used in the last execution before pooling the handler
+        handler.release();
+        final int poolSize = this.handlers.length();
+        for (int i = 0; i < poolSize; i++) {
+            if (this.handlers.get(i) == null && this.handlers.compareAndSet(i, null, handler)) {
+                return;
+            }
+        }
+        // Pool is full, the handler will simply be discarded
+    }
+
+}
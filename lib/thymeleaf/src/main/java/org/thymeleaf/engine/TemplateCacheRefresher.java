@@ -0,0 +1,194 @@
+/*
+ * =============================================================================
+ *
+ *   Copyright (c) 2011-2022, The THYMELEAF team (http://www.thymeleaf.org)
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * =============================================================================
+ */
+package org.thymeleaf.engine;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.cache.TemplateCacheKey;
+import org.thymeleaf.util.LoggingUtils;
+
+
+/**
+ * <p>
+ *   Performs the background refresh of template cache entries whose validity asks for it (see
+ *   {@link org.thymeleaf.cache.IRefreshableCacheEntryValidity}), making sure there is at most one
+ *   refresh in flight for each {@link TemplateCacheKey}.
+ * </p>
+ * <p>
+ *   Refreshes are executed by the configured {@link Executor} or, if none has been configured, by a small
+ *   pool of daemon threads created the first time a refresh is needed. If a refresh fails, the cached entry
+ *   is kept (until it stops being valid) and the refresh will be retried the next time the entry is used.
+ * </p>
+ * <p>
+ *   Objects of this class are thread-safe.
+ * </p>
+ *
+ * @author Daniel Fern&aacute;ndez
+ *
+ * @since 3.1.3
+ *
+ */
+final class TemplateCacheRefresher {
+
+    private static final Logger logger = LoggerFactory.getLogger(TemplateCacheRefresher.class);
+
+    private static final int DEFAULT_EXECUTOR_THREADS = 2;
+    private static final long DEFAULT_EXECUTOR_KEEP_ALIVE = 60000L;
+
+    private final TemplateManager templateManager;
+    private final Executor configuredExecutor; // might be null! (= use default executor)
+    private volatile Executor defaultExecutor;
+    private final Set<TemplateCacheKey> inFlightRefreshes;
+    private final AtomicLong refreshCount;
+
+
+
+    TemplateCacheRefresher(final TemplateManager templateManager, final Executor executor) {
+        super();
+        this.templateManager = templateManager;
+        this.configuredExecutor = executor;
+        this.defaultExecutor = null;
+        this.inFlightRefreshes =
+                Collections.newSetFromMap(new ConcurrentHashMap<TemplateCacheKey, Boolean>(16, 0.75f, 4));
+        this.refreshCount = new AtomicLong(0L);
+    }
+
+
+
+
+    /*
+     * Schedules the refresh of the specified key (currently cached with the specified model), unless a refresh
+     * for it is already in flight.
+     */
+    void refresh(final TemplateCacheKey key, final TemplateModel cached) {
+
+        if (!this.inFlightRefreshes.add(key)) {
+            return;
+        }
+
+        try {
+            getExecutor().execute(new RefreshTask(key, cached));
+        } catch (final RejectedExecutionException e) {
+            this.inFlightRefreshes.remove(key);
+            logger.debug(
+                    "[THYMELEAF][{}] Background refresh of template \"{}\" could not be scheduled. Cached version " +
+                    "will be used until it expires.", new Object[] {TemplateEngine.threadIndex(), LoggingUtils.loggifyTemplateName(key.getTemplate())});
+        }
+
+    }
+
+
+    long getRefreshCount() {
+        return this.refreshCount.get();
+    }
+
+
+    private Executor getExecutor() {
+        if (this.configuredExecutor != null) {
+            return this.configuredExecutor;
+        }
+        Executor executor = this.defaultExecutor;
+        if (executor == null) {
+            synchronized (this) {
+                executor = this.defaultExecutor;
+                if (executor == null) {
+                    executor = createDefaultExecutor();
+                    this.defaultExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+
+    private static Executor createDefaultExecutor() {
+        final ThreadPoolExecutor executor =
+                new ThreadPoolExecutor(
+                        DEFAULT_EXECUTOR_THREADS, DEFAULT_EXECUTOR_THREADS,
+                        DEFAULT_EXECUTOR_KEEP_ALIVE, TimeUnit.MILLISECONDS,
+                        new LinkedBlockingQueue<Runnable>(), new RefreshThreadFactory());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+
+
+
+    private final class RefreshTask implements Runnable {
+
+        private final TemplateCacheKey key;
+        private final TemplateModel cached;
+
+        RefreshTask(final TemplateCacheKey key, final TemplateModel cached) {
+            super();
+            this.key = key;
+            this.cached = cached;
+        }
+
+        public void run() {
+            try {
+                templateManager.refreshCachedTemplate(this.key, this.cached);
+                refreshCount.incrementAndGet();
+            } catch (final Exception e) {
+                logger.warn(
+                        String.format(
+                                "[THYMELEAF][%s] Background refresh of template \"%s\" failed. Cached version will be " +
+                                "used until it expires.", TemplateEngine.threadIndex(), LoggingUtils.loggifyTemplateName(this.key.getTemplate())), e);
+            } finally {
+                inFlightRefreshes.remove(this.key);
+            }
+        }
+
+    }
+
+
+
+
+    private static final class RefreshThreadFactory implements ThreadFactory {
+
+        private static final AtomicInteger THREAD_COUNT = new AtomicInteger(0);
+
+        RefreshThreadFactory() {
+            super();
+        }
+
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(runnable, "thymeleaf-template-refresh-" + THREAD_COUNT.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+
+    }
+
+
+}
@@ -0,0 +1,184 @@
+/*
+ * =============================================================================
+ *
+ *   Copyright (c) 2011-2022, The THYMELEAF team (http://www.thymeleaf.org)
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * =============================================================================
+ */
+package org.thymeleaf.engine;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.thymeleaf.IEngineConfiguration;
+import org.thymeleaf.processor.templateboundaries.ITemplateBoundariesProcessor;
+import org.thymeleaf.standard.processor.StandardInlineEnablementTemplateBoundariesProcessor;
+import org.thymeleaf.templatemode.TemplateMode;
+import org.thymeleaf.util.FastStringWriter;
+import org.thymeleaf.util.ProcessorConfigurationUtils;
+
+
+/**
+ * <p>
+ *   Compilation tier for <em>hot</em> cached templates: once a cached {@link TemplateModel} has been processed
+ *   as a whole template a specific number of times, it is compiled into a {@link CompiledTemplate} that will be
+ *   used instead of it for its subsequent executions.
+ * </p>
+ * <p>
+ *   Compiling a model means merging every run of static events in it into pre-serialized texts (see
+ *   {@link TemplateModelCoalescer}), this time including its root level, which cannot be merged at parse time
+ *   because cached models can also be inserted as fragments. Processable events are kept, and the compiled model
+ *   is processed through the normal (interpreted) processing chain. If the resulting model is completely static
+ *   and no template boundaries processors other than the standard one are configured, its whole output is computed at compile time and
+ *   will be written directly, without any processing at all.
+ * </p>
+ * <p>
+ *   Any model that cannot be compiled (or whose compilation fails) is simply processed as usual.
+ * </p>
+ * <p>
+ *   Objects of this class are thread-safe.
+ * </p>
+ *
+ * @author Daniel Fern&aacute;ndez
+ *
+ * @since 3.1.3
+ *
+ */
+final class TemplateCompiler {
+
+    private static final Logger logger = LoggerFactory.getLogger(TemplateCompiler.class);
+
+    private final IEngineConfiguration configuration;
+    private final int threshold;
+    private final AtomicLong compiledCount;
+
+
+
+    TemplateCompiler(final IEngineConfiguration configuration, final int threshold) {
+        super();
+        this.configuration = configuration;
+        this.threshold = threshold;
+        this.compiledCount = new AtomicLong(0L);
+    }
+
+
+
+    long getCompiledCount() {
+        return this.compiledCount.get();
+    }
+
+
+
+    /*
+     * Registers an execution of the specified (cached) model and returns its compiled form, or null if it is not
+     * compiled (yet). Only the execution reaching the threshold performs the compilation, the rest of concurrent
+     * executions simply go on processing the model as usual.
+     */
+    CompiledTemplate compiledFor(final TemplateModel templateModel) {
+
+        final CompiledTemplate compiled = templateModel.compiledTemplate;
+        if (compiled != null) {
+            return compiled;
+        }
+        if (templateModel.registerExecution() != this.threshold) {
+            return null;
+        }
+
+        CompiledTemplate compiledTemplate;
+        try {
+            compiledTemplate = compile(templateModel);
+            this.compiledCount.incrementAndGet();
+        } catch (final RuntimeException e) {
+            logger.warn(
+                    "[THYMELEAF] Template \"{}\" could not be compiled and will be processed normally: {}",
+                    templateModel.getTemplateData().getTemplate(), e.getMessage());
+            compiledTemplate = new CompiledTemplate(templateModel, null);
+        }
+        templateModel.compiledTemplate = compiledTemplate;
+        return compiledTemplate;
+
+    }
+
+
+
+
+    private CompiledTemplate compile(final TemplateModel templateModel) {
+
+        final TemplateMode templateMode = templateModel.getTemplateMode();
+
+        final IEngineTemplateEvent[] events = templateModel.events();
+        final IEngineTemplateEvent[] queue = TemplateModelCoalescer.coalesce(this.configuration, templateMode, events, true);
+        if (queue == events) {
+            // Nothing to be merged, so no compilation is possible
+            return new CompiledTemplate(templateModel, null);
+        }
+
+        final TemplateModel compiledModel =
+                new TemplateModel(
+                        templateModel.configuration, templateModel.templateData, queue,
+                        templateModel.configuration.isPackTemplateTexts());
+        // Compiled models replace cached ones, so their texts can cache their encoded form too
+        compiledModel.cacheEncodedTexts();
+
+        // The standard template boundaries processor only enables inlining, which static templates do not need
+        for (final ITemplateBoundariesProcessor processor : this.configuration.getTemplateBoundariesProcessors(templateMode)) {
+            if (ProcessorConfigurationUtils.unwrap(processor).getClass() != StandardInlineEnablementTemplateBoundariesProcessor.class) {
+                return new CompiledTemplate(compiledModel, null);
+            }
+        }
+
+        // The events between TemplateStart and TemplateEnd will all be texts if the template is completely static.
+        // Coalescing is applicable at this point, so texts not containing inlining syntax will not be processed.
+        final FastStringWriter writer = new FastStringWriter(256);
+        for (int i = 1; i < queue.length - 1; i++) {
+            if (!(queue[i] instanceof Text)) {
+                return new CompiledTemplate(compiledModel, null);
+            }
+            final String text = ((Text) queue[i]).getText();
+            if (text.indexOf('[') >= 0) {
+                return new CompiledTemplate(compiledModel, null);
+            }
+            writer.write(text);
+        }
+
+        return new CompiledTemplate(compiledModel, writer.toString());
+
+    }
+
+
+
+
+    static final class CompiledTemplate {
+
+        final TemplateModel templateModel;
+        final String output; // will be null if the template is not completely static
+        final Text outputText; // same as output, but able to cache its encoded form for byte-oriented output
+
+        CompiledTemplate(final TemplateModel templateModel, final String output) {
+            super();
+            this.templateModel = templateModel;
+            this.output = output;
+            if (output != null) {
+                this.outputText = new Text(output);
+                this.outputText.cacheEncoded = true;
+            } else {
+                this.outputText = null;
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,174 @@
+/*
+ * =============================================================================
+ *
+ *   Copyright (c) 2011-2022, The THYMELEAF team (http://www.thymeleaf.org)
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * =============================================================================
+ */
+package org.thymeleaf.engine;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.thymeleaf.cache.TemplateCacheKey;
+
+
+
+
+/**
+ * <p>
+ *   Index of the template cache keys put into the template cache, organized by the names of the templates
+ *   each cached model depends on, so that all the entries affected by a change in a template can be
+ *   invalidated without scanning the whole template cache.
+ * </p>
+ * <p>
+ *   A cached model depends on the template it was parsed from and, if it is a fragment inserted into another
+ *   template (by means of {@code th:insert}, {@code th:replace}, fragment expressions, etc.), also on its
+ *   <em>owner</em> template, i.e. the template the fragment was inserted into (which might have been used
+ *   for resolving it). So for example, when a fragment of a template called {@code footer} is inserted into a
+ *   template called {@code main}, the resulting cache entry will be indexed under both {@code footer}
+ *   and {@code main}.
+ * </p>
+ * <p>
+ *   Keys are not removed from the index when their entries are evicted by the cache itself (or when their soft
+ *   references are cleared), so the index is <em>pruned</em> of the keys no longer in the cache every time the
+ *   number of keys indexed doubles the number of keys that remained after the previous pruning.
+ * </p>
+ * <p>
+ *   Objects of this class are thread-safe, but the {@link TemplateManager} is in charge of making sure keys are
+ *   indexed after being put into the cache, and that no keys are indexed while others are being removed or
+ *   pruned, so that no entries can remain in the cache without being indexed.
+ * </p>
+ *
+ * @author Daniel Fern&aacute;ndez
+ *
+ * @since 3.1.3
+ *
+ */
+final class TemplateDependencyIndex {
+
+    private static final int MIN_PRUNING_THRESHOLD = 256;
+
+    private final ConcurrentHashMap<String,Set<TemplateCacheKey>> keysByTemplate;
+    private final AtomicInteger size; // number of different keys indexed
+    private volatile int pruningThreshold;
+
+
+
+    TemplateDependencyIndex() {
+        super();
+        this.keysByTemplate = new ConcurrentHashMap<String, Set<TemplateCacheKey>>(64, 0.75f, 16);
+        this.size = new AtomicInteger(0);
+        this.pruningThreshold = MIN_PRUNING_THRESHOLD;
+    }
+
+
+
+    void add(final TemplateCacheKey cacheKey) {
+        if (keysFor(cacheKey.getTemplate()).add(cacheKey)) {
+            this.size.incrementAndGet();
+        }
+        if (cacheKey.getOwnerTemplate() != null) {
+            keysFor(cacheKey.getOwnerTemplate()).add(cacheKey);
+        }
+    }
+
+
+    int size() {
+        return this.size.get();
+    }
+
+
+    boolean needsPruning() {
+        return this.size.get() > this.pruningThreshold;
+    }
+
+
+    /*
+     * Removes from the index all keys not contained in the specified set (normally the key set of the cache).
+     */
+    void prune(final Set<TemplateCacheKey> cachedKeys) {
+        final Iterator<Map.Entry<String,Set<TemplateCacheKey>>> entries = this.keysByTemplate.entrySet().iterator();
+        while (entries.hasNext()) {
+            final Map.Entry<String,Set<TemplateCacheKey>> entry = entries.next();
+            final Iterator<TemplateCacheKey> keys = entry.getValue().iterator();
+            while (keys.hasNext()) {
+                final TemplateCacheKey key = keys.next();
+                if (!cachedKeys.contains(key)) {
+                    keys.remove();
+                    if (entry.getKey().equals(key.getTemplate())) {
+                        this.size.decrementAndGet();
+                    }
+                }
+            }
+            if (entry.getValue().isEmpty()) {
+                entries.remove();
+            }
+        }
+        this.pruningThreshold = Math.max(MIN_PRUNING_THRESHOLD, 2 * this.size.get());
+    }
+
+
+    /*
+     * Removes (and returns) all keys depending on the specified template, both from the index of the template
+     * itself and from the indexes of the other templates they also depend on.
+     */
+    Set<TemplateCacheKey> remove(final String template) {
+        final Set<TemplateCacheKey> keys = this.keysByTemplate.remove(template);
+        if (keys == null) {
+            return Collections.emptySet();
+        }
+        for (final TemplateCacheKey key : keys) {
+            final boolean ownTemplate = template.equals(key.getTemplate());
+            if (ownTemplate) {
+                this.size.decrementAndGet();
+            }
+            final String otherTemplate = (ownTemplate ? key.getOwnerTemplate() : key.getTemplate());
+            if (otherTemplate != null) {
+                final Set<TemplateCacheKey> otherKeys = this.keysByTemplate.get(otherTemplate);
+                if (otherKeys != null && otherKeys.remove(key) && !ownTemplate) {
+                    this.size.decrementAndGet();
+                }
+            }
+        }
+        return keys;
+    }
+
+
+    void clear() {
+        this.keysByTemplate.clear();
+        this.size.set(0);
+        this.pruningThreshold = MIN_PRUNING_THRESHOLD;
+    }
+
+
+    private Set<TemplateCacheKey> keysFor(final String template) {
+        Set<TemplateCacheKey> keys = this.keysByTemplate.get(template);
+        if (keys == null) {
+            final Set<TemplateCacheKey> newKeys =
+                    Collections.newSetFromMap(new ConcurrentHashMap<TemplateCacheKey, Boolean>(4, 0.75f, 2));
+            keys = this.keysByTemplate.putIfAbsent(template, newKeys);
+            if (keys == null) {
+                keys = newKeys;
+            }
+        }
+        return keys;
+    }
+
+}
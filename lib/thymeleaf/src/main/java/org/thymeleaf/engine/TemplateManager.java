@@ -19,12 +19,27 @@
  */
 package org.thymeleaf.engine;
 
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Writer;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -35,12 +50,15 @@
 import org.thymeleaf.cache.ICache;
 import org.thymeleaf.cache.ICacheEntryValidity;
 import org.thymeleaf.cache.ICacheManager;
+import org.thymeleaf.cache.IRefreshableCacheEntryValidity;
 import org.thymeleaf.cache.NonCacheableCacheEntryValidity;
 import org.thymeleaf.cache.TemplateCacheKey;
+import org.thymeleaf.context.Context;
 import org.thymeleaf.context.IContext;
 import org.thymeleaf.context.IEngineContext;
 import org.thymeleaf.context.ITemplateContext;
 import org.thymeleaf.exceptions.TemplateInputException;
+import org.thymeleaf.exceptions.TemplateOutputException;
 import org.thymeleaf.exceptions.TemplateProcessingException;
 import org.thymeleaf.postprocessor.IPostProcessor;
 import org.thymeleaf.preprocessor.IPreProcessor;
@@ -55,7 +73,10 @@
 import org.thymeleaf.templateresolver.ITemplateResolver;
 import org.thymeleaf.templateresolver.TemplateResolution;
 import org.thymeleaf.templateresource.ITemplateResource;
+import org.thymeleaf.util.CharOutputBuffer;
+import org.thymeleaf.util.FastStringWriter;
 import org.thymeleaf.util.LoggingUtils;
+import org.thymeleaf.util.OutputBufferPool;
 import org.thymeleaf.util.Validate;
 
 
@@ -84,6 +105,14 @@ public final class TemplateManager {
 
 
     private final ICache<TemplateCacheKey,TemplateModel> templateCache; // might be null! (= no cache)
+    private final TemplateParseCoalescer parseCoalescer; // might be null! (= no coalescing of cache misses)
+    private final TemplateCacheRefresher cacheRefresher; // might be null! (= no cache)
+    private final TemplateDependencyIndex dependencyIndex; // might be null! (= no cache)
+    private final ReadWriteLock dependencyIndexLock; // might be null! (= no cache)
+    private final TemplateCompiler templateCompiler; // might be null! (= no cache or no compilation)
+    private final ProcessorTemplateHandlerPool processorHandlerPool;
+    private final Executor fragmentInsertionExecutor; // might be null! (= no asynchronous fragment insertion)
+    private final OutputBufferPool outputBufferPool; // might be null! (= no output buffer pooling)
 
 
 
@@ -111,6 +140,35 @@ public TemplateManager(final IEngineConfiguration configuration) {
             this.templateCache = cacheManager.getTemplateCache();
         }
 
+        final long parseCoalescingTimeout = this.configuration.getTemplateParseCoalescingTimeout();
+        if (this.templateCache == null || parseCoalescingTimeout <= 0L) {
+            this.parseCoalescer = null;
+        } else {
+            this.parseCoalescer = new TemplateParseCoalescer(parseCoalescingTimeout);
+        }
+
+        if (this.templateCache == null) {
+            this.cacheRefresher = null;
+            this.dependencyIndex = null;
+            this.dependencyIndexLock = null;
+        } else {
+            this.cacheRefresher = new TemplateCacheRefresher(this, this.configuration.getTemplateCacheRefreshExecutor());
+            this.dependencyIndex = new TemplateDependencyIndex();
+            this.dependencyIndexLock = new ReentrantReadWriteLock();
+        }
+
+        final int compilationThreshold = this.configuration.getTemplateCompilationThreshold();
+        if (this.templateCache == null || compilationThreshold <= 0) {
+            this.templateCompiler = null;
+        } else {
+            this.templateCompiler = new TemplateCompiler(this.configuration, compilationThreshold);
+        }
+
+        this.processorHandlerPool = new ProcessorTemplateHandlerPool();
+
+        this.fragmentInsertionExecutor = this.configuration.getFragmentInsertionExecutor();
+        this.outputBufferPool = this.configuration.getOutputBufferPool();
+
         final boolean standardDialectPresent = this.configuration.isStandardDialectPresent();
 
         // TODO Make these parser implementations configurable: one parser per template mode, then make default implementations extensible/configurable (e.g. AttoParser config)
@@ -134,7 +192,13 @@ public TemplateManager(final IEngineConfiguration configuration) {
      */
     public void clearCaches() {
         if (this.templateCache != null) {
-            this.templateCache.clear();
+            this.dependencyIndexLock.writeLock().lock();
+            try {
+                this.templateCache.clear();
+                this.dependencyIndex.clear();
+            } finally {
+                this.dependencyIndexLock.writeLock().unlock();
+            }
         }
     }
 
@@ -144,33 +208,336 @@ public void clearCaches() {
      *   Clears any existing entries for template of the specified
      *   name at the template cache.
      * </p>
+     * <p>
+     *   This includes the entries for the template itself, the entries for any fragments of this template that
+     *   have been inserted into other templates, and the entries for any fragments inserted into this template.
+     *   Entries are looked up by means of an index, so the cost of this operation does not depend on the size of
+     *   the template cache.
+     * </p>
      * 
      * @param template the name of the template whose entries have to be cleared.
      */
     public void clearCachesFor(final String template) {
         Validate.notNull(template, "Cannot specify null template");
         if (this.templateCache != null) {
-            final Set<TemplateCacheKey> keysToBeRemoved = new HashSet<TemplateCacheKey>(4);
-            final Set<TemplateCacheKey> templateCacheKeys = this.templateCache.keySet();
-            // We are iterating twice and creating a temporary set just in case the 'keySet' Set is still connected
-            // to the original cache store and we provoke ConcurrentModificationExceptions when removing entries
-            for (final TemplateCacheKey templateCacheKey : templateCacheKeys) {
-                final String ownerTemplate = templateCacheKey.getOwnerTemplate();
-                if (ownerTemplate != null) {
-                    // It's not a standalone template, so we are interested on the owner template
-                    if (ownerTemplate.equals(template)) {
-                        keysToBeRemoved.add(templateCacheKey);
-                    }
-                } else {
-                    if (templateCacheKey.getTemplate().equals(template)) {
-                        keysToBeRemoved.add(templateCacheKey);
-                    }
+            this.dependencyIndexLock.writeLock().lock();
+            try {
+                for (final TemplateCacheKey keyToBeRemoved : this.dependencyIndex.remove(template)) {
+                    this.templateCache.clearKey(keyToBeRemoved);
                 }
+            } finally {
+                this.dependencyIndexLock.writeLock().unlock();
             }
-            for (final TemplateCacheKey keyToBeRemoved : keysToBeRemoved) {
-                this.templateCache.clearKey(keyToBeRemoved);
+        }
+    }
+
+
+    /**
+     * <p>
+     *   Returns the number of template requests that, after missing the template cache, did not need to
+     *   resolve and parse the template themselves because another thread was already doing so, and simply
+     *   waited for (and used) the result of that other thread's parsing operation.
+     * </p>
+     *
+     * @return the number of coalesced template parsing operations.
+     * @since 3.1.3
+     */
+    public long getCoalescedParseCount() {
+        return (this.parseCoalescer == null ? 0L : this.parseCoalescer.getCoalescedCount());
+    }
+
+
+    /**
+     * <p>
+     *   Returns the number of template cache entries that have been successfully refreshed in the background
+     *   because their validity asked for it (see {@link IRefreshableCacheEntryValidity}).
+     * </p>
+     *
+     * @return the number of background template cache refreshes.
+     * @since 3.1.3
+     */
+    public long getRefreshedTemplateCount() {
+        return (this.cacheRefresher == null ? 0L : this.cacheRefresher.getRefreshCount());
+    }
+
+
+    /**
+     * <p>
+     *   Returns the number of cached templates that have been compiled after being processed the number of
+     *   times specified by {@link IEngineConfiguration#getTemplateCompilationThreshold()}.
+     * </p>
+     *
+     * @return the number of compiled templates.
+     * @since 3.1.3
+     */
+    public long getCompiledTemplateCount() {
+        return (this.templateCompiler == null ? 0L : this.templateCompiler.getCompiledCount());
+    }
+
+
+    /**
+     * <p>
+     *   Resolves and parses the specified template and puts the resulting model into the template cache
+     *   (if the template is cacheable), so that subsequent executions of the template do not need to parse it.
+     *   Nothing will be done if the template is already cached.
+     * </p>
+     * <p>
+     *   The cache key used is the same one that will be used when the template is processed by means
+     *   of {@link org.thymeleaf.TemplateEngine#process(TemplateSpec, IContext, Writer)}.
+     * </p>
+     *
+     * @param templateSpec the template to be warmed up.
+     * @return true if, at the end of the operation, the template is present at the template cache, false if the
+     *         template (or the engine) is not cacheable.
+     * @since 3.1.3
+     */
+    public boolean warmUp(final TemplateSpec templateSpec) {
+
+        Validate.notNull(templateSpec, "Template Specification cannot be null");
+
+        if (this.templateCache == null) {
+            return false;
+        }
+
+        final TemplateCacheKey cacheKey =
+                new TemplateCacheKey(
+                        null, // ownerTemplate
+                        templateSpec.getTemplate(), templateSpec.getTemplateSelectors(),
+                        0, 0, // lineOffset, colOffset
+                        templateSpec.getTemplateMode(),
+                        templateSpec.getTemplateResolutionAttributes());
+
+        TemplateModel templateModel = this.templateCache.get(cacheKey);
+        if (templateModel != null) {
+            return true;
+        }
+
+        TemplateParseCoalescer.InFlightParse inFlightParse = null;
+        if (this.parseCoalescer != null) {
+            inFlightParse = this.parseCoalescer.lead(cacheKey);
+            if (inFlightParse == null) {
+                templateModel = joinInFlightParse(cacheKey);
+                if (templateModel != null) {
+                    return true;
+                }
             }
         }
+
+        templateModel =
+                (inFlightParse == null ?
+                        resolveAndParseStandalone(
+                                null, cacheKey.getTemplate(), cacheKey.getTemplateSelectors(),
+                                cacheKey.getTemplateMode(), cacheKey.getTemplateResolutionAttributes(),
+                                cacheKey, true, true, null) :
+                        leadResolveAndParseStandalone(
+                                inFlightParse,
+                                null, cacheKey.getTemplate(), cacheKey.getTemplateSelectors(),
+                                cacheKey.getTemplateMode(), cacheKey.getTemplateResolutionAttributes(),
+                                cacheKey, true, true));
+
+        return (templateModel != null && templateModel.getTemplateData().getValidity().isCacheable());
+
+    }
+
+
+
+
+    /**
+     * <p>
+     *   Resolves and parses the specified templates and writes the resulting models to a <em>precompiled
+     *   template archive</em>, which can be later loaded by means of {@link #loadTemplateArchive(File)} in order
+     *   to fill the template cache without the need to parse these templates.
+     * </p>
+     * <p>
+     *   Only templates deemed cacheable by their template resolvers will be written. Templates specifying
+     *   template resolution attributes, or using decoupled template logic, cannot be archived and will be skipped.
+     * </p>
+     *
+     * @param templateSpecs the templates to be written to the archive.
+     * @param outputStream the stream the archive will be written to. It will not be closed.
+     * @return the number of templates actually written to the archive.
+     * @since 3.1.3
+     */
+    public int writeTemplateArchive(final Collection<TemplateSpec> templateSpecs, final OutputStream outputStream) {
+
+        Validate.notNull(templateSpecs, "Template Specifications cannot be null");
+        Validate.containsNoNulls(templateSpecs, "Template Specifications cannot contain nulls");
+        Validate.notNull(outputStream, "Output Stream cannot be null");
+
+        int written = 0;
+        String template = null;
+        try {
+
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(outputStream, 8192));
+            TemplateModelArchive.writeHeader(out);
+
+            for (final TemplateSpec templateSpec : templateSpecs) {
+
+                template = templateSpec.getTemplate();
+
+                if (templateSpec.getTemplateResolutionAttributes() != null &&
+                        !templateSpec.getTemplateResolutionAttributes().isEmpty()) {
+                    logger.warn(
+                            "[THYMELEAF] Template \"{}\" cannot be written to template archive: templates specifying " +
+                            "template resolution attributes are not supported", LoggingUtils.loggifyTemplateName(template));
+                    continue;
+                }
+
+                final TemplateResolution templateResolution = resolveTemplate(this.configuration, null, template, null, true);
+                if (!templateResolution.getValidity().isCacheable() || templateResolution.getUseDecoupledLogic()) {
+                    logger.warn(
+                            "[THYMELEAF] Template \"{}\" cannot be written to template archive: template is not " +
+                            "cacheable or uses decoupled template logic", LoggingUtils.loggifyTemplateName(template));
+                    continue;
+                }
+
+                final TemplateData templateData =
+                        buildTemplateData(
+                                templateResolution, template, templateSpec.getTemplateSelectors(),
+                                templateSpec.getTemplateMode(), true);
+
+                final ModelBuilderTemplateHandler builderHandler = new ModelBuilderTemplateHandler(this.configuration, templateData);
+                final ITemplateParser parser = getParserForTemplateMode(templateData.getTemplateMode());
+                parser.parseStandalone(
+                        this.configuration,
+                        null, template, templateSpec.getTemplateSelectors(), templateData.getTemplateResource(),
+                        templateData.getTemplateMode(), false, builderHandler);
+
+                TemplateModelArchive.writeEntry(
+                        out, template, templateSpec.getTemplateSelectors(), templateSpec.getTemplateMode(),
+                        TemplateModelArchive.computeContentHash(templateData.getTemplateResource()),
+                        builderHandler.getModel());
+                written++;
+
+            }
+
+            TemplateModelArchive.writeEnd(out);
+            out.flush();
+
+        } catch (final IOException e) {
+            throw new TemplateOutputException("An error happened while writing template archive", template, -1, -1, e);
+        }
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("[THYMELEAF] Written {} templates to template archive", Integer.valueOf(written));
+        }
+
+        return written;
+
+    }
+
+
+    /**
+     * <p>
+     *   Loads a <em>precompiled template archive</em> written by {@link #writeTemplateArchive(Collection, OutputStream)},
+     *   putting the template models it contains into the template cache so that they do not need to be parsed.
+     * </p>
+     * <p>
+     *   The archive file is memory-mapped. Templates are resolved again using the configured template resolvers
+     *   and their contents are checked against the content hash stored in the archive, so that entries for
+     *   templates that have been modified (or that are not cacheable anymore) are rejected.
+     * </p>
+     *
+     * @param archiveFile the archive file.
+     * @return the number of templates put into the template cache. Will always be 0 if there is no template cache.
+     * @since 3.1.3
+     */
+    public int loadTemplateArchive(final File archiveFile) {
+
+        Validate.notNull(archiveFile, "Archive file cannot be null");
+
+        if (this.templateCache == null) {
+            return 0;
+        }
+
+        int loaded = 0;
+        int rejected = 0;
+        try {
+
+            final ByteBuffer in;
+            final FileChannel channel = new FileInputStream(archiveFile).getChannel();
+            try {
+                in = channel.map(FileChannel.MapMode.READ_ONLY, 0L, channel.size());
+            } finally {
+                channel.close();
+            }
+
+            TemplateModelArchive.readHeader(in);
+
+            TemplateModelArchive.Entry entry;
+            while ((entry = TemplateModelArchive.readEntry(in)) != null) {
+
+                final TemplateData templateData = resolveArchivedTemplate(entry);
+                if (templateData == null) {
+                    TemplateModelArchive.skipBody(in, entry);
+                    rejected++;
+                    continue;
+                }
+
+                final IEngineTemplateEvent[] queue = TemplateModelArchive.readBody(in, entry, this.configuration);
+                AbstractProcessableElementTag.computeAssociatedProcessors(queue);
+                final TemplateModel templateModel =
+                        new TemplateModel(this.configuration, templateData, queue, this.configuration.isPackTemplateTexts());
+
+                final TemplateCacheKey cacheKey =
+                        new TemplateCacheKey(
+                                null, // ownerTemplate
+                                entry.template, entry.templateSelectors,
+                                0, 0, // lineOffset, colOffset
+                                entry.keyTemplateMode,
+                                null); // templateResolutionAttributes
+
+                putInCache(cacheKey, templateModel);
+                loaded++;
+
+            }
+
+        } catch (final IOException e) {
+            throw new TemplateInputException("An error happened while reading template archive " + archiveFile, e);
+        } catch (final BufferUnderflowException e) {
+            throw new TemplateInputException("Template archive " + archiveFile + " is truncated", e);
+        }
+
+        if (logger.isDebugEnabled()) {
+            logger.debug(
+                    "[THYMELEAF] Loaded {} templates from template archive {} ({} stale entries rejected)",
+                    new Object[] {Integer.valueOf(loaded), archiveFile, Integer.valueOf(rejected)});
+        }
+
+        return loaded;
+
+    }
+
+
+    /*
+     * Resolves again an archived template, returning the TemplateData its model should have if the archived
+     * model can still be used, or null if the entry is stale (or cannot be cached anymore).
+     */
+    private TemplateData resolveArchivedTemplate(final TemplateModelArchive.Entry entry) throws IOException {
+
+        final TemplateResolution templateResolution = resolveTemplate(this.configuration, null, entry.template, null, false);
+        if (templateResolution == null ||
+                !templateResolution.getValidity().isCacheable() || templateResolution.getUseDecoupledLogic()) {
+            return null;
+        }
+
+        final ITemplateResource templateResource = templateResolution.getTemplateResource();
+        if (templateResource == null || !templateResource.exists()) {
+            return null;
+        }
+
+        final TemplateData templateData =
+                buildTemplateData(templateResolution, entry.template, entry.templateSelectors, entry.keyTemplateMode, true);
+        if (templateData.getTemplateMode() != entry.templateMode) {
+            return null;
+        }
+
+        if (!TemplateModelArchive.matchesContentHash(entry, TemplateModelArchive.computeContentHash(templateResource))) {
+            return null;
+        }
+
+        return templateData;
+
     }
 
 
@@ -231,9 +598,17 @@ public TemplateModel parseStandalone(
         /*
          * First look at the cache - it might be already cached
          */
+        TemplateParseCoalescer.InFlightParse inFlightParse = null;
         if (useCache && this.templateCache != null) {
-            final TemplateModel cached =  this.templateCache.get(cacheKey);
+            TemplateModel cached =  this.templateCache.get(cacheKey);
+            if (cached == null && this.parseCoalescer != null) {
+                inFlightParse = this.parseCoalescer.lead(cacheKey);
+                if (inFlightParse == null) {
+                    cached = joinInFlightParse(cacheKey);
+                }
+            }
             if (cached != null) {
+                refreshIfNeeded(cacheKey, cached);
                 /*
                  * Just at the end, and importantly AFTER CACHING, check if we need to apply any pre-processors
                  * to this model before returning and letting the engine insert the model in any way it needs.
@@ -243,6 +618,48 @@ public TemplateModel parseStandalone(
         }
 
 
+        /*
+         * Resolve and parse the template. If we are the thread leading the parse of this template, other threads
+         * might be waiting for the result.
+         */
+        final TemplateModel templateModel =
+                (inFlightParse == null ?
+                        resolveAndParseStandalone(
+                                ownerTemplate, template, cleanTemplateSelectors, templateMode, templateResolutionAttributes,
+                                cacheKey, useCache, failIfNotExists, null) :
+                        leadResolveAndParseStandalone(
+                                inFlightParse,
+                                ownerTemplate, template, cleanTemplateSelectors, templateMode, templateResolutionAttributes,
+                                cacheKey, useCache, failIfNotExists));
+
+        if (templateModel == null) {
+            return null;
+        }
+
+
+        /*
+         * Last step: just at the end, and importantly AFTER CACHING, check if we need to apply any pre-processors
+         * to this model before returning and letting the engine insert the model in any way it needs.
+         */
+        return applyPreProcessorsIfNeeded(context, templateModel);
+
+    }
+
+
+
+
+    /*
+     * Resolves and parses the template and puts the resulting model into the cache, if cacheable. If 'refreshedModel'
+     * is not null, the template is being refreshed and the new model will (atomically) replace it in the cache, but
+     * only if it is still the cached one, so that entries removed or replaced in the meantime (e.g. because they
+     * have been invalidated) do not come back. If the new model turns out not to be cacheable, the entry is removed.
+     */
+    private TemplateModel resolveAndParseStandalone(
+            final String ownerTemplate, final String template, final Set<String> cleanTemplateSelectors,
+            final TemplateMode templateMode, final Map<String,Object> templateResolutionAttributes,
+            final TemplateCacheKey cacheKey, final boolean useCache, final boolean failIfNotExists,
+            final TemplateModel refreshedModel) {
+
         /*
          * Resolve the template
          */
@@ -312,22 +729,159 @@ public TemplateModel parseStandalone(
          */
         if (useCache && this.templateCache != null) {
             if (templateResolution.getValidity().isCacheable()) {
-                this.templateCache.put(cacheKey, templateModel);
+                if (refreshedModel != null) {
+                    replaceInCache(cacheKey, refreshedModel, templateModel);
+                } else {
+                    putInCache(cacheKey, templateModel);
+                }
+            } else if (refreshedModel != null) {
+                this.templateCache.clearKey(cacheKey);
             }
         }
 
+        return templateModel;
 
-        /*
-         * Last step: just at the end, and importantly AFTER CACHING, check if we need to apply any pre-processors
-         * to this model before returning and letting the engine insert the model in any way it needs.
-         */
-        return applyPreProcessorsIfNeeded(context, templateModel);
+    }
+
+
+
+
+    /*
+     * Same as resolveAndParseStandalone(...), but performed by the thread leading the parsing of the template, which
+     * means the result (or the failure) will be communicated to any other threads waiting for it.
+     */
+    private TemplateModel leadResolveAndParseStandalone(
+            final TemplateParseCoalescer.InFlightParse inFlightParse,
+            final String ownerTemplate, final String template, final Set<String> cleanTemplateSelectors,
+            final TemplateMode templateMode, final Map<String,Object> templateResolutionAttributes,
+            final TemplateCacheKey cacheKey, final boolean useCache, final boolean failIfNotExists) {
+
+        final TemplateModel templateModel;
+        try {
+            templateModel =
+                    resolveAndParseStandalone(
+                            ownerTemplate, template, cleanTemplateSelectors, templateMode, templateResolutionAttributes,
+                            cacheKey, useCache, failIfNotExists, null);
+        } catch (final RuntimeException e) {
+            this.parseCoalescer.complete(cacheKey, inFlightParse, null, e);
+            throw e;
+        } catch (final Error e) {
+            this.parseCoalescer.complete(cacheKey, inFlightParse, null, e);
+            throw e;
+        }
+
+        // Only models that have been cached can be shared with other threads
+        final boolean shareable =
+                (templateModel != null && templateModel.getTemplateData().getValidity().isCacheable());
+        this.parseCoalescer.complete(cacheKey, inFlightParse, (shareable ? templateModel : null), null);
+
+        return templateModel;
 
     }
 
 
 
 
+    /*
+     * Waits for the thread currently parsing the template for the specified cache key (if any) to finish,
+     * and returns the resulting model. If there is no such thread, or if it did not produce a model that
+     * can be shared, the cache is looked up again just in case the other thread finished in the meantime.
+     */
+    private TemplateModel joinInFlightParse(final TemplateCacheKey cacheKey) {
+        final TemplateModel templateModel = this.parseCoalescer.join(cacheKey);
+        if (templateModel != null) {
+            return templateModel;
+        }
+        return this.templateCache.get(cacheKey);
+    }
+
+
+
+
+    /*
+     * All additions to the template cache are performed through these methods, so that the keys being added
+     * are registered at the dependency index, and the texts of the cached models keep their encoded form for
+     * byte-oriented output. Keys are indexed after being put into the cache and under the read lock of the index,
+     * so that removals from the index and the cache (performed under the write lock) cannot happen in between,
+     * and therefore no entry can remain in the cache without being indexed.
+     */
+    private void putInCache(final TemplateCacheKey cacheKey, final TemplateModel templateModel) {
+        templateModel.cacheEncodedTexts();
+        this.dependencyIndexLock.readLock().lock();
+        try {
+            this.templateCache.put(cacheKey, templateModel);
+            this.dependencyIndex.add(cacheKey);
+        } finally {
+            this.dependencyIndexLock.readLock().unlock();
+        }
+        pruneDependencyIndexIfNeeded();
+    }
+
+
+    private void replaceInCache(
+            final TemplateCacheKey cacheKey, final TemplateModel oldTemplateModel, final TemplateModel templateModel) {
+        templateModel.cacheEncodedTexts();
+        this.dependencyIndexLock.readLock().lock();
+        try {
+            if (this.templateCache.replace(cacheKey, oldTemplateModel, templateModel)) {
+                this.dependencyIndex.add(cacheKey);
+            }
+        } finally {
+            this.dependencyIndexLock.readLock().unlock();
+        }
+        pruneDependencyIndexIfNeeded();
+    }
+
+
+    /*
+     * Keys are not removed from the dependency index when the cache evicts their entries, so the index is
+     * pruned from time to time in order to keep its size bounded.
+     */
+    private void pruneDependencyIndexIfNeeded() {
+        if (!this.dependencyIndex.needsPruning()) {
+            return;
+        }
+        this.dependencyIndexLock.writeLock().lock();
+        try {
+            if (this.dependencyIndex.needsPruning()) {
+                this.dependencyIndex.prune(this.templateCache.keySet());
+            }
+        } finally {
+            this.dependencyIndexLock.writeLock().unlock();
+        }
+    }
+
+
+
+
+    /*
+     * Called on every template cache hit. If the validity of the cached model asks for it, a background refresh
+     * of the cache entry is scheduled, while the cached model keeps being used in the meantime.
+     */
+    private void refreshIfNeeded(final TemplateCacheKey cacheKey, final TemplateModel cached) {
+        final ICacheEntryValidity validity = cached.getTemplateData().getValidity();
+        if (validity instanceof IRefreshableCacheEntryValidity &&
+                ((IRefreshableCacheEntryValidity) validity).isCacheRefreshNeeded()) {
+            this.cacheRefresher.refresh(cacheKey, cached);
+        }
+    }
+
+
+    /*
+     * Executed by the TemplateCacheRefresher in a background thread: resolves and parses again the template
+     * for the specified key, and replaces the cached model with the new one (if the cached model is still
+     * the one that was refreshed).
+     */
+    void refreshCachedTemplate(final TemplateCacheKey cacheKey, final TemplateModel refreshedModel) {
+        resolveAndParseStandalone(
+                cacheKey.getOwnerTemplate(), cacheKey.getTemplate(), cacheKey.getTemplateSelectors(),
+                cacheKey.getTemplateMode(), cacheKey.getTemplateResolutionAttributes(),
+                cacheKey, true, true, refreshedModel);
+    }
+
+
+
+
     /*
      * This method manually applies preprocessors to template models that have just been parsed or obtained from
      * cache. This is needed for fragments, just before these fragments (coming from templates, not simply parsed
@@ -459,7 +1013,7 @@ public TemplateModel parseString(
          */
         if (useCache && this.templateCache != null) {
             if (cacheValidity.isCacheable()) {
-                this.templateCache.put(cacheKey, parsedTemplate);
+                putInCache(cacheKey, parsedTemplate);
             }
         }
         
@@ -509,7 +1063,7 @@ public void process(
          * LazyProcessingCharSequence, and in such case we know those CharSequences are only used when there are
          * NO post-processors, so we are safe anyway.
          */
-        final ProcessorTemplateHandler processorTemplateHandler = new ProcessorTemplateHandler();
+        final ProcessorTemplateHandler processorTemplateHandler = this.processorHandlerPool.acquire();
         final ITemplateHandler processingHandlerChain =
                 createTemplateProcessingHandlerChain(engineContext, false, false, processorTemplateHandler, writer);
 
@@ -518,6 +1072,8 @@ public void process(
          */
         template.process(processingHandlerChain);
 
+        this.processorHandlerPool.release(processorTemplateHandler);
+
 
         /*
          * Dispose the engine context now that processing has been done
@@ -527,6 +1083,118 @@ public void process(
     }
 
 
+    /**
+     * <p>
+     *   Processes a template model and returns its output as a {@link String}.
+     * </p>
+     * <p>
+     *   Output is buffered using the configured {@link OutputBufferPool} (if any), so that the buffer used is already
+     *   sized according to the output previously produced by the same template and selectors.
+     * </p>
+     *
+     * @param template the template model to be processed.
+     * @param context the context to be used for processing.
+     * @return the output of processing the template model.
+     * @since 3.1.3
+     */
+    public String processToString(final TemplateModel template, final ITemplateContext context) {
+
+        if (this.outputBufferPool == null) {
+            final Writer stringWriter = new FastStringWriter(200);
+            process(template, context, stringWriter);
+            return stringWriter.toString();
+        }
+
+        final CharOutputBuffer buffer =
+                this.outputBufferPool.acquireCharBuffer(computeOutputBufferKey(template.getTemplateData()));
+        try {
+            process(template, context, buffer);
+            return buffer.toString();
+        } finally {
+            buffer.release();
+        }
+
+    }
+
+
+    private static String computeOutputBufferKey(final TemplateData templateData) {
+        if (!templateData.hasTemplateSelectors()) {
+            return templateData.getTemplate();
+        }
+        return templateData.getTemplate() + "::" + templateData.getTemplateSelectors();
+    }
+
+
+
+
+    /**
+     * <p>
+     *   Processes a template model concurrently with the execution it is being inserted into, using the
+     *   configured fragment insertion executor.
+     * </p>
+     * <p>
+     *   The template model is processed against a new context containing a snapshot of the variables (and the
+     *   selection target) currently available in the specified context, plus the specified additional variables.
+     *   The result is a {@link CharSequence} that can be inserted into the template being executed as a
+     *   non-processable text, and which will be stitched into the output once ready.
+     * </p>
+     *
+     * @param template the template model to be processed.
+     * @param context the context the template model is being inserted from.
+     * @param variables additional variables to be made available to the template model (e.g. fragment parameters),
+     *                  can be null.
+     * @return the char sequence that will contain the result of processing the template model, or null if
+     *         concurrent processing is not possible (i.e. no executor has been configured, or the specified
+     *         context is not an {@link IEngineContext}), in which case the template model should be processed
+     *         synchronously.
+     * @since 3.1.3
+     */
+    public CharSequence processConcurrently(
+            final TemplateModel template,
+            final ITemplateContext context,
+            final Map<String,Object> variables) {
+
+        Validate.isTrue(
+                this.configuration == template.getConfiguration(),
+                "Specified template was built by a different Template Engine instance");
+
+        if (this.fragmentInsertionExecutor == null || !(context instanceof IEngineContext)) {
+            return null;
+        }
+
+        /*
+         * Take a snapshot of the variables now, as the context will keep on changing while the fragment is processed
+         */
+        final Map<String,Object> snapshot = ((IEngineContext) context).getVariablesSnapshot();
+        if (variables != null) {
+            snapshot.putAll(variables);
+        }
+
+        final IEngineContext engineContext =
+                this.configuration.getEngineContextFactory().createEngineContext(
+                        this.configuration, template.getTemplateData(), context.getTemplateResolutionAttributes(),
+                        new Context(context.getLocale(), snapshot));
+        if (context.hasSelectionTarget()) {
+            engineContext.setSelectionTarget(context.getSelectionTarget());
+        }
+
+        final FutureTask<String> task =
+                new FutureTask<String>(new Callable<String>() {
+                    public String call() {
+                        return processToString(template, engineContext);
+                    }
+                });
+
+        try {
+            this.fragmentInsertionExecutor.execute(task);
+        } catch (final RejectedExecutionException e) {
+            // Nothing to do: the fragment will be processed by the thread writing its output when it is needed
+        }
+
+        return new ConcurrentProcessingCharSequence(task);
+
+    }
+
 
 
 
@@ -550,6 +1218,39 @@ public void parseAndProcess(
         Validate.notNull(context, "Context cannot be null");
         Validate.notNull(writer, "Writer cannot be null");
 
+        if (this.fragmentInsertionExecutor == null) {
+            doParseAndProcess(templateSpec, context, writer);
+            return;
+        }
+
+        /*
+         * Asynchronous fragment insertion is enabled, so output will need to go through a writer able to stitch the
+         * output of fragments being processed concurrently into the template output in document order.
+         */
+        final ConcurrentFragmentWriter fragmentWriter = new ConcurrentFragmentWriter(writer);
+        boolean finished = false;
+        try {
+            doParseAndProcess(templateSpec, context, fragmentWriter);
+            fragmentWriter.finish();
+            finished = true;
+        } catch (final IOException e) {
+            throw new TemplateOutputException(
+                    "An error happened during template rendering", templateSpec.getTemplate(), -1, -1, e);
+        } finally {
+            if (!finished) {
+                // No need to wait for (or even start) any fragments still pending
+                fragmentWriter.cancel();
+            }
+        }
+
+    }
+
+
+    private void doParseAndProcess(
+            final TemplateSpec templateSpec,
+            final IContext context,
+            final Writer writer) {
+
 
         // TemplateSpec will already have validated its contents, so need to do it here (template selectors,
         // resolution attributes, etc.)
@@ -571,12 +1272,45 @@ public void parseAndProcess(
         /*
          * First look at the cache - it might be already cached
          */
+        TemplateParseCoalescer.InFlightParse inFlightParse = null;
         if (this.templateCache != null) {
 
-            final TemplateModel cached =  this.templateCache.get(cacheKey);
+            TemplateModel cached =  this.templateCache.get(cacheKey);
+
+            /*
+             * If not cached, but another thread is already parsing this template, just wait for it and use the
+             * result instead of parsing the template again. Otherwise, let other threads know we are parsing it.
+             */
+            if (cached == null && this.parseCoalescer != null) {
+                inFlightParse = this.parseCoalescer.lead(cacheKey);
+                if (inFlightParse == null) {
+                    cached = joinInFlightParse(cacheKey);
+                }
+            }
 
             if (cached != null) {
 
+                refreshIfNeeded(cacheKey, cached);
+
+                /*
+                 * Hot templates might have been compiled, in which case we will process the compiled model instead
+                 * (or directly output the result, if the template is completely static)
+                 */
+                final TemplateCompiler.CompiledTemplate compiled =
+                        (this.templateCompiler != null ? this.templateCompiler.compiledFor(cached) : null);
+                if (compiled != null) {
+                    if (compiled.output != null) {
+                        try {
+                            compiled.outputText.write(writer);
+                        } catch (final IOException e) {
+                            throw new TemplateOutputException(
+                                    "An error happened during template rendering", template, -1, -1, e);
+                        }
+                        return;
+                    }
+                    cached = compiled.templateModel;
+                }
+
                 final IEngineContext engineContext =
                         EngineContextManager.prepareEngineContext(this.configuration, cached.getTemplateData(), templateResolutionAttributes, context);
 
@@ -585,12 +1319,14 @@ public void parseAndProcess(
                  * This is PARSE + PROCESS, so its called from the TemplateEngine, and the only case in which we should apply
                  * both pre-processors and post-processors (besides creating a last output-to-writer step)
                  */
-                final ProcessorTemplateHandler processorTemplateHandler = new ProcessorTemplateHandler();
+                final ProcessorTemplateHandler processorTemplateHandler = this.processorHandlerPool.acquire();
                 final ITemplateHandler processingHandlerChain =
                         createTemplateProcessingHandlerChain(engineContext, true, true, processorTemplateHandler, writer);
 
                 cached.process(processingHandlerChain);
 
+                this.processorHandlerPool.release(processorTemplateHandler);
+
                 EngineContextManager.disposeEngineContext(engineContext);
 
                 return;
@@ -600,81 +1336,109 @@ public void parseAndProcess(
         }
 
 
-        /*
-         * Resolve the template
-         */
-        final TemplateResolution templateResolution =
-                resolveTemplate(this.configuration, null, template, templateResolutionAttributes, true);
+        try {
 
+            /*
+             * Resolve the template
+             */
+            final TemplateResolution templateResolution =
+                    resolveTemplate(this.configuration, null, template, templateResolutionAttributes, true);
 
-        /*
-         * Build the TemplateData object
-         */
-        final TemplateData templateData =
-                buildTemplateData(templateResolution, template, templateSelectors, templateMode, true);
 
+            /*
+             * Build the TemplateData object
+             */
+            final TemplateData templateData =
+                    buildTemplateData(templateResolution, template, templateSelectors, templateMode, true);
 
-        /*
-         * Prepare the context instance that corresponds to this execution of the template engine
-         */
-        final IEngineContext engineContext =
-                EngineContextManager.prepareEngineContext(this.configuration, templateData, templateResolutionAttributes, context);
 
+            /*
+             * Prepare the context instance that corresponds to this execution of the template engine
+             */
+            final IEngineContext engineContext =
+                    EngineContextManager.prepareEngineContext(this.configuration, templateData, templateResolutionAttributes, context);
 
-        /*
-         * Create the handler chain to process the data.
-         * This is PARSE + PROCESS, so its called from the TemplateEngine, and the only case in which we should apply
-         * both pre-processors and post-processors (besides creating a last output-to-writer step)
-         */
-        final ProcessorTemplateHandler processorTemplateHandler = new ProcessorTemplateHandler();
-        final ITemplateHandler processingHandlerChain =
-                createTemplateProcessingHandlerChain(engineContext, true, true, processorTemplateHandler, writer);
 
+            /*
+             * Create the handler chain to process the data.
+             * This is PARSE + PROCESS, so its called from the TemplateEngine, and the only case in which we should apply
+             * both pre-processors and post-processors (besides creating a last output-to-writer step)
+             */
+            final ProcessorTemplateHandler processorTemplateHandler = this.processorHandlerPool.acquire();
+            final ITemplateHandler processingHandlerChain =
+                    createTemplateProcessingHandlerChain(engineContext, true, true, processorTemplateHandler, writer);
 
-        /*
-         * Obtain the parser
-         */
-        final ITemplateParser parser = getParserForTemplateMode(engineContext.getTemplateMode());
 
+            /*
+             * Obtain the parser
+             */
+            final ITemplateParser parser = getParserForTemplateMode(engineContext.getTemplateMode());
 
-        /*
-         * If the resolved template is cacheable, so we will first read it as an object, cache it, and then process it
-         */
-        if (templateResolution.getValidity().isCacheable() && this.templateCache != null) {
 
-            // Create the handler chain to create the Template object
-            final ModelBuilderTemplateHandler builderHandler = new ModelBuilderTemplateHandler(this.configuration, templateData);
+            /*
+             * If the resolved template is cacheable, so we will first read it as an object, cache it, and then process it
+             */
+            if (templateResolution.getValidity().isCacheable() && this.templateCache != null) {
 
-            // Process the template into a TemplateModel
-            parser.parseStandalone(
-                    this.configuration,
-                    null, template, templateSelectors, templateData.getTemplateResource(),
-                    engineContext.getTemplateMode(), templateResolution.getUseDecoupledLogic(), builderHandler);
+                // Create the handler chain to create the Template object
+                final ModelBuilderTemplateHandler builderHandler = new ModelBuilderTemplateHandler(this.configuration, templateData);
 
-            // Obtain the TemplateModel
-            final TemplateModel templateModel = builderHandler.getModel();
+                // Process the template into a TemplateModel
+                parser.parseStandalone(
+                        this.configuration,
+                        null, template, templateSelectors, templateData.getTemplateResource(),
+                        engineContext.getTemplateMode(), templateResolution.getUseDecoupledLogic(), builderHandler);
 
-            // Put the new template into cache
-            this.templateCache.put(cacheKey, templateModel);
+                // Obtain the TemplateModel
+                final TemplateModel templateModel = builderHandler.getModel();
 
-            // Process the read (+cached) template itself
-            templateModel.process(processingHandlerChain);
+                // Put the new template into cache
+                putInCache(cacheKey, templateModel);
 
-        } else {
+                // Let any threads waiting for this template know it is now available
+                if (inFlightParse != null) {
+                    this.parseCoalescer.complete(cacheKey, inFlightParse, templateModel, null);
+                    inFlightParse = null;
+                }
 
-            //  Process the template, which is not cacheable (so no worry about caching)
-            parser.parseStandalone(
-                    this.configuration,
-                    null, template, templateSelectors, templateData.getTemplateResource(),
-                    engineContext.getTemplateMode(), templateResolution.getUseDecoupledLogic(),  processingHandlerChain);
+                // Process the read (+cached) template itself
+                templateModel.process(processingHandlerChain);
 
-        }
+            } else {
 
+                // Template is not cacheable, so any threads waiting for it will need to parse it themselves
+                if (inFlightParse != null) {
+                    this.parseCoalescer.complete(cacheKey, inFlightParse, null, null);
+                    inFlightParse = null;
+                }
 
-        /*
-         * Dispose the engine context now that processing has been done
-         */
-        EngineContextManager.disposeEngineContext(engineContext);
+                //  Process the template, which is not cacheable (so no worry about caching)
+                parser.parseStandalone(
+                        this.configuration,
+                        null, template, templateSelectors, templateData.getTemplateResource(),
+                        engineContext.getTemplateMode(), templateResolution.getUseDecoupledLogic(),  processingHandlerChain);
+
+            }
+
+            this.processorHandlerPool.release(processorTemplateHandler);
+
+
+            /*
+             * Dispose the engine context now that processing has been done
+             */
+            EngineContextManager.disposeEngineContext(engineContext);
+
+        } catch (final RuntimeException e) {
+            if (inFlightParse != null) {
+                this.parseCoalescer.complete(cacheKey, inFlightParse, null, e);
+            }
+            throw e;
+        } catch (final Error e) {
+            if (inFlightParse != null) {
+                this.parseCoalescer.complete(cacheKey, inFlightParse, null, e);
+            }
+            throw e;
+        }
 
 
     }
@@ -719,56 +1483,46 @@ public ThrottledTemplateProcessor parseAndProcessThrottled(final TemplateSpec te
         /*
          * First look at the cache - it might be already cached
          */
+        TemplateModel templateModel = null;
+        TemplateParseCoalescer.InFlightParse inFlightParse = null;
         if (this.templateCache != null) {
-
-            final TemplateModel cached =  this.templateCache.get(cacheKey);
-
-            if (cached != null) {
-
-                final IEngineContext engineContext =
-                        EngineContextManager.prepareEngineContext(this.configuration, cached.getTemplateData(), templateResolutionAttributes, context);
-
-                /*
-                 * Create the handler chain to process the data.
-                 * This is PARSE + PROCESS, so its called from the TemplateEngine, and the only case in which we should apply
-                 * both pre-processors and post-processors (besides creating a last output-to-writer step)
-                 */
-                final ProcessorTemplateHandler processorTemplateHandler = new ProcessorTemplateHandler();
-                processorTemplateHandler.setFlowController(flowController);
-                final ITemplateHandler processingHandlerChain =
-                        createTemplateProcessingHandlerChain(engineContext, true, true, processorTemplateHandler, throttledTemplateWriter);
-
-                /*
-                 * Return the throttled template processor
-                 */
-                return new ThrottledTemplateProcessor(
-                        templateSpec, engineContext, cached, processingHandlerChain,
-                        processorTemplateHandler, flowController, throttledTemplateWriter);
-
+            templateModel = this.templateCache.get(cacheKey);
+            if (templateModel == null && this.parseCoalescer != null) {
+                inFlightParse = this.parseCoalescer.lead(cacheKey);
+                if (inFlightParse == null) {
+                    templateModel = joinInFlightParse(cacheKey);
+                }
+            }
+            if (templateModel != null) {
+                refreshIfNeeded(cacheKey, templateModel);
             }
-
         }
 
 
         /*
-         * Resolve the template
+         * Not cached, so resolve and parse the template into a TemplateModel. Even if we are not using the cache,
+         * throttled template processings will always be processed first into a TemplateModel, so that throttling
+         * can then be applied on an already-in-memory sequence of events. If the template is cacheable, it will be
+         * put into the cache.
          */
-        final TemplateResolution templateResolution =
-                resolveTemplate(this.configuration, null, template, templateResolutionAttributes, true);
-
-
-        /*
-         * Build the TemplateData object
-         */
-        final TemplateData templateData =
-                buildTemplateData(templateResolution, template, templateSelectors, templateMode, true);
+        if (templateModel == null) {
+            templateModel =
+                    (inFlightParse == null ?
+                            resolveAndParseStandalone(
+                                    null, template, templateSelectors, templateMode, templateResolutionAttributes,
+                                    cacheKey, true, true, null) :
+                            leadResolveAndParseStandalone(
+                                    inFlightParse,
+                                    null, template, templateSelectors, templateMode, templateResolutionAttributes,
+                                    cacheKey, true, true));
+        }
 
 
         /*
          * Prepare the context instance that corresponds to this execution of the template engine
          */
         final IEngineContext engineContext =
-                EngineContextManager.prepareEngineContext(this.configuration, templateData, templateResolutionAttributes, context);
+                EngineContextManager.prepareEngineContext(this.configuration, templateModel.getTemplateData(), templateResolutionAttributes, context);
 
 
         /*
@@ -782,36 +1536,6 @@ public ThrottledTemplateProcessor parseAndProcessThrottled(final TemplateSpec te
                 createTemplateProcessingHandlerChain(engineContext, true, true, processorTemplateHandler, throttledTemplateWriter);
 
 
-        /*
-         * Obtain the parser
-         */
-        final ITemplateParser parser = getParserForTemplateMode(engineContext.getTemplateMode());
-
-
-        /*
-         * Parse the template into a TemplateModel. Even if we are not using the cache, throttled template processings
-         * will always be processed first into a TemplateModel, so that throttling can then be applied on an
-         * already-in-memory sequence of events
-         */
-        final ModelBuilderTemplateHandler builderHandler = new ModelBuilderTemplateHandler(this.configuration, templateData);
-        parser.parseStandalone(
-                this.configuration,
-                null, template, templateSelectors, templateData.getTemplateResource(),
-                engineContext.getTemplateMode(), templateResolution.getUseDecoupledLogic(), builderHandler);
-        final TemplateModel templateModel = builderHandler.getModel();
-
-
-        /*
-         * If cache is active, put the cached TemplateModel into cache
-         */
-        if (templateResolution.getValidity().isCacheable() && this.templateCache != null) {
-
-            // Put the new template into cache
-            this.templateCache.put(cacheKey, templateModel);
-
-        }
-
-
         /*
          * Return the throttled template processor
          */
@@ -1005,7 +1729,7 @@ private static ITemplateHandler createTemplateProcessingHandlerChain(
          * Last step: the OUTPUT HANDLER
          */
         if (writer != null) {
-            final OutputTemplateHandler outputHandler = new OutputTemplateHandler(writer);
+            final OutputTemplateHandler outputHandler = new OutputTemplateHandler(writer, configuration.isFlushAfterHead());
             outputHandler.setContext(context);
             if (firstHandler == null) {
                 firstHandler = outputHandler;
@@ -21,6 +21,10 @@
 
 import java.io.IOException;
 import java.io.Writer;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 import org.thymeleaf.IEngineConfiguration;
 import org.thymeleaf.exceptions.TemplateProcessingException;
@@ -40,9 +44,30 @@
  */
 public final class TemplateModel implements IModel {
 
+    // Rough sizes (in bytes) used for estimating the memory retained by a model. These assume a 64-bit JVM with
+    // compressed object pointers and are only meant to be accurate enough for sizing caches.
+    private static final int MODEL_OVERHEAD = 64;
+    private static final int REFERENCE_SIZE = 4;
+    private static final int EVENT_OVERHEAD = 32;
+    private static final int ELEMENT_TAG_OVERHEAD = 48;
+    private static final int ATTRIBUTES_OVERHEAD = 48;
+    private static final int ATTRIBUTE_OVERHEAD = 48;
+    private static final int STRING_OVERHEAD = 40;
+    private static final int ARRAY_OVERHEAD = 16;
+
+    private static final AtomicIntegerFieldUpdater<TemplateModel> EXECUTIONS_UPDATER =
+            AtomicIntegerFieldUpdater.newUpdater(TemplateModel.class, "executions");
+
     final IEngineConfiguration configuration;
     final TemplateData templateData;
     final IEngineTemplateEvent[] queue; // This is final because this IModel is IMMUTABLE
+    final TemplateModelTexts texts; // null if texts are not packed (positions of packed texts are null at queue)
+
+    private volatile long weight = -1L;
+
+    // Only used when the model is cached and template compilation is enabled (see TemplateCompiler)
+    private volatile int executions = 0;
+    volatile TemplateCompiler.CompiledTemplate compiledTemplate = null;
 
 
     // Package-protected constructor, because we don't want anyone creating these objects from outside the engine.
@@ -51,6 +76,17 @@ public final class TemplateModel implements IModel {
     TemplateModel(
             final IEngineConfiguration configuration, final TemplateData templateData,
             final IEngineTemplateEvent[] queue) {
+        this(configuration, templateData, queue, false);
+    }
+
+
+    /*
+     * Models that are going to be cached can have their texts packed so that they retain less memory
+     * (see TemplateModelTexts)
+     */
+    TemplateModel(
+            final IEngineConfiguration configuration, final TemplateData templateData,
+            final IEngineTemplateEvent[] queue, final boolean packTexts) {
         
         super();
         
@@ -63,7 +99,8 @@ public final class TemplateModel implements IModel {
 
         this.configuration = configuration;
         this.templateData = templateData;
-        this.queue = queue;
+        this.texts = (packTexts ? TemplateModelTexts.pack(queue) : null);
+        this.queue = (this.texts != null ? this.texts.removePacked(queue) : queue);
 
     }
 
@@ -89,8 +126,89 @@ public final int size() {
     }
 
 
+    /**
+     * <p>
+     *   Returns the estimated amount of memory (in bytes) retained by this model, computed from its event
+     *   array, the length of its texts and the number and size of its element attributes.
+     * </p>
+     * <p>
+     *   This is an approximation meant for sizing caches (see
+     *   {@link org.thymeleaf.cache.StandardCacheManager#setTemplateCacheMaxWeight(long)}), and it does not
+     *   include objects shared among templates like element/attribute definitions or the template data.
+     *   Strings and white space arrays shared among the events of the model are counted only once, and
+     *   the texts of cached models also count the encoded form they keep for byte-oriented output.
+     *   It is computed only once, as models are immutable.
+     * </p>
+     *
+     * @return the estimated weight of this model, in bytes.
+     * @since 3.1.3
+     */
+    public final long getWeight() {
+        long w = this.weight;
+        if (w < 0L) {
+            w = computeWeight(this.queue, this.texts);
+            this.weight = w;
+        }
+        return w;
+    }
+
+
+    /*
+     * Called for models that are going to be cached: their texts will be output each time the model is processed,
+     * so they can cache their encoded form. Must be called before the model is weighed and made available to
+     * other threads.
+     */
+    void cacheEncodedTexts() {
+        for (int i = 1; i < this.queue.length - 1; i++) {
+            if (this.queue[i] instanceof Text) {
+                ((Text) this.queue[i]).cacheEncoded = true;
+            }
+        }
+        if (this.texts != null) {
+            this.texts.cacheEncoded = true;
+        }
+        this.weight = -1L;
+    }
+
+
+    int registerExecution() {
+        return EXECUTIONS_UPDATER.incrementAndGet(this);
+    }
+
+
     public final ITemplateEvent get(final int pos) {
-        return this.queue[pos];
+        return event(pos);
+    }
+
+
+    IEngineTemplateEvent event(final int pos) {
+        final IEngineTemplateEvent event = this.queue[pos];
+        return (event != null ? event : this.texts.text(pos));
+    }
+
+
+    /*
+     * Returns all the events in the model, creating those for packed texts if needed. Meant for operations that
+     * transform the whole model.
+     */
+    IEngineTemplateEvent[] events() {
+        if (this.texts == null) {
+            return this.queue;
+        }
+        final IEngineTemplateEvent[] events = new IEngineTemplateEvent[this.queue.length];
+        copyEvents(0, events, 0, this.queue.length);
+        return events;
+    }
+
+
+    void copyEvents(final int pos, final IEngineTemplateEvent[] dest, final int destPos, final int length) {
+        if (this.texts == null) {
+            System.arraycopy(this.queue, pos, dest, destPos, length);
+            return;
+        }
+        for (int i = 0; i < length; i++) {
+            dest[destPos + i] = event(pos + i);
+        }
     }
 
 
@@ -133,7 +251,7 @@ public final void reset() {
 
     void process(final ITemplateHandler handler) {
         for (int i = 0; i < this.queue.length; i++) {
-            this.queue[i].beHandled(handler);
+            event(i).beHandled(handler);
         }
     }
 
@@ -152,7 +270,7 @@ int process(final ITemplateHandler handler, final int offset, final TemplateFlow
         int processed = 0;
 
         for (int i = offset; i < this.queue.length && !controller.stopProcessing; i++) {
-            this.queue[i].beHandled(handler);
+            event(i).beHandled(handler);
             processed++;
         }
 
@@ -172,7 +290,11 @@ public final IModel cloneModel() {
 
     public final void write(final Writer writer) throws IOException {
         for (int i = 0; i < this.queue.length; i++) {
-            this.queue[i].write(writer);
+            if (this.queue[i] != null) {
+                this.queue[i].write(writer);
+            } else {
+                this.texts.write(i, writer);
+            }
         }
     }
 
@@ -182,7 +304,7 @@ public final void write(final Writer writer) throws IOException {
     public void accept(final IModelVisitor visitor) {
         for (int i = 0; i < this.queue.length; i++) {
             // We will execute the visitor on the Immutable events, that we need to create during the visit
-            this.queue[i].accept(visitor);
+            event(i).accept(visitor);
         }
     }
 
@@ -203,6 +325,113 @@ public final String toString() {
 
 
 
+    private static long computeWeight(final IEngineTemplateEvent[] queue, final TemplateModelTexts texts) {
+
+        long w = MODEL_OVERHEAD + 16L + ((long) queue.length * REFERENCE_SIZE);
+
+        if (texts != null) {
+            // Content String, bounds/lines/cols/flags arrays and, if output encoded, roughly one byte per char
+            w += EVENT_OVERHEAD + stringWeight(texts.getContentLength()) +
+                    (4L * ARRAY_OVERHEAD) + (13L * queue.length) + 4L;
+            if (texts.cacheEncoded) {
+                w += EVENT_OVERHEAD + (2L * ARRAY_OVERHEAD) + texts.getContentLength() + (4L * queue.length) + 4L;
+            }
+        }
+
+        // Compacted models share equal strings among events (see TemplateModelCompactor)
+        final Set<Object> counted = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>(256));
+
+        for (int i = 0; i < queue.length; i++) {
+
+            final IEngineTemplateEvent event = queue[i];
+
+            if (event instanceof AbstractTextualTemplateEvent) {
+                // Text, Comment, CDATASection
+                w += EVENT_OVERHEAD + textWeight((AbstractTextualTemplateEvent) event, counted);
+            } else if (event instanceof AbstractElementTag) {
+                final AbstractElementTag tag = (AbstractElementTag) event;
+                w += ELEMENT_TAG_OVERHEAD + stringWeight(tag.elementCompleteName, counted);
+                if (tag instanceof AbstractProcessableElementTag) {
+                    w += attributesWeight(((AbstractProcessableElementTag) tag).attributes, counted);
+                } else if (tag instanceof CloseElementTag) {
+                    w += stringWeight(((CloseElementTag) tag).trailingWhiteSpace, counted);
+                }
+            } else if (event instanceof DocType) {
+                // The DOCTYPE is kept both as a whole and split into its different parts
+                w += EVENT_OVERHEAD + (2L * stringWeight(((DocType) event).getDocType()));
+            } else if (event instanceof ProcessingInstruction) {
+                w += EVENT_OVERHEAD + (2L * stringWeight(((ProcessingInstruction) event).getProcessingInstruction()));
+            } else if (event instanceof XMLDeclaration) {
+                w += EVENT_OVERHEAD + (2L * stringWeight(((XMLDeclaration) event).getXmlDeclaration()));
+            }
+            // TemplateStart and TemplateEnd are singletons, so they add nothing
+
+        }
+
+        return w;
+
+    }
+
+
+    private static long attributesWeight(final Attributes attributes, final Set<Object> counted) {
+
+        if (attributes == null || attributes == Attributes.EMPTY_ATTRIBUTES) {
+            return 0L;
+        }
+
+        long w = ATTRIBUTES_OVERHEAD;
+        if (attributes.attributes != null) {
+            w += 16L + ((long) attributes.attributes.length * REFERENCE_SIZE);
+            for (int i = 0; i < attributes.attributes.length; i++) {
+                final Attribute attribute = attributes.attributes[i];
+                w += ATTRIBUTE_OVERHEAD + stringWeight(attribute.completeName, counted) + stringWeight(attribute.value, counted);
+            }
+        }
+        if (attributes.innerWhiteSpaces != null && attributes.innerWhiteSpaces != Attributes.DEFAULT_WHITE_SPACE_ARRAY &&
+                counted.add(attributes.innerWhiteSpaces)) {
+            w += 16L + ((long) attributes.innerWhiteSpaces.length * REFERENCE_SIZE);
+            for (int i = 0; i < attributes.innerWhiteSpaces.length; i++) {
+                w += stringWeight(attributes.innerWhiteSpaces[i], counted);
+            }
+        }
+        return w;
+
+    }
+
+
+    private static long textWeight(final AbstractTextualTemplateEvent event, final Set<Object> counted) {
+        if (event instanceof Text) {
+            final Text text = (Text) event;
+            // Texts caching their encoded form will retain (roughly) one more byte per char, once output
+            return stringWeight(text.getText(), counted) + (text.cacheEncoded ? bytesWeight(text.length()) : 0L);
+        }
+        return stringWeight(event.getContentLength());
+    }
+
+
+    private static long stringWeight(final String str, final Set<Object> counted) {
+        return (str == null || !counted.add(str) ? 0L : stringWeight(str.length()));
+    }
+
+
+    private static long stringWeight(final String str) {
+        return (str == null ? 0L : stringWeight(str.length()));
+    }
+
+
+    private static long bytesWeight(final int length) {
+        return ARRAY_OVERHEAD + length;
+    }
+
+
+    private static long stringWeight(final int length) {
+        // Assumes UTF-16 storage, which is the worst case for JVMs with compact strings
+        return STRING_OVERHEAD + (2L * length);
+    }
+
+
+
+
     private static void immutableModelException() {
         throw new UnsupportedOperationException(
                 "Modifications are not allowed on immutable model objects. This model object is an immutable " +
@@ -0,0 +1,637 @@
+/*
+ * =============================================================================
+ *
+ *   Copyright (c) 2011-2022, The THYMELEAF team (http://www.thymeleaf.org)
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * =============================================================================
+ */
+package org.thymeleaf.engine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.thymeleaf.IEngineConfiguration;
+import org.thymeleaf.exceptions.TemplateInputException;
+import org.thymeleaf.model.AttributeValueQuotes;
+import org.thymeleaf.templatemode.TemplateMode;
+import org.thymeleaf.templateresource.ITemplateResource;
+
+
+/**
+ * <p>
+ *   Binary serialized form of {@link TemplateModel} objects, used for writing and reading precompiled template
+ *   archives (see {@link TemplateManager#writeTemplateArchive(java.util.Collection, java.io.OutputStream)} and
+ *   {@link TemplateManager#loadTemplateArchive(java.io.File)}).
+ * </p>
+ * <p>
+ *   An archive is a header (magic number + format version) followed by a sequence of entries, terminated by an
+ *   end marker. Each entry contains the data needed for rebuilding its cache key (template name, selectors and
+ *   template mode), the definitive template mode of the model, a hash of the template contents at the moment the
+ *   entry was written (so that entries for templates modified afterwards can be rejected) and the length of the
+ *   entry body, so that rejected entries can be skipped without decoding them. The body contains a table of all
+ *   the distinct strings used by the events of the model, followed by the events themselves.
+ * </p>
+ * <p>
+ *   Element and attribute definitions are not serialized, but looked up again at the engine configuration
+ *   reading the archive, exactly as the parsers do.
+ * </p>
+ *
+ * @author Daniel Fern&aacute;ndez
+ *
+ * @since 3.1.3
+ *
+ */
+final class TemplateModelArchive {
+
+    private static final int MAGIC = 0x54484D41; // "THMA"
+    private static final int VERSION = 1;
+
+    private static final byte ENTRY = 1;
+    private static final byte END = 0;
+
+    private static final byte EVENT_TEMPLATE_START = 1;
+    private static final byte EVENT_TEMPLATE_END = 2;
+    private static final byte EVENT_TEXT = 3;
+    private static final byte EVENT_COMMENT = 4;
+    private static final byte EVENT_CDATA_SECTION = 5;
+    private static final byte EVENT_DOCTYPE = 6;
+    private static final byte EVENT_XML_DECLARATION = 7;
+    private static final byte EVENT_PROCESSING_INSTRUCTION = 8;
+    private static final byte EVENT_OPEN_ELEMENT = 9;
+    private static final byte EVENT_STANDALONE_ELEMENT = 10;
+    private static final byte EVENT_CLOSE_ELEMENT = 11;
+
+    private static final int NULL = -1;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final String CONTENT_HASH_ALGORITHM = "SHA-256";
+
+    private static final TemplateMode[] TEMPLATE_MODES = TemplateMode.values();
+    private static final AttributeValueQuotes[] VALUE_QUOTES = AttributeValueQuotes.values();
+
+
+
+
+    static void writeHeader(final DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+    }
+
+
+    static void writeEnd(final DataOutputStream out) throws IOException {
+        out.writeByte(END);
+    }
+
+
+    static void writeEntry(
+            final DataOutputStream out, final String template, final Set<String> templateSelectors,
+            final TemplateMode templateMode, final byte[] contentHash, final TemplateModel templateModel)
+            throws IOException {
+
+        out.writeByte(ENTRY);
+
+        writeString(out, template);
+        if (templateSelectors == null) {
+            out.writeInt(NULL);
+        } else {
+            out.writeInt(templateSelectors.size());
+            for (final String templateSelector : templateSelectors) {
+                writeString(out, templateSelector);
+            }
+        }
+        writeTemplateMode(out, templateMode);
+        writeTemplateMode(out, templateModel.getTemplateMode());
+        out.writeInt(contentHash.length);
+        out.write(contentHash);
+
+        final ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream(4096);
+        final DataOutputStream body = new DataOutputStream(bodyBytes);
+        final StringTable strings = new StringTable();
+
+        final ByteArrayOutputStream eventBytes = new ByteArrayOutputStream(4096);
+        final DataOutputStream events = new DataOutputStream(eventBytes);
+        events.writeInt(templateModel.size());
+        for (int i = 0; i < templateModel.size(); i++) {
+            writeEvent(events, strings, templateModel.event(i));
+        }
+        events.flush();
+
+        body.writeInt(strings.size());
+        for (final String string : strings.strings()) {
+            writeString(body, string);
+        }
+        eventBytes.writeTo(body);
+        body.flush();
+
+        out.writeInt(bodyBytes.size());
+        bodyBytes.writeTo(out);
+
+    }
+
+
+
+
+    static void readHeader(final ByteBuffer in) {
+        if (in.remaining() < 8 || in.getInt() != MAGIC) {
+            throw new TemplateInputException("Input is not a template archive");
+        }
+        final int version = in.getInt();
+        if (version != VERSION) {
+            throw new TemplateInputException(
+                    "Unsupported template archive version " + version + " (supported version is " + VERSION + ")");
+        }
+    }
+
+
+    /*
+     * Reads the next entry header (leaving the buffer positioned at the beginning of the entry body), or
+     * returns null if there are no more entries.
+     */
+    static Entry readEntry(final ByteBuffer in) {
+
+        if (in.get() == END) {
+            return null;
+        }
+
+        final String template = readString(in);
+        final int templateSelectorCount = in.getInt();
+        final Set<String> templateSelectors;
+        if (templateSelectorCount == NULL) {
+            templateSelectors = null;
+        } else if (templateSelectorCount == 1) {
+            templateSelectors = Collections.singleton(readString(in));
+        } else {
+            final Set<String> selectors = new TreeSet<String>();
+            for (int i = 0; i < templateSelectorCount; i++) {
+                selectors.add(readString(in));
+            }
+            templateSelectors = Collections.unmodifiableSet(selectors);
+        }
+        final TemplateMode keyTemplateMode = readTemplateMode(in);
+        final TemplateMode templateMode = readTemplateMode(in);
+        final byte[] contentHash = new byte[in.getInt()];
+        in.get(contentHash);
+        final int bodyLength = in.getInt();
+
+        return new Entry(template, templateSelectors, keyTemplateMode, templateMode, contentHash, in.position(), bodyLength);
+
+    }
+
+
+    static void skipBody(final ByteBuffer in, final Entry entry) {
+        in.position(entry.bodyOffset + entry.bodyLength);
+    }
+
+
+    static IEngineTemplateEvent[] readBody(
+            final ByteBuffer in, final Entry entry, final IEngineConfiguration configuration) {
+
+        in.position(entry.bodyOffset);
+
+        final String[] strings = new String[in.getInt()];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = readString(in);
+        }
+
+        final ElementDefinitions elementDefinitions = configuration.getElementDefinitions();
+        final AttributeDefinitions attributeDefinitions = configuration.getAttributeDefinitions();
+
+        final IEngineTemplateEvent[] events = new IEngineTemplateEvent[in.getInt()];
+        for (int i = 0; i < events.length; i++) {
+            events[i] = readEvent(in, strings, elementDefinitions, attributeDefinitions);
+        }
+
+        if (in.position() != entry.bodyOffset + entry.bodyLength) {
+            throw new TemplateInputException("Corrupted template archive entry", entry.template, null);
+        }
+
+        return events;
+
+    }
+
+
+
+
+    static byte[] computeContentHash(final ITemplateResource templateResource) throws IOException {
+
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(CONTENT_HASH_ALGORITHM);
+        } catch (final NoSuchAlgorithmException e) {
+            // Every Java platform implementation is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+
+        final Reader reader = templateResource.reader();
+        try {
+            final char[] buffer = new char[4096];
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                final ByteBuffer bytes = UTF8.encode(CharBuffer.wrap(buffer, 0, read));
+                digest.update(bytes);
+            }
+        } finally {
+            reader.close();
+        }
+
+        return digest.digest();
+
+    }
+
+
+    static boolean matchesContentHash(final Entry entry, final byte[] contentHash) {
+        return Arrays.equals(entry.contentHash, contentHash);
+    }
+
+
+
+
+    private static void writeEvent(
+            final DataOutputStream out, final StringTable strings, final IEngineTemplateEvent event) throws IOException {
+
+        if (event instanceof TemplateStart) {
+            out.writeByte(EVENT_TEMPLATE_START);
+            return;
+        }
+        if (event instanceof TemplateEnd) {
+            out.writeByte(EVENT_TEMPLATE_END);
+            return;
+        }
+
+        if (event instanceof Text) {
+            out.writeByte(EVENT_TEXT);
+            writeLocation(out, strings, (AbstractTemplateEvent) event);
+            out.writeInt(strings.index(((Text) event).getText()));
+        } else if (event instanceof Comment) {
+            final Comment comment = (Comment) event;
+            out.writeByte(EVENT_COMMENT);
+            writeLocation(out, strings, comment);
+            out.writeInt(strings.index(comment.prefix));
+            out.writeInt(strings.index(comment.getContent()));
+            out.writeInt(strings.index(comment.suffix));
+        } else if (event instanceof CDATASection) {
+            final CDATASection cdataSection = (CDATASection) event;
+            out.writeByte(EVENT_CDATA_SECTION);
+            writeLocation(out, strings, cdataSection);
+            out.writeInt(strings.index(cdataSection.prefix));
+            out.writeInt(strings.index(cdataSection.getContent()));
+            out.writeInt(strings.index(cdataSection.suffix));
+        } else if (event instanceof DocType) {
+            final DocType docType = (DocType) event;
+            out.writeByte(EVENT_DOCTYPE);
+            writeLocation(out, strings, docType);
+            out.writeInt(strings.index(docType.getDocType()));
+            out.writeInt(strings.index(docType.getKeyword()));
+            out.writeInt(strings.index(docType.getElementName()));
+            out.writeInt(strings.index(docType.getPublicId()));
+            out.writeInt(strings.index(docType.getSystemId()));
+            out.writeInt(strings.index(docType.getInternalSubset()));
+        } else if (event instanceof XMLDeclaration) {
+            final XMLDeclaration xmlDeclaration = (XMLDeclaration) event;
+            out.writeByte(EVENT_XML_DECLARATION);
+            writeLocation(out, strings, xmlDeclaration);
+            out.writeInt(strings.index(xmlDeclaration.getXmlDeclaration()));
+            out.writeInt(strings.index(xmlDeclaration.getKeyword()));
+            out.writeInt(strings.index(xmlDeclaration.getVersion()));
+            out.writeInt(strings.index(xmlDeclaration.getEncoding()));
+            out.writeInt(strings.index(xmlDeclaration.getStandalone()));
+        } else if (event instanceof ProcessingInstruction) {
+            final ProcessingInstruction processingInstruction = (ProcessingInstruction) event;
+            out.writeByte(EVENT_PROCESSING_INSTRUCTION);
+            writeLocation(out, strings, processingInstruction);
+            out.writeInt(strings.index(processingInstruction.getProcessingInstruction()));
+            out.writeInt(strings.index(processingInstruction.getTarget()));
+            out.writeInt(strings.index(processingInstruction.getContent()));
+        } else if (event instanceof OpenElementTag) {
+            final OpenElementTag openElementTag = (OpenElementTag) event;
+            out.writeByte(EVENT_OPEN_ELEMENT);
+            writeElementTag(out, strings, openElementTag);
+            writeAttributes(out, strings, openElementTag.attributes);
+        } else if (event instanceof StandaloneElementTag) {
+            final StandaloneElementTag standaloneElementTag = (StandaloneElementTag) event;
+            out.writeByte(EVENT_STANDALONE_ELEMENT);
+            writeElementTag(out, strings, standaloneElementTag);
+            writeAttributes(out, strings, standaloneElementTag.attributes);
+            out.writeBoolean(standaloneElementTag.minimized);
+        } else if (event instanceof CloseElementTag) {
+            final CloseElementTag closeElementTag = (CloseElementTag) event;
+            out.writeByte(EVENT_CLOSE_ELEMENT);
+            writeElementTag(out, strings, closeElementTag);
+            out.writeInt(strings.index(closeElementTag.trailingWhiteSpace));
+            out.writeBoolean(closeElementTag.unmatched);
+        } else {
+            throw new IllegalArgumentException(
+                    "Cannot write template event of type " + event.getClass().getName() + " to a template archive");
+        }
+
+    }
+
+
+    private static IEngineTemplateEvent readEvent(
+            final ByteBuffer in, final String[] strings,
+            final ElementDefinitions elementDefinitions, final AttributeDefinitions attributeDefinitions) {
+
+        final byte type = in.get();
+
+        if (type == EVENT_TEMPLATE_START) {
+            return TemplateStart.TEMPLATE_START_INSTANCE;
+        }
+        if (type == EVENT_TEMPLATE_END) {
+            return TemplateEnd.TEMPLATE_END_INSTANCE;
+        }
+
+        final String templateName = strings(strings, in.getInt());
+        final int line = in.getInt();
+        final int col = in.getInt();
+
+        switch (type) {
+            case EVENT_TEXT:
+                return new Text(strings(strings, in.getInt()), templateName, line, col);
+            case EVENT_COMMENT:
+                return new Comment(
+                        strings(strings, in.getInt()), strings(strings, in.getInt()), strings(strings, in.getInt()),
+                        templateName, line, col);
+            case EVENT_CDATA_SECTION:
+                return new CDATASection(
+                        strings(strings, in.getInt()), strings(strings, in.getInt()), strings(strings, in.getInt()),
+                        templateName, line, col);
+            case EVENT_DOCTYPE:
+                return new DocType(
+                        strings(strings, in.getInt()), strings(strings, in.getInt()), strings(strings, in.getInt()),
+                        strings(strings, in.getInt()), strings(strings, in.getInt()), strings(strings, in.getInt()),
+                        templateName, line, col);
+            case EVENT_XML_DECLARATION:
+                return new XMLDeclaration(
+                        strings(strings, in.getInt()), strings(strings, in.getInt()), strings(strings, in.getInt()),
+                        strings(strings, in.getInt()), strings(strings, in.getInt()),
+                        templateName, line, col);
+            case EVENT_PROCESSING_INSTRUCTION:
+                return new ProcessingInstruction(
+                        strings(strings, in.getInt()), strings(strings, in.getInt()), strings(strings, in.getInt()),
+                        templateName, line, col);
+            case EVENT_OPEN_ELEMENT:
+            case EVENT_STANDALONE_ELEMENT:
+            case EVENT_CLOSE_ELEMENT:
+                break;
+            default:
+                throw new TemplateInputException("Unknown event type " + type + " in template archive");
+        }
+
+        final TemplateMode templateMode = readTemplateMode(in);
+        final String elementCompleteName = strings(strings, in.getInt());
+        final boolean synthetic = in.get() != 0;
+        final ElementDefinition elementDefinition = elementDefinitions.forName(templateMode, elementCompleteName);
+
+        if (type == EVENT_CLOSE_ELEMENT) {
+            final String trailingWhiteSpace = strings(strings, in.getInt());
+            final boolean unmatched = in.get() != 0;
+            return new CloseElementTag(
+                    templateMode, elementDefinition, elementCompleteName, trailingWhiteSpace, synthetic, unmatched,
+                    templateName, line, col);
+        }
+
+        final Attributes attributes = readAttributes(in, strings, templateMode, attributeDefinitions);
+
+        if (type == EVENT_OPEN_ELEMENT) {
+            return new OpenElementTag(
+                    templateMode, elementDefinition, elementCompleteName, attributes, synthetic, templateName, line, col);
+        }
+
+        final boolean minimized = in.get() != 0;
+        return new StandaloneElementTag(
+                templateMode, elementDefinition, elementCompleteName, attributes, synthetic, minimized,
+                templateName, line, col);
+
+    }
+
+
+
+
+    private static void writeLocation(
+            final DataOutputStream out, final StringTable strings, final AbstractTemplateEvent event) throws IOException {
+        out.writeInt(strings.index(event.templateName));
+        out.writeInt(event.line);
+        out.writeInt(event.col);
+    }
+
+
+    private static void writeElementTag(
+            final DataOutputStream out, final StringTable strings, final AbstractElementTag elementTag) throws IOException {
+        writeLocation(out, strings, elementTag);
+        writeTemplateMode(out, elementTag.templateMode);
+        out.writeInt(strings.index(elementTag.elementCompleteName));
+        out.writeBoolean(elementTag.synthetic);
+    }
+
+
+    private static void writeAttributes(
+            final DataOutputStream out, final StringTable strings, final Attributes attributes) throws IOException {
+
+        if (attributes == null) {
+            out.writeBoolean(false);
+            return;
+        }
+        out.writeBoolean(true);
+
+        if (attributes.attributes == null) {
+            out.writeInt(NULL);
+        } else {
+            out.writeInt(attributes.attributes.length);
+            for (final Attribute attribute : attributes.attributes) {
+                out.writeInt(strings.index(attribute.completeName));
+                out.writeInt(strings.index(attribute.operator));
+                out.writeInt(strings.index(attribute.value));
+                out.writeByte(attribute.valueQuotes == null ? NULL : attribute.valueQuotes.ordinal());
+                out.writeInt(strings.index(attribute.templateName));
+                out.writeInt(attribute.line);
+                out.writeInt(attribute.col);
+            }
+        }
+
+        if (attributes.innerWhiteSpaces == null) {
+            out.writeInt(NULL);
+        } else {
+            out.writeInt(attributes.innerWhiteSpaces.length);
+            for (final String innerWhiteSpace : attributes.innerWhiteSpaces) {
+                out.writeInt(strings.index(innerWhiteSpace));
+            }
+        }
+
+    }
+
+
+    private static Attributes readAttributes(
+            final ByteBuffer in, final String[] strings,
+            final TemplateMode templateMode, final AttributeDefinitions attributeDefinitions) {
+
+        if (in.get() == 0) {
+            return null;
+        }
+
+        final int attributeCount = in.getInt();
+        final Attribute[] attributes;
+        if (attributeCount == NULL) {
+            attributes = null;
+        } else {
+            attributes = new Attribute[attributeCount];
+            for (int i = 0; i < attributeCount; i++) {
+                final String completeName = strings(strings, in.getInt());
+                final String operator = strings(strings, in.getInt());
+                final String value = strings(strings, in.getInt());
+                final byte valueQuotes = in.get();
+                final String templateName = strings(strings, in.getInt());
+                final int line = in.getInt();
+                final int col = in.getInt();
+                attributes[i] =
+                        new Attribute(
+                                attributeDefinitions.forName(templateMode, completeName), completeName, operator, value,
+                                (valueQuotes == NULL ? null : VALUE_QUOTES[valueQuotes]), templateName, line, col);
+            }
+        }
+
+        final int innerWhiteSpaceCount = in.getInt();
+        final String[] innerWhiteSpaces;
+        if (innerWhiteSpaceCount == NULL) {
+            innerWhiteSpaces = null;
+        } else {
+            innerWhiteSpaces = new String[innerWhiteSpaceCount];
+            for (int i = 0; i < innerWhiteSpaceCount; i++) {
+                innerWhiteSpaces[i] = strings(strings, in.getInt());
+            }
+        }
+
+        return new Attributes(attributes, innerWhiteSpaces);
+
+    }
+
+
+
+
+    private static void writeTemplateMode(final DataOutputStream out, final TemplateMode templateMode) throws IOException {
+        out.writeByte(templateMode == null ? NULL : templateMode.ordinal());
+    }
+
+
+    private static TemplateMode readTemplateMode(final ByteBuffer in) {
+        final byte ordinal = in.get();
+        return (ordinal == NULL ? null : TEMPLATE_MODES[ordinal]);
+    }
+
+
+    private static void writeString(final DataOutputStream out, final String string) throws IOException {
+        final byte[] bytes = string.getBytes(UTF8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+
+    private static String readString(final ByteBuffer in) {
+        final byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, UTF8);
+    }
+
+
+    private static String strings(final String[] strings, final int index) {
+        return (index == NULL ? null : strings[index]);
+    }
+
+
+
+
+    private TemplateModelArchive() {
+        super();
+    }
+
+
+
+
+    static final class Entry {
+
+        final String template;
+        final Set<String> templateSelectors;
+        final TemplateMode keyTemplateMode;
+        final TemplateMode templateMode;
+        final byte[] contentHash;
+        final int bodyOffset;
+        final int bodyLength;
+
+        Entry(final String template, final Set<String> templateSelectors,
+              final TemplateMode keyTemplateMode, final TemplateMode templateMode, final byte[] contentHash,
+              final int bodyOffset, final int bodyLength) {
+            super();
+            this.template = template;
+            this.templateSelectors = templateSelectors;
+            this.keyTemplateMode = keyTemplateMode;
+            this.templateMode = templateMode;
+            this.contentHash = contentHash;
+            this.bodyOffset = bodyOffset;
+            this.bodyLength = bodyLength;
+        }
+
+    }
+
+
+
+
+    /*
+     * Table of the distinct strings used in a template model. Besides making archives smaller, this makes
+     * all equal strings be the same instance once read (e.g. element and attribute names, template names...)
+     */
+    private static final class StringTable {
+
+        private final Map<String,Integer> indexes = new LinkedHashMap<String, Integer>(64);
+
+        StringTable() {
+            super();
+        }
+
+        int index(final String string) {
+            if (string == null) {
+                return NULL;
+            }
+            final Integer index = this.indexes.get(string);
+            if (index != null) {
+                return index.intValue();
+            }
+            final int newIndex = this.indexes.size();
+            this.indexes.put(string, Integer.valueOf(newIndex));
+            return newIndex;
+        }
+
+        int size() {
+            return this.indexes.size();
+        }
+
+        Set<String> strings() {
+            return this.indexes.keySet();
+        }
+
+    }
+
+}
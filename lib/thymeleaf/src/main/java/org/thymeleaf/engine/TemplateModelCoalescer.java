@@ -0,0 +1,348 @@
+/*
+ * =============================================================================
+ *
+ *   Copyright (c) 2011-2022, The THYMELEAF team (http://www.thymeleaf.org)
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * =============================================================================
+ */
+package org.thymeleaf.engine;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.thymeleaf.IEngineConfiguration;
+import org.thymeleaf.exceptions.TemplateProcessingException;
+import org.thymeleaf.processor.cdatasection.ICDATASectionProcessor;
+import org.thymeleaf.processor.comment.ICommentProcessor;
+import org.thymeleaf.processor.element.IElementModelProcessor;
+import org.thymeleaf.processor.element.IElementProcessor;
+import org.thymeleaf.processor.text.ITextProcessor;
+import org.thymeleaf.standard.processor.StandardConditionalCommentProcessor;
+import org.thymeleaf.standard.processor.StandardInliningCDATASectionProcessor;
+import org.thymeleaf.standard.processor.StandardInliningCommentProcessor;
+import org.thymeleaf.standard.processor.StandardInliningTextProcessor;
+import org.thymeleaf.templatemode.TemplateMode;
+import org.thymeleaf.util.FastStringWriter;
+import org.thymeleaf.util.ProcessorConfigurationUtils;
+
+
+
+
+/**
+ * <p>
+ *   Merges runs of events in a {@link TemplateModel} that is going to be cached which will never be affected by
+ *   any processors, into a single {@link Text} event containing their already-serialized output. This way these
+ *   runs are handled and written as one event at each execution of the template, instead of going through the
+ *   processing and output chain one by one.
+ * </p>
+ * <p>
+ *   An event can be merged if it is an element with no associated processors (together with its whole body,
+ *   which must also be processor-free), or a text, comment or CDATA section that the standard inlining
+ *   processors would leave unmodified, i.e. one not containing any {@code [} characters, as all inlining
+ *   syntaxes (and conditional comments) require them. The same applies to the markup of merged elements, as it
+ *   will become part of a text. Coalescing is not applied at all when the template mode has pre-processors or
+ *   post-processors configured (which would expect to see every event), or when its text, comment or CDATA
+ *   section processors are not exactly the standard ones.
+ * </p>
+ * <p>
+ *   Models are only coalesced at parse time if configured (see
+ *   {@link IEngineConfiguration#isCoalesceTemplateModels()}), as processors inspecting cached models will see
+ *   merged texts instead of the original events. Models being compiled (see {@link TemplateCompiler}) are
+ *   always coalesced.
+ * </p>
+ * <p>
+ *   Some restrictions keep the structure of the model visible where the engine or processors rely on it: events
+ *   at the root level of the model are only merged if the model will never be inserted as a fragment (as
+ *   fragment insertion inspects them), elements are not merged into runs at the body of an element with
+ *   processors (which might remove all of its children but the first one), nothing is merged in the body of an
+ *   element with an element model processor (which would receive the body as a model), and white space
+ *   preceding an element is kept apart so that iterations can replicate it. Also, the {@code <head>}
+ *   element of HTML templates is never merged as a whole when output is configured to be flushed after it (see
+ *   {@link IEngineConfiguration#isFlushAfterHead()}).
+ * </p>
+ *
+ * @author Daniel Fern&aacute;ndez
+ *
+ * @since 3.1.3
+ *
+ */
+final class TemplateModelCoalescer {
+
+    private final IEngineTemplateEvent[] queue;
+    private final boolean mergeRootLevel;
+    private final boolean keepHeadApart;
+    private final int[] closeIndexes;
+    private final boolean[] mergeable;
+
+
+
+    private TemplateModelCoalescer(
+            final IEngineTemplateEvent[] queue, final boolean mergeRootLevel, final boolean keepHeadApart) {
+        super();
+        this.queue = queue;
+        this.mergeRootLevel = mergeRootLevel;
+        this.keepHeadApart = keepHeadApart;
+        this.closeIndexes = new int[queue.length];
+        this.mergeable = new boolean[queue.length];
+    }
+
+
+
+    static IEngineTemplateEvent[] coalesce(
+            final IEngineConfiguration configuration, final TemplateMode templateMode,
+            final IEngineTemplateEvent[] queue) {
+        return coalesce(configuration, templateMode, queue, false);
+    }
+
+
+    /*
+     * Merging the root level of the model is only safe when the model is going to be processed as a whole
+     * template, and never inserted as a fragment.
+     */
+    static IEngineTemplateEvent[] coalesce(
+            final IEngineConfiguration configuration, final TemplateMode templateMode,
+            final IEngineTemplateEvent[] queue, final boolean mergeRootLevel) {
+        if (!isCoalescingApplicable(configuration, templateMode)) {
+            return queue;
+        }
+        // The </head> close tag must reach the output handler as such if output is to be flushed after it
+        final boolean keepHeadApart = (templateMode == TemplateMode.HTML && configuration.isFlushAfterHead());
+        final TemplateModelCoalescer coalescer = new TemplateModelCoalescer(queue, mergeRootLevel, keepHeadApart);
+        coalescer.computeMergeable();
+        return coalescer.merge();
+    }
+
+
+
+
+    static boolean isCoalescingApplicable(
+            final IEngineConfiguration configuration, final TemplateMode templateMode) {
+
+        if (!configuration.getPreProcessors(templateMode).isEmpty() ||
+                !configuration.getPostProcessors(templateMode).isEmpty()) {
+            return false;
+        }
+
+        final Set<ITextProcessor> textProcessors = configuration.getTextProcessors(templateMode);
+        for (final ITextProcessor textProcessor : textProcessors) {
+            if (ProcessorConfigurationUtils.unwrap(textProcessor).getClass() != StandardInliningTextProcessor.class) {
+                return false;
+            }
+        }
+        final Set<ICommentProcessor> commentProcessors = configuration.getCommentProcessors(templateMode);
+        for (final ICommentProcessor commentProcessor : commentProcessors) {
+            final Class<?> commentProcessorClass = ProcessorConfigurationUtils.unwrap(commentProcessor).getClass();
+            if (commentProcessorClass != StandardInliningCommentProcessor.class &&
+                    commentProcessorClass != StandardConditionalCommentProcessor.class) {
+                return false;
+            }
+        }
+        final Set<ICDATASectionProcessor> cdataSectionProcessors = configuration.getCDATASectionProcessors(templateMode);
+        for (final ICDATASectionProcessor cdataSectionProcessor : cdataSectionProcessors) {
+            if (ProcessorConfigurationUtils.unwrap(cdataSectionProcessor).getClass() != StandardInliningCDATASectionProcessor.class) {
+                return false;
+            }
+        }
+
+        return true;
+
+    }
+
+
+
+
+    /*
+     * Computes, for each event, whether it can be merged. For open element tags this refers to the whole
+     * element (the tag, its body and its matching close tag), which will be located at closeIndexes.
+     */
+    private void computeMergeable() {
+
+        int[] openIndexes = new int[16];
+        int openCount = 0;
+
+        for (int i = 0; i < this.queue.length; i++) {
+
+            final IEngineTemplateEvent event = this.queue[i];
+            this.closeIndexes[i] = -1;
+
+            if (event instanceof OpenElementTag) {
+                if (openCount == openIndexes.length) {
+                    final int[] newOpenIndexes = new int[openIndexes.length * 2];
+                    System.arraycopy(openIndexes, 0, newOpenIndexes, 0, openCount);
+                    openIndexes = newOpenIndexes;
+                }
+                openIndexes[openCount++] = i;
+                this.mergeable[i] = isMergeable(event);
+                continue;
+            }
+
+            if (event instanceof CloseElementTag && !((CloseElementTag) event).isUnmatched() && openCount > 0) {
+                final int openIndex = openIndexes[--openCount];
+                this.closeIndexes[openIndex] = i;
+                this.mergeable[i] = this.mergeable[openIndex];
+                if (!this.mergeable[openIndex] && openCount > 0) {
+                    this.mergeable[openIndexes[openCount - 1]] = false;
+                }
+                continue;
+            }
+
+            this.mergeable[i] = isMergeable(event);
+            if (!this.mergeable[i] && openCount > 0) {
+                this.mergeable[openIndexes[openCount - 1]] = false;
+            }
+
+        }
+
+    }
+
+
+    private boolean isMergeable(final IEngineTemplateEvent event) {
+        if (event instanceof Text) {
+            return ((Text) event).getText().indexOf('[') < 0;
+        }
+        if (event instanceof Comment) {
+            return ((Comment) event).getComment().indexOf('[') < 0;
+        }
+        if (event instanceof CDATASection) {
+            return ((CDATASection) event).getCDATASection().indexOf('[') < 0;
+        }
+        if (event instanceof AbstractProcessableElementTag) {
+            // Once merged, the markup of the tag will be part of a text, so it must not contain inlining syntax
+            final AbstractProcessableElementTag tag = (AbstractProcessableElementTag) event;
+            if (this.keepHeadApart && "head".equalsIgnoreCase(tag.getElementCompleteName())) {
+                return false;
+            }
+            return !tag.hasAssociatedProcessors() && tag.toString().indexOf('[') < 0;
+        }
+        // Unmatched close tags, DOCTYPEs, XML declarations, processing instructions and template start/end
+        return false;
+    }
+
+
+
+
+    private IEngineTemplateEvent[] merge() {
+
+        final List<IEngineTemplateEvent> merged = new ArrayList<IEngineTemplateEvent>(this.queue.length);
+
+        // For each open element: whether its body can be merged at all, and whether elements can be merged into
+        // runs at its body. The root level of the model is not merged unless specifically asked.
+        boolean[] bodyMergeable = new boolean[16];
+        boolean[] bodyElementsMergeable = new boolean[16];
+        int level = 0;
+        bodyMergeable[0] = this.mergeRootLevel;
+        bodyElementsMergeable[0] = this.mergeRootLevel;
+
+        int i = 0;
+        while (i < this.queue.length) {
+
+            if (bodyMergeable[level]) {
+                final int runEnd = computeRunEnd(i, bodyElementsMergeable[level]);
+                if (runEnd - i > 1) {
+                    merged.add(serialize(i, runEnd));
+                    i = runEnd;
+                    continue;
+                }
+            }
+
+            final IEngineTemplateEvent event = this.queue[i];
+            merged.add(event);
+
+            if (event instanceof OpenElementTag) {
+                if (level + 1 == bodyMergeable.length) {
+                    final boolean[] newBodyMergeable = new boolean[bodyMergeable.length * 2];
+                    final boolean[] newBodyElementsMergeable = new boolean[bodyMergeable.length * 2];
+                    System.arraycopy(bodyMergeable, 0, newBodyMergeable, 0, bodyMergeable.length);
+                    System.arraycopy(bodyElementsMergeable, 0, newBodyElementsMergeable, 0, bodyMergeable.length);
+                    bodyMergeable = newBodyMergeable;
+                    bodyElementsMergeable = newBodyElementsMergeable;
+                }
+                final IElementProcessor[] processors = ((OpenElementTag) event).getAssociatedProcessors();
+                bodyMergeable[level + 1] = (level == 0 || bodyMergeable[level]) && !hasModelProcessor(processors);
+                bodyElementsMergeable[level + 1] = (processors.length == 0);
+                level++;
+            } else if (event instanceof CloseElementTag && !((CloseElementTag) event).isUnmatched() && level > 0) {
+                level--;
+            }
+
+            i++;
+
+        }
+
+        return merged.toArray(new IEngineTemplateEvent[merged.size()]);
+
+    }
+
+
+    private int computeRunEnd(final int start, final boolean elementsMergeable) {
+
+        int i = start;
+        while (i < this.queue.length && this.mergeable[i]) {
+            final IEngineTemplateEvent event = this.queue[i];
+            if (event instanceof OpenElementTag) {
+                if (!elementsMergeable || this.closeIndexes[i] < 0) {
+                    break;
+                }
+                i = this.closeIndexes[i] + 1;
+            } else if (event instanceof StandaloneElementTag) {
+                if (!elementsMergeable) {
+                    break;
+                }
+                i++;
+            } else if (event instanceof CloseElementTag) {
+                // A close tag of the element containing the run
+                break;
+            } else {
+                i++;
+            }
+        }
+
+        // Trailing white space is kept apart, as it is replicated when the element after it is iterated
+        if (i > start && this.queue[i - 1] instanceof Text && ((Text) this.queue[i - 1]).isWhitespace()) {
+            i--;
+        }
+
+        return i;
+
+    }
+
+
+    private static boolean hasModelProcessor(final IElementProcessor[] processors) {
+        for (int i = 0; i < processors.length; i++) {
+            if (processors[i] instanceof IElementModelProcessor) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    private Text serialize(final int start, final int end) {
+        final IEngineTemplateEvent first = this.queue[start];
+        final FastStringWriter writer = new FastStringWriter(256);
+        try {
+            for (int i = start; i < end; i++) {
+                this.queue[i].write(writer);
+            }
+        } catch (final IOException e) {
+            // Should never happen, as we are writing to memory
+            throw new TemplateProcessingException("Exception while coalescing static template events", e);
+        }
+        return new Text(writer.toString(), first.getTemplateName(), first.getLine(), first.getCol());
+    }
+
+}
@@ -0,0 +1,188 @@
+/*
+ * =============================================================================
+ *
+ *   Copyright (c) 2011-2022, The THYMELEAF team (http://www.thymeleaf.org)
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * =============================================================================
+ */
+package org.thymeleaf.engine;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+
+
+/**
+ * <p>
+ *   Reduces the memory retained by a {@link TemplateModel} that is going to be cached, by rebuilding its
+ *   events so that equal strings and equal immutable arrays are shared instead of being kept as separate
+ *   instances, as the parsers create a new object for each of them.
+ * </p>
+ * <p>
+ *   Element and attribute names are interned, as they come from a small vocabulary shared by most templates.
+ *   Any other strings (texts, attribute values, white space...) are shared only inside the same model and only
+ *   when they are not too long, as long texts are seldom repeated. Sharing is safe because all of these objects
+ *   are immutable, and events keep their own template location data.
+ * </p>
+ *
+ * @author Daniel Fern&aacute;ndez
+ *
+ * @since 3.1.3
+ *
+ */
+final class TemplateModelCompactor {
+
+    private static final int MAX_SHARED_STRING_LENGTH = 256;
+
+    private final Map<String,String> strings;
+    private final Map<List<String>,String[]> whiteSpaceArrays;
+
+
+
+    private TemplateModelCompactor() {
+        super();
+        this.strings = new HashMap<String, String>(256);
+        this.whiteSpaceArrays = new HashMap<List<String>, String[]>(16);
+    }
+
+
+
+    static IEngineTemplateEvent[] compact(final IEngineTemplateEvent[] queue) {
+        final TemplateModelCompactor compactor = new TemplateModelCompactor();
+        final IEngineTemplateEvent[] compacted = new IEngineTemplateEvent[queue.length];
+        for (int i = 0; i < queue.length; i++) {
+            compacted[i] = compactor.compactEvent(queue[i]);
+        }
+        return compacted;
+    }
+
+
+
+
+    private IEngineTemplateEvent compactEvent(final IEngineTemplateEvent event) {
+
+        if (event instanceof Text) {
+            final Text text = (Text) event;
+            return new Text(share(text.getText()), share(text.templateName), text.line, text.col);
+        }
+        if (event instanceof OpenElementTag) {
+            final OpenElementTag tag = (OpenElementTag) event;
+            return new OpenElementTag(
+                    tag.templateMode, tag.elementDefinition, name(tag.elementCompleteName),
+                    compactAttributes(tag.attributes), tag.synthetic, share(tag.templateName), tag.line, tag.col);
+        }
+        if (event instanceof CloseElementTag) {
+            final CloseElementTag tag = (CloseElementTag) event;
+            return new CloseElementTag(
+                    tag.templateMode, tag.elementDefinition, name(tag.elementCompleteName),
+                    share(tag.trailingWhiteSpace), tag.synthetic, tag.unmatched,
+                    share(tag.templateName), tag.line, tag.col);
+        }
+        if (event instanceof StandaloneElementTag) {
+            final StandaloneElementTag tag = (StandaloneElementTag) event;
+            return new StandaloneElementTag(
+                    tag.templateMode, tag.elementDefinition, name(tag.elementCompleteName),
+                    compactAttributes(tag.attributes), tag.synthetic, tag.minimized,
+                    share(tag.templateName), tag.line, tag.col);
+        }
+        if (event instanceof Comment) {
+            final Comment comment = (Comment) event;
+            return new Comment(
+                    share(comment.prefix), share(comment.getContent()), share(comment.suffix),
+                    share(comment.templateName), comment.line, comment.col);
+        }
+        if (event instanceof CDATASection) {
+            final CDATASection cdataSection = (CDATASection) event;
+            return new CDATASection(
+                    share(cdataSection.prefix), share(cdataSection.getContent()), share(cdataSection.suffix),
+                    share(cdataSection.templateName), cdataSection.line, cdataSection.col);
+        }
+        // TemplateStart/TemplateEnd are singletons, and DOCTYPEs, XML declarations and processing
+        // instructions appear at most a few times per template
+        return event;
+
+    }
+
+
+    private Attributes compactAttributes(final Attributes attributes) {
+
+        if (attributes == null || attributes == Attributes.EMPTY_ATTRIBUTES) {
+            return attributes;
+        }
+
+        Attribute[] compactedAttributes = attributes.attributes;
+        if (attributes.attributes != null && attributes.attributes.length > 0) {
+            compactedAttributes = new Attribute[attributes.attributes.length];
+            for (int i = 0; i < attributes.attributes.length; i++) {
+                final Attribute attribute = attributes.attributes[i];
+                compactedAttributes[i] =
+                        new Attribute(
+                                attribute.definition, name(attribute.completeName), share(attribute.operator),
+                                share(attribute.value), attribute.valueQuotes,
+                                share(attribute.templateName), attribute.line, attribute.col);
+            }
+        }
+
+        return new Attributes(compactedAttributes, shareWhiteSpaces(attributes.innerWhiteSpaces));
+
+    }
+
+
+    private String[] shareWhiteSpaces(final String[] innerWhiteSpaces) {
+
+        if (innerWhiteSpaces == null || innerWhiteSpaces == Attributes.DEFAULT_WHITE_SPACE_ARRAY) {
+            return innerWhiteSpaces;
+        }
+        if (Arrays.equals(innerWhiteSpaces, Attributes.DEFAULT_WHITE_SPACE_ARRAY)) {
+            return Attributes.DEFAULT_WHITE_SPACE_ARRAY;
+        }
+
+        // Inner white space arrays are never modified once created, so they can be shared
+        final List<String> key = Arrays.asList(innerWhiteSpaces);
+        final String[] shared = this.whiteSpaceArrays.get(key);
+        if (shared != null) {
+            return shared;
+        }
+        final String[] compacted = new String[innerWhiteSpaces.length];
+        for (int i = 0; i < innerWhiteSpaces.length; i++) {
+            compacted[i] = share(innerWhiteSpaces[i]);
+        }
+        this.whiteSpaceArrays.put(Arrays.asList(compacted), compacted);
+        return compacted;
+
+    }
+
+
+    private String share(final String str) {
+        if (str == null || str.length() > MAX_SHARED_STRING_LENGTH) {
+            return str;
+        }
+        final String shared = this.strings.get(str);
+        if (shared != null) {
+            return shared;
+        }
+        this.strings.put(str, str);
+        return str;
+    }
+
+
+    private static String name(final String name) {
+        return (name == null ? null : name.intern());
+    }
+
+}
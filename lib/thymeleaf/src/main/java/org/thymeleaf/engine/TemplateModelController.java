@@ -101,7 +101,7 @@ enum SkipBody {
     private final IEngineConfiguration configuration;
     private final TemplateMode templateMode;
     private final ProcessorTemplateHandler processorTemplateHandler;
-    private final IEngineContext context;
+    private IEngineContext context;
 
     private TemplateFlowController templateFlowController;
 
@@ -148,6 +148,24 @@ enum SkipBody {
     }
 
 
+    /*
+     * Resets this controller to its initial state so that it can be reused for a new execution of the processor
+     * template handler it belongs to (see ProcessorTemplateHandler#setContext).
+     */
+    void reset(final IEngineContext context) {
+        this.context = context;
+        this.templateFlowController = null;
+        this.gatheredModel = null;
+        this.modelLevel = 0;
+        this.skipBodyByLevel[this.modelLevel] = SkipBody.PROCESS;
+        this.skipBody = this.skipBodyByLevel[this.modelLevel];
+        this.skipCloseTagByLevel[this.modelLevel] = false;
+        Arrays.fill(this.unskippedFirstElementByLevel, null);
+        this.lastEvent = null;
+        this.secondToLastEvent = null;
+    }
+
+
     void setTemplateFlowController(final TemplateFlowController templateFlowController) {
         this.templateFlowController = templateFlowController;
     }
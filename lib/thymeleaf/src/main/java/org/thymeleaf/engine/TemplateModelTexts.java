@@ -0,0 +1,296 @@
+/*
+ * =============================================================================
+ *
+ *   Copyright (c) 2011-2022, The THYMELEAF team (http://www.thymeleaf.org)
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * =============================================================================
+ */
+package org.thymeleaf.engine;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+import org.thymeleaf.util.EncodingWriter;
+import org.thymeleaf.util.IWritableCharSequence;
+
+
+
+
+/**
+ * <p>
+ *   Compact form of the texts of a cached {@link TemplateModel}: instead of a {@link Text} event and a
+ *   {@link String} per text, all texts are kept as ranges of a single {@code String}, with their template
+ *   locations and their already-analyzed features (whether they are white space or contain inlined
+ *   expressions) kept at arrays indexed by their position in the model.
+ * </p>
+ * <p>
+ *   {@link Text} events are only created when the model is processed and an event has to be handed to the
+ *   handler chain, and these events do not copy their contents but read them from the shared {@code String}
+ *   (see {@link Slice}). When the model is written directly, or once the event reaches the output, contents
+ *   are written from the shared {@code String} (or from its encoded form, see {@link EncodingWriter}) without
+ *   creating any further objects.
+ * </p>
+ * <p>
+ *   Element tags are not packed this way, as they keep per-instance information that is expensive to
+ *   compute (their associated processors, the parsed expressions in their attributes...), and texts are
+ *   the events that retain most memory in a model once its static markup has been coalesced.
+ * </p>
+ *
+ * @author Daniel Fern&aacute;ndez
+ *
+ * @since 3.1.3
+ *
+ */
+final class TemplateModelTexts {
+
+    private static final byte TEXT = 0x1;
+    private static final byte WHITESPACE = 0x2;
+    private static final byte INLINEABLE = 0x4;
+
+    private final String templateName;
+    private final String content;
+    private final int[] bounds; // text at position i (if any) is content[bounds[i], bounds[i + 1])
+    private final int[] lines;
+    private final int[] cols;
+    private final byte[] flags;
+
+    // Set for models that are output every time they are processed (see Text#cacheEncoded)
+    volatile boolean cacheEncoded = false;
+    private volatile EncodedContent encodedContent = null;
+
+
+
+    private TemplateModelTexts(
+            final String templateName, final String content,
+            final int[] bounds, final int[] lines, final int[] cols, final byte[] flags) {
+        super();
+        this.templateName = templateName;
+        this.content = content;
+        this.bounds = bounds;
+        this.lines = lines;
+        this.cols = cols;
+        this.flags = flags;
+    }
+
+
+
+
+    /*
+     * Packs the texts in the queue that come from the same template as its first text. Returns null if there
+     * are no texts to be packed.
+     */
+    static TemplateModelTexts pack(final IEngineTemplateEvent[] queue) {
+
+        String templateName = null;
+        int textCount = 0;
+        int contentLength = 0;
+        for (int i = 0; i < queue.length; i++) {
+            if (queue[i] instanceof Text) {
+                final Text text = (Text) queue[i];
+                if (textCount == 0) {
+                    templateName = text.templateName;
+                } else if (!isSameTemplateName(templateName, text.templateName)) {
+                    continue;
+                }
+                textCount++;
+                contentLength += text.length();
+            }
+        }
+
+        if (textCount == 0) {
+            return null;
+        }
+
+        final StringBuilder content = new StringBuilder(contentLength);
+        final int[] bounds = new int[queue.length + 1];
+        final int[] lines = new int[queue.length];
+        final int[] cols = new int[queue.length];
+        final byte[] flags = new byte[queue.length];
+
+        for (int i = 0; i < queue.length; i++) {
+            bounds[i] = content.length();
+            if (queue[i] instanceof Text && isSameTemplateName(templateName, ((Text) queue[i]).templateName)) {
+                final Text text = (Text) queue[i];
+                content.append(text.getText());
+                lines[i] = text.line;
+                cols[i] = text.col;
+                flags[i] =
+                        (byte) (TEXT | (text.isWhitespace() ? WHITESPACE : 0) | (text.isInlineable() ? INLINEABLE : 0));
+            }
+        }
+        bounds[queue.length] = content.length();
+
+        return new TemplateModelTexts(templateName, content.toString(), bounds, lines, cols, flags);
+
+    }
+
+
+    private static boolean isSameTemplateName(final String templateName, final String otherTemplateName) {
+        return (templateName == null ? otherTemplateName == null : templateName.equals(otherTemplateName));
+    }
+
+
+    /*
+     * Returns a copy of the queue in which the positions of packed texts are set to null.
+     */
+    IEngineTemplateEvent[] removePacked(final IEngineTemplateEvent[] queue) {
+        final IEngineTemplateEvent[] events = new IEngineTemplateEvent[queue.length];
+        for (int i = 0; i < queue.length; i++) {
+            events[i] = ((this.flags[i] & TEXT) != 0 ? null : queue[i]);
+        }
+        return events;
+    }
+
+
+
+
+    Text text(final int pos) {
+        final byte f = this.flags[pos];
+        return new Text(
+                new Slice(this, pos), this.templateName, this.lines[pos], this.cols[pos],
+                (f & WHITESPACE) != 0, (f & INLINEABLE) != 0);
+    }
+
+
+    void write(final int pos, final Writer writer) throws IOException {
+        if (this.cacheEncoded && writer instanceof EncodingWriter &&
+                ((EncodingWriter) writer).isEncodedOutputSupported()) {
+            final EncodingWriter encodingWriter = (EncodingWriter) writer;
+            final EncodedContent encoded = encoded(encodingWriter.getCharset());
+            encodingWriter.writeEncoded(
+                    encoded.bytes, encoded.bounds[pos], encoded.bounds[pos + 1] - encoded.bounds[pos]);
+            return;
+        }
+        writer.write(this.content, this.bounds[pos], this.bounds[pos + 1] - this.bounds[pos]);
+    }
+
+
+    private EncodedContent encoded(final Charset charset) {
+        EncodedContent encoded = this.encodedContent;
+        if (encoded == null || !encoded.charset.equals(charset)) {
+            // Only one charset is cached, as all output from an application will normally use the same one.
+            // Texts are encoded separately, which is safe because encoded output is only used for stateless
+            // charsets (see EncodingWriter#isStatelessCharset(Charset))
+            final byte[][] encodedTexts = new byte[this.flags.length][];
+            final int[] encodedBounds = new int[this.bounds.length];
+            int length = 0;
+            for (int i = 0; i < this.flags.length; i++) {
+                encodedBounds[i] = length;
+                if ((this.flags[i] & TEXT) != 0) {
+                    encodedTexts[i] = this.content.substring(this.bounds[i], this.bounds[i + 1]).getBytes(charset);
+                    length += encodedTexts[i].length;
+                }
+            }
+            encodedBounds[this.flags.length] = length;
+            final byte[] bytes = new byte[length];
+            for (int i = 0; i < this.flags.length; i++) {
+                if (encodedTexts[i] != null) {
+                    System.arraycopy(encodedTexts[i], 0, bytes, encodedBounds[i], encodedTexts[i].length);
+                }
+            }
+            encoded = new EncodedContent(charset, bytes, encodedBounds);
+            this.encodedContent = encoded;
+        }
+        return encoded;
+    }
+
+
+
+
+    /*
+     * Whether both texts were created from the same packed text, which means they are equivalent to the
+     * same event for the purpose of caching information computed from them (see IteratedGatheringModelProcessable).
+     */
+    static boolean isSameText(final Text text, final Text otherText) {
+        if (text == otherText) {
+            return true;
+        }
+        if (text == null || otherText == null) {
+            return false;
+        }
+        final CharSequence content = text.getContentCharSequence();
+        final CharSequence otherContent = otherText.getContentCharSequence();
+        return content instanceof Slice && otherContent instanceof Slice &&
+                ((Slice) content).texts == ((Slice) otherContent).texts &&
+                ((Slice) content).pos == ((Slice) otherContent).pos;
+    }
+
+
+
+
+    int getContentLength() {
+        return this.content.length();
+    }
+
+
+
+
+    /*
+     * CharSequence view of a packed text, used as content of the Text events created for it.
+     */
+    static final class Slice implements IWritableCharSequence {
+
+        private final TemplateModelTexts texts;
+        private final int pos;
+
+        Slice(final TemplateModelTexts texts, final int pos) {
+            super();
+            this.texts = texts;
+            this.pos = pos;
+        }
+
+        public int length() {
+            return this.texts.bounds[this.pos + 1] - this.texts.bounds[this.pos];
+        }
+
+        public char charAt(final int index) {
+            return this.texts.content.charAt(this.texts.bounds[this.pos] + index);
+        }
+
+        public CharSequence subSequence(final int start, final int end) {
+            final int offset = this.texts.bounds[this.pos];
+            return this.texts.content.subSequence(offset + start, offset + end);
+        }
+
+        public void write(final Writer writer) throws IOException {
+            this.texts.write(this.pos, writer);
+        }
+
+        @Override
+        public String toString() {
+            return this.texts.content.substring(this.texts.bounds[this.pos], this.texts.bounds[this.pos + 1]);
+        }
+
+    }
+
+
+    private static final class EncodedContent {
+
+        final Charset charset;
+        final byte[] bytes;
+        final int[] bounds;
+
+        EncodedContent(final Charset charset, final byte[] bytes, final int[] bounds) {
+            super();
+            this.charset = charset;
+            this.bytes = bytes;
+            this.bounds = bounds;
+        }
+
+    }
+
+
+}
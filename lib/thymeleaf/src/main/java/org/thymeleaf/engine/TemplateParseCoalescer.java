@@ -0,0 +1,154 @@
+/*
+ * =============================================================================
+ *
+ *   Copyright (c) 2011-2022, The THYMELEAF team (http://www.thymeleaf.org)
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * =============================================================================
+ */
+package org.thymeleaf.engine;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.thymeleaf.cache.TemplateCacheKey;
+import org.thymeleaf.exceptions.TemplateInputException;
+
+
+/**
+ * <p>
+ *   Coalesces concurrent template cache misses for the same {@link TemplateCacheKey}, so that only
+ *   one thread (the <em>leader</em>) resolves and parses the template while the rest of threads requesting
+ *   it wait for the resulting {@link TemplateModel} instead of parsing it themselves.
+ * </p>
+ * <p>
+ *   Waiting is bounded by a timeout (applied on each key separately). Threads that time out, or that find
+ *   out the leader could not produce a shareable (i.e. cacheable) model, will simply go on and resolve and
+ *   parse the template by themselves. If the leader fails with an exception, waiting threads will fail too.
+ * </p>
+ * <p>
+ *   Objects of this class are thread-safe.
+ * </p>
+ *
+ * @author Daniel Fern&aacute;ndez
+ *
+ * @since 3.1.3
+ *
+ */
+final class TemplateParseCoalescer {
+
+    private final long timeoutMillis;
+    private final ConcurrentHashMap<TemplateCacheKey,InFlightParse> inFlightParses;
+    private final AtomicLong coalescedCount;
+
+
+
+    TemplateParseCoalescer(final long timeoutMillis) {
+        super();
+        this.timeoutMillis = timeoutMillis;
+        this.inFlightParses = new ConcurrentHashMap<TemplateCacheKey, InFlightParse>(16, 0.75f, 4);
+        this.coalescedCount = new AtomicLong(0L);
+    }
+
+
+
+
+    /*
+     * Registers the current thread as the leader for parsing the specified key. Returns null if another
+     * thread is already parsing it, in which case join(key) should be called.
+     */
+    InFlightParse lead(final TemplateCacheKey key) {
+        final InFlightParse inFlightParse = new InFlightParse();
+        if (this.inFlightParses.putIfAbsent(key, inFlightParse) != null) {
+            return null;
+        }
+        return inFlightParse;
+    }
+
+
+    /*
+     * Waits for the parse being performed by another thread for the specified key. Returns null if there was
+     * no such parse in flight, if it did not produce a shareable model or if the timeout was reached.
+     */
+    TemplateModel join(final TemplateCacheKey key) {
+
+        final InFlightParse inFlightParse = this.inFlightParses.get(key);
+        if (inFlightParse == null || inFlightParse.leader == Thread.currentThread()) {
+            return null;
+        }
+
+        try {
+            if (!inFlightParse.latch.await(this.timeoutMillis, TimeUnit.MILLISECONDS)) {
+                return null;
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TemplateInputException(
+                    "Interrupted while waiting for template to be parsed by another thread", key.getTemplate(), e);
+        }
+
+        if (inFlightParse.error != null) {
+            throw new TemplateInputException(
+                    "An error happened while the template was being parsed by another thread", key.getTemplate(), inFlightParse.error);
+        }
+
+        if (inFlightParse.templateModel != null) {
+            this.coalescedCount.incrementAndGet();
+        }
+        return inFlightParse.templateModel;
+
+    }
+
+
+    /*
+     * Must always be called by the leader once the parse has finished, successfully or not. A null model means
+     * the resulting model (if any) cannot be shared with other threads (e.g. because the template is not cacheable).
+     */
+    void complete(
+            final TemplateCacheKey key, final InFlightParse inFlightParse,
+            final TemplateModel templateModel, final Throwable error) {
+        inFlightParse.templateModel = templateModel;
+        inFlightParse.error = error;
+        this.inFlightParses.remove(key, inFlightParse);
+        inFlightParse.latch.countDown();
+    }
+
+
+    long getCoalescedCount() {
+        return this.coalescedCount.get();
+    }
+
+
+
+
+    static final class InFlightParse {
+
+        private final Thread leader;
+        private final CountDownLatch latch;
+        // Visibility of these is guaranteed by the latch (countDown happens-before await returns)
+        private TemplateModel templateModel;
+        private Throwable error;
+
+        InFlightParse() {
+            super();
+            this.leader = Thread.currentThread();
+            this.latch = new CountDownLatch(1);
+        }
+
+    }
+
+
+}
@@ -21,9 +21,11 @@
 
 import java.io.IOException;
 import java.io.Writer;
+import java.nio.charset.Charset;
 
 import org.thymeleaf.model.IModelVisitor;
 import org.thymeleaf.model.IText;
+import org.thymeleaf.util.EncodingWriter;
 
 /*
  * Engine implementation of IText.
@@ -33,6 +35,11 @@
  */
 final class Text extends AbstractTextualTemplateEvent implements IText {
 
+    // Set for the texts contained in cached template models, which are output every time their models are processed,
+    // so that their contents can be cached already encoded for byte-oriented output (see EncodingWriter)
+    boolean cacheEncoded = false;
+    private volatile EncodedText encodedText = null;
+
 
 
     Text(final CharSequence text) {
@@ -45,6 +52,12 @@ final class Text extends AbstractTextualTemplateEvent implements IText {
     }
 
 
+    Text(final CharSequence text, final String templateName, final int line, final int col,
+         final boolean whitespace, final boolean inlineable) {
+        super(text, templateName, line, col, whitespace, inlineable);
+    }
+
+
 
 
     public String getText() {
@@ -75,10 +88,28 @@ public void accept(final IModelVisitor visitor) {
 
 
     public void write(final Writer writer) throws IOException {
+        if (this.cacheEncoded && writer instanceof EncodingWriter &&
+                ((EncodingWriter) writer).isEncodedOutputSupported()) {
+            final EncodingWriter encodingWriter = (EncodingWriter) writer;
+            final byte[] encoded = encoded(encodingWriter.getCharset());
+            encodingWriter.writeEncoded(encoded, 0, encoded.length);
+            return;
+        }
         writeContent(writer);
     }
 
 
+    private byte[] encoded(final Charset charset) {
+        EncodedText encoded = this.encodedText;
+        if (encoded == null || !encoded.charset.equals(charset)) {
+            // Only one charset is cached, as all output from an application will normally use the same one
+            encoded = new EncodedText(charset, getText().getBytes(charset));
+            this.encodedText = encoded;
+        }
+        return encoded.bytes;
+    }
+
+
 
 
     // Meant to be called only from within the engine
@@ -106,4 +137,20 @@ public String toString() {
     }
 
 
+
+
+    private static final class EncodedText {
+
+        final Charset charset;
+        final byte[] bytes;
+
+        EncodedText(final Charset charset, final byte[] bytes) {
+            super();
+            this.charset = charset;
+            this.bytes = bytes;
+        }
+
+    }
+
+
 }
@@ -46,6 +46,9 @@ class ThrottledTemplateWriter extends Writer implements IThrottledTemplateWriter
 
     private boolean flushable;
 
+    private boolean unlimited;
+    private int chunkStartWrittenCount;
+
 
     ThrottledTemplateWriter(final String templateName, final TemplateFlowController flowController) {
         super();
@@ -54,6 +57,8 @@ class ThrottledTemplateWriter extends Writer implements IThrottledTemplateWriter
         this.adapter = null;
         this.writer = null;
         this.flushable = false;
+        this.unlimited = true;
+        this.chunkStartWrittenCount = 0;
     }
 
 
@@ -167,10 +172,25 @@ public int getOverflowGrowCount() {
 
 
     void allow(final int limit) {
+        this.unlimited = (limit == Integer.MAX_VALUE || limit < 0);
+        this.chunkStartWrittenCount = this.adapter.getWrittenCount();
         this.adapter.allow(limit);
     }
 
 
+    /*
+     * Flushes output and, if output is being limited and some output has already been produced for the current
+     * chunk, stops processing so that this chunk is finished (and can be sent) at this point.
+     */
+    void flushPoint() throws IOException {
+        this.flush();
+        this.flushable = false;
+        if (!this.unlimited && this.adapter.getWrittenCount() > this.chunkStartWrittenCount) {
+            this.flowController.stopProcessing = true;
+        }
+    }
+
+
 
     @Override
     public void write(final int c) throws IOException {
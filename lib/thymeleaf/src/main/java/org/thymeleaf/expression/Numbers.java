@@ -24,6 +24,7 @@
 import java.util.List;
 import java.util.Locale;
 import java.util.Set;
+import java.util.stream.IntStream;
 
 import org.thymeleaf.exceptions.TemplateProcessingException;
 import org.thymeleaf.util.NumberPointType;
@@ -463,6 +464,45 @@ public Integer[] sequence(final Integer from, final Integer to) {
     public Integer[] sequence(final Integer from, final Integer to, final Integer step) {
         return NumberUtils.sequence(from, to, step);
     }
+
+
+
+    /**
+     * <p>
+     *   Produces a lazy stream with a sequence of integer numbers. Its values are the same as those
+     *   of {@link #sequence(Integer, Integer)}, but they will only be generated as they are iterated
+     *   (e.g. by {@code th:each}), which makes it a better fit for large sequences.
+     * </p>
+     *
+     * @param from value to start the sequence from
+     * @param to value to produce the sequence to
+     * @return the sequence, as an {@link IntStream}
+     *
+     * @since 3.1.3
+     */
+    public IntStream sequenceStream(final Integer from, final Integer to) {
+        return NumberUtils.sequenceStream(from, to);
+    }
+
+
+
+    /**
+     * <p>
+     *   Produces a lazy stream with a sequence of integer numbers, using the
+     *   specified step. Its values are the same as those of
+     *   {@link #sequence(Integer, Integer, Integer)}.
+     * </p>
+     *
+     * @param from value to start the sequence from
+     * @param to value to produce the sequence to
+     * @param step the step to be used
+     * @return the sequence, as an {@link IntStream}
+     *
+     * @since 3.1.3
+     */
+    public IntStream sequenceStream(final Integer from, final Integer to, final Integer step) {
+        return NumberUtils.sequenceStream(from, to, step);
+    }
         
     
 
@@ -47,10 +47,12 @@
 import org.thymeleaf.standard.processor.StandardCaseTagProcessor;
 import org.thymeleaf.standard.processor.StandardClassappendTagProcessor;
 import org.thymeleaf.standard.processor.StandardConditionalCommentProcessor;
+import org.thymeleaf.standard.processor.StandardConcurrentTagProcessor;
 import org.thymeleaf.standard.processor.StandardConditionalFixedValueTagProcessor;
 import org.thymeleaf.standard.processor.StandardDOMEventAttributeTagProcessor;
 import org.thymeleaf.standard.processor.StandardDefaultAttributesTagProcessor;
 import org.thymeleaf.standard.processor.StandardEachTagProcessor;
+import org.thymeleaf.standard.processor.StandardFlushTagProcessor;
 import org.thymeleaf.standard.processor.StandardFragmentTagProcessor;
 import org.thymeleaf.standard.processor.StandardHrefTagProcessor;
 import org.thymeleaf.standard.processor.StandardIfTagProcessor;
@@ -472,7 +474,9 @@ public static Set<IProcessor> createStandardProcessorsSet(final String dialectPr
             processors.add(new StandardDOMEventAttributeTagProcessor(dialectPrefix, attrName));
         }
         processors.add(new StandardEachTagProcessor(TemplateMode.HTML, dialectPrefix));
+        processors.add(new StandardFlushTagProcessor(TemplateMode.HTML, dialectPrefix));
         processors.add(new StandardFragmentTagProcessor(TemplateMode.HTML, dialectPrefix));
+        processors.add(new StandardConcurrentTagProcessor(TemplateMode.HTML, dialectPrefix));
         processors.add(new StandardHrefTagProcessor(dialectPrefix));
         processors.add(new StandardIfTagProcessor(TemplateMode.HTML, dialectPrefix));
         processors.add(new StandardIncludeTagProcessor(TemplateMode.HTML, dialectPrefix));
@@ -567,7 +571,9 @@ public static Set<IProcessor> createStandardProcessorsSet(final String dialectPr
         processors.add(new StandardAttrprependTagProcessor(TemplateMode.XML, dialectPrefix));
         processors.add(new StandardCaseTagProcessor(TemplateMode.XML, dialectPrefix));
         processors.add(new StandardEachTagProcessor(TemplateMode.XML, dialectPrefix));
+        processors.add(new StandardFlushTagProcessor(TemplateMode.XML, dialectPrefix));
         processors.add(new StandardFragmentTagProcessor(TemplateMode.XML, dialectPrefix));
+        processors.add(new StandardConcurrentTagProcessor(TemplateMode.XML, dialectPrefix));
         processors.add(new StandardIfTagProcessor(TemplateMode.XML, dialectPrefix));
         processors.add(new StandardIncludeTagProcessor(TemplateMode.XML, dialectPrefix));
         processors.add(new StandardInlineXMLTagProcessor(dialectPrefix));
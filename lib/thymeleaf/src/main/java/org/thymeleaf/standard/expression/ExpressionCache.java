@@ -47,9 +47,17 @@ private ExpressionCache() {
     
 
     
+    /*
+     * Type-specific caches are keyed directly by the input String, so that lookups do not need to create
+     * any ExpressionCacheKey objects. Only if no such cache exists for the type, the shared cache is used.
+     */
     static Object getFromCache(final IEngineConfiguration configuration, final String input, final String type) {
         final ICacheManager cacheManager = configuration.getCacheManager();
         if (cacheManager != null) {
+            final ICache<String,Object> typedCache = cacheManager.getExpressionCache(type);
+            if (typedCache != null) {
+                return typedCache.get(input);
+            }
             final ICache<ExpressionCacheKey,Object> cache = cacheManager.getExpressionCache();
             if (cache != null) {
                 return cache.get(new ExpressionCacheKey(type,input));
@@ -62,6 +70,11 @@ static Object getFromCache(final IEngineConfiguration configuration, final Strin
     static <V> void putIntoCache(final IEngineConfiguration configuration, final String input, final V value, final String type) {
         final ICacheManager cacheManager = configuration.getCacheManager();
         if (cacheManager != null) {
+            final ICache<String,Object> typedCache = cacheManager.getExpressionCache(type);
+            if (typedCache != null) {
+                typedCache.put(input, value);
+                return;
+            }
             final ICache<ExpressionCacheKey,Object> cache = cacheManager.getExpressionCache();
             if (cache != null) {
                 cache.put(new ExpressionCacheKey(type,input), value);
@@ -73,6 +86,11 @@ static <V> void putIntoCache(final IEngineConfiguration configuration, final Str
     static <V> void removeFromCache(final IEngineConfiguration configuration, final String input, final String type) {
         final ICacheManager cacheManager = configuration.getCacheManager();
         if (cacheManager != null) {
+            final ICache<String,Object> typedCache = cacheManager.getExpressionCache(type);
+            if (typedCache != null) {
+                typedCache.clearKey(input);
+                return;
+            }
             final ICache<ExpressionCacheKey,Object> cache = cacheManager.getExpressionCache();
             if (cache != null) {
                 cache.clearKey(new ExpressionCacheKey(type,input));
@@ -21,7 +21,7 @@
 
 import org.thymeleaf.IEngineConfiguration;
 import org.thymeleaf.templatemode.TemplateMode;
-import org.unbescape.html.HtmlEscape;
+import org.thymeleaf.util.MarkupEscapeUtils;
 
 /**
  *
@@ -42,7 +42,7 @@ protected String produceEscapedOutput(final Object input) {
         if (input == null) {
             return "";
         }
-        return HtmlEscape.escapeHtml4Xml(input.toString());
+        return MarkupEscapeUtils.escapeHtml(input instanceof CharSequence? (CharSequence) input : input.toString());
     }
 
 }
@@ -21,7 +21,7 @@
 
 import org.thymeleaf.IEngineConfiguration;
 import org.thymeleaf.templatemode.TemplateMode;
-import org.unbescape.xml.XmlEscape;
+import org.thymeleaf.util.MarkupEscapeUtils;
 
 /**
  *
@@ -44,7 +44,7 @@ protected String produceEscapedOutput(final Object input) {
         }
         // Note we are outputting a body content here, so it is important that we use the version
         // of XML escaping meant for content, not attributes (slight differences)
-        return XmlEscape.escapeXml10(input.toString());
+        return MarkupEscapeUtils.escapeXml(input instanceof CharSequence? (CharSequence) input : input.toString());
     }
 
 }
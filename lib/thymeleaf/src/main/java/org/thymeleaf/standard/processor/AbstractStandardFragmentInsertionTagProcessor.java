@@ -19,7 +19,6 @@
  */
 package org.thymeleaf.standard.processor;
 
-import java.io.Writer;
 import java.util.Map;
 
 import org.slf4j.Logger;
@@ -50,7 +49,6 @@
 import org.thymeleaf.standard.expression.StandardExpressions;
 import org.thymeleaf.templatemode.TemplateMode;
 import org.thymeleaf.util.EscapedAttributeUtils;
-import org.thymeleaf.util.FastStringWriter;
 import org.thymeleaf.util.LoggingUtils;
 import org.thymeleaf.util.StringUtils;
 
@@ -66,6 +64,7 @@ public abstract class AbstractStandardFragmentInsertionTagProcessor extends Abst
     private static final Logger LOGGER = LoggerFactory.getLogger(AbstractStandardFragmentInsertionTagProcessor.class);
 
     private static final String FRAGMENT_ATTR_NAME = "fragment";
+    private static final String CONCURRENT_ATTR_NAME = "concurrent";
 
 
     private final boolean replaceHost;
@@ -161,12 +160,15 @@ protected void doProcess(
         // event object when calling "model.get(pos)"
 
         boolean signatureApplied = false;
+        boolean concurrentFragment = false;
         final ITemplateEvent firstEvent = (fragmentModel.size() > 2 ? fragmentModel.get(1) : null);
         if (firstEvent != null && IProcessableElementTag.class.isAssignableFrom(firstEvent.getClass())) {
 
             final String dialectPrefix = attributeName.getPrefix();
             final IProcessableElementTag fragmentHolderEvent = (IProcessableElementTag) firstEvent;
 
+            concurrentFragment = fragmentHolderEvent.hasAttribute(dialectPrefix, CONCURRENT_ATTR_NAME);
+
             if (fragmentHolderEvent.hasAttribute(dialectPrefix, FRAGMENT_ATTR_NAME)) {
                 // The selected fragment actually has a "th:fragment" attribute, so we should process its signature
 
@@ -201,6 +203,30 @@ protected void doProcess(
         }
 
 
+        /*
+         * CHECK WHETHER THE FRAGMENT CAN BE PROCESSED CONCURRENTLY. Fragments marked as concurrent (th:concurrent)
+         * are processed aside -if a fragment insertion executor has been configured- against a snapshot of the
+         * current variables, and their result is inserted as non-processable text that will be stitched into the
+         * output in document order once ready. If this is not possible, they will just be inserted synchronously.
+         */
+        if (concurrentFragment && !this.insertOnlyContents) {
+
+            final CharSequence fragmentOutput =
+                    configuration.getTemplateManager().processConcurrently(fragmentModel, context, fragmentParameters);
+
+            if (fragmentOutput != null) {
+                // We will insert the result as NON-PROCESSABLE text (it will have already been processed!)
+                if (this.replaceHost) {
+                    structureHandler.replaceWith(fragmentOutput, false);
+                } else {
+                    structureHandler.setBody(fragmentOutput, false);
+                }
+                return;
+            }
+
+        }
+
+
         /*
          * CHECK WHETHER THIS IS A CROSS-TEMPLATE-MODE INSERTION. Only TemplateModels for the same template mode
          * can be safely inserted into the template being executed and processed just like any other sequences of
@@ -246,14 +272,13 @@ protected void doProcess(
             }
 
             // Once parameters are in order, just process the template in a nested template engine execution
-            final Writer stringWriter = new FastStringWriter(200);
-            configuration.getTemplateManager().process(fragmentModel, context, stringWriter);
+            final String output = configuration.getTemplateManager().processToString(fragmentModel, context);
 
             // We will insert the result as NON-PROCESSABLE text (it's already been processed!)
             if (this.replaceHost) {
-                structureHandler.replaceWith(stringWriter.toString(), false);
+                structureHandler.replaceWith(output, false);
             } else {
-                structureHandler.setBody(stringWriter.toString(), false);
+                structureHandler.setBody(output, false);
             }
 
             return;
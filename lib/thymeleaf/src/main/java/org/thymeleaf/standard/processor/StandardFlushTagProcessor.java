@@ -0,0 +1,93 @@
+/*
+ * =============================================================================
+ *
+ *   Copyright (c) 2011-2022, The THYMELEAF team (http://www.thymeleaf.org)
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * =============================================================================
+ */
+package org.thymeleaf.standard.processor;
+
+import org.thymeleaf.context.ITemplateContext;
+import org.thymeleaf.engine.AttributeName;
+import org.thymeleaf.engine.FlushPointCharSequence;
+import org.thymeleaf.model.IModelFactory;
+import org.thymeleaf.model.IProcessableElementTag;
+import org.thymeleaf.processor.element.AbstractAttributeTagProcessor;
+import org.thymeleaf.processor.element.IElementTagStructureHandler;
+import org.thymeleaf.standard.expression.IStandardExpression;
+import org.thymeleaf.standard.expression.IStandardExpressionParser;
+import org.thymeleaf.standard.expression.StandardExpressions;
+import org.thymeleaf.templatemode.TemplateMode;
+import org.thymeleaf.util.EvaluationUtils;
+import org.thymeleaf.util.StringUtils;
+
+/**
+ * <p>
+ *   Processor for the {@code th:flush} attribute, which sets a flush point just before the element it is set on,
+ *   so that all output produced until then can reach the client before the element and the rest of the template
+ *   are processed (e.g. {@code <body th:flush="true">}).
+ * </p>
+ * <p>
+ *   The attribute can be left empty, or contain an expression that will be evaluated as a boolean in order to
+ *   determine whether the flush point should be set or not.
+ * </p>
+ *
+ * @author Daniel Fern&aacute;ndez
+ *
+ * @since 3.1.3
+ *
+ */
+public final class StandardFlushTagProcessor extends AbstractAttributeTagProcessor {
+
+    public static final int PRECEDENCE = 450;
+    public static final String ATTR_NAME = "flush";
+
+
+
+    public StandardFlushTagProcessor(final TemplateMode templateMode, final String dialectPrefix) {
+        super(templateMode, dialectPrefix, null, false, ATTR_NAME, true, PRECEDENCE, true);
+    }
+
+
+
+    @Override
+    protected void doProcess(
+            final ITemplateContext context,
+            final IProcessableElementTag tag,
+            final AttributeName attributeName, final String attributeValue,
+            final IElementTagStructureHandler structureHandler) {
+
+        if (!StringUtils.isEmptyOrWhitespace(attributeValue)) {
+
+            final IStandardExpressionParser expressionParser =
+                    StandardExpressions.getExpressionParser(context.getConfiguration());
+
+            final IStandardExpression expression = expressionParser.parseExpression(context, attributeValue);
+            final Object value = expression.execute(context);
+
+            if (!EvaluationUtils.evaluateAsBoolean(value)) {
+                return;
+            }
+
+        }
+
+        final IModelFactory modelFactory = context.getModelFactory();
+        structureHandler.insertBefore(
+                modelFactory.createModel(modelFactory.createText(FlushPointCharSequence.INSTANCE)));
+
+    }
+
+
+}
@@ -26,8 +26,7 @@
 import org.thymeleaf.processor.element.IElementTagStructureHandler;
 import org.thymeleaf.templatemode.TemplateMode;
 import org.thymeleaf.util.LazyEscapingCharSequence;
-import org.unbescape.html.HtmlEscape;
-import org.unbescape.xml.XmlEscape;
+import org.thymeleaf.util.MarkupEscapeUtils;
 
 /**
  *
@@ -65,9 +64,11 @@ protected void doProcess(
          * the most resource-efficient alternative.
          *
          *    * If we are outputting RAW, there is no escape to do, just pass through.
-         *    * If we are outputting HTML, XML or TEXT we know output will be textual (result of calling .toString() on
-         *      the expression result), and therefore we can decide between an immediate vs lazy escaping alternative
-         *      depending on size. We will perform lazy escaping, writing directly to output Writer, if length > 100.
+         *    * If we are outputting HTML, XML or TEXT we know output will be textual (the expression result itself if
+         *      it is a CharSequence, or the result of calling .toString() on it), and therefore we can decide between
+         *      an immediate vs lazy escaping alternative depending on size. We will perform lazy escaping, writing
+         *      directly to output Writer, if length > 100. Note that large CharSequence results (e.g. StringBuilders)
+         *      will therefore never be converted into a String.
          *    * If we are outputting JAVASCRIPT or CSS, we will always pass the expression result unchanged to a lazy
          *      escape processor, so that whatever the JS/CSS serializer wants to do, it does it directly on the
          *      output Writer and the entire results are never really needed in memory.
@@ -77,20 +78,25 @@ protected void doProcess(
 
         if (templateMode != TemplateMode.JAVASCRIPT && templateMode != TemplateMode.CSS) {
 
-            final String input = (expressionResult == null? "" : expressionResult.toString());
-
             if (templateMode == TemplateMode.RAW) {
                 // RAW -> just output
 
-                text = input;
+                text = (expressionResult == null? "" : expressionResult.toString());
 
             } else {
 
+                final CharSequence input =
+                        (expressionResult == null?
+                                "" :
+                                (expressionResult instanceof CharSequence?
+                                        (CharSequence) expressionResult : expressionResult.toString()));
+
                 if (input.length() > 100) {
                     // Might be a large text -> Lazy escaping on the output Writer
                     text = new LazyEscapingCharSequence(context.getConfiguration(), templateMode, input);
                 } else {
-                    // Not large -> better use a bit more of memory, but be faster
+                    // Not large -> better use a bit more of memory, but be faster (no memory will be used at
+                    // all if input is a String and there is nothing to escape)
                     text = produceEscapedOutput(templateMode, input);
                 }
 
@@ -110,18 +116,18 @@ protected void doProcess(
     }
 
 
-    private static String produceEscapedOutput(final TemplateMode templateMode, final String input) {
+    private static String produceEscapedOutput(final TemplateMode templateMode, final CharSequence input) {
 
         switch (templateMode) {
 
             case TEXT:
                 // fall-through
             case HTML:
-                return HtmlEscape.escapeHtml4Xml(input);
+                return MarkupEscapeUtils.escapeHtml(input);
             case XML:
                 // Note we are outputting a body content here, so it is important that we use the version
                 // of XML escaping meant for content, not attributes (slight differences)
-                return XmlEscape.escapeXml10(input);
+                return MarkupEscapeUtils.escapeXml(input);
             default:
                 throw new TemplateProcessingException(
                         "Unrecognized template mode " + templateMode + ". Cannot produce escaped output for " +
@@ -37,6 +37,7 @@
 import org.thymeleaf.standard.expression.StandardExpressionExecutionContext;
 import org.thymeleaf.standard.expression.StandardExpressions;
 import org.thymeleaf.templatemode.TemplateMode;
+import org.thymeleaf.util.LazyEscapingCharSequence;
 
 /**
  *
@@ -109,6 +110,20 @@ protected void doProcess(
         }
 
 
+        final Set<IPostProcessor> postProcessors = configuration.getPostProcessors(getTemplateMode());
+
+        /*
+         * Large CharSequence results (e.g. StringBuilders) can be written directly to the output Writer without
+         * ever converting them into a String, if there are no post-processors that could need to parse them (see below).
+         */
+        if (postProcessors.isEmpty() &&
+                expressionResult instanceof CharSequence && !(expressionResult instanceof String) &&
+                ((CharSequence) expressionResult).length() > 100) {
+            structureHandler.setBody(
+                    new LazyEscapingCharSequence(configuration, TemplateMode.RAW, expressionResult), false);
+            return;
+        }
+
         final String unescapedTextStr = (expressionResult == null ? "" : expressionResult.toString());
 
         /*
@@ -122,7 +137,6 @@ protected void doProcess(
          * we check if there actually are any post-processors and, if not (most common case), simply output the
          * expression result as if it were a mere (unescaped) text node.
          */
-        final Set<IPostProcessor> postProcessors = configuration.getPostProcessors(getTemplateMode());
         if (postProcessors.isEmpty()) {
             structureHandler.setBody(unescapedTextStr, false);
             return;
@@ -31,6 +31,11 @@
  *   and creates {@link ClassLoaderTemplateResource} instances for template resources.
  * </p>
  * <p>
+ *   Template files living in directories of the class path can be watched for changes (see
+ *   {@link #setWatchForChanges(boolean)}) so that cached templates are invalidated as soon as their
+ *   files are modified.
+ * </p>
+ * <p>
  *   Note a class with this name existed since 1.0, but it was completely rewritten in Thymeleaf 3.0.
  * </p>
  * 
@@ -43,6 +48,8 @@ public class ClassLoaderTemplateResolver extends AbstractConfigurableTemplateRes
 
 
     private final ClassLoader classLoader;
+
+    private final TemplateFileWatcher fileWatcher = new TemplateFileWatcher(this);
     
 
 
@@ -58,10 +65,51 @@ public ClassLoaderTemplateResolver(final ClassLoader classLoader) {
     }
 
 
+    /**
+     * <p>
+     *   Returns whether the files of the templates resolved by this resolver are being watched for changes.
+     *   Only resources living in directories of the class path (e.g. in exploded deployments or during
+     *   development) can be watched, but not those living inside {@code .jar} files.
+     * </p>
+     * <p>
+     *   When enabled, the directories containing resolved template files will be registered with a
+     *   {@link java.nio.file.WatchService}, and any change to these files will clear the corresponding
+     *   entries at the template cache (see
+     *   {@link org.thymeleaf.engine.TemplateManager#clearCachesFor(String)}). This allows templates to be
+     *   cached with no TTL while still picking up changes, without any polling or per-request checks.
+     * </p>
+     *
+     * @return whether template files are watched for changes (default: false).
+     * @since 3.1.3
+     */
+    public final boolean getWatchForChanges() {
+        return this.fileWatcher.isEnabled();
+    }
+
+
+    /**
+     * <p>
+     *   Sets whether the files of the templates resolved by this resolver should be watched for changes
+     *   (see {@link #getWatchForChanges()}). Setting this to false stops any watching already started,
+     *   including its watching thread, which should be done when the application shuts down. Otherwise
+     *   that thread will only stop once this template resolver has been garbage collected.
+     * </p>
+     *
+     * @param watchForChanges whether template files should be watched for changes.
+     * @since 3.1.3
+     */
+    public final void setWatchForChanges(final boolean watchForChanges) {
+        this.fileWatcher.setEnabled(watchForChanges);
+    }
+
+
     @Override
     protected ITemplateResource computeTemplateResource(
             final IEngineConfiguration configuration, final String ownerTemplate, final String template, final String resourceName, final String characterEncoding, final Map<String, Object> templateResolutionAttributes) {
-        return new ClassLoaderTemplateResource(this.classLoader, resourceName, characterEncoding);
+        final ClassLoaderTemplateResource templateResource =
+                new ClassLoaderTemplateResource(this.classLoader, resourceName, characterEncoding);
+        this.fileWatcher.register(configuration.getTemplateManager(), ownerTemplate, template, templateResource);
+        return templateResource;
     }
 
 }
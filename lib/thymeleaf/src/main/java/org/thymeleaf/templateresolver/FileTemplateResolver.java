@@ -31,6 +31,10 @@
  *   and creates {@link FileTemplateResource} instances for template resources.
  * </p>
  * <p>
+ *   Template files can be watched for changes (see {@link #setWatchForChanges(boolean)}) so that cached
+ *   templates are invalidated as soon as their files are modified.
+ * </p>
+ * <p>
  *   Note a class with this name existed since 1.0, but it was completely rewritten in Thymeleaf 3.0.
  * </p>
  *
@@ -42,16 +46,57 @@
 public class FileTemplateResolver extends AbstractConfigurableTemplateResolver {
 
 
+    private final TemplateFileWatcher fileWatcher = new TemplateFileWatcher(this);
+
+
     
     public FileTemplateResolver() {
         super();
     }
 
 
+    /**
+     * <p>
+     *   Returns whether the files of the templates resolved by this resolver are being watched for changes.
+     * </p>
+     * <p>
+     *   When enabled, the directories containing resolved template files will be registered with a
+     *   {@link java.nio.file.WatchService}, and any change to these files will clear the corresponding
+     *   entries at the template cache (see
+     *   {@link org.thymeleaf.engine.TemplateManager#clearCachesFor(String)}). This allows templates to be
+     *   cached with no TTL while still picking up changes, without any polling or per-request checks.
+     * </p>
+     *
+     * @return whether template files are watched for changes (default: false).
+     * @since 3.1.3
+     */
+    public final boolean getWatchForChanges() {
+        return this.fileWatcher.isEnabled();
+    }
+
+
+    /**
+     * <p>
+     *   Sets whether the files of the templates resolved by this resolver should be watched for changes
+     *   (see {@link #getWatchForChanges()}). Setting this to false stops any watching already started,
+     *   including its watching thread, which should be done when the application shuts down. Otherwise
+     *   that thread will only stop once this template resolver has been garbage collected.
+     * </p>
+     *
+     * @param watchForChanges whether template files should be watched for changes.
+     * @since 3.1.3
+     */
+    public final void setWatchForChanges(final boolean watchForChanges) {
+        this.fileWatcher.setEnabled(watchForChanges);
+    }
+
+
     @Override
     protected ITemplateResource computeTemplateResource(
             final IEngineConfiguration configuration, final String ownerTemplate, final String template, final String resourceName, final String characterEncoding, final Map<String, Object> templateResolutionAttributes) {
-        return new FileTemplateResource(resourceName, characterEncoding);
+        final FileTemplateResource templateResource = new FileTemplateResource(resourceName, characterEncoding);
+        this.fileWatcher.register(configuration.getTemplateManager(), ownerTemplate, template, templateResource);
+        return templateResource;
     }
 
 }
@@ -83,11 +83,22 @@ public class StringTemplateResolver extends AbstractTemplateResolver {
      */
     public static final Long DEFAULT_CACHE_TTL_MS = null;
 
+    /**
+     * <p>
+     *   Default value for the cache refresh TTL: null. This means templates will not be
+     *   refreshed in the background before their cache TTL expires.
+     * </p>
+     *
+     * @since 3.1.3
+     */
+    public static final Long DEFAULT_CACHE_REFRESH_TTL_MS = null;
+
 
 
     private TemplateMode templateMode = DEFAULT_TEMPLATE_MODE;
     private boolean cacheable = DEFAULT_CACHEABLE;
     private Long cacheTTLMs = DEFAULT_CACHE_TTL_MS;
+    private Long cacheRefreshTTLMs = DEFAULT_CACHE_REFRESH_TTL_MS;
 
 
 
@@ -210,6 +221,40 @@ public final void setCacheTTLMs(final Long cacheTTLMs) {
     }
 
 
+    /**
+     * <p>
+     *   Returns the refresh TTL (Time To Live) in cache of templates resolved by this
+     *   resolver.
+     * </p>
+     * <p>
+     *   If a template is resolved as <i>cacheable</i> with both a cache TTL and a refresh TTL
+     *   (which should be shorter), once the refresh TTL has passed the cached template will
+     *   keep being used while it is resolved and parsed again in the background. Only when the
+     *   cache TTL expires will requests have to wait for the template to be reloaded.
+     * </p>
+     *
+     * @return the cache refresh TTL for resolved templates, null if no background refresh is performed.
+     * @since 3.1.3
+     */
+    public final Long getCacheRefreshTTLMs() {
+        return this.cacheRefreshTTLMs;
+    }
+
+
+    /**
+     * <p>
+     *   Sets a new value for the cache refresh TTL for resolved templates (see
+     *   {@link #getCacheRefreshTTLMs()}). Only applies if a cache TTL has also been set.
+     * </p>
+     *
+     * @param cacheRefreshTTLMs the new cache refresh TTL, or null for no background refresh.
+     * @since 3.1.3
+     */
+    public final void setCacheRefreshTTLMs(final Long cacheRefreshTTLMs) {
+        this.cacheRefreshTTLMs = cacheRefreshTTLMs;
+    }
+
+
 
     @Override
     public void setUseDecoupledLogic(final boolean useDecoupledLogic) {
@@ -239,7 +284,9 @@ protected ICacheEntryValidity computeValidity(final IEngineConfiguration configu
 
         if (isCacheable()) {
             if (this.cacheTTLMs != null) {
-                return new TTLCacheEntryValidity(this.cacheTTLMs.longValue());
+                return new TTLCacheEntryValidity(
+                        this.cacheTTLMs.longValue(),
+                        (this.cacheRefreshTTLMs != null ? this.cacheRefreshTTLMs.longValue() : -1L));
             }
             return AlwaysValidCacheEntryValidity.INSTANCE;
         }
@@ -0,0 +1,452 @@
+/*
+ * =============================================================================
+ *
+ *   Copyright (c) 2011-2022, The THYMELEAF team (http://www.thymeleaf.org)
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * =============================================================================
+ */
+package org.thymeleaf.templateresolver;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.thymeleaf.engine.TemplateManager;
+import org.thymeleaf.templateresource.ClassLoaderTemplateResource;
+import org.thymeleaf.templateresource.FileTemplateResource;
+import org.thymeleaf.templateresource.ITemplateResource;
+import org.thymeleaf.util.LoggingUtils;
+
+
+/**
+ * <p>
+ *   Watches the directories containing the files of resolved templates by means of a
+ *   {@link WatchService}, and clears the template cache entries of the templates affected by
+ *   each change (see {@link TemplateManager#clearCachesFor(String)}).
+ * </p>
+ * <p>
+ *   Used by the template resolvers able to watch their template files (see
+ *   {@link FileTemplateResolver#setWatchForChanges(boolean)} and
+ *   {@link ClassLoaderTemplateResolver#setWatchForChanges(boolean)}), which create one watcher each and
+ *   report every resolved resource to it. Only the first resolution of each template resource will
+ *   actually look for its file and register it.
+ * </p>
+ * <p>
+ *   Changes are received by a daemon thread that is started with the first registration and lives until
+ *   watching is disabled, or until this watcher (i.e. its template resolver) is garbage collected, so that
+ *   the thread does not keep the class loader of a discarded application alive. Registrations of deleted
+ *   files are removed, and directories are no longer watched once they contain no registered files.
+ * </p>
+ * <p>
+ *   Note the responsiveness of this mechanism depends on the {@link WatchService} implementation of
+ *   the platform, which in some operating systems might internally rely on polling.
+ * </p>
+ * <p>
+ *   Objects of this class are thread-safe.
+ * </p>
+ *
+ * @author Daniel Fern&aacute;ndez
+ *
+ * @since 3.1.3
+ *
+ */
+final class TemplateFileWatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(TemplateFileWatcher.class);
+
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger(0);
+
+    // Watching threads check every these seconds whether their watcher has been garbage collected
+    private static final long POLL_TIMEOUT_SECONDS = 5L;
+
+    private final ITemplateResolver templateResolver;
+    private final Set<Registration> registrations;
+    private final ConcurrentHashMap<Path,Set<Registration>> registrationsByFile;
+    private final ConcurrentHashMap<Path,WatchKey> watchedDirectories;
+    private volatile boolean enabled;
+    private WatchService watchService; // only accessed while holding this object's monitor
+
+
+
+    TemplateFileWatcher(final ITemplateResolver templateResolver) {
+        super();
+        this.templateResolver = templateResolver;
+        this.registrations = Collections.newSetFromMap(new ConcurrentHashMap<Registration, Boolean>(32, 0.75f, 2));
+        this.registrationsByFile = new ConcurrentHashMap<Path, Set<Registration>>(32, 0.75f, 2);
+        this.watchedDirectories = new ConcurrentHashMap<Path, WatchKey>(8, 0.75f, 2);
+        this.enabled = false;
+        this.watchService = null;
+    }
+
+
+
+
+    boolean isEnabled() {
+        return this.enabled;
+    }
+
+
+    /*
+     * Disabling the watcher stops the watching thread and removes every registration. It can be enabled again
+     * afterwards, and templates will be registered again when resolved.
+     */
+    synchronized void setEnabled(final boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled) {
+            if (this.watchService != null) {
+                closeWatchService(this.watchService, this.templateResolver.getName());
+                this.watchService = null;
+            }
+            this.watchedDirectories.clear();
+            this.registrationsByFile.clear();
+            this.registrations.clear();
+        }
+    }
+
+
+
+
+    /*
+     * Registers the file of a template resource that has just been resolved, so that its cache entries are cleared
+     * if the file changes. If the template was resolved as a fragment of another template, the entries of that
+     * owner template will be cleared too, as that is where entries for such fragments are cached.
+     */
+    void register(
+            final TemplateManager templateManager, final String ownerTemplate, final String template,
+            final ITemplateResource templateResource) {
+
+        if (!this.enabled || templateManager == null) {
+            return;
+        }
+
+        final Registration registration =
+                new Registration(templateManager, ownerTemplate, template, templateResource.getDescription());
+        if (this.registrations.contains(registration)) {
+            // Already registered (or known not to be backed by a file), no need to look for its file again
+            return;
+        }
+
+        final File file = computeFile(templateResource);
+        if (file == null) {
+            // Not backed by a file in the file system (e.g. lives inside a .jar file), so it cannot be watched
+            this.registrations.add(registration);
+            return;
+        }
+
+        final Path filePath = file.getAbsoluteFile().toPath().normalize();
+        final Path directory = filePath.getParent();
+        if (directory == null) {
+            return;
+        }
+
+        // File registration goes first, so that its directory is not considered unused while being watched
+        Set<Registration> fileRegistrations = this.registrationsByFile.get(filePath);
+        if (fileRegistrations == null) {
+            final Set<Registration> newFileRegistrations =
+                    Collections.newSetFromMap(new ConcurrentHashMap<Registration, Boolean>(4, 0.75f, 2));
+            fileRegistrations = this.registrationsByFile.putIfAbsent(filePath, newFileRegistrations);
+            if (fileRegistrations == null) {
+                fileRegistrations = newFileRegistrations;
+            }
+        }
+        fileRegistrations.add(registration);
+
+        if (!watchDirectory(directory)) {
+            // Not marked as registered, so that it is retried the next time the template is resolved
+            fileRegistrations.remove(registration);
+            return;
+        }
+        this.registrations.add(registration);
+
+    }
+
+
+    private static File computeFile(final ITemplateResource templateResource) {
+        if (templateResource instanceof FileTemplateResource) {
+            return ((FileTemplateResource) templateResource).getFile();
+        }
+        if (templateResource instanceof ClassLoaderTemplateResource) {
+            return ((ClassLoaderTemplateResource) templateResource).getFile();
+        }
+        return null;
+    }
+
+
+
+
+    private synchronized boolean watchDirectory(final Path directory) {
+
+        if (!this.enabled) {
+            return false;
+        }
+        if (this.watchedDirectories.containsKey(directory)) {
+            return true;
+        }
+
+        try {
+
+            if (this.watchService == null) {
+                this.watchService = FileSystems.getDefault().newWatchService();
+                final Thread thread =
+                        new Thread(
+                                new WatchTask(this, this.watchService, this.templateResolver.getName()),
+                                "thymeleaf-template-watcher-" + THREAD_COUNT.incrementAndGet());
+                thread.setDaemon(true);
+                // Do not retain the class loader of the thread that happens to resolve the first template
+                thread.setContextClassLoader(null);
+                thread.start();
+            }
+
+            final WatchKey watchKey =
+                    directory.register(
+                            this.watchService,
+                            StandardWatchEventKinds.ENTRY_CREATE,
+                            StandardWatchEventKinds.ENTRY_MODIFY,
+                            StandardWatchEventKinds.ENTRY_DELETE);
+            this.watchedDirectories.put(directory, watchKey);
+            return true;
+
+        } catch (final IOException e) {
+            // Might happen e.g. if the directory does not exist (yet). Will be retried at the next registration.
+            logger.debug(
+                    "[THYMELEAF] Template file watcher for template resolver \"" + this.templateResolver.getName() +
+                    "\" could not watch directory \"" + directory + "\"", e);
+            return false;
+        }
+
+    }
+
+
+    private synchronized void unwatchDirectoryIfUnused(final Path directory) {
+        for (final Map.Entry<Path,Set<Registration>> fileRegistrations : this.registrationsByFile.entrySet()) {
+            if (directory.equals(fileRegistrations.getKey().getParent()) && !fileRegistrations.getValue().isEmpty()) {
+                return;
+            }
+        }
+        final WatchKey watchKey = this.watchedDirectories.remove(directory);
+        if (watchKey != null) {
+            watchKey.cancel();
+        }
+    }
+
+
+    private void processEvents(final WatchKey watchKey) {
+
+        final Path directory = (Path) watchKey.watchable();
+
+        for (final WatchEvent<?> event : watchKey.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                // Some events might have been lost: invalidate every template in the directory
+                invalidateDirectory(directory, false);
+            } else {
+                invalidateFile(
+                        directory.resolve((Path) event.context()),
+                        event.kind() == StandardWatchEventKinds.ENTRY_DELETE);
+            }
+        }
+
+        if (!watchKey.reset()) {
+            // Directory is no longer accessible (e.g. deleted)
+            this.watchedDirectories.remove(directory, watchKey);
+            invalidateDirectory(directory, true);
+        }
+
+        unwatchDirectoryIfUnused(directory);
+
+    }
+
+
+    private void invalidateDirectory(final Path directory, final boolean unregister) {
+        final List<Path> files = new ArrayList<Path>();
+        for (final Path filePath : this.registrationsByFile.keySet()) {
+            if (directory.equals(filePath.getParent())) {
+                files.add(filePath);
+            }
+        }
+        for (final Path filePath : files) {
+            invalidateFile(filePath, unregister);
+        }
+    }
+
+
+    /*
+     * Registrations are removed when files are deleted: if the templates are resolved again (from a new file
+     * with the same name, or from a different location), they will be registered again.
+     */
+    private void invalidateFile(final Path filePath, final boolean unregister) {
+
+        final Set<Registration> fileRegistrations =
+                (unregister ? this.registrationsByFile.remove(filePath) : this.registrationsByFile.get(filePath));
+        if (fileRegistrations == null) {
+            return;
+        }
+
+        for (final Registration registration : fileRegistrations) {
+            if (unregister) {
+                this.registrations.remove(registration);
+            }
+            if (logger.isTraceEnabled()) {
+                logger.trace(
+                        "[THYMELEAF] Template file \"{}\" changed. Clearing cache entries for template \"{}\".",
+                        filePath, LoggingUtils.loggifyTemplateName(registration.template));
+            }
+            registration.templateManager.clearCachesFor(registration.template);
+            if (registration.ownerTemplate != null) {
+                registration.templateManager.clearCachesFor(registration.ownerTemplate);
+            }
+        }
+
+    }
+
+
+    // Only for testing purposes
+    int getRegistrationCount() {
+        return this.registrations.size();
+    }
+
+
+    // Only for testing purposes
+    Map<Path,WatchKey> getWatchedDirectories() {
+        return Collections.unmodifiableMap(this.watchedDirectories);
+    }
+
+
+    private static void closeWatchService(final WatchService watchService, final String templateResolverName) {
+        try {
+            watchService.close();
+        } catch (final IOException e) {
+            logger.debug(
+                    "[THYMELEAF] Exception closing template file watcher for template resolver \"" +
+                    templateResolverName + "\"", e);
+        }
+    }
+
+
+
+
+    /*
+     * The watching thread only references its watcher weakly, so that the watcher (and therefore its template
+     * resolver, template engine and class loader) can be garbage collected if it is simply discarded without
+     * disabling it first, e.g. when an application is undeployed. The thread stops once that happens.
+     */
+    private static final class WatchTask implements Runnable {
+
+        private final WeakReference<TemplateFileWatcher> watcherReference;
+        private final WatchService watchService;
+        private final String templateResolverName;
+
+        WatchTask(final TemplateFileWatcher watcher, final WatchService watchService, final String templateResolverName) {
+            super();
+            this.watcherReference = new WeakReference<TemplateFileWatcher>(watcher);
+            this.watchService = watchService;
+            this.templateResolverName = templateResolverName;
+        }
+
+        public void run() {
+            while (true) {
+                final WatchKey watchKey;
+                try {
+                    watchKey = this.watchService.poll(POLL_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                } catch (final InterruptedException e) {
+                    return;
+                } catch (final ClosedWatchServiceException e) {
+                    return;
+                }
+                final TemplateFileWatcher watcher = this.watcherReference.get();
+                if (watcher == null) {
+                    closeWatchService(this.watchService, this.templateResolverName);
+                    return;
+                }
+                if (watchKey == null) {
+                    continue;
+                }
+                try {
+                    watcher.processEvents(watchKey);
+                } catch (final RuntimeException e) {
+                    logger.warn(
+                            "[THYMELEAF] Error processing changes at template file watcher for template resolver \"" +
+                            this.templateResolverName + "\"", e);
+                }
+            }
+        }
+
+    }
+
+
+
+
+    private static final class Registration {
+
+        private final TemplateManager templateManager;
+        private final String ownerTemplate;
+        private final String template;
+        private final String resourceDescription;
+
+        Registration(
+                final TemplateManager templateManager, final String ownerTemplate, final String template,
+                final String resourceDescription) {
+            super();
+            this.templateManager = templateManager;
+            this.ownerTemplate = ownerTemplate;
+            this.template = template;
+            this.resourceDescription = resourceDescription;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Registration)) {
+                return false;
+            }
+            final Registration that = (Registration) o;
+            return this.templateManager == that.templateManager &&
+                    this.template.equals(that.template) &&
+                    (this.ownerTemplate == null ? that.ownerTemplate == null : this.ownerTemplate.equals(that.ownerTemplate)) &&
+                    (this.resourceDescription == null ?
+                            that.resourceDescription == null : this.resourceDescription.equals(that.resourceDescription));
+        }
+
+        @Override
+        public int hashCode() {
+            int result = System.identityHashCode(this.templateManager);
+            result = 31 * result + this.template.hashCode();
+            result = 31 * result + (this.ownerTemplate != null ? this.ownerTemplate.hashCode() : 0);
+            result = 31 * result + (this.resourceDescription != null ? this.resourceDescription.hashCode() : 0);
+            return result;
+        }
+
+    }
+
+
+}
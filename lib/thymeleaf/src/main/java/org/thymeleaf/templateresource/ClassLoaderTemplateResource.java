@@ -21,11 +21,14 @@
 
 import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.net.URISyntaxException;
+import java.net.URL;
 
 import org.thymeleaf.util.ClassLoaderUtils;
 import org.thymeleaf.util.StringUtils;
@@ -161,4 +164,34 @@ public boolean exists() {
     }
 
 
+
+
+    /**
+     * <p>
+     *   Returns the file in the file system backing this resource, if the class path location it
+     *   is being loaded from is a directory (e.g. exploded deployments, or during development).
+     * </p>
+     *
+     * @return the file, or null if the resource does not exist or is not backed by a file (e.g. it
+     *         lives inside a {@code .jar} file).
+     * @since 3.1.3
+     */
+    public File getFile() {
+        final URL url =
+                (this.optionalClassLoader != null ?
+                        this.optionalClassLoader.getResource(this.path) : ClassLoaderUtils.findResource(this.path));
+        if (url == null || !"file".equals(url.getProtocol())) {
+            return null;
+        }
+        try {
+            return new File(url.toURI());
+        } catch (final URISyntaxException e) {
+            return null;
+        } catch (final IllegalArgumentException e) {
+            // URI is not hierarchical or has some other component not supported by java.io.File
+            return null;
+        }
+    }
+
+
 }
@@ -130,4 +130,19 @@ public boolean exists() {
 
 
 
+
+    /**
+     * <p>
+     *   Returns the file in the file system this resource represents.
+     * </p>
+     *
+     * @return the file.
+     * @since 3.1.3
+     */
+    public File getFile() {
+        return this.file;
+    }
+
+
+
 }
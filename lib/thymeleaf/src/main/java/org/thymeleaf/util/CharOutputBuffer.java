@@ -0,0 +1,194 @@
+/*
+ * =============================================================================
+ *
+ *   Copyright (c) 2011-2022, The THYMELEAF team (http://www.thymeleaf.org)
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * =============================================================================
+ */
+package org.thymeleaf.util;
+
+import java.io.IOException;
+import java.io.Writer;
+
+
+/**
+ * <p>
+ *   Implementation of {@link Writer} that buffers output in a char array obtained from an {@link OutputBufferPool}.
+ * </p>
+ * <p>
+ *   Instances are obtained from {@link OutputBufferPool#acquireCharBuffer(String)} and must be
+ *   released after use by calling {@link #release()}, which records the size of the output produced
+ *   and returns the array to the pool. Buffers cannot be used after being released.
+ * </p>
+ * <p>
+ *   Objects of this class are <strong>not</strong> thread-safe.
+ * </p>
+ *
+ * @author Daniel Fern&aacute;ndez
+ *
+ * @since 3.1.3
+ *
+ */
+public final class CharOutputBuffer extends Writer {
+
+    private final OutputBufferPool pool;
+    private final String key;
+    private char[] buffer;
+    private int count;
+
+
+
+    CharOutputBuffer(final OutputBufferPool pool, final String key, final char[] buffer) {
+        super();
+        this.pool = pool;
+        this.key = key;
+        this.buffer = buffer;
+        this.count = 0;
+    }
+
+
+
+
+    @Override
+    public void write(final int c) {
+        ensureCapacity(this.count + 1);
+        this.buffer[this.count++] = (char) c;
+    }
+
+
+    @Override
+    public void write(final String str) {
+        write(str, 0, str.length());
+    }
+
+
+    @Override
+    public void write(final String str, final int off, final int len) {
+        ensureCapacity(this.count + len);
+        str.getChars(off, off + len, this.buffer, this.count);
+        this.count += len;
+    }
+
+
+    @Override
+    public void write(final char[] cbuf) {
+        write(cbuf, 0, cbuf.length);
+    }
+
+
+    @Override
+    public void write(final char[] cbuf, final int off, final int len) {
+        if ((off < 0) || (off > cbuf.length) || (len < 0) ||
+                ((off + len) > cbuf.length) || ((off + len) < 0)) {
+            throw new IndexOutOfBoundsException();
+        }
+        ensureCapacity(this.count + len);
+        System.arraycopy(cbuf, off, this.buffer, this.count, len);
+        this.count += len;
+    }
+
+
+    @Override
+    public void flush() throws IOException {
+        // Nothing to be flushed
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        // Nothing to be closed: buffers are released instead
+    }
+
+
+
+
+    /**
+     * <p>
+     *   Returns the number of chars currently in the buffer.
+     * </p>
+     *
+     * @return the number of chars buffered.
+     */
+    public int length() {
+        return this.count;
+    }
+
+
+    /**
+     * <p>
+     *   Writes the contents of the buffer to the specified writer, without creating any intermediate
+     *   {@link String} object.
+     * </p>
+     *
+     * @param writer the writer to output the buffer contents to.
+     * @throws IOException if the writer raises it.
+     */
+    public void writeTo(final Writer writer) throws IOException {
+        checkNotReleased();
+        writer.write(this.buffer, 0, this.count);
+    }
+
+
+    /**
+     * <p>
+     *   Records the size of the output buffered (so that it can be used for estimating the size of the next
+     *   buffers acquired for the same key) and returns the buffer to the pool it was obtained from.
+     * </p>
+     * <p>
+     *   Calling this method more than once has no effect.
+     * </p>
+     */
+    public void release() {
+        if (this.buffer == null) {
+            return;
+        }
+        this.pool.recordSize(this.key, this.count);
+        this.pool.releaseChars(this.buffer);
+        this.buffer = null;
+    }
+
+
+    @Override
+    public String toString() {
+        checkNotReleased();
+        return new String(this.buffer, 0, this.count);
+    }
+
+
+
+
+    private void ensureCapacity(final int minCapacity) {
+        checkNotReleased();
+        if (minCapacity <= this.buffer.length) {
+            return;
+        }
+        if (minCapacity < 0) {
+            throw new OutOfMemoryError("Output buffer too large");
+        }
+        final char[] newBuffer =
+                this.pool.acquireChars(Math.max(minCapacity, this.buffer.length << 1));
+        System.arraycopy(this.buffer, 0, newBuffer, 0, this.count);
+        this.pool.releaseChars(this.buffer);
+        this.buffer = newBuffer;
+    }
+
+
+    private void checkNotReleased() {
+        if (this.buffer == null) {
+            throw new IllegalStateException("Output buffer has already been released");
+        }
+    }
+
+}
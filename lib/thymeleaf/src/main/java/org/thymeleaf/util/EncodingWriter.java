@@ -0,0 +1,330 @@
+/*
+ * =============================================================================
+ *
+ *   Copyright (c) 2011-2022, The THYMELEAF team (http://www.thymeleaf.org)
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * =============================================================================
+ */
+package org.thymeleaf.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+
+/**
+ * <p>
+ *   Implementation of {@link Writer} that encodes all output with a fixed {@link Charset} and writes the
+ *   resulting bytes to an {@link OutputStream} or a {@link WritableByteChannel}, allowing also the direct output of
+ *   contents that have already been encoded with that same charset (see {@link #writeEncoded(byte[], int, int)}).
+ * </p>
+ * <p>
+ *   This is used by the engine for byte-oriented output: static template texts are output as pre-encoded
+ *   bytes cached at the template models, and only dynamic text is actually encoded (through a single, reused
+ *   {@link CharsetEncoder}). Pre-encoded output is only used for stateless charsets like UTF-8 (see
+ *   {@link #isStatelessCharset(Charset)}), output in any other charset is completely encoded by this writer. Malformed input and unmappable characters are replaced, the same as
+ *   {@link java.io.OutputStreamWriter} does.
+ * </p>
+ * <p>
+ *   Output is buffered: calling {@link #flush()} writes all pending output to the underlying stream or channel.
+ * </p>
+ * <p>
+ *   Objects of this class are <strong>not</strong> thread-safe.
+ * </p>
+ *
+ * @author Daniel Fern&aacute;ndez
+ *
+ * @since 3.1.3
+ *
+ */
+public final class EncodingWriter extends Writer {
+
+    private static final int CHAR_BUFFER_SIZE = 1024;
+    private static final int BYTE_BUFFER_SIZE = 8192;
+
+    private final OutputStream outputStream; // either this or the channel will be null
+    private final WritableByteChannel channel;
+    private final Charset charset;
+    private final boolean encodedOutputSupported;
+    private final CharsetEncoder encoder;
+    private final CharBuffer chars;
+    private final ByteBuffer bytes;
+
+
+
+    public EncodingWriter(final OutputStream outputStream, final Charset charset) {
+        this(outputStream, null, charset);
+        Validate.notNull(outputStream, "Output stream cannot be null");
+    }
+
+
+    public EncodingWriter(final WritableByteChannel channel, final Charset charset) {
+        this(null, channel, charset);
+        Validate.notNull(channel, "Channel cannot be null");
+    }
+
+
+    private EncodingWriter(final OutputStream outputStream, final WritableByteChannel channel, final Charset charset) {
+        super();
+        Validate.notNull(charset, "Charset cannot be null");
+        this.outputStream = outputStream;
+        this.channel = channel;
+        this.charset = charset;
+        this.encodedOutputSupported = isStatelessCharset(charset);
+        this.encoder =
+                charset.newEncoder()
+                        .onMalformedInput(CodingErrorAction.REPLACE)
+                        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.chars = CharBuffer.allocate(CHAR_BUFFER_SIZE);
+        this.bytes = ByteBuffer.allocate(BYTE_BUFFER_SIZE);
+    }
+
+
+
+
+    /**
+     * <p>
+     *   Returns the charset used for encoding output.
+     * </p>
+     *
+     * @return the charset.
+     */
+    public Charset getCharset() {
+        return this.charset;
+    }
+
+
+    /**
+     * <p>
+     *   Returns whether the charset used by this writer allows contents to be encoded separately from the
+     *   rest of the output, so that they can be written by means of {@link #writeEncoded(byte[], int, int)}.
+     *   See {@link #isStatelessCharset(Charset)}.
+     * </p>
+     *
+     * @return whether pre-encoded contents can be written.
+     */
+    public boolean isEncodedOutputSupported() {
+        return this.encodedOutputSupported;
+    }
+
+
+    /**
+     * <p>
+     *   Returns whether the specified charset is known to be <em>stateless</em>, i.e. to encode any text as
+     *   the concatenation of the encodings of its parts. This is the case of UTF-8, US-ASCII and the ISO-8859-*
+     *   and windows-125* single-byte charsets, but not of charsets like UTF-16 (which outputs a byte order mark at
+     *   the beginning of each encoding operation) or ISO-2022-JP (which outputs escape sequences that depend
+     *   on the previously encoded text).
+     * </p>
+     * <p>
+     *   Only contents encoded with a stateless charset can be pre-encoded and output at any point of the
+     *   output.
+     * </p>
+     *
+     * @param charset the charset.
+     * @return whether the charset is stateless.
+     */
+    public static boolean isStatelessCharset(final Charset charset) {
+        if (charset == null) {
+            return false;
+        }
+        final String name = charset.name();
+        return "UTF-8".equals(name) || "US-ASCII".equals(name) ||
+                name.startsWith("ISO-8859-") || name.startsWith("windows-125");
+    }
+
+
+    /**
+     * <p>
+     *   Writes a series of bytes that have already been encoded using this writer's charset.
+     * </p>
+     * <p>
+     *   This should only be called if {@link #isEncodedOutputSupported()} returns {@code true}, as otherwise
+     *   contents encoded separately might not be valid at an arbitrary point of the output.
+     * </p>
+     *
+     * @param encoded the encoded bytes.
+     * @param off the offset of the bytes to be written.
+     * @param len the number of bytes to be written.
+     * @throws IOException if an input/output exception happens during writing.
+     */
+    public void writeEncoded(final byte[] encoded, final int off, final int len) throws IOException {
+
+        // Any chars written before these bytes have to be encoded first
+        encodeChars();
+        if (this.chars.position() > 0) {
+            // There is a dangling high surrogate that can never be completed now, so it will be replaced
+            encodeEndOfInput();
+        }
+
+        if (len > this.bytes.remaining()) {
+            drainBytes();
+            if (len > this.bytes.remaining()) {
+                // Too large to be buffered, no need to copy it
+                writeBytes(encoded, off, len);
+                return;
+            }
+        }
+        this.bytes.put(encoded, off, len);
+
+    }
+
+
+
+
+    @Override
+    public void write(final int c) throws IOException {
+        if (!this.chars.hasRemaining()) {
+            encodeChars();
+        }
+        this.chars.put((char) c);
+    }
+
+
+    @Override
+    public void write(final String str) throws IOException {
+        write(str, 0, str.length());
+    }
+
+
+    @Override
+    public void write(final String str, final int off, final int len) throws IOException {
+        int pos = off;
+        int remaining = len;
+        while (remaining > 0) {
+            if (!this.chars.hasRemaining()) {
+                encodeChars();
+            }
+            final int n = Math.min(remaining, this.chars.remaining());
+            this.chars.put(str, pos, pos + n);
+            pos += n;
+            remaining -= n;
+        }
+    }
+
+
+    @Override
+    public void write(final char[] cbuf) throws IOException {
+        write(cbuf, 0, cbuf.length);
+    }
+
+
+    @Override
+    public void write(final char[] cbuf, final int off, final int len) throws IOException {
+        int pos = off;
+        int remaining = len;
+        while (remaining > 0) {
+            if (!this.chars.hasRemaining()) {
+                encodeChars();
+            }
+            final int n = Math.min(remaining, this.chars.remaining());
+            this.chars.put(cbuf, pos, n);
+            pos += n;
+            remaining -= n;
+        }
+    }
+
+
+    @Override
+    public void flush() throws IOException {
+        encodeChars();
+        drainBytes();
+        if (this.outputStream != null) {
+            this.outputStream.flush();
+        }
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        encodeChars();
+        encodeEndOfInput();
+        drainBytes();
+        if (this.outputStream != null) {
+            this.outputStream.close();
+        } else {
+            this.channel.close();
+        }
+    }
+
+
+
+
+    private void encodeChars() throws IOException {
+        this.chars.flip();
+        while (true) {
+            final CoderResult result = this.encoder.encode(this.chars, this.bytes, false);
+            if (result.isUnderflow()) {
+                break;
+            }
+            if (result.isOverflow()) {
+                drainBytes();
+                continue;
+            }
+            result.throwException();
+        }
+        // A high surrogate at the end of the buffer will be kept until its low surrogate arrives
+        this.chars.compact();
+    }
+
+
+    private void encodeEndOfInput() throws IOException {
+        this.chars.flip();
+        while (this.encoder.encode(this.chars, this.bytes, true).isOverflow()) {
+            drainBytes();
+        }
+        while (this.encoder.flush(this.bytes).isOverflow()) {
+            drainBytes();
+        }
+        this.chars.clear();
+        this.encoder.reset();
+    }
+
+
+    private void drainBytes() throws IOException {
+        if (this.bytes.position() == 0) {
+            return;
+        }
+        this.bytes.flip();
+        if (this.outputStream != null) {
+            this.outputStream.write(this.bytes.array(), this.bytes.arrayOffset(), this.bytes.limit());
+        } else {
+            while (this.bytes.hasRemaining()) {
+                this.channel.write(this.bytes);
+            }
+        }
+        this.bytes.clear();
+    }
+
+
+    private void writeBytes(final byte[] encoded, final int off, final int len) throws IOException {
+        if (this.outputStream != null) {
+            this.outputStream.write(encoded, off, len);
+        } else {
+            final ByteBuffer buffer = ByteBuffer.wrap(encoded, off, len);
+            while (buffer.hasRemaining()) {
+                this.channel.write(buffer);
+            }
+        }
+    }
+
+}
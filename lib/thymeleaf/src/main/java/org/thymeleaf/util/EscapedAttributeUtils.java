@@ -62,9 +62,9 @@ public static String escapeAttribute(final TemplateMode templateMode, final Stri
         switch (templateMode) {
 
             case HTML:
-                return HtmlEscape.escapeHtml4Xml(input);
+                return MarkupEscapeUtils.escapeHtml(input);
             case XML:
-                return XmlEscape.escapeXml10Attribute(input);
+                return MarkupEscapeUtils.escapeXmlAttribute(input);
             default:
                 throw new TemplateProcessingException(
                         "Unrecognized template mode " + templateMode + ". Cannot produce escaped attributes for " +
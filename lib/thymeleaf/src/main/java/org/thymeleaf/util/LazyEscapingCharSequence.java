@@ -28,8 +28,6 @@
 import org.thymeleaf.standard.serializer.IStandardJavaScriptSerializer;
 import org.thymeleaf.standard.serializer.StandardSerializers;
 import org.thymeleaf.templatemode.TemplateMode;
-import org.unbescape.html.HtmlEscape;
-import org.unbescape.xml.XmlEscape;
 
 
 /**
@@ -120,14 +118,14 @@ private void produceEscapedOutput(final Writer writer) {
                     // fall-through
                 case HTML:
                     if (this.input != null) {
-                        HtmlEscape.escapeHtml4Xml(this.input.toString(), writer);
+                        MarkupEscapeUtils.escapeHtml(asCharSequence(this.input), writer);
                     }
                     return;
                 case XML:
                     if (this.input != null) {
                         // Note we are outputting a body content here, so it is important that we use the version
                         // of XML escaping meant for content, not attributes (slight differences)
-                        XmlEscape.escapeXml10(this.input.toString(), writer);
+                        MarkupEscapeUtils.escapeXml(asCharSequence(this.input), writer);
                     }
                     return;
                 case JAVASCRIPT:
@@ -140,7 +138,7 @@ private void produceEscapedOutput(final Writer writer) {
                     return;
                 case RAW:
                     if (this.input != null) {
-                        writer.write(this.input.toString());
+                        MarkupEscapeUtils.write(asCharSequence(this.input), writer);
                     }
                     return;
                 default:
@@ -156,4 +154,10 @@ private void produceEscapedOutput(final Writer writer) {
     }
 
 
+    private static CharSequence asCharSequence(final Object input) {
+        // CharSequences (e.g. StringBuilders) are escaped without first converting them into Strings
+        return (input instanceof CharSequence? (CharSequence) input : input.toString());
+    }
+
+
 }
@@ -0,0 +1,465 @@
+/*
+ * =============================================================================
+ *
+ *   Copyright (c) 2011-2022, The THYMELEAF team (http://www.thymeleaf.org)
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * =============================================================================
+ */
+package org.thymeleaf.util;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import org.unbescape.html.HtmlEscape;
+import org.unbescape.xml.XmlEscape;
+
+
+/**
+ * <p>
+ *   Utility class for escaping texts to be output in markup template modes (HTML, XML, and TEXT, which uses
+ *   HTML escaping).
+ * </p>
+ * <p>
+ *   Methods in this class produce exactly the same results as {@link HtmlEscape#escapeHtml4Xml(String)},
+ *   {@link XmlEscape#escapeXml10(String)} and {@link XmlEscape#escapeXml10Attribute(String)}, but they accept any
+ *   {@link CharSequence} without converting it into a {@link String} first, and they write runs of characters
+ *   that need no escaping directly to output. When nothing needs to be escaped no objects are created at all:
+ *   the {@link String}-returning methods will return the input itself if it is a {@link String}.
+ * </p>
+ * <p>
+ *   Escaping is performed completely by this class. Note that, as Unbescape does, XML escaping replaces every
+ *   non-ASCII character (including supplementary characters represented as surrogate pairs, and the C1 control
+ *   characters U+007F to U+009F) with a hexadecimal character reference, and removes the characters that are not
+ *   allowed in XML 1.0 (most C0 control characters, unpaired surrogates, U+FFFE and U+FFFF).
+ * </p>
+ * <p>
+ *   This is mostly an <strong>internal class</strong>, and its use is not recommended from user's code.
+ * </p>
+ *
+ * @author Daniel Fern&aacute;ndez
+ *
+ * @since 3.1.3
+ *
+ */
+public final class MarkupEscapeUtils {
+
+    private static final int CHUNK_SIZE = 256;
+
+    private static final String HTML_LT = "&lt;";
+    private static final String HTML_GT = "&gt;";
+    private static final String HTML_AMP = "&amp;";
+    private static final String HTML_QUOT = "&quot;";
+    private static final String HTML_APOS = "&#39;";
+
+    private static final String XML_LT = "&lt;";
+    private static final String XML_GT = "&gt;";
+    private static final String XML_AMP = "&amp;";
+    private static final String XML_QUOT = "&quot;";
+    private static final String XML_APOS = "&apos;";
+    private static final String XML_TAB = "&#x9;";
+    private static final String XML_LF = "&#xa;";
+    private static final String XML_CR = "&#xd;";
+    private static final String XML_REMOVED = ""; // for chars not allowed in XML 1.0
+
+
+
+
+    /**
+     * <p>
+     *   Escapes the specified text in the same way as {@link HtmlEscape#escapeHtml4Xml(String)}.
+     * </p>
+     *
+     * @param text the text to be escaped, might be null.
+     * @return the escaped text, which will be the same object as the input if it is a {@link String} and
+     *         nothing needs to be escaped.
+     */
+    public static String escapeHtml(final CharSequence text) {
+
+        if (text == null) {
+            return null;
+        }
+
+        final int first = indexOfHtmlEscapable(text);
+        if (first < 0) {
+            return text.toString();
+        }
+
+        final int len = text.length();
+        final StringBuilder strBuilder = new StringBuilder(len + 16);
+        strBuilder.append(text, 0, first);
+        for (int i = first; i < len; i++) {
+            final char c = text.charAt(i);
+            final String replacement = htmlReplacement(c);
+            if (replacement != null) {
+                strBuilder.append(replacement);
+            } else {
+                strBuilder.append(c);
+            }
+        }
+        return strBuilder.toString();
+
+    }
+
+
+    /**
+     * <p>
+     *   Escapes the specified text in the same way as {@link HtmlEscape#escapeHtml4Xml(String, Writer)}, writing
+     *   the result to the specified writer.
+     * </p>
+     *
+     * @param text the text to be escaped, might be null (nothing will be written).
+     * @param writer the writer the escaped text will be written to.
+     * @throws IOException if the writer raises it.
+     */
+    public static void escapeHtml(final CharSequence text, final Writer writer) throws IOException {
+
+        if (text == null) {
+            return;
+        }
+
+        if (!(text instanceof String)) {
+            escapeHtmlChunked(text, writer);
+            return;
+        }
+
+        final String str = (String) text;
+        final int len = str.length();
+
+        int runStart = 0;
+        for (int i = 0; i < len; i++) {
+            final String replacement = htmlReplacement(str.charAt(i));
+            if (replacement != null) {
+                if (i > runStart) {
+                    writer.write(str, runStart, i - runStart);
+                }
+                writer.write(replacement);
+                runStart = i + 1;
+            }
+        }
+
+        if (runStart == 0) {
+            writer.write(str);
+        } else if (runStart < len) {
+            writer.write(str, runStart, len - runStart);
+        }
+
+    }
+
+
+    /**
+     * <p>
+     *   Escapes the specified text in the same way as {@link XmlEscape#escapeXml10(String)} (i.e. for being
+     *   output as element body).
+     * </p>
+     *
+     * @param text the text to be escaped, might be null.
+     * @return the escaped text, which will be the same object as the input if it is a {@link String} and
+     *         nothing needs to be escaped.
+     */
+    public static String escapeXml(final CharSequence text) {
+
+        if (text == null) {
+            return null;
+        }
+
+        final int first = indexOfXmlEscapable(text, false);
+        if (first < 0) {
+            return text.toString();
+        }
+        return escapeXmlToString(text, first, false);
+
+    }
+
+
+    /**
+     * <p>
+     *   Escapes the specified text in the same way as {@link XmlEscape#escapeXml10(String, Writer)} (i.e. for
+     *   being output as element body), writing the result to the specified writer.
+     * </p>
+     *
+     * @param text the text to be escaped, might be null (nothing will be written).
+     * @param writer the writer the escaped text will be written to.
+     * @throws IOException if the writer raises it.
+     */
+    public static void escapeXml(final CharSequence text, final Writer writer) throws IOException {
+
+        if (text == null) {
+            return;
+        }
+
+        final int first = indexOfXmlEscapable(text, false);
+        if (first < 0) {
+            write(text, 0, text.length(), writer);
+            return;
+        }
+        escapeXml(text, first, false, writer);
+
+    }
+
+
+    /**
+     * <p>
+     *   Escapes the specified text in the same way as {@link XmlEscape#escapeXml10Attribute(String)}.
+     * </p>
+     *
+     * @param text the text to be escaped, might be null.
+     * @return the escaped text, which will be the same object as the input if it is a {@link String} and
+     *         nothing needs to be escaped.
+     */
+    public static String escapeXmlAttribute(final CharSequence text) {
+
+        if (text == null) {
+            return null;
+        }
+
+        final int first = indexOfXmlEscapable(text, true);
+        if (first < 0) {
+            return text.toString();
+        }
+        return escapeXmlToString(text, first, true);
+
+    }
+
+
+    /**
+     * <p>
+     *   Writes the specified text to the specified writer without converting it into a {@link String} first.
+     * </p>
+     *
+     * @param text the text to be written, might be null (nothing will be written).
+     * @param writer the writer the text will be written to.
+     * @throws IOException if the writer raises it.
+     */
+    public static void write(final CharSequence text, final Writer writer) throws IOException {
+        if (text == null) {
+            return;
+        }
+        write(text, 0, text.length(), writer);
+    }
+
+
+
+
+    private static void write(
+            final CharSequence text, final int start, final int end, final Writer writer) throws IOException {
+
+        if (start >= end) {
+            return;
+        }
+
+        if (text instanceof String) {
+            writer.write((String) text, start, end - start);
+            return;
+        }
+
+        final char[] buffer = new char[Math.min(end - start, CHUNK_SIZE)];
+        int i = start;
+        while (i < end) {
+            final int chunkEnd = Math.min(end, i + buffer.length);
+            if (text instanceof StringBuilder) {
+                ((StringBuilder) text).getChars(i, chunkEnd, buffer, 0);
+            } else {
+                for (int j = i; j < chunkEnd; j++) {
+                    buffer[j - i] = text.charAt(j);
+                }
+            }
+            writer.write(buffer, 0, chunkEnd - i);
+            i = chunkEnd;
+        }
+
+    }
+
+
+    private static void escapeHtmlChunked(final CharSequence text, final Writer writer) throws IOException {
+
+        final int len = text.length();
+        if (len == 0) {
+            return;
+        }
+
+        final char[] buffer = new char[Math.min(len, CHUNK_SIZE)];
+        int count = 0;
+
+        for (int i = 0; i < len; i++) {
+            final char c = text.charAt(i);
+            final String replacement = htmlReplacement(c);
+            if (replacement != null) {
+                if (count > 0) {
+                    writer.write(buffer, 0, count);
+                    count = 0;
+                }
+                writer.write(replacement);
+            } else {
+                buffer[count++] = c;
+                if (count == buffer.length) {
+                    writer.write(buffer, 0, count);
+                    count = 0;
+                }
+            }
+        }
+
+        if (count > 0) {
+            writer.write(buffer, 0, count);
+        }
+
+    }
+
+
+    private static String escapeXmlToString(final CharSequence text, final int first, final boolean attribute) {
+        final FastStringWriter writer = new FastStringWriter(text.length() + 16);
+        try {
+            escapeXml(text, first, attribute, writer);
+        } catch (final IOException e) {
+            // Cannot happen, FastStringWriter does not raise IOExceptions
+            throw new IllegalStateException(e);
+        }
+        return writer.toString();
+    }
+
+
+    /*
+     * Runs of chars not needing escaping are written directly from the input, every other char is written (or
+     * skipped) one by one. The first char needing escaping has already been found by indexOfXmlEscapable().
+     */
+    private static void escapeXml(
+            final CharSequence text, final int first, final boolean attribute, final Writer writer)
+            throws IOException {
+
+        final int len = text.length();
+
+        write(text, 0, first, writer);
+
+        int runStart = first;
+        int i = first;
+        while (i < len) {
+
+            final char c = text.charAt(i);
+
+            if ((c >= 0x20 && c <= 0x7E && c != '<' && c != '>' && c != '&' && c != '"' && c != '\'') ||
+                    (!attribute && (c == '\n' || c == '\r' || c == '\t'))) {
+                i++;
+                continue;
+            }
+
+            if (i > runStart) {
+                write(text, runStart, i, writer);
+            }
+
+            if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(text.charAt(i + 1))) {
+                writeXmlCharReference(Character.toCodePoint(c, text.charAt(i + 1)), writer);
+                i += 2;
+            } else {
+                final String replacement = xmlReplacement(c);
+                if (replacement == null) {
+                    writeXmlCharReference(c, writer);
+                } else if (replacement != XML_REMOVED) {
+                    writer.write(replacement);
+                }
+                i++;
+            }
+
+            runStart = i;
+
+        }
+
+        if (runStart < len) {
+            write(text, runStart, len, writer);
+        }
+
+    }
+
+
+    private static void writeXmlCharReference(final int codepoint, final Writer writer) throws IOException {
+        writer.write("&#x");
+        writer.write(Integer.toHexString(codepoint));
+        writer.write(';');
+    }
+
+
+    /*
+     * Returns the replacement for a char that needs escaping, or null if it has to be output as a hexadecimal
+     * char reference. White space only reaches here for attributes, and surrogates only if they are unpaired
+     * (and therefore removed).
+     */
+    private static String xmlReplacement(final char c) {
+        switch (c) {
+            case '<': return XML_LT;
+            case '>': return XML_GT;
+            case '&': return XML_AMP;
+            case '"': return XML_QUOT;
+            case '\'': return XML_APOS;
+            case '\t': return XML_TAB;
+            case '\n': return XML_LF;
+            case '\r': return XML_CR;
+            default:
+                if (c < 0x20 || Character.isSurrogate(c) || c == '\uFFFE' || c == '\uFFFF') {
+                    return XML_REMOVED;
+                }
+                return null;
+        }
+    }
+
+
+    private static int indexOfHtmlEscapable(final CharSequence text) {
+        final int len = text.length();
+        for (int i = 0; i < len; i++) {
+            if (htmlReplacement(text.charAt(i)) != null) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+
+    private static int indexOfXmlEscapable(final CharSequence text, final boolean attribute) {
+        final int len = text.length();
+        char c;
+        for (int i = 0; i < len; i++) {
+            c = text.charAt(i);
+            if (c >= 0x20 && c <= 0x7E) {
+                if (c == '<' || c == '>' || c == '&' || c == '"' || c == '\'') {
+                    return i;
+                }
+            } else if (attribute || (c != '\n' && c != '\r' && c != '\t')) {
+                // Any other chars (non-ASCII, control chars, and also whitespace in attributes) need escaping
+                return i;
+            }
+        }
+        return -1;
+    }
+
+
+    private static String htmlReplacement(final char c) {
+        if (c > '>') {
+            return null;
+        }
+        switch (c) {
+            case '<': return HTML_LT;
+            case '>': return HTML_GT;
+            case '&': return HTML_AMP;
+            case '"': return HTML_QUOT;
+            case '\'': return HTML_APOS;
+            default: return null;
+        }
+    }
+
+
+
+
+    private MarkupEscapeUtils() {
+        super();
+    }
+
+}
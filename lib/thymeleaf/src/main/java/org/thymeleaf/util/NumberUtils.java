@@ -25,6 +25,8 @@
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.IntStream;
 
 /**
  * 
@@ -176,6 +178,79 @@ public static Integer[] sequence(final Integer from, final Integer to, final Int
         
     }
 
+
+
+    /**
+     * <p>
+     *   Produces a lazy stream with a sequence of integer numbers, containing the same values as
+     *   {@link #sequence(Integer, Integer)} but without creating any arrays or boxed values in advance.
+     * </p>
+     *
+     * @param from value to start the sequence from
+     * @param to value to produce the sequence to
+     * @return the sequence, as an {@link IntStream} of known size
+     *
+     * @since 3.1.3
+     */
+    public static IntStream sequenceStream(final Integer from, final Integer to) {
+        Validate.notNull(from, "Value to start the sequence from cannot be null");
+        Validate.notNull(to, "Value to generate the sequence up to cannot be null");
+        return sequenceStream(from, to, Integer.valueOf(from.intValue() <= to.intValue()? 1 : -1));
+    }
+
+
+    /**
+     * <p>
+     *   Produces a lazy stream with a sequence of integer numbers, using a step. It will contain the same values as
+     *   {@link #sequence(Integer, Integer, Integer)} but without creating any arrays or boxed values in advance.
+     * </p>
+     *
+     * @param from value to start the sequence from
+     * @param to value to produce the sequence to
+     * @param step the step to be used
+     * @return the sequence, as an {@link IntStream} of known size
+     *
+     * @since 3.1.3
+     */
+    public static IntStream sequenceStream(final Integer from, final Integer to, final Integer step) {
+
+        Validate.notNull(from, "Value to start the sequence from cannot be null");
+        Validate.notNull(to, "Value to generate the sequence up to cannot be null");
+        Validate.notNull(step, "Step to generate the sequence cannot be null");
+
+        final int iFrom = from.intValue();
+        final int iTo = to.intValue();
+        final int iStep = step.intValue();
+
+        if (iFrom == iTo) {
+            return IntStream.of(iFrom);
+        }
+
+        if (iStep == 0) {
+            // with iStep == 0, this would only be valid if iFrom == iTo, which it isn't - the rest are impossible
+            throw new IllegalArgumentException("Cannot create sequence from " + iFrom + " to " + iTo + " with step " + iStep);
+        }
+
+        final long count;
+        if ((iFrom < iTo && iStep > 0) || (iFrom > iTo && iStep < 0)) {
+            count = (((long)iTo - (long)iFrom) / iStep) + 1L;
+        } else {
+            count = 0L;
+        }
+
+        if (count > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Cannot create sequence from " + iFrom + " to " + iTo + " with step " + iStep + ": too many values");
+        }
+
+        // Mapping a range keeps the stream SIZED, so that its size can be known without iterating it
+        return IntStream.range(0, (int) count).map(new IntUnaryOperator() {
+            public int applyAsInt(final int i) {
+                return (int) (iFrom + ((long) i * iStep));
+            }
+        });
+
+    }
+
     /**
      * Formats a number as per the given values.
      * 
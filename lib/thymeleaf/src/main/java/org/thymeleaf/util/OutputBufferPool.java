@@ -0,0 +1,339 @@
+/*
+ * =============================================================================
+ *
+ *   Copyright (c) 2011-2022, The THYMELEAF team (http://www.thymeleaf.org)
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ * =============================================================================
+ */
+package org.thymeleaf.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+
+/**
+ * <p>
+ *   Pool of output buffers used when the output of a template (or fragment) has to be completely
+ *   buffered before being sent anywhere else.
+ * </p>
+ * <p>
+ *   This pool keeps a moving estimate of the size of the output produced for each <em>key</em> (normally a
+ *   template name, plus its selectors if any), so that the {@link CharOutputBuffer} and {@link ByteOutputBuffer}
+ *   objects it hands out are already sized for the output they will probably receive, which avoids having to
+ *   grow (and copy) them during processing. The arrays backing these buffers are recycled once they are
+ *   released, up to a configurable maximum amount of memory retained by all recycled arrays (chars counting as
+ *   two bytes each).
+ * </p>
+ * <p>
+ *   Keys longer than {@link #MAX_KEY_LENGTH} (e.g. the names of templates resolved from strings, which are the
+ *   template contents themselves) are not retained: their estimates are kept for a hash of the key instead.
+ *   Collisions among these hashes would only make estimates less accurate.
+ * </p>
+ * <p>
+ *   Pooled arrays always have a length that is a power of two between {@link #MIN_POOLED_SIZE} and the
+ *   maximum pooled size configured. Larger buffers will just be allocated when needed and discarded after use.
+ * </p>
+ * <p>
+ *   Objects of this class are thread-safe. The buffers they hand out are not.
+ * </p>
+ *
+ * @author Daniel Fern&aacute;ndez
+ *
+ * @since 3.1.3
+ *
+ */
+public final class OutputBufferPool {
+
+    public static final int MIN_POOLED_SIZE = 1024;
+    public static final int DEFAULT_MAX_POOLED_SIZE = 1024 * 1024;
+    public static final long DEFAULT_MAX_RETAINED_BYTES = 4L * 1024L * 1024L;
+    public static final int DEFAULT_MAX_ESTIMATES = 1000;
+    public static final int MAX_KEY_LENGTH = 256;
+
+    private static final int MIN_POOLED_SIZE_SHIFT = Integer.numberOfTrailingZeros(MIN_POOLED_SIZE);
+    private static final int MAX_POOLED_BUFFERS_PER_SIZE = 16;
+
+
+    private final int maxPooledSize;
+    private final long maxRetainedBytes;
+    private final int maxEstimates;
+    private final AtomicLong retainedBytes;
+    private final ConcurrentHashMap<String,Integer> estimates;
+    private final Bucket<char[]>[] charBuckets;
+    private final Bucket<byte[]>[] byteBuckets;
+
+
+
+
+    public OutputBufferPool() {
+        this(DEFAULT_MAX_POOLED_SIZE, DEFAULT_MAX_RETAINED_BYTES, DEFAULT_MAX_ESTIMATES);
+    }
+
+
+    @SuppressWarnings("unchecked")
+    public OutputBufferPool(final int maxPooledSize, final long maxRetainedBytes, final int maxEstimates) {
+
+        super();
+
+        Validate.isTrue(maxPooledSize >= MIN_POOLED_SIZE, "Maximum pooled size cannot be less than " + MIN_POOLED_SIZE);
+        Validate.isTrue(maxRetainedBytes >= 0L, "Maximum retained bytes cannot be negative");
+        Validate.isTrue(maxEstimates >= 0, "Maximum estimates cannot be negative");
+
+        // Round the maximum pooled size down to a power of two
+        this.maxPooledSize = Integer.highestOneBit(maxPooledSize);
+        this.maxRetainedBytes = maxRetainedBytes;
+        this.maxEstimates = maxEstimates;
+        this.retainedBytes = new AtomicLong(0L);
+        this.estimates = new ConcurrentHashMap<String, Integer>(Math.min(maxEstimates, 64));
+
+        final int bucketCount = bucketIndex(this.maxPooledSize) + 1;
+        this.charBuckets = new Bucket[bucketCount];
+        this.byteBuckets = new Bucket[bucketCount];
+        for (int i = 0; i < bucketCount; i++) {
+            // No bucket will ever be able to hold more arrays than the maximum retained bytes allow
+            final long size = ((long) MIN_POOLED_SIZE) << i;
+            this.charBuckets[i] =
+                    new Bucket<char[]>((int) Math.min(MAX_POOLED_BUFFERS_PER_SIZE, maxRetainedBytes / (2L * size)));
+            this.byteBuckets[i] =
+                    new Bucket<byte[]>((int) Math.min(MAX_POOLED_BUFFERS_PER_SIZE, maxRetainedBytes / size));
+        }
+
+    }
+
+
+
+
+    /**
+     * <p>
+     *   Returns a char buffer sized according to the current output size estimate for the specified key.
+     *   The buffer should be released (see {@link CharOutputBuffer#release()}) once it has been used.
+     * </p>
+     *
+     * @param key the key the output size estimate is kept for (normally the template name), might be null.
+     * @return the buffer.
+     */
+    public CharOutputBuffer acquireCharBuffer(final String key) {
+        return new CharOutputBuffer(this, key, acquireChars(computeInitialSize(key)));
+    }
+
+
+    /**
+     * <p>
+     *   Returns a byte buffer sized according to the current output size estimate for the specified key.
+     *   The buffer should be released (see {@link ByteOutputBuffer#release()}) once it has been used.
+     * </p>
+     *
+     * @param key the key the output size estimate is kept for (normally the template name), might be null.
+     * @return the buffer.
+     */
+    public ByteOutputBuffer acquireByteBuffer(final String key) {
+        return new ByteOutputBuffer(this, key, acquireBytes(computeInitialSize(key)));
+    }
+
+
+    /**
+     * <p>
+     *   Returns the current output size estimate for the specified key, or 0 if there is none yet.
+     * </p>
+     *
+     * @param key the key.
+     * @return the estimated output size, in chars or bytes depending on the buffers used for the key.
+     */
+    public int getEstimatedSize(final String key) {
+        if (key == null) {
+            return 0;
+        }
+        final Integer estimate = this.estimates.get(estimateKey(key));
+        return (estimate == null ? 0 : estimate.intValue());
+    }
+
+
+    /**
+     * <p>
+     *   Returns the amount of memory (in bytes) currently retained by the arrays recycled in this pool.
+     * </p>
+     *
+     * @return the retained bytes.
+     */
+    public long getRetainedBytes() {
+        return this.retainedBytes.get();
+    }
+
+
+
+
+    private int computeInitialSize(final String key) {
+        final int estimate = getEstimatedSize(key);
+        // Add some headroom so that small variations in output size do not need growing the buffer
+        return estimate + (estimate >>> 3);
+    }
+
+
+    private static String estimateKey(final String key) {
+        if (key.length() <= MAX_KEY_LENGTH) {
+            return key;
+        }
+        return "#" + key.length() + ":" + Integer.toHexString(key.hashCode());
+    }
+
+
+    void recordSize(final String key, final int size) {
+        if (key == null) {
+            return;
+        }
+        final String estimateKey = estimateKey(key);
+        final Integer estimate = this.estimates.get(estimateKey);
+        if (estimate == null) {
+            if (this.estimates.size() < this.maxEstimates) {
+                this.estimates.put(estimateKey, Integer.valueOf(size));
+            }
+            return;
+        }
+        // Estimates grow immediately, but shrink slowly so that a single small output does not make the
+        // next ones need to grow their buffers. Concurrent updates might overwrite each other, which is fine.
+        final int current = estimate.intValue();
+        final int updated = (size >= current ? size : current - ((current - size) >>> 2));
+        if (updated != current) {
+            this.estimates.put(estimateKey, Integer.valueOf(updated));
+        }
+    }
+
+
+    char[] acquireChars(final int minSize) {
+        final int size = pooledSize(minSize);
+        if (size < 0) {
+            return new char[minSize];
+        }
+        final char[] chars = this.charBuckets[bucketIndex(size)].poll();
+        if (chars == null) {
+            return new char[size];
+        }
+        this.retainedBytes.addAndGet(-2L * size);
+        return chars;
+    }
+
+
+    void releaseChars(final char[] chars) {
+        if (isPoolable(chars.length) && reserve(2L * chars.length)) {
+            if (!this.charBuckets[bucketIndex(chars.length)].offer(chars)) {
+                this.retainedBytes.addAndGet(-2L * chars.length);
+            }
+        }
+    }
+
+
+    byte[] acquireBytes(final int minSize) {
+        final int size = pooledSize(minSize);
+        if (size < 0) {
+            return new byte[minSize];
+        }
+        final byte[] bytes = this.byteBuckets[bucketIndex(size)].poll();
+        if (bytes == null) {
+            return new byte[size];
+        }
+        this.retainedBytes.addAndGet(-size);
+        return bytes;
+    }
+
+
+    void releaseBytes(final byte[] bytes) {
+        if (isPoolable(bytes.length) && reserve(bytes.length)) {
+            if (!this.byteBuckets[bucketIndex(bytes.length)].offer(bytes)) {
+                this.retainedBytes.addAndGet(-bytes.length);
+            }
+        }
+    }
+
+
+    /*
+     * Reserves the specified amount of retained memory for an array about to be recycled, if the maximum
+     * retained bytes allow it.
+     */
+    private boolean reserve(final long bytes) {
+        while (true) {
+            final long retained = this.retainedBytes.get();
+            if (retained + bytes > this.maxRetainedBytes) {
+                return false;
+            }
+            if (this.retainedBytes.compareAndSet(retained, retained + bytes)) {
+                return true;
+            }
+        }
+    }
+
+
+    /*
+     * Returns the pooled size to be used for the specified minimum size, or -1 if it is too large to be pooled.
+     */
+    private int pooledSize(final int minSize) {
+        if (minSize <= MIN_POOLED_SIZE) {
+            return MIN_POOLED_SIZE;
+        }
+        if (minSize > this.maxPooledSize) {
+            return -1;
+        }
+        final int size = Integer.highestOneBit(minSize);
+        return (size == minSize ? size : size << 1);
+    }
+
+
+    private boolean isPoolable(final int size) {
+        return size >= MIN_POOLED_SIZE && size <= this.maxPooledSize && Integer.bitCount(size) == 1;
+    }
+
+
+    private static int bucketIndex(final int pooledSize) {
+        return Integer.numberOfTrailingZeros(pooledSize) - MIN_POOLED_SIZE_SHIFT;
+    }
+
+
+
+
+    /*
+     * Lock-free, fixed-capacity container of recycled arrays of a specific size.
+     */
+    private static final class Bucket<T> {
+
+        private final AtomicReferenceArray<T> slots;
+
+        Bucket(final int capacity) {
+            super();
+            this.slots = new AtomicReferenceArray<T>(capacity);
+        }
+
+        T poll() {
+            for (int i = 0, n = this.slots.length(); i < n; i++) {
+                final T value = this.slots.get(i);
+                if (value != null && this.slots.compareAndSet(i, value, null)) {
+                    return value;
+                }
+            }
+            return null;
+        }
+
+        boolean offer(final T value) {
+            for (int i = 0, n = this.slots.length(); i < n; i++) {
+                if (this.slots.get(i) == null && this.slots.compareAndSet(i, null, value)) {
+                    return true;
+                }
+            }
+            // Bucket is full: the value will just be discarded
+            return false;
+        }
+
+    }
+
+}
@@ -0,0 +1,136 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2011-2016, The THYMELEAF team (http://www.thymeleaf.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.thymeleaf.cache;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.helpers.NOPLogger;
+
+/**
+ * <p>
+ *   Microbenchmark measuring the throughput of put/get/remove operations on a size-limited
+ *   {@link StandardCache} at different levels of concurrency. Not executed as a part of the test suite:
+ *   run its {@code main} method directly.
+ * </p>
+ *
+ * @author Daniel Fern&aacute;ndez
+ *
+ * @since 3.1.3
+ *
+ */
+public class StandardCacheBenchmark {
+
+    private static final int MAX_SIZE = 20000;
+    private static final int KEY_SPACE = 2 * MAX_SIZE;
+    private static final int OPERATIONS_PER_THREAD = 2000000;
+    private static final int[] THREAD_COUNTS = new int[] { 1, 8, 64 };
+
+
+
+    public StandardCacheBenchmark() {
+        super();
+    }
+
+
+    public static void main(String[] args) throws Exception {
+
+        final String[] keys = new String[KEY_SPACE];
+        for (int i = 0; i < KEY_SPACE; i++) {
+            keys[i] = "key" + i;
+        }
+
+        // First round is just for warming up the JVM
+        for (int round = 0; round < 2; round++) {
+            System.out.println(round == 0 ? "Warm-up round:" : "Measured round:");
+            for (final int threadCount : THREAD_COUNTS) {
+                run(keys, threadCount);
+            }
+        }
+
+    }
+
+
+    private static void run(final String[] keys, final int threadCount) throws Exception {
+
+        final StandardCache<String,String> cache =
+                new StandardCache<String, String>("benchmark", false, MAX_SIZE, MAX_SIZE, NOPLogger.NOP_LOGGER);
+        for (int i = 0; i < MAX_SIZE; i++) {
+            cache.put(keys[i], keys[i]);
+        }
+
+        final int operationsPerThread = OPERATIONS_PER_THREAD / threadCount;
+        final AtomicLong puts = new AtomicLong(0L);
+        final AtomicLong gets = new AtomicLong(0L);
+        final AtomicLong removes = new AtomicLong(0L);
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch end = new CountDownLatch(threadCount);
+
+        for (int t = 0; t < threadCount; t++) {
+            final Random random = new Random(t);
+            final Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    long threadPuts = 0L, threadGets = 0L, threadRemoves = 0L;
+                    try {
+                        start.await();
+                        for (int i = 0; i < operationsPerThread; i++) {
+                            final String key = keys[random.nextInt(keys.length)];
+                            final int operation = random.nextInt(10);
+                            if (operation < 7) {
+                                cache.get(key);
+                                threadGets++;
+                            } else if (operation < 9) {
+                                cache.put(key, key);
+                                threadPuts++;
+                            } else {
+                                cache.clearKey(key);
+                                threadRemoves++;
+                            }
+                        }
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        puts.addAndGet(threadPuts);
+                        gets.addAndGet(threadGets);
+                        removes.addAndGet(threadRemoves);
+                        end.countDown();
+                    }
+                }
+            };
+            thread.start();
+        }
+
+        final long startNanos = System.nanoTime();
+        start.countDown();
+        end.await();
+        final double seconds = (System.nanoTime() - startNanos) / 1000000000.0d;
+
+        System.out.println(String.format(
+                "  %2d threads: %,12.0f ops/s  (put %,11.0f/s, get %,12.0f/s, remove %,11.0f/s)  final size %d",
+                Integer.valueOf(threadCount),
+                Double.valueOf((puts.get() + gets.get() + removes.get()) / seconds),
+                Double.valueOf(puts.get() / seconds), Double.valueOf(gets.get() / seconds),
+                Double.valueOf(removes.get() / seconds), Integer.valueOf(cache.size())));
+
+    }
+
+}
@@ -0,0 +1,193 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2011-2022, The THYMELEAF team (http://www.thymeleaf.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.thymeleaf.cache;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.context.Context;
+import org.thymeleaf.engine.TemplateModel;
+import org.thymeleaf.templateresolver.StringTemplateResolver;
+
+
+public class StandardCacheManagerTest {
+
+    public StandardCacheManagerTest() {
+        super();
+    }
+
+
+    @Test
+    public void testTypedExpressionCaches() {
+
+        final StandardCacheManager cacheManager = new StandardCacheManager();
+        cacheManager.setExpressionCacheMaxSize("ognl", 2000);
+
+        final ICache<String,Object> exprCache = cacheManager.getExpressionCache("expr");
+        final ICache<String,Object> ognlCache = cacheManager.getExpressionCache("ognl");
+
+        Assertions.assertNotNull(exprCache);
+        Assertions.assertNotNull(ognlCache);
+        Assertions.assertNotSame(exprCache, ognlCache);
+        Assertions.assertSame(exprCache, cacheManager.getExpressionCache("expr"));
+
+        Assertions.assertEquals(
+                StandardCacheManager.DEFAULT_EXPRESSION_CACHE_MAX_SIZE / StandardCacheManager.DEFAULT_EXPRESSION_CACHE_TYPE_SHARES,
+                ((StandardCache<?,?>)exprCache).getMaxSize());
+        Assertions.assertEquals(2000, ((StandardCache<?,?>)ognlCache).getMaxSize());
+
+        exprCache.put("${one}", "1");
+        ognlCache.put("${one}", "2");
+        Assertions.assertEquals("1", exprCache.get("${one}"));
+        Assertions.assertEquals("2", ognlCache.get("${one}"));
+
+        cacheManager.clearAllCaches();
+        Assertions.assertNull(exprCache.get("${one}"));
+        Assertions.assertNull(ognlCache.get("${one}"));
+
+    }
+
+
+    @Test
+    public void testTypedExpressionCachesShareMaxSize() {
+
+        final String[] types = new String[] { "expr", "ognl", "each", "aseq", "eseq", "fsig" };
+
+        final StandardCacheManager cacheManager = new StandardCacheManager();
+        int totalMaxSize = 0;
+        for (final String type : types) {
+            totalMaxSize += ((StandardCache<?,?>)cacheManager.getExpressionCache(type)).getMaxSize();
+        }
+        Assertions.assertTrue(totalMaxSize <= StandardCacheManager.DEFAULT_EXPRESSION_CACHE_MAX_SIZE);
+
+        final StandardCacheManager smallCacheManager = new StandardCacheManager();
+        smallCacheManager.setExpressionCacheMaxSize(3);
+        Assertions.assertEquals(1, smallCacheManager.getExpressionCacheMaxSize("expr"));
+
+        final StandardCacheManager unlimitedCacheManager = new StandardCacheManager();
+        unlimitedCacheManager.setExpressionCacheMaxSize(-1);
+        Assertions.assertEquals(-1, unlimitedCacheManager.getExpressionCacheMaxSize("expr"));
+
+    }
+
+
+    @Test
+    public void testTypedExpressionCacheStatistics() {
+
+        final StandardCacheManager cacheManager = new StandardCacheManager();
+        cacheManager.setExpressionCacheEnableCounters(true);
+
+        final ICache<String,Object> exprCache = cacheManager.getExpressionCache("expr");
+        final ICache<String,Object> ognlCache = cacheManager.getExpressionCache("ognl");
+        final StandardCache<?,?> sharedCache = (StandardCache<?,?>) cacheManager.getExpressionCache();
+
+        exprCache.put("${one}", "1");
+        ognlCache.put("one", "1");
+        Assertions.assertEquals("1", exprCache.get("${one}"));
+        Assertions.assertNull(exprCache.get("${two}"));
+        Assertions.assertEquals("1", ognlCache.get("one"));
+
+        Assertions.assertEquals(2L, ((StandardCache<?,?>)exprCache).getGetCount());
+        Assertions.assertEquals(1L, ((StandardCache<?,?>)ognlCache).getGetCount());
+
+        Assertions.assertEquals(2L, sharedCache.getPutCount());
+        Assertions.assertEquals(3L, sharedCache.getGetCount());
+        Assertions.assertEquals(2L, sharedCache.getHitCount());
+        Assertions.assertEquals(1L, sharedCache.getMissCount());
+        Assertions.assertEquals(0, sharedCache.size());
+
+    }
+
+
+    @Test
+    public void testTypedExpressionCachesFallback() {
+
+        final StandardCacheManager cacheManager1 = new StandardCacheManager();
+        cacheManager1.setExpressionCacheMaxSize("each", 0);
+        Assertions.assertNull(cacheManager1.getExpressionCache("each"));
+        Assertions.assertNotNull(cacheManager1.getExpressionCache("expr"));
+
+        final StandardCacheManager cacheManager2 = new StandardCacheManager();
+        cacheManager2.setExpressionCacheValidityChecker(new ICacheEntryValidityChecker<ExpressionCacheKey, Object>() {
+            public boolean checkIsValueStillValid(final ExpressionCacheKey key, final Object value, final long entryCreationTimestamp) {
+                return true;
+            }
+        });
+        Assertions.assertNull(cacheManager2.getExpressionCache("expr"));
+        Assertions.assertNotNull(cacheManager2.getExpressionCache());
+
+        final StandardCacheManager cacheManager3 = new StandardCacheManager();
+        cacheManager3.setExpressionCacheMaxSize(0);
+        Assertions.assertNull(cacheManager3.getExpressionCache("expr"));
+        Assertions.assertNull(cacheManager3.getExpressionCache());
+
+    }
+
+
+
+    @Test
+    public void testTemplateCacheWeight() {
+
+        // Template cache not limited by weight
+        Assertions.assertEquals(-1L, new StandardCacheManager().getTemplateCacheWeight());
+
+        final StandardCacheManager cacheManager = new StandardCacheManager();
+        final long maxWeight = 50000L;
+        cacheManager.setTemplateCacheMaxWeight(maxWeight);
+
+        final StringTemplateResolver templateResolver = new StringTemplateResolver();
+        templateResolver.setCacheable(true);
+
+        final TemplateEngine templateEngine = new TemplateEngine();
+        templateEngine.setCacheManager(cacheManager);
+        templateEngine.setTemplateResolver(templateResolver);
+
+        final String smallTemplate = "<p class=\"a\" th:text=\"${one}\">Some text</p>";
+        final StringBuilder bigTemplateBuilder = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            bigTemplateBuilder.append("<div id=\"d").append(i).append("\"><span>Some longer text</span></div>");
+        }
+        final String bigTemplate = bigTemplateBuilder.toString();
+
+        templateEngine.process(smallTemplate, new Context());
+        final long smallWeight = cacheManager.getTemplateCacheWeight();
+        Assertions.assertTrue(smallWeight > 0L);
+
+        templateEngine.process(bigTemplate, new Context());
+        final long bothWeight = cacheManager.getTemplateCacheWeight();
+        Assertions.assertTrue(bothWeight > 2L * smallWeight);
+
+        final ICache<TemplateCacheKey,TemplateModel> templateCache = cacheManager.getTemplateCache();
+        long computedWeight = 0L;
+        for (final TemplateCacheKey key : templateCache.keySet()) {
+            computedWeight += templateCache.get(key).getWeight();
+        }
+        Assertions.assertEquals(bothWeight, computedWeight);
+
+        for (int i = 0; i < 100; i++) {
+            templateEngine.process(bigTemplate + i, new Context());
+            Assertions.assertTrue(cacheManager.getTemplateCacheWeight() <= maxWeight);
+        }
+        Assertions.assertTrue(templateCache.keySet().size() < 100);
+
+    }
+
+
+}
@@ -67,5 +67,307 @@ public void testSoftReferenceHandling () {
 
     }
 
+
+    @Test
+    public void testWindowTinyLfuSizeLimit() {
+
+        final int maxSize = 100;
+
+        final StandardCache<String, String> cache =
+                new StandardCache<String, String>(
+                        "testWindowTinyLfuSizeLimit", false, 10, maxSize, null, NOPLogger.NOP_LOGGER, true,
+                        CacheEvictionPolicy.WINDOW_TINY_LFU);
+
+        Assertions.assertEquals(CacheEvictionPolicy.WINDOW_TINY_LFU, cache.getEvictionPolicy());
+
+        for (int i = 0; i < 10000; i++) {
+            cache.put("key" + i, "value" + i);
+            Assertions.assertTrue(cache.size() <= maxSize);
+        }
+        Assertions.assertEquals(maxSize, cache.size());
+
+        final String removedKey = cache.keySet().iterator().next();
+        cache.clearKey(removedKey);
+        Assertions.assertNull(cache.get(removedKey));
+        Assertions.assertEquals(maxSize - 1, cache.size());
+
+        cache.clear();
+        Assertions.assertEquals(0, cache.size());
+        cache.put("key", "value");
+        Assertions.assertEquals("value", cache.get("key"));
+
+    }
+
+
+    @Test
+    public void testWindowTinyLfuKeepsFrequentEntries() {
+
+        final int maxSize = 100;
+        final int hotKeys = 50;
+
+        final StandardCache<String, String> fifoCache =
+                new StandardCache<String, String>(
+                        "testFifo", false, 10, maxSize, null, NOPLogger.NOP_LOGGER, true,
+                        CacheEvictionPolicy.FIFO);
+        final StandardCache<String, String> lfuCache =
+                new StandardCache<String, String>(
+                        "testWindowTinyLfu", false, 10, maxSize, null, NOPLogger.NOP_LOGGER, true,
+                        CacheEvictionPolicy.WINDOW_TINY_LFU);
+
+        // Hot keys are accessed very frequently, interleaved with a scan of one-shot keys that is
+        // several times larger than the cache itself
+        int scanKey = 0;
+        for (int round = 0; round < 200; round++) {
+            for (int i = 0; i < hotKeys; i++) {
+                access(fifoCache, "hot" + i);
+                access(lfuCache, "hot" + i);
+            }
+            for (int i = 0; i < 20; i++) {
+                access(fifoCache, "scan" + scanKey);
+                access(lfuCache, "scan" + scanKey);
+                scanKey++;
+            }
+        }
+
+        Assertions.assertTrue(lfuCache.size() <= maxSize);
+        Assertions.assertTrue(
+                lfuCache.getHitRatio() > fifoCache.getHitRatio(),
+                "W-TinyLFU hit ratio (" + lfuCache.getHitRatio() + ") should be higher than FIFO's (" + fifoCache.getHitRatio() + ")");
+
+        int hotPresent = 0;
+        for (int i = 0; i < hotKeys; i++) {
+            if (lfuCache.get("hot" + i) != null) {
+                hotPresent++;
+            }
+        }
+        Assertions.assertTrue(hotPresent >= (hotKeys * 9) / 10, "Only " + hotPresent + " hot keys remained in cache");
+
+    }
+
+
+    @Test
+    public void testWindowTinyLfuAdmission() {
+
+        final int maxSize = 100;
+
+        final StandardCache<String, String> cache =
+                new StandardCache<String, String>(
+                        "testWindowTinyLfuAdmission", false, 10, maxSize, null, NOPLogger.NOP_LOGGER, true,
+                        CacheEvictionPolicy.WINDOW_TINY_LFU);
+
+        // The whole cache is filled with frequently accessed keys, most of them in the protected segment
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < maxSize; i++) {
+                access(cache, "hot" + i);
+            }
+        }
+
+        // One-shot keys leaving the window have to compete against the LRU entry of the main space, and lose
+        for (int i = 0; i < 1000; i++) {
+            access(cache, "scan" + i);
+        }
+
+        Assertions.assertTrue(cache.size() <= maxSize);
+        int hotPresent = 0;
+        for (int i = 0; i < maxSize; i++) {
+            if (cache.get("hot" + i) != null) {
+                hotPresent++;
+            }
+        }
+        Assertions.assertTrue(hotPresent >= (maxSize * 9) / 10, "Only " + hotPresent + " hot keys remained in cache");
+
+    }
+
+
+    @Test
+    public void testWeightLimit() {
+
+        final long maxWeight = 100L;
+
+        final StandardCache<String, String> cache =
+                new StandardCache<String, String>(
+                        "testWeightLimit", false, 10, -1, null, NOPLogger.NOP_LOGGER, false,
+                        CacheEvictionPolicy.FIFO, maxWeight, new LengthWeigher());
+
+        for (int i = 0; i < 100; i++) {
+            cache.put("key" + i, "0123456789"); // weight: 10
+            Assertions.assertTrue(cache.getWeight() <= maxWeight);
+        }
+        Assertions.assertEquals(10, cache.size());
+        Assertions.assertEquals(maxWeight, cache.getWeight());
+
+        // Oldest entries are the first evicted
+        Assertions.assertNull(cache.get("key89"));
+        Assertions.assertNotNull(cache.get("key90"));
+
+        // A heavier entry evicts as many entries as needed
+        cache.put("heavy", "012345678901234567890123456789"); // weight: 30
+        Assertions.assertEquals(8, cache.size());
+        Assertions.assertEquals(100L, cache.getWeight());
+        Assertions.assertNull(cache.get("key92"));
+        Assertions.assertNotNull(cache.get("key93"));
+
+        cache.clearKey("heavy");
+        Assertions.assertEquals(70L, cache.getWeight());
+
+        // An entry heavier than the whole cache never remains in it
+        final StringBuilder strBuilder = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            strBuilder.append("0123456789");
+        }
+        cache.put("tooHeavy", strBuilder.toString());
+        Assertions.assertNull(cache.get("tooHeavy"));
+        Assertions.assertEquals(0, cache.size());
+        Assertions.assertEquals(0L, cache.getWeight());
+
+        cache.put("key", "01234");
+        cache.clear();
+        Assertions.assertEquals(0L, cache.getWeight());
+
+    }
+
+
+    @Test
+    public void testWeightAndSizeLimit() {
+
+        final StandardCache<String, String> cache =
+                new StandardCache<String, String>(
+                        "testWeightAndSizeLimit", false, 10, 5, null, NOPLogger.NOP_LOGGER, false,
+                        CacheEvictionPolicy.FIFO, 1000L, new LengthWeigher());
+
+        for (int i = 0; i < 20; i++) {
+            cache.put("key" + i, "0123456789");
+        }
+        Assertions.assertEquals(5, cache.size());
+        Assertions.assertEquals(50L, cache.getWeight());
+
+    }
+
+
+    @Test
+    public void testReplace() {
+
+        final StandardCache<String, String> fifoCache =
+                new StandardCache<String, String>("testReplaceFifo", false, 10, 3, NOPLogger.NOP_LOGGER);
+        final StandardCache<String, String> weightedCache =
+                new StandardCache<String, String>(
+                        "testReplaceWeighted", false, 10, 3, null, NOPLogger.NOP_LOGGER, false,
+                        CacheEvictionPolicy.FIFO, 100L, new LengthWeigher());
+
+        for (final StandardCache<String,String> cache : new StandardCache[] { fifoCache, weightedCache }) {
+
+            cache.put("key1", "one");
+            cache.put("key2", "two");
+            cache.replace("key1", "uno");
+            cache.replace("key3", "three");
+            Assertions.assertEquals("uno", cache.get("key1"));
+            Assertions.assertEquals("three", cache.get("key3"));
+            Assertions.assertEquals(3, cache.size());
+
+            // Replacing does not change insertion order: key1 is still the eldest entry
+            cache.put("key4", "four");
+            Assertions.assertNull(cache.get("key1"));
+            Assertions.assertEquals(3, cache.size());
+
+        }
+
+        Assertions.assertEquals(12L, weightedCache.getWeight());
+        weightedCache.replace("key4", "cuatro");
+        Assertions.assertEquals(14L, weightedCache.getWeight());
+
+    }
+
+
+    @Test
+    public void testConditionalReplace() {
+
+        final StandardCache<String, String> fifoCache =
+                new StandardCache<String, String>("testConditionalReplaceFifo", false, 10, 3, NOPLogger.NOP_LOGGER);
+        final StandardCache<String, String> weightedCache =
+                new StandardCache<String, String>(
+                        "testConditionalReplaceWeighted", false, 10, 3, null, NOPLogger.NOP_LOGGER, false,
+                        CacheEvictionPolicy.FIFO, 100L, new LengthWeigher());
+
+        for (final StandardCache<String,String> cache : new StandardCache[] { fifoCache, weightedCache }) {
+
+            final String one = new String("one");
+            cache.put("key1", one);
+
+            // Values are compared by identity
+            Assertions.assertFalse(cache.replace("key1", new String("one"), "uno"));
+            Assertions.assertTrue(cache.replace("key1", one, "uno"));
+            Assertions.assertEquals("uno", cache.get("key1"));
+            Assertions.assertFalse(cache.replace("key1", one, "eins"));
+            Assertions.assertEquals("uno", cache.get("key1"));
+
+            // Absent keys are never inserted
+            Assertions.assertFalse(cache.replace("key2", null, "two"));
+            Assertions.assertFalse(cache.replace("key2", "two", "dos"));
+            Assertions.assertNull(cache.get("key2"));
+            Assertions.assertEquals(1, cache.size());
+
+        }
+
+        Assertions.assertEquals(3L, weightedCache.getWeight());
+
+    }
+
+
+    @Test
+    public void testRemoveAndEvict() {
+
+        final StandardCache<String, String> cache =
+                new StandardCache<String, String>("testRemoveAndEvict", false, 10, 3, NOPLogger.NOP_LOGGER);
+
+        cache.put("key1", "one");
+        cache.put("key2", "two");
+        cache.put("key3", "three");
+        cache.clearKey("key2");
+
+        // Removed entries free their space without affecting the insertion order of the rest
+        cache.put("key4", "four");
+        Assertions.assertEquals(3, cache.size());
+        Assertions.assertEquals("one", cache.get("key1"));
+        cache.put("key5", "five");
+        Assertions.assertEquals(3, cache.size());
+        Assertions.assertNull(cache.get("key1"));
+        Assertions.assertEquals("three", cache.get("key3"));
+
+        // Removing and adding again the same keys many times does not break the size limit
+        for (int i = 0; i < 1000; i++) {
+            cache.clearKey("key" + (i % 7));
+            cache.put("key" + (i % 7), "value");
+            cache.put("other" + i, "value");
+        }
+        Assertions.assertEquals(3, cache.size());
+
+        cache.clear();
+        Assertions.assertEquals(0, cache.size());
+        for (int i = 0; i < 5; i++) {
+            cache.put("key" + i, "value");
+        }
+        Assertions.assertEquals(3, cache.size());
+        Assertions.assertEquals("value", cache.get("key4"));
+
+    }
+
+
+    private static final class LengthWeigher implements ICacheEntryWeigher<String,String> {
+
+        private static final long serialVersionUID = 1L;
+
+        public long weigh(final String key, final String value) {
+            return value.length();
+        }
+
+    }
+
+
+    private static void access(final StandardCache<String,String> cache, final String key) {
+        if (cache.get(key) == null) {
+            cache.put(key, key);
+        }
+    }
+
     
 }
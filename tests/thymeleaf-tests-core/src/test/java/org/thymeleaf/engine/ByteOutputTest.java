@@ -0,0 +1,150 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2011-2022, The THYMELEAF team (http://www.thymeleaf.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.thymeleaf.engine;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.TemplateSpec;
+import org.thymeleaf.context.Context;
+import org.thymeleaf.templatemode.TemplateMode;
+import org.thymeleaf.templateresolver.StringTemplateResolver;
+
+
+public final class ByteOutputTest {
+
+
+    private static final String TEMPLATE =
+            "<!DOCTYPE html>\n<html>\n<head><title>Caf\u00E9 \u20AC</title></head>\n" +
+            "<body>\n  <p class=\"x\">Static \u00F1 text</p>\n" +
+            "  <ul><li th:each=\"i : ${items}\" th:text=\"${i}\">x</li></ul>\n" +
+            "  <p>[[${name}]]</p>\n</body>\n</html>";
+
+    private static final String STATIC_TEMPLATE =
+            "<html><body><p>Completely static \u00F1 \u20AC template</p></body></html>";
+
+
+
+    @Test
+    public void testOutputIsTheSameAsCharacterOutput() throws Exception {
+
+        final TemplateEngine templateEngine = createEngine(0);
+        final Context context = createContext();
+
+        final String expected = templateEngine.process(TEMPLATE, context);
+
+        for (final Charset charset : new Charset[] { StandardCharsets.UTF_8, StandardCharsets.ISO_8859_1, StandardCharsets.UTF_16LE }) {
+            // Second and third executions will use the cached template model and its already-encoded texts
+            for (int i = 0; i < 3; i++) {
+                final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                templateEngine.process(TEMPLATE, context, out, charset);
+                Assertions.assertArrayEquals(expected.getBytes(charset), out.toByteArray(), charset.name());
+            }
+        }
+
+    }
+
+
+    @Test
+    public void testStatefulCharsetOutput() throws Exception {
+
+        final TemplateEngine templateEngine = createEngine(0);
+        final Context context = createContext();
+
+        final String expected = templateEngine.process(TEMPLATE, context);
+
+        // Static texts cannot be pre-encoded with these: UTF-16 would output a byte order mark before each of
+        // them, and ISO-2022-JP depends on the escape sequences output before
+        for (final Charset charset : new Charset[] { StandardCharsets.UTF_16, Charset.forName("ISO-2022-JP") }) {
+            for (int i = 0; i < 3; i++) {
+                final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                templateEngine.process(TEMPLATE, context, out, charset);
+                Assertions.assertArrayEquals(expected.getBytes(charset), out.toByteArray(), charset.name());
+            }
+        }
+
+    }
+
+
+    @Test
+    public void testChannelOutput() throws Exception {
+
+        final TemplateEngine templateEngine = createEngine(0);
+        final Context context = createContext();
+        final TemplateSpec templateSpec = new TemplateSpec(TEMPLATE, TemplateMode.HTML);
+
+        final String expected = templateEngine.process(templateSpec, context);
+
+        for (int i = 0; i < 3; i++) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            templateEngine.process(templateSpec, context, Channels.newChannel(out), StandardCharsets.UTF_8);
+            Assertions.assertEquals(expected, new String(out.toByteArray(), StandardCharsets.UTF_8));
+        }
+
+    }
+
+
+    @Test
+    public void testCompiledStaticTemplateOutput() throws Exception {
+
+        final TemplateEngine templateEngine = createEngine(1);
+
+        for (int i = 0; i < 3; i++) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            templateEngine.process(STATIC_TEMPLATE, new Context(), out, StandardCharsets.ISO_8859_1);
+            Assertions.assertArrayEquals(STATIC_TEMPLATE.getBytes(StandardCharsets.ISO_8859_1), out.toByteArray());
+        }
+
+        Assertions.assertEquals(1L, templateEngine.getConfiguration().getTemplateManager().getCompiledTemplateCount());
+
+        for (int i = 0; i < 3; i++) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            templateEngine.process(STATIC_TEMPLATE, new Context(), out, StandardCharsets.UTF_16);
+            Assertions.assertArrayEquals(STATIC_TEMPLATE.getBytes(StandardCharsets.UTF_16), out.toByteArray());
+        }
+
+    }
+
+
+
+
+    private static TemplateEngine createEngine(final int compilationThreshold) {
+        final StringTemplateResolver templateResolver = new StringTemplateResolver();
+        templateResolver.setCacheable(true);
+        final TemplateEngine templateEngine = new TemplateEngine();
+        templateEngine.setTemplateResolver(templateResolver);
+        templateEngine.setTemplateCompilationThreshold(compilationThreshold);
+        return templateEngine;
+    }
+
+
+    private static Context createContext() {
+        final Context context = new Context();
+        context.setVariable("items", new String[] { "one", "t\u00F6\u00F6", "\uD83D\uDE00 three" });
+        context.setVariable("name", "<\u00D1ame>");
+        return context;
+    }
+
+}
@@ -0,0 +1,178 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2011-2022, The THYMELEAF team (http://www.thymeleaf.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.thymeleaf.engine;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.context.Context;
+import org.thymeleaf.exceptions.TemplateProcessingException;
+import org.thymeleaf.templateresolver.StringTemplateResolver;
+
+
+public final class ConcurrentFragmentInsertionTest {
+
+
+    private static final String TEMPLATE =
+            "<div th:fragment=\"item(n)\" th:concurrent=\"true\" th:text=\"${prefix} + ${n} + ':' + ${slow.get(n)}\">x</div>" +
+            "<section th:object=\"${obj}\">" +
+              "<th:block th:each=\"i : ${#numbers.sequence(1,4)}\"><p th:insert=\"~{::item(${i})}\">.</p></th:block>" +
+              "<span th:replace=\"~{::item(*{length()})}\">.</span>" +
+              "<b th:replace=\"~{::plain}\">.</b>" +
+            "</section>" +
+            "<i th:fragment=\"plain\" th:text=\"${prefix}\">.</i>";
+
+
+
+    @Test
+    public void testOutputIsTheSameAsSynchronous() throws Exception {
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+
+            final TemplateEngine synchronousEngine = createEngine(null);
+            final TemplateEngine concurrentEngine = createEngine(executor);
+
+            final String expected = synchronousEngine.process(TEMPLATE, createContext());
+
+            Assertions.assertEquals(
+                    "<div>pnull:4</div>" +
+                    "<section>" +
+                      "<p><div>p1:3</div></p><p><div>p2:2</div></p><p><div>p3:1</div></p><p><div>p4:0</div></p>" +
+                      "<div>p5:0</div>" +
+                      "<i>p</i>" +
+                    "</section>" +
+                    "<i>p</i>",
+                    expected);
+
+            // Fragments finish in reverse order, but must be output in document order
+            for (int i = 0; i < 10; i++) {
+                Assertions.assertEquals(expected, concurrentEngine.process(TEMPLATE, createContext()));
+            }
+
+        } finally {
+            executor.shutdownNow();
+        }
+
+    }
+
+
+    @Test
+    public void testFragmentsAreProcessedConcurrently() throws Exception {
+
+        final ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+
+            final TemplateEngine templateEngine = createEngine(executor);
+
+            final Context context = new Context();
+            context.setVariable("latch", new Latch(3));
+
+            // Each fragment will wait for the other two to arrive, which is only possible if they run concurrently
+            Assertions.assertEquals(
+                    "<p><div>true</div></p><p><div>true</div></p><p><div>true</div></p>",
+                    templateEngine.process(
+                            "<th:block th:each=\"i : ${#numbers.sequence(1,3)}\"><p th:insert=\"~{::item}\">.</p></th:block>" +
+                            "<th:block th:if=\"false\"><div th:fragment=\"item\" th:concurrent=\"true\" th:text=\"${latch.arrive()}\">x</div></th:block>",
+                            context));
+
+        } finally {
+            executor.shutdownNow();
+        }
+
+    }
+
+
+    @Test
+    public void testErrorsArePropagated() throws Exception {
+
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+
+            final TemplateEngine templateEngine = createEngine(executor);
+
+            Assertions.assertThrows(
+                    TemplateProcessingException.class,
+                    () -> templateEngine.process(
+                            "<p th:insert=\"~{::item}\">.</p>" +
+                            "<th:block th:if=\"false\"><div th:fragment=\"item\" th:concurrent=\"true\" th:text=\"${nonexisting.value}\">x</div></th:block>",
+                            new Context()));
+
+        } finally {
+            executor.shutdownNow();
+        }
+
+    }
+
+
+
+
+    private static TemplateEngine createEngine(final ExecutorService executor) {
+        final TemplateEngine templateEngine = new TemplateEngine();
+        templateEngine.setTemplateResolver(new StringTemplateResolver());
+        templateEngine.setFragmentInsertionExecutor(executor);
+        return templateEngine;
+    }
+
+
+    private static Context createContext() {
+        final Context context = new Context();
+        context.setVariable("prefix", "p");
+        context.setVariable("obj", "12345");
+        context.setVariable("slow", new Slow());
+        return context;
+    }
+
+
+
+
+    public static final class Slow {
+
+        public int get(final Integer n) throws InterruptedException {
+            final int value = (n == null? 4 : Math.max(0, 4 - n.intValue()));
+            Thread.sleep(value * 20L);
+            return value;
+        }
+
+    }
+
+
+    public static final class Latch {
+
+        private final CountDownLatch latch;
+
+        Latch(final int parties) {
+            super();
+            this.latch = new CountDownLatch(parties);
+        }
+
+        public boolean arrive() throws InterruptedException {
+            this.latch.countDown();
+            return this.latch.await(5L, TimeUnit.SECONDS);
+        }
+
+    }
+
+}
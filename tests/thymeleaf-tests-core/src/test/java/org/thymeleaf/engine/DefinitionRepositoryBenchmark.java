@@ -0,0 +1,137 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2011-2016, The THYMELEAF team (http://www.thymeleaf.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.thymeleaf.engine;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.thymeleaf.IEngineConfiguration;
+import org.thymeleaf.TemplateEngine;
+
+/**
+ * <p>
+ *   Microbenchmark measuring the throughput of element and attribute definition lookups at different levels of
+ *   concurrency, for names that are not part of the standard HTML definitions (XML elements, {@code th:*} and
+ *   custom attributes), which are the ones looked up in the read-write part of the definition repositories.
+ *   Not executed as a part of the test suite: run its {@code main} method directly.
+ * </p>
+ *
+ * @author Daniel Fern&aacute;ndez
+ *
+ * @since 3.1.3
+ *
+ */
+public class DefinitionRepositoryBenchmark {
+
+    private static final int NAME_COUNT = 256;
+    private static final int LOOKUPS_PER_THREAD = 20000000;
+    private static final int[] THREAD_COUNTS = new int[] { 1, 8, 64 };
+
+
+
+    public DefinitionRepositoryBenchmark() {
+        super();
+    }
+
+
+    public static void main(String[] args) throws Exception {
+
+        final IEngineConfiguration configuration = new TemplateEngine().getConfiguration();
+        final ElementDefinitions elementDefinitions = configuration.getElementDefinitions();
+        final AttributeDefinitions attributeDefinitions = configuration.getAttributeDefinitions();
+
+        // All names are laid out in a single buffer, the way parsers look them up
+        final StringBuilder buffer = new StringBuilder();
+        final int[] offsets = new int[NAME_COUNT];
+        final int[] lens = new int[NAME_COUNT];
+        for (int i = 0; i < NAME_COUNT; i++) {
+            final String name = (i % 2 == 0 ? "th:attr" + i : "data-custom-" + i);
+            offsets[i] = buffer.length();
+            lens[i] = name.length();
+            buffer.append(name);
+        }
+        final char[] names = buffer.toString().toCharArray();
+
+        // First round is just for warming up the JVM
+        for (int round = 0; round < 2; round++) {
+            System.out.println(round == 0 ? "Warm-up round:" : "Measured round:");
+            for (final int threadCount : THREAD_COUNTS) {
+                run(elementDefinitions, attributeDefinitions, names, offsets, lens, threadCount);
+            }
+        }
+
+    }
+
+
+    private static void run(
+            final ElementDefinitions elementDefinitions, final AttributeDefinitions attributeDefinitions,
+            final char[] names, final int[] offsets, final int[] lens, final int threadCount) throws Exception {
+
+        final int lookupsPerThread = LOOKUPS_PER_THREAD / threadCount;
+        final AtomicLong lookups = new AtomicLong(0L);
+        final AtomicLong checksum = new AtomicLong(0L);
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch end = new CountDownLatch(threadCount);
+
+        for (int t = 0; t < threadCount; t++) {
+            final int firstName = t;
+            final Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    long threadLookups = 0L;
+                    long threadChecksum = 0L;
+                    try {
+                        start.await();
+                        int n = firstName;
+                        for (int i = 0; i < lookupsPerThread; i++) {
+                            n = (n + 1) % NAME_COUNT;
+                            if ((i & 1) == 0) {
+                                threadChecksum +=
+                                        elementDefinitions.forXMLName(names, offsets[n], lens[n]).hashCode();
+                            } else {
+                                threadChecksum +=
+                                        attributeDefinitions.forHTMLName(names, offsets[n], lens[n]).hashCode();
+                            }
+                            threadLookups++;
+                        }
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        lookups.addAndGet(threadLookups);
+                        checksum.addAndGet(threadChecksum);
+                        end.countDown();
+                    }
+                }
+            };
+            thread.start();
+        }
+
+        final long startNanos = System.nanoTime();
+        start.countDown();
+        end.await();
+        final double seconds = (System.nanoTime() - startNanos) / 1000000000.0d;
+
+        System.out.println(String.format(
+                "  %2d threads: %,14.0f lookups/s  (checksum %d)",
+                Integer.valueOf(threadCount), Double.valueOf(lookups.get() / seconds), Long.valueOf(checksum.get())));
+
+    }
+
+}
@@ -351,6 +351,64 @@ public void testProcessorIteration14() {
 
 
 
+    @Test
+    public void testProcessorIteration15() {
+
+        // This one checks that the processor plan of an unmodified tag is iterated in the same way by any
+        // number of iterators, as cached tags are shared among executions
+
+        final IProcessorDialect dialect =
+                ProcessorAggregationTestDialect.buildHTMLDialect("standard", "th",
+                        "N-ELEMENT-10-null-src,N-ELEMENT-5-null-src,N-ELEMENT-7-null-one");
+
+        final TagObtentionTemplateHandler handler = computeHtmlTag("<a th:src='hello' th:one='world'>", dialect);
+        final OpenElementTag tag = handler.tag;
+
+        for (int i = 0; i < 2; i++) {
+            final ElementProcessorIterator iterator = new ElementProcessorIterator();
+            Assertions.assertEquals("N-ELEMENT-5-null-{th:src,data-th-src}", iterator.next(tag).toString());
+            Assertions.assertEquals("N-ELEMENT-7-null-{th:one,data-th-one}", iterator.next(tag).toString());
+            iterator.setLastToBeRepeated(tag);
+            Assertions.assertEquals("N-ELEMENT-7-null-{th:one,data-th-one}", iterator.next(tag).toString());
+            Assertions.assertTrue(iterator.lastWasRepeated());
+            final ElementProcessorIterator clone = new ElementProcessorIterator();
+            clone.resetAsCloneOf(iterator);
+            Assertions.assertEquals("N-ELEMENT-10-null-{th:src,data-th-src}", iterator.next(tag).toString());
+            Assertions.assertNull(iterator.next(tag));
+            Assertions.assertEquals("N-ELEMENT-10-null-{th:src,data-th-src}", clone.next(tag).toString());
+            Assertions.assertNull(clone.next(tag));
+        }
+
+    }
+
+
+
+    @Test
+    public void testProcessorIteration16() {
+
+        // This one checks that a tag modified in the middle of its processor plan is recomputed without
+        // executing again the processors already executed
+
+        final IProcessorDialect dialect =
+                ProcessorAggregationTestDialect.buildHTMLDialect("standard", "th",
+                        "N-ELEMENT-10-null-src,N-ELEMENT-5-null-src,N-ELEMENT-7-null-one,N-ELEMENT-2-null-two");
+
+        final TagObtentionTemplateHandler handler = computeHtmlTag("<a th:src='hello' th:one='world'>", dialect);
+        final AttributeDefinitions attributeDefinitions = handler.attributeDefinitions;
+        final ElementProcessorIterator iterator = new ElementProcessorIterator();
+        OpenElementTag tag = handler.tag;
+
+        Assertions.assertEquals("N-ELEMENT-5-null-{th:src,data-th-src}", iterator.next(tag).toString());
+        Assertions.assertEquals("N-ELEMENT-7-null-{th:one,data-th-one}", iterator.next(tag).toString());
+        tag = tag.setAttribute(attributeDefinitions, null, "th:two", "somevalue", null);
+        Assertions.assertEquals("N-ELEMENT-2-null-{th:two,data-th-two}", iterator.next(tag).toString());
+        Assertions.assertEquals("N-ELEMENT-10-null-{th:src,data-th-src}", iterator.next(tag).toString());
+        Assertions.assertNull(iterator.next(tag));
+
+    }
+
+
+
 
 
 
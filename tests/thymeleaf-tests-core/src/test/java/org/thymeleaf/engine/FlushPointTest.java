@@ -0,0 +1,153 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2011-2022, The THYMELEAF team (http://www.thymeleaf.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.thymeleaf.engine;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.thymeleaf.IThrottledTemplateProcessor;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.context.Context;
+import org.thymeleaf.templateresolver.StringTemplateResolver;
+
+
+public final class FlushPointTest {
+
+
+    private static final String TEMPLATE =
+            "<!DOCTYPE html><html><head><title>Title</title></head>" +
+            "<body th:flush=\"true\"><p th:flush=\"${false}\">a</p><div th:flush>b</div></body></html>";
+
+    private static final String OUTPUT =
+            "<!DOCTYPE html><html><head><title>Title</title></head>" +
+            "<body><p>a</p><div>b</div></body></html>";
+
+
+
+    @Test
+    public void testFlushPoints() throws Exception {
+
+        final TemplateEngine templateEngine = new TemplateEngine();
+
+        final FlushRecordingWriter writer = new FlushRecordingWriter();
+        templateEngine.process(TEMPLATE, new Context(), writer);
+
+        Assertions.assertEquals(OUTPUT, writer.toString());
+        Assertions.assertEquals(
+                Arrays.asList(
+                        "<!DOCTYPE html><html><head><title>Title</title></head>",
+                        "<!DOCTYPE html><html><head><title>Title</title></head><body><p>a</p>",
+                        OUTPUT),
+                writer.flushed);
+
+    }
+
+
+    @Test
+    public void testFlushAfterHead() throws Exception {
+
+        final TemplateEngine templateEngine = new TemplateEngine();
+        templateEngine.setFlushAfterHead(true);
+
+        final FlushRecordingWriter writer = new FlushRecordingWriter();
+        templateEngine.process("<html><HEAD><title>Title</title></HEAD><body><p>a</p></body></html>", new Context(), writer);
+
+        Assertions.assertEquals(
+                Arrays.asList(
+                        "<html><HEAD><title>Title</title></HEAD>",
+                        "<html><HEAD><title>Title</title></HEAD><body><p>a</p></body></html>"),
+                writer.flushed);
+
+    }
+
+
+    @Test
+    public void testFlushAfterHeadWithCachedTemplates() throws Exception {
+
+        // Cached models get their static events coalesced, and can even be compiled into a single text
+        final StringTemplateResolver templateResolver = new StringTemplateResolver();
+        templateResolver.setCacheable(true);
+        final TemplateEngine templateEngine = new TemplateEngine();
+        templateEngine.setTemplateResolver(templateResolver);
+        templateEngine.setCoalesceTemplateModels(true);
+        templateEngine.setTemplateCompilationThreshold(1);
+        templateEngine.setFlushAfterHead(true);
+
+        final String template = "<html><head><title>Title</title></head><body><p>a</p></body></html>";
+
+        for (int i = 0; i < 3; i++) {
+            final FlushRecordingWriter writer = new FlushRecordingWriter();
+            templateEngine.process(template, new Context(), writer);
+            Assertions.assertEquals(
+                    Arrays.asList("<html><head><title>Title</title></head>", template),
+                    writer.flushed);
+        }
+
+    }
+
+
+    @Test
+    public void testFlushPointsEndThrottledChunks() throws Exception {
+
+        final TemplateEngine templateEngine = new TemplateEngine();
+
+        final IThrottledTemplateProcessor processor = templateEngine.processThrottled(TEMPLATE, new Context());
+
+        final List<String> chunks = new ArrayList<String>();
+        while (!processor.isFinished()) {
+            final StringWriter writer = new StringWriter();
+            processor.process(1000, writer);
+            chunks.add(writer.toString());
+        }
+
+        Assertions.assertEquals(
+                Arrays.asList(
+                        "<!DOCTYPE html><html><head><title>Title</title></head>",
+                        "<body><p>a</p>",
+                        "<div>b</div></body></html>"),
+                chunks);
+
+        // When output is not limited, flush points do not stop processing
+        final StringWriter writer = new StringWriter();
+        templateEngine.processThrottled(TEMPLATE, new Context()).processAll(writer);
+        Assertions.assertEquals(OUTPUT, writer.toString());
+
+    }
+
+
+
+
+    private static final class FlushRecordingWriter extends StringWriter {
+
+        private final List<String> flushed = new ArrayList<String>();
+
+        @Override
+        public void flush() {
+            super.flush();
+            this.flushed.add(toString());
+        }
+
+    }
+
+}
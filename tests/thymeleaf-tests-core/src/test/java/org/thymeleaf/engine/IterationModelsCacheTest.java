@@ -0,0 +1,131 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2011-2022, The THYMELEAF team (http://www.thymeleaf.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.thymeleaf.engine;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.cache.TemplateCacheKey;
+import org.thymeleaf.context.Context;
+import org.thymeleaf.templatemode.TemplateMode;
+import org.thymeleaf.templateresolver.StringTemplateResolver;
+
+
+public final class IterationModelsCacheTest {
+
+    private static final String HTML_TEMPLATE =
+            "<table>\n  <tr th:each=\"row : ${rows}\" th:class=\"${rowStat.odd}? 'odd'\">\n" +
+            "    <td th:each=\"i : ${row}\" th:text=\"${i}\">x</td>\n    <td>static</td>\n  </tr>\n</table>";
+
+    private static final String TEXT_TEMPLATE =
+            "List:\n[# th:each=\"row : ${rows}\"]\n  - [# th:each=\"i : ${row}\"][[${i}]] [/]\n[/]\nEnd";
+
+    private static final List<List<String>> ROWS_MANY =
+            Arrays.asList(Arrays.asList("a", "b", "c"), Arrays.asList("d"), Arrays.asList("e", "f"));
+
+    private static final List<List<String>> ROWS_ONE =
+            Collections.singletonList(Arrays.asList("g", "h"));
+
+    private static final List<List<String>> ROWS_NONE =
+            Collections.emptyList();
+
+
+
+
+    @Test
+    public void testOutputIsUnchanged() throws Exception {
+        checkOutputIsUnchanged(HTML_TEMPLATE, TemplateMode.HTML);
+        checkOutputIsUnchanged(TEXT_TEMPLATE, TemplateMode.TEXT);
+    }
+
+
+    @Test
+    public void testIterationModelsAreReused() throws Exception {
+
+        final TemplateEngine templateEngine = createEngine(true, TemplateMode.HTML);
+        templateEngine.process(HTML_TEMPLATE, createContext(ROWS_MANY));
+
+        final TemplateModel model =
+                templateEngine.getCacheManager().getTemplateCache().get(
+                        new TemplateCacheKey(null, HTML_TEMPLATE, null, 0, 0, null, null));
+        Assertions.assertNotNull(model);
+
+        final CloseElementTag rowCloseTag = findCloseTag(model, "tr");
+        final CloseElementTag cellCloseTag = findCloseTag(model, "td");
+        final IteratedGatheringModelProcessable.IterationModels rowModels = rowCloseTag.iterationModels;
+        final IteratedGatheringModelProcessable.IterationModels cellModels = cellCloseTag.iterationModels;
+        Assertions.assertNotNull(rowModels);
+        Assertions.assertNotNull(cellModels);
+
+        templateEngine.process(HTML_TEMPLATE, createContext(ROWS_MANY));
+        templateEngine.process(HTML_TEMPLATE, createContext(ROWS_ONE));
+
+        Assertions.assertSame(rowModels, rowCloseTag.iterationModels);
+        Assertions.assertSame(cellModels, cellCloseTag.iterationModels);
+
+    }
+
+
+
+
+    private static void checkOutputIsUnchanged(final String template, final TemplateMode templateMode) {
+
+        final TemplateEngine cachedEngine = createEngine(true, templateMode);
+        final TemplateEngine uncachedEngine = createEngine(false, templateMode);
+
+        for (final List<List<String>> rows : Arrays.asList(ROWS_MANY, ROWS_ONE, ROWS_NONE, ROWS_MANY, ROWS_ONE)) {
+            final Context context = createContext(rows);
+            Assertions.assertEquals(uncachedEngine.process(template, context), cachedEngine.process(template, context));
+        }
+
+    }
+
+
+    private static CloseElementTag findCloseTag(final TemplateModel model, final String elementName) {
+        for (final IEngineTemplateEvent event : model.queue) {
+            if (event instanceof CloseElementTag && ((CloseElementTag) event).getElementCompleteName().equals(elementName)) {
+                return (CloseElementTag) event;
+            }
+        }
+        throw new AssertionError("No close tag found for element " + elementName);
+    }
+
+
+    private static Context createContext(final List<List<String>> rows) {
+        final Context context = new Context();
+        context.setVariable("rows", rows);
+        return context;
+    }
+
+
+    private static TemplateEngine createEngine(final boolean cacheable, final TemplateMode templateMode) {
+        final StringTemplateResolver templateResolver = new StringTemplateResolver();
+        templateResolver.setCacheable(cacheable);
+        templateResolver.setTemplateMode(templateMode);
+        final TemplateEngine templateEngine = new TemplateEngine();
+        templateEngine.setTemplateResolver(templateResolver);
+        return templateEngine;
+    }
+
+}
@@ -0,0 +1,121 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2011-2022, The THYMELEAF team (http://www.thymeleaf.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.thymeleaf.engine;
+
+import java.util.Iterator;
+import java.util.stream.LongStream;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.context.Context;
+import org.thymeleaf.templateresolver.StringTemplateResolver;
+
+
+public final class LazyIterationTest {
+
+
+
+    @Test
+    public void testIteratorIsConsumedLazily() throws Exception {
+
+        final TemplateEngine templateEngine = createEngine();
+
+        final Context context = new Context();
+        context.setVariable("source", new CountingIterator(4));
+
+        // Each element is only read when it is about to be iterated (plus hasNext() calls, which read nothing)
+        Assertions.assertEquals(
+                "<p>1/1</p><p>2/2</p><p>3/3</p><p>4/4 last</p>",
+                templateEngine.process(
+                        "<p th:each=\"i, s : ${source}\" th:text=\"${i} + '/' + ${source.read} + ${s.last? ' last' : ''}\">x</p>",
+                        context));
+
+    }
+
+
+    @Test
+    public void testIteratorIsBufferedOnlyIfSizeIsRead() throws Exception {
+
+        final TemplateEngine templateEngine = createEngine();
+
+        final Context context = new Context();
+        context.setVariable("source", new CountingIterator(4));
+
+        Assertions.assertEquals(
+                "<p>1:-/1</p><p>2:-/2</p><p>3:4/4</p><p>4:-/4</p>",
+                templateEngine.process(
+                        "<p th:each=\"i, s : ${source}\" th:text=\"${i} + ':' + ${i == 3? s.size : '-'} + '/' + ${source.read}\">x</p>",
+                        context));
+
+    }
+
+
+    @Test
+    public void testPrimitiveStreams() throws Exception {
+
+        final TemplateEngine templateEngine = createEngine();
+
+        final Context context = new Context();
+        context.setVariable("source", LongStream.rangeClosed(4000000000L, 4000000002L));
+
+        Assertions.assertEquals(
+                "<p>4000000000/3</p><p>4000000001/3</p><p>4000000002/3</p>",
+                templateEngine.process("<p th:each=\"i, s : ${source}\" th:text=\"${i} + '/' + ${s.size}\">x</p>", context));
+
+    }
+
+
+
+
+    private static TemplateEngine createEngine() {
+        final TemplateEngine templateEngine = new TemplateEngine();
+        templateEngine.setTemplateResolver(new StringTemplateResolver());
+        return templateEngine;
+    }
+
+
+
+
+    public static final class CountingIterator implements Iterator<Integer> {
+
+        private final int max;
+        private int read = 0;
+
+        CountingIterator(final int max) {
+            super();
+            this.max = max;
+        }
+
+        public int getRead() {
+            return this.read;
+        }
+
+        public boolean hasNext() {
+            return this.read < this.max;
+        }
+
+        public Integer next() {
+            return Integer.valueOf(++this.read);
+        }
+
+    }
+
+}
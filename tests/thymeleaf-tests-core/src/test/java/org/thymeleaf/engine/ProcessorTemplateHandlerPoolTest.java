@@ -0,0 +1,108 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2011-2022, The THYMELEAF team (http://www.thymeleaf.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.thymeleaf.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.context.Context;
+import org.thymeleaf.templateresolver.StringTemplateResolver;
+
+
+public final class ProcessorTemplateHandlerPoolTest {
+
+    private static final String TEMPLATE =
+            "<div th:fragment=\"f\" th:remove=\"tag\"><b th:text=\"${x}\">x</b></div>" +
+            "<ul th:with=\"prefix=${p}\"><li th:each=\"i : ${items}\" th:text=\"${prefix + i}\">item</li></ul>" +
+            "<section th:each=\"i : ${items}\" th:with=\"x=${i}\" th:insert=\"~{::f}\">frag</section>";
+
+
+
+    @Test
+    public void testAcquireAndRelease() throws Exception {
+
+        final ProcessorTemplateHandlerPool pool = new ProcessorTemplateHandlerPool(1);
+
+        final ProcessorTemplateHandler first = pool.acquire();
+        final ProcessorTemplateHandler second = pool.acquire();
+        Assertions.assertNotSame(first, second);
+
+        pool.release(first);
+        // The pool is full, so this one is discarded
+        pool.release(second);
+
+        Assertions.assertSame(first, pool.acquire());
+        Assertions.assertNotSame(first, pool.acquire());
+
+    }
+
+
+    @Test
+    public void testReusedHandlersProduceSameOutput() throws Exception {
+
+        final TemplateEngine templateEngine = new TemplateEngine();
+        templateEngine.setTemplateResolver(new StringTemplateResolver());
+
+        final String expectedA = process(templateEngine, "a");
+        final String expectedB = process(templateEngine, "b");
+        Assertions.assertEquals(
+                "<b>1</b><ul><li>a1</li><li>a2</li></ul><section><b>1</b></section><section><b>2</b></section>",
+                expectedA.replace(TEMPLATE, ""));
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<String>> results = new ArrayList<Future<String>>();
+            for (int i = 0; i < 200; i++) {
+                final String p = (i % 2 == 0 ? "a" : "b");
+                results.add(executor.submit(new Callable<String>() {
+                    public String call() throws Exception {
+                        return process(templateEngine, p);
+                    }
+                }));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                Assertions.assertEquals((i % 2 == 0 ? expectedA : expectedB), results.get(i).get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+    }
+
+
+
+
+    private static String process(final TemplateEngine templateEngine, final String p) {
+        final Context context = new Context();
+        context.setVariable("p", p);
+        context.setVariable("x", "1");
+        context.setVariable("items", Arrays.asList("1", "2"));
+        return templateEngine.process(TEMPLATE, context);
+    }
+
+}
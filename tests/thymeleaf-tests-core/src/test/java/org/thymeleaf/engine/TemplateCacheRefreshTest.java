@@ -0,0 +1,198 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2011-2022, The THYMELEAF team (http://www.thymeleaf.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.thymeleaf.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.cache.ICache;
+import org.thymeleaf.cache.TemplateCacheKey;
+import org.thymeleaf.context.Context;
+
+
+public final class TemplateCacheRefreshTest {
+
+    private static final String TEMPLATE = "versioned";
+
+
+
+    @Test
+    public void testStaleEntryIsServedWhileRefreshing() throws Exception {
+
+        final VersionedTemplateResolver templateResolver = new VersionedTemplateResolver(60000L, 100L);
+        final RecordingExecutor executor = new RecordingExecutor();
+        final TemplateEngine templateEngine = new TemplateEngine();
+        templateEngine.setTemplateResolver(templateResolver);
+        templateEngine.setTemplateCacheRefreshExecutor(executor);
+        final TemplateManager templateManager = templateEngine.getConfiguration().getTemplateManager();
+
+        Assertions.assertEquals("<p>v1</p>", templateEngine.process(TEMPLATE, new Context()));
+        templateResolver.version.set(2);
+
+        // Refresh TTL not reached yet
+        Assertions.assertEquals("<p>v1</p>", templateEngine.process(TEMPLATE, new Context()));
+        Assertions.assertEquals(0, executor.tasks.size());
+
+        Thread.sleep(200L);
+
+        // Cached version keeps being served, and only one refresh is scheduled
+        Assertions.assertEquals("<p>v1</p>", templateEngine.process(TEMPLATE, new Context()));
+        Assertions.assertEquals("<p>v1</p>", templateEngine.process(TEMPLATE, new Context()));
+        Assertions.assertEquals(1, executor.tasks.size());
+        Assertions.assertEquals(1, templateResolver.reads.get());
+
+        executor.runAll();
+        Assertions.assertEquals(1L, templateManager.getRefreshedTemplateCount());
+        Assertions.assertEquals(2, templateResolver.reads.get());
+
+        // The refreshed version has replaced the old one, and does not need refreshing yet
+        Assertions.assertEquals("<p>v2</p>", templateEngine.process(TEMPLATE, new Context()));
+        Assertions.assertEquals(0, executor.tasks.size());
+        Assertions.assertEquals(2, templateResolver.reads.get());
+
+    }
+
+
+    @Test
+    public void testRefreshDoesNotRestoreInvalidatedEntry() throws Exception {
+
+        final VersionedTemplateResolver templateResolver = new VersionedTemplateResolver(60000L, 100L);
+        final RecordingExecutor executor = new RecordingExecutor();
+        final TemplateEngine templateEngine = new TemplateEngine();
+        templateEngine.setTemplateResolver(templateResolver);
+        templateEngine.setTemplateCacheRefreshExecutor(executor);
+        final ICache<TemplateCacheKey,TemplateModel> templateCache = templateEngine.getCacheManager().getTemplateCache();
+
+        Assertions.assertEquals("<p>v1</p>", templateEngine.process(TEMPLATE, new Context()));
+
+        Thread.sleep(200L);
+
+        Assertions.assertEquals("<p>v1</p>", templateEngine.process(TEMPLATE, new Context()));
+        Assertions.assertEquals(1, executor.tasks.size());
+
+        // The template is invalidated before the scheduled refresh finishes
+        templateEngine.clearTemplateCacheFor(TEMPLATE);
+        Assertions.assertTrue(templateCache.keySet().isEmpty());
+
+        templateResolver.version.set(2);
+        executor.runAll();
+        Assertions.assertTrue(templateCache.keySet().isEmpty());
+
+        Assertions.assertEquals("<p>v2</p>", templateEngine.process(TEMPLATE, new Context()));
+        Assertions.assertEquals(1, templateCache.keySet().size());
+
+    }
+
+
+    @Test
+    public void testExpiredEntryIsReloadedSynchronously() throws Exception {
+
+        final VersionedTemplateResolver templateResolver = new VersionedTemplateResolver(200L, 100L);
+        final RecordingExecutor executor = new RecordingExecutor();
+        final TemplateEngine templateEngine = new TemplateEngine();
+        templateEngine.setTemplateResolver(templateResolver);
+        templateEngine.setTemplateCacheRefreshExecutor(executor);
+
+        Assertions.assertEquals("<p>v1</p>", templateEngine.process(TEMPLATE, new Context()));
+        templateResolver.version.set(2);
+
+        Thread.sleep(300L);
+
+        // Refreshes are never executed, but the TTL has expired
+        Assertions.assertEquals("<p>v2</p>", templateEngine.process(TEMPLATE, new Context()));
+        Assertions.assertEquals(0, executor.tasks.size());
+
+    }
+
+
+    @Test
+    public void testDefaultExecutor() throws Exception {
+
+        final VersionedTemplateResolver templateResolver = new VersionedTemplateResolver(60000L, 100L);
+        final TemplateEngine templateEngine = new TemplateEngine();
+        templateEngine.setTemplateResolver(templateResolver);
+        final TemplateManager templateManager = templateEngine.getConfiguration().getTemplateManager();
+
+        Assertions.assertEquals("<p>v1</p>", templateEngine.process(TEMPLATE, new Context()));
+        templateResolver.version.set(2);
+
+        Thread.sleep(200L);
+
+        Assertions.assertEquals("<p>v1</p>", templateEngine.process(TEMPLATE, new Context()));
+
+        final long timeout = System.currentTimeMillis() + 10000L;
+        while (templateManager.getRefreshedTemplateCount() == 0L && System.currentTimeMillis() < timeout) {
+            Thread.sleep(20L);
+        }
+        Assertions.assertEquals(1L, templateManager.getRefreshedTemplateCount());
+        Assertions.assertEquals("<p>v2</p>", templateEngine.process(TEMPLATE, new Context()));
+
+    }
+
+
+
+
+    private static final class RecordingExecutor implements Executor {
+
+        private final List<Runnable> tasks = new ArrayList<Runnable>();
+
+        RecordingExecutor() {
+            super();
+        }
+
+        public synchronized void execute(final Runnable command) {
+            this.tasks.add(command);
+        }
+
+        synchronized void runAll() {
+            for (final Runnable task : this.tasks) {
+                task.run();
+            }
+            this.tasks.clear();
+        }
+
+    }
+
+
+
+
+    private static final class VersionedTemplateResolver extends TestTemplateResolver {
+
+        private final AtomicInteger version = new AtomicInteger(1);
+
+        VersionedTemplateResolver(final long cacheTTLMs, final long cacheRefreshTTLMs) {
+            super();
+            setCacheTTLMs(Long.valueOf(cacheTTLMs));
+            setCacheRefreshTTLMs(Long.valueOf(cacheRefreshTTLMs));
+        }
+
+        @Override
+        String getContents(final String template) {
+            return "<p>v" + this.version.get() + "</p>";
+        }
+
+    }
+
+}
@@ -0,0 +1,129 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2011-2022, The THYMELEAF team (http://www.thymeleaf.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.thymeleaf.engine;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.cache.ICache;
+import org.thymeleaf.cache.TemplateCacheKey;
+import org.thymeleaf.context.Context;
+import org.thymeleaf.templateresolver.StringTemplateResolver;
+
+
+public final class TemplateCompilationTest {
+
+    private static final String STATIC_TEMPLATE =
+            "<!-- header -->\n<div>\n  <p class=\"a\">one <b>two</b></p>\n</div>\n<p>three</p>";
+
+    private static final String DYNAMIC_TEMPLATE =
+            "<p>static <b>text</b></p>\n<div>\n  <p th:text=\"${a}\">x</p>\n</div>\n<p>[[${a}]]</p>\n<hr/>";
+
+
+
+    @Test
+    public void testStaticTemplateIsOutputDirectly() throws Exception {
+
+        final TemplateEngine templateEngine = createEngine(2);
+        final TemplateManager templateManager = templateEngine.getConfiguration().getTemplateManager();
+
+        // Executions are counted once the template is in the cache, so the first one (parsing) does not count
+        Assertions.assertEquals(STATIC_TEMPLATE, templateEngine.process(STATIC_TEMPLATE, new Context()));
+        Assertions.assertEquals(STATIC_TEMPLATE, templateEngine.process(STATIC_TEMPLATE, new Context()));
+        Assertions.assertEquals(0L, templateManager.getCompiledTemplateCount());
+        Assertions.assertEquals(STATIC_TEMPLATE, templateEngine.process(STATIC_TEMPLATE, new Context()));
+        Assertions.assertEquals(1L, templateManager.getCompiledTemplateCount());
+
+        final TemplateModel cached = getCachedModel(templateEngine, STATIC_TEMPLATE);
+        Assertions.assertNotNull(cached.compiledTemplate);
+        Assertions.assertEquals(STATIC_TEMPLATE, cached.compiledTemplate.output);
+
+        Assertions.assertEquals(STATIC_TEMPLATE, templateEngine.process(STATIC_TEMPLATE, new Context()));
+        Assertions.assertEquals(1L, templateManager.getCompiledTemplateCount());
+
+    }
+
+
+    @Test
+    public void testDynamicTemplateIsProcessedCompiled() throws Exception {
+
+        final TemplateEngine templateEngine = createEngine(1);
+
+        final String expectedA = "<p>static <b>text</b></p>\n<div>\n  <p>A</p>\n</div>\n<p>A</p>\n<hr/>";
+        final String expectedB = "<p>static <b>text</b></p>\n<div>\n  <p>B</p>\n</div>\n<p>B</p>\n<hr/>";
+
+        Assertions.assertEquals(expectedA, templateEngine.process(DYNAMIC_TEMPLATE, context("A")));
+        Assertions.assertEquals(expectedB, templateEngine.process(DYNAMIC_TEMPLATE, context("B")));
+
+        final TemplateModel cached = getCachedModel(templateEngine, DYNAMIC_TEMPLATE);
+        Assertions.assertNotNull(cached.compiledTemplate);
+        Assertions.assertNull(cached.compiledTemplate.output);
+        // The root level static markup is only merged in the compiled model
+        Assertions.assertTrue(cached.get(1) instanceof OpenElementTag);
+        Assertions.assertEquals("<p>static <b>text</b></p>", ((Text) cached.compiledTemplate.templateModel.get(1)).getText());
+
+        Assertions.assertEquals(expectedB, templateEngine.process(DYNAMIC_TEMPLATE, context("B")));
+        Assertions.assertEquals(expectedA, templateEngine.process(DYNAMIC_TEMPLATE, context("A")));
+
+    }
+
+
+    @Test
+    public void testCompilationIsDisabledByDefault() throws Exception {
+
+        final TemplateEngine templateEngine = createEngine(0);
+        for (int i = 0; i < 5; i++) {
+            Assertions.assertEquals(STATIC_TEMPLATE, templateEngine.process(STATIC_TEMPLATE, new Context()));
+        }
+        Assertions.assertEquals(0L, templateEngine.getConfiguration().getTemplateManager().getCompiledTemplateCount());
+        Assertions.assertNull(getCachedModel(templateEngine, STATIC_TEMPLATE).compiledTemplate);
+
+    }
+
+
+
+
+    private static TemplateEngine createEngine(final int compilationThreshold) {
+        final StringTemplateResolver templateResolver = new StringTemplateResolver();
+        templateResolver.setCacheable(true);
+        final TemplateEngine templateEngine = new TemplateEngine();
+        templateEngine.setTemplateResolver(templateResolver);
+        if (compilationThreshold > 0) {
+            templateEngine.setTemplateCompilationThreshold(compilationThreshold);
+        }
+        return templateEngine;
+    }
+
+
+    private static Context context(final String a) {
+        final Context context = new Context();
+        context.setVariable("a", a);
+        return context;
+    }
+
+
+    private static TemplateModel getCachedModel(final TemplateEngine templateEngine, final String template) {
+        final ICache<TemplateCacheKey,TemplateModel> templateCache = templateEngine.getCacheManager().getTemplateCache();
+        final TemplateModel model = templateCache.get(new TemplateCacheKey(null, template, null, 0, 0, null, null));
+        Assertions.assertNotNull(model);
+        return model;
+    }
+
+}
@@ -0,0 +1,125 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2011-2022, The THYMELEAF team (http://www.thymeleaf.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.thymeleaf.engine;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.cache.ICache;
+import org.thymeleaf.cache.TemplateCacheKey;
+import org.thymeleaf.context.Context;
+
+
+public final class TemplateDependencyInvalidationTest {
+
+
+
+    @Test
+    public void testInvalidateInsertedFragments() throws Exception {
+
+        final TestTemplateResolver templateResolver = new TestTemplateResolver();
+        templateResolver.templates.put("main", "<div th:insert=\"~{footer :: f}\">main</div>");
+        templateResolver.templates.put("other", "<span th:replace=\"~{header :: h}\">other</span>");
+        templateResolver.templates.put("footer", "<p th:fragment=\"f\">footer v1</p>");
+        templateResolver.templates.put("header", "<h1 th:fragment=\"h\">header</h1>");
+
+        final TemplateEngine templateEngine = new TemplateEngine();
+        templateEngine.setTemplateResolver(templateResolver);
+        final ICache<TemplateCacheKey,TemplateModel> templateCache = templateEngine.getCacheManager().getTemplateCache();
+
+        Assertions.assertEquals("<div><p>footer v1</p></div>", templateEngine.process("main", new Context()));
+        Assertions.assertEquals("<h1>header</h1>", templateEngine.process("other", new Context()));
+        // main, other, footer::f (owned by main) and header::h (owned by other)
+        Assertions.assertEquals(4, templateCache.keySet().size());
+
+        templateResolver.templates.put("footer", "<p th:fragment=\"f\">footer v2</p>");
+        templateEngine.clearTemplateCacheFor("footer");
+
+        // Only the fragment of footer inserted into main has been evicted
+        Assertions.assertEquals(3, templateCache.keySet().size());
+        Assertions.assertEquals("<div><p>footer v2</p></div>", templateEngine.process("main", new Context()));
+        Assertions.assertEquals(4, templateCache.keySet().size());
+
+        // Invalidating the owner template also evicts the fragments inserted into it
+        templateEngine.clearTemplateCacheFor("other");
+        Assertions.assertEquals(2, templateCache.keySet().size());
+
+        templateEngine.clearTemplateCache();
+        Assertions.assertEquals(0, templateCache.keySet().size());
+        templateEngine.clearTemplateCacheFor("main");
+        Assertions.assertEquals("<div><p>footer v2</p></div>", templateEngine.process("main", new Context()));
+
+    }
+
+
+
+    @Test
+    public void testIndexPruning() throws Exception {
+
+        final TemplateDependencyIndex index = new TemplateDependencyIndex();
+        final Set<TemplateCacheKey> cachedKeys = new HashSet<TemplateCacheKey>();
+
+        // Only the last ten templates (and their fragments) remain in the cache, the rest have been evicted
+        for (int i = 0; i < 200; i++) {
+            final TemplateCacheKey templateKey = new TemplateCacheKey(null, "t" + i, null, 0, 0, null, null);
+            final TemplateCacheKey fragmentKey =
+                    new TemplateCacheKey("t" + i, "fragments", Collections.singleton("f"), 0, 0, null, null);
+            index.add(templateKey);
+            index.add(fragmentKey);
+            if (i >= 190) {
+                cachedKeys.add(templateKey);
+                cachedKeys.add(fragmentKey);
+            }
+        }
+
+        Assertions.assertEquals(400, index.size());
+        Assertions.assertTrue(index.needsPruning());
+
+        index.prune(cachedKeys);
+        Assertions.assertEquals(20, index.size());
+        Assertions.assertFalse(index.needsPruning());
+
+        // The keys remaining are still indexed under both the templates they depend on
+        Assertions.assertEquals(
+                Collections.singleton(new TemplateCacheKey(null, "t195", null, 0, 0, null, null)),
+                removeTemplateKeys(index, "t195"));
+        Assertions.assertEquals(18, index.size());
+        Assertions.assertEquals(9, index.remove("fragments").size());
+        Assertions.assertEquals(9, index.size());
+        Assertions.assertTrue(index.remove("t10").isEmpty());
+
+    }
+
+
+    private static Set<TemplateCacheKey> removeTemplateKeys(final TemplateDependencyIndex index, final String template) {
+        final Set<TemplateCacheKey> keys = new HashSet<TemplateCacheKey>();
+        for (final TemplateCacheKey key : index.remove(template)) {
+            if (key.getOwnerTemplate() == null) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+
+}
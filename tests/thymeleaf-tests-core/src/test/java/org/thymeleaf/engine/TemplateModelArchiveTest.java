@@ -0,0 +1,128 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2011-2022, The THYMELEAF team (http://www.thymeleaf.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.thymeleaf.engine;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.TemplateSpec;
+import org.thymeleaf.cache.ICache;
+import org.thymeleaf.cache.TemplateCacheKey;
+import org.thymeleaf.context.Context;
+import org.thymeleaf.templatemode.TemplateMode;
+
+
+public final class TemplateModelArchiveTest {
+
+    private static final String HTML =
+            "<!DOCTYPE html>\n<html lang='en'>\n<!-- comment -->\n<head><title th:text=\"${title}\">t</title></head>\n" +
+            "<body>\n  <p class=\"a\"   id=b data-x>text</p><br/><img src=\"x.png\">\n" +
+            "  <ul><li th:each=\"i : ${items}\" th:text=\"${i}\">item</li></ul>\n</body>\n</html>\n";
+    private static final String XML =
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<?pi target?>\n<root><![CDATA[ data ]]><e a=\"1\"/></root>";
+    private static final String TEXT =
+            "Hello [(${title})]!\n[# th:each=\"i : ${items}\"]- [(${i})]\n[/]";
+
+
+
+    @Test
+    public void testWriteAndLoad() throws Exception {
+
+        final TestTemplateResolver writingResolver = createTemplateResolver();
+        final TemplateEngine writingEngine = new TemplateEngine();
+        writingEngine.setTemplateResolver(writingResolver);
+
+        final File archive = File.createTempFile("thymeleaf-archive", ".bin");
+        try {
+
+            final OutputStream outputStream = new FileOutputStream(archive);
+            try {
+                final int written =
+                        writingEngine.writeTemplateArchive(
+                                Arrays.asList(
+                                        new TemplateSpec("page", TemplateMode.HTML),
+                                        new TemplateSpec("page", Collections.singleton("ul"), TemplateMode.HTML, null),
+                                        new TemplateSpec("data", TemplateMode.XML),
+                                        new TemplateSpec("message", TemplateMode.TEXT)),
+                                outputStream);
+                Assertions.assertEquals(4, written);
+            } finally {
+                outputStream.close();
+            }
+
+            final TestTemplateResolver loadingResolver = createTemplateResolver();
+            final TemplateEngine loadingEngine = new TemplateEngine();
+            loadingEngine.setTemplateResolver(loadingResolver);
+
+            Assertions.assertEquals(4, loadingEngine.loadTemplateArchive(archive));
+            final ICache<TemplateCacheKey,TemplateModel> templateCache = loadingEngine.getCacheManager().getTemplateCache();
+            Assertions.assertEquals(4, templateCache.keySet().size());
+
+            final Context context = new Context();
+            context.setVariable("title", "Title");
+            context.setVariable("items", Arrays.asList("one", "two"));
+
+            for (final TemplateSpec templateSpec :
+                    Arrays.asList(
+                            new TemplateSpec("page", TemplateMode.HTML),
+                            new TemplateSpec("page", Collections.singleton("ul"), TemplateMode.HTML, null),
+                            new TemplateSpec("data", TemplateMode.XML),
+                            new TemplateSpec("message", TemplateMode.TEXT))) {
+                Assertions.assertEquals(
+                        writingEngine.process(templateSpec, context), loadingEngine.process(templateSpec, context));
+            }
+
+            // Loaded models were used, no new entries were created
+            Assertions.assertEquals(4, templateCache.keySet().size());
+
+            // Archived templates that have been modified are rejected
+            final TestTemplateResolver modifiedResolver = createTemplateResolver();
+            modifiedResolver.templates.put("page", "<p>modified</p>");
+            final TemplateEngine modifiedEngine = new TemplateEngine();
+            modifiedEngine.setTemplateResolver(modifiedResolver);
+
+            Assertions.assertEquals(2, modifiedEngine.loadTemplateArchive(archive));
+            Assertions.assertEquals(
+                    "<p>modified</p>", modifiedEngine.process(new TemplateSpec("page", TemplateMode.HTML), context));
+
+        } finally {
+            archive.delete();
+        }
+
+    }
+
+
+
+
+    private static TestTemplateResolver createTemplateResolver() {
+        final TestTemplateResolver templateResolver = new TestTemplateResolver();
+        templateResolver.templates.put("page", HTML);
+        templateResolver.templates.put("data", XML);
+        templateResolver.templates.put("message", TEXT);
+        return templateResolver;
+    }
+
+}
@@ -0,0 +1,151 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2011-2022, The THYMELEAF team (http://www.thymeleaf.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.thymeleaf.engine;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.cache.ICache;
+import org.thymeleaf.cache.TemplateCacheKey;
+import org.thymeleaf.context.Context;
+import org.thymeleaf.templateresolver.StringTemplateResolver;
+
+
+public final class TemplateModelCoalescingTest {
+
+    private static final String STATIC_TEMPLATE =
+            "<div>\n  <p class=\"a\">one <b>two</b></p>\n  <!-- note -->\n  <br/>\n</div>";
+
+    private static final String[] TEMPLATES = new String[] {
+            STATIC_TEMPLATE,
+            "<div>\n  <p>static <i>text</i></p>\n  <p th:text=\"${a}\">dynamic</p>\n  <span>static</span>\n</div>",
+            "<ul>\n  <li th:each=\"i : ${items}\"><span>item:</span> <b th:text=\"${i}\">x</b><em>!</em></li>\n</ul>",
+            "<div>\n  <p>[[${a}]] <b>bold</b> <i>italic</i></p>\n  <p th:inline=\"none\">[[${a}]] <b>bold</b></p>\n</div>",
+            "<ul th:remove=\"all-but-first\">\n  <li>one <b>1</b></li>\n  <li>two <b>2</b></li>\n  <li>three</li>\n</ul>",
+            "<div>\n  <p title=\"[[${a}]]\">static <b>[x]</b></p>\n  <p>static <b>text</b></p>\n</div>",
+            "<div th:if=\"${a != null}\"><p>shown <b>yes</b></p><hr/></div><div th:unless=\"${a != null}\"><p>no</p></div>",
+            "<div>\n  <p th:fragment=\"f\">frag <b>body</b> <i>!</i></p>\n  <section th:insert=\"~{::f}\">x</section>" +
+                    "\n  <section th:include=\"~{::f}\">y</section>\n</div>",
+            "<table>\n  <tr th:each=\"i : ${items}\">\n    <td>static <b>cell</b></td>\n    <td th:text=\"${i}\">x</td>\n  </tr>\n</table>"
+    };
+
+
+
+    @Test
+    public void testCoalescedOutputIsUnchanged() throws Exception {
+
+        final TemplateEngine cachedEngine = createEngine(true);
+        final TemplateEngine uncachedEngine = createEngine(false);
+
+        final Context context = new Context();
+        context.setVariable("a", "A");
+        context.setVariable("items", Arrays.asList("1", "2", "3"));
+
+        for (final String template : TEMPLATES) {
+            final String expected = uncachedEngine.process(template, context);
+            // First execution parses and caches (coalesced), second one processes the cached model
+            Assertions.assertEquals(expected, cachedEngine.process(template, context));
+            Assertions.assertEquals(expected, cachedEngine.process(template, context));
+        }
+
+    }
+
+
+    @Test
+    public void testStaticRunsAreMerged() throws Exception {
+
+        final TemplateEngine templateEngine = createEngine(true);
+        templateEngine.process(STATIC_TEMPLATE, new Context());
+
+        final ICache<TemplateCacheKey,TemplateModel> templateCache = templateEngine.getCacheManager().getTemplateCache();
+        final TemplateModel model = templateCache.get(new TemplateCacheKey(null, STATIC_TEMPLATE, null, 0, 0, null, null));
+        Assertions.assertNotNull(model);
+
+        // The root element is kept, its body (but the trailing white space) is merged into one text
+        Assertions.assertEquals(6, model.size());
+        Assertions.assertTrue(model.get(1) instanceof OpenElementTag);
+        Assertions.assertEquals(
+                "\n  <p class=\"a\">one <b>two</b></p>\n  <!-- note -->\n  <br/>", ((Text) model.get(2)).getText());
+        Assertions.assertEquals("\n", ((Text) model.get(3)).getText());
+        Assertions.assertTrue(model.get(4) instanceof CloseElementTag);
+        Assertions.assertEquals(1, model.get(2).getLine());
+
+    }
+
+
+    @Test
+    public void testProcessableEventsAreNotMerged() throws Exception {
+
+        final String template = "<div><p>a <b>b</b></p><p>[[${a}]]</p><p th:text=\"${a}\">c</p></div>";
+
+        final TemplateEngine templateEngine = createEngine(true);
+        final Context context = new Context();
+        context.setVariable("a", "A");
+        Assertions.assertEquals("<div><p>a <b>b</b></p><p>A</p><p>A</p></div>", templateEngine.process(template, context));
+
+        final ICache<TemplateCacheKey,TemplateModel> templateCache = templateEngine.getCacheManager().getTemplateCache();
+        final TemplateModel model = templateCache.get(new TemplateCacheKey(null, template, null, 0, 0, null, null));
+
+        // The first p is merged, the one with inlined output and the one with th:text are kept
+        Assertions.assertEquals(12, model.size());
+        Assertions.assertEquals("<p>a <b>b</b></p>", ((Text) model.get(2)).getText());
+        for (int i = 3; i < 10; i++) {
+            Assertions.assertFalse(model.get(i) instanceof Text && ((Text) model.get(i)).getText().contains("<"));
+        }
+        Assertions.assertEquals("<p th:text=\"${a}\">", model.get(7).toString());
+
+    }
+
+
+    @Test
+    public void testCoalescingIsDisabledByDefault() throws Exception {
+
+        final StringTemplateResolver templateResolver = new StringTemplateResolver();
+        templateResolver.setCacheable(true);
+        final TemplateEngine templateEngine = new TemplateEngine();
+        templateEngine.setTemplateResolver(templateResolver);
+        Assertions.assertFalse(templateEngine.isCoalesceTemplateModels());
+        final String output = templateEngine.process(STATIC_TEMPLATE, new Context());
+        Assertions.assertEquals(createEngine(false).process(STATIC_TEMPLATE, new Context()), output);
+
+        final ICache<TemplateCacheKey,TemplateModel> templateCache = templateEngine.getCacheManager().getTemplateCache();
+        final TemplateModel model = templateCache.get(new TemplateCacheKey(null, STATIC_TEMPLATE, null, 0, 0, null, null));
+
+        // Every element keeps its own events
+        Assertions.assertTrue(model.size() > 6);
+        Assertions.assertEquals("\n  ", ((Text) model.get(2)).getText());
+        Assertions.assertEquals("<p class=\"a\">", model.get(3).toString());
+
+    }
+
+
+
+    private static TemplateEngine createEngine(final boolean cacheable) {
+        final StringTemplateResolver templateResolver = new StringTemplateResolver();
+        templateResolver.setCacheable(cacheable);
+        final TemplateEngine templateEngine = new TemplateEngine();
+        templateEngine.setTemplateResolver(templateResolver);
+        templateEngine.setCoalesceTemplateModels(true);
+        return templateEngine;
+    }
+
+}
@@ -0,0 +1,143 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2011-2022, The THYMELEAF team (http://www.thymeleaf.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.thymeleaf.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.cache.ICache;
+import org.thymeleaf.cache.TemplateCacheKey;
+import org.thymeleaf.context.Context;
+import org.thymeleaf.templateresolver.StringTemplateResolver;
+
+
+public final class TemplateModelCompactorTest {
+
+    private static final String TEMPLATE =
+            "<ul>\n  <li class=\"item\"  th:text=\"${a}\">one</li>\n  <li class=\"item\"  th:text=\"${b}\">two</li>\n</ul>";
+
+
+
+    @Test
+    public void testCachedModelsAreCompacted() throws Exception {
+
+        final StringTemplateResolver templateResolver = new StringTemplateResolver();
+        templateResolver.setCacheable(true);
+        final TemplateEngine templateEngine = new TemplateEngine();
+        templateEngine.setTemplateResolver(templateResolver);
+
+        final Context context = new Context();
+        context.setVariable("a", "A");
+        context.setVariable("b", "B");
+
+        final String expected = "<ul>\n  <li class=\"item\">A</li>\n  <li class=\"item\">B</li>\n</ul>";
+        Assertions.assertEquals(expected, templateEngine.process(TEMPLATE, context));
+
+        final ICache<TemplateCacheKey,TemplateModel> templateCache = templateEngine.getCacheManager().getTemplateCache();
+        Assertions.assertEquals(1, templateCache.keySet().size());
+        final TemplateModel model = templateCache.get(templateCache.keySet().iterator().next());
+        // Texts are not packed by default
+        Assertions.assertNull(model.texts);
+
+        final List<OpenElementTag> items = new ArrayList<OpenElementTag>();
+        final List<Text> texts = new ArrayList<Text>();
+        for (int i = 0; i < model.size(); i++) {
+            final IEngineTemplateEvent event = model.event(i);
+            if (event instanceof OpenElementTag && ((OpenElementTag) event).elementCompleteName.equals("li")) {
+                items.add((OpenElementTag) event);
+            } else if (event instanceof Text && ((Text) event).getText().equals("\n  ")) {
+                texts.add((Text) event);
+            }
+        }
+        Assertions.assertEquals(2, items.size());
+        Assertions.assertEquals(2, texts.size());
+
+        final OpenElementTag first = items.get(0);
+        final OpenElementTag second = items.get(1);
+        Assertions.assertSame(first.elementCompleteName, second.elementCompleteName);
+        Assertions.assertSame(first.attributes.attributes[0].completeName, second.attributes.attributes[0].completeName);
+        Assertions.assertSame(first.attributes.attributes[0].value, second.attributes.attributes[0].value);
+        Assertions.assertSame(first.attributes.innerWhiteSpaces, second.attributes.innerWhiteSpaces);
+        Assertions.assertEquals(texts.get(0).getText(), texts.get(1).getText());
+        // Events keep their own locations
+        Assertions.assertEquals(2, first.getLine());
+        Assertions.assertEquals(3, second.getLine());
+
+        // Processing the cached (compacted) model gives the same result
+        Assertions.assertEquals(expected, templateEngine.process(TEMPLATE, context));
+
+    }
+
+
+    @Test
+    public void testCachedTextsArePacked() throws Exception {
+
+        final StringTemplateResolver templateResolver = new StringTemplateResolver();
+        templateResolver.setCacheable(true);
+        final TemplateEngine templateEngine = new TemplateEngine();
+        templateEngine.setTemplateResolver(templateResolver);
+        templateEngine.setPackTemplateTexts(true);
+
+        final Context context = new Context();
+        context.setVariable("a", "A");
+        context.setVariable("b", "B");
+
+        final String expected = "<ul>\n  <li class=\"item\">A</li>\n  <li class=\"item\">B</li>\n</ul>";
+        Assertions.assertEquals(expected, templateEngine.process(TEMPLATE, context));
+
+        final ICache<TemplateCacheKey,TemplateModel> templateCache = templateEngine.getCacheManager().getTemplateCache();
+        final TemplateModel model = templateCache.get(templateCache.keySet().iterator().next());
+        Assertions.assertNotNull(model.texts);
+
+        int textCount = 0;
+        for (int i = 0; i < model.size(); i++) {
+            if (model.get(i) instanceof Text) {
+                // Packed texts are not kept as events, but created when needed
+                Assertions.assertNull(model.queue[i]);
+                final Text text = (Text) model.get(i);
+                Assertions.assertNotSame(text, model.get(i));
+                Assertions.assertTrue(TemplateModelTexts.isSameText(text, (Text) model.get(i)));
+                Assertions.assertEquals(text.getText(), model.get(i).toString());
+                textCount++;
+            }
+        }
+        Assertions.assertEquals(5, textCount);
+
+        final Text text = (Text) model.get(2);
+        Assertions.assertEquals("\n  ", text.getText());
+        Assertions.assertTrue(text.isWhitespace());
+        Assertions.assertEquals(1, text.getLine());
+        Assertions.assertEquals(5, text.getCol());
+        Assertions.assertEquals("one", model.get(4).toString());
+        Assertions.assertFalse(((Text) model.get(4)).isWhitespace());
+
+        // Writing the model writes the packed texts directly
+        Assertions.assertEquals(TEMPLATE, model.toString());
+
+        for (int i = 0; i < 3; i++) {
+            Assertions.assertEquals(expected, templateEngine.process(TEMPLATE, context));
+        }
+
+    }
+
+}
@@ -0,0 +1,201 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2011-2022, The THYMELEAF team (http://www.thymeleaf.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.thymeleaf.engine;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.thymeleaf.IEngineConfiguration;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.context.Context;
+import org.thymeleaf.templateresolver.StringTemplateResolver;
+import org.thymeleaf.templateresource.ITemplateResource;
+
+
+public final class TemplateParseCoalescingTest {
+
+    private static final int THREADS = 8;
+    private static final String TEMPLATE = "<p th:text=\"${name}\">...</p>";
+
+
+
+    @Test
+    public void testConcurrentMissesAreCoalesced() throws Exception {
+
+        final SlowTemplateResolver templateResolver = new SlowTemplateResolver(false);
+        final TemplateEngine templateEngine = new TemplateEngine();
+        templateEngine.setTemplateResolver(templateResolver);
+
+        final List<Future<String>> results = processConcurrently(templateEngine);
+        for (final Future<String> result : results) {
+            Assertions.assertEquals("<p>John</p>", result.get());
+        }
+
+        Assertions.assertEquals(1, templateResolver.reads.get());
+        Assertions.assertEquals(
+                THREADS - 1, templateEngine.getConfiguration().getTemplateManager().getCoalescedParseCount());
+
+    }
+
+
+    @Test
+    public void testErrorsArePropagated() throws Exception {
+
+        final SlowTemplateResolver templateResolver = new SlowTemplateResolver(true);
+        final TemplateEngine templateEngine = new TemplateEngine();
+        templateEngine.setTemplateResolver(templateResolver);
+
+        final List<Future<String>> results = processConcurrently(templateEngine);
+        for (final Future<String> result : results) {
+            try {
+                result.get();
+                Assertions.fail("An exception should have been thrown");
+            } catch (final Exception e) {
+                // Expected
+            }
+        }
+
+        Assertions.assertEquals(1, templateResolver.reads.get());
+
+    }
+
+
+    @Test
+    public void testCoalescingCanBeDisabled() throws Exception {
+
+        final SlowTemplateResolver templateResolver = new SlowTemplateResolver(false);
+        final TemplateEngine templateEngine = new TemplateEngine();
+        templateEngine.setTemplateResolver(templateResolver);
+        templateEngine.setTemplateParseCoalescingTimeout(0L);
+
+        final List<Future<String>> results = processConcurrently(templateEngine);
+        for (final Future<String> result : results) {
+            Assertions.assertEquals("<p>John</p>", result.get());
+        }
+
+        Assertions.assertEquals(THREADS, templateResolver.reads.get());
+        Assertions.assertEquals(0L, templateEngine.getConfiguration().getTemplateManager().getCoalescedParseCount());
+
+    }
+
+
+
+
+    private static List<Future<String>> processConcurrently(final TemplateEngine templateEngine) throws Exception {
+
+        templateEngine.getConfiguration(); // Initialize before starting the threads
+
+        final CyclicBarrier barrier = new CyclicBarrier(THREADS);
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            final List<Future<String>> results = new ArrayList<Future<String>>();
+            for (int i = 0; i < THREADS; i++) {
+                results.add(executor.submit(new Callable<String>() {
+                    public String call() throws Exception {
+                        final Context context = new Context();
+                        context.setVariable("name", "John");
+                        barrier.await();
+                        return templateEngine.process(TEMPLATE, context);
+                    }
+                }));
+            }
+            for (final Future<String> result : results) {
+                try {
+                    result.get();
+                } catch (final Exception ignored) {
+                    // Will be checked by callers
+                }
+            }
+            return results;
+        } finally {
+            executor.shutdown();
+        }
+
+    }
+
+
+
+
+    private static final class SlowTemplateResolver extends StringTemplateResolver {
+
+        private final boolean fail;
+        private final AtomicInteger reads = new AtomicInteger(0);
+
+        SlowTemplateResolver(final boolean fail) {
+            super();
+            this.fail = fail;
+            setCacheable(true);
+        }
+
+        @Override
+        protected ITemplateResource computeTemplateResource(
+                final IEngineConfiguration configuration, final String ownerTemplate, final String template,
+                final Map<String, Object> templateResolutionAttributes) {
+            final ITemplateResource resource =
+                    super.computeTemplateResource(configuration, ownerTemplate, template, templateResolutionAttributes);
+            return new ITemplateResource() {
+
+                public String getDescription() {
+                    return resource.getDescription();
+                }
+
+                public String getBaseName() {
+                    return resource.getBaseName();
+                }
+
+                public boolean exists() {
+                    return true;
+                }
+
+                public Reader reader() throws IOException {
+                    reads.incrementAndGet();
+                    try {
+                        Thread.sleep(500L);
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    if (fail) {
+                        throw new IOException("Template could not be read");
+                    }
+                    return new StringReader(template);
+                }
+
+                public ITemplateResource relative(final String relativeLocation) {
+                    return resource.relative(relativeLocation);
+                }
+
+            };
+        }
+
+    }
+
+}
@@ -0,0 +1,115 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2011-2022, The THYMELEAF team (http://www.thymeleaf.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.thymeleaf.engine;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.TemplateSpec;
+import org.thymeleaf.TemplateWarmUpReport;
+import org.thymeleaf.context.Context;
+import org.thymeleaf.templatemode.TemplateMode;
+
+
+public final class TemplateWarmUpTest {
+
+
+
+    @Test
+    public void testWarmUp() throws Exception {
+
+        final TestTemplateResolver templateResolver = createTemplateResolver();
+        final TemplateEngine templateEngine = new TemplateEngine();
+        templateEngine.setTemplateResolver(templateResolver);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+
+            final TemplateWarmUpReport report =
+                    templateEngine.warmUp(
+                            Arrays.asList(
+                                    new TemplateSpec("one", TemplateMode.HTML),
+                                    new TemplateSpec("two", TemplateMode.HTML),
+                                    new TemplateSpec("missing", TemplateMode.HTML)),
+                            executor);
+
+            Assertions.assertFalse(report.isSuccess());
+            Assertions.assertEquals(3, report.getResults().size());
+            Assertions.assertEquals("one", report.getResults().get(0).getTemplateSpec().getTemplate());
+            Assertions.assertTrue(report.getResults().get(0).isSuccess());
+            Assertions.assertTrue(report.getResults().get(1).isSuccess());
+            Assertions.assertEquals(1, report.getFailures().size());
+            Assertions.assertEquals("missing", report.getFailures().get(0).getTemplateSpec().getTemplate());
+            Assertions.assertNotNull(report.getFailures().get(0).getFailure());
+            Assertions.assertEquals(2, templateResolver.reads.get());
+
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Warmed up templates are not read again when processed
+        Assertions.assertEquals("<p>one</p>", templateEngine.process(new TemplateSpec("one", TemplateMode.HTML), new Context()));
+        Assertions.assertEquals("<p>two</p>", templateEngine.process(new TemplateSpec("two", TemplateMode.HTML), new Context()));
+        Assertions.assertEquals(2, templateResolver.reads.get());
+
+        // Nor when warmed up again
+        final TemplateWarmUpReport report =
+                templateEngine.warmUp(Collections.singletonList(new TemplateSpec("one", TemplateMode.HTML)));
+        Assertions.assertTrue(report.isSuccess());
+        Assertions.assertEquals(2, templateResolver.reads.get());
+
+    }
+
+
+    @Test
+    public void testWarmUpByName() throws Exception {
+
+        final TestTemplateResolver templateResolver = createTemplateResolver();
+        final TemplateEngine templateEngine = new TemplateEngine();
+        templateEngine.setTemplateResolver(templateResolver);
+
+        final TemplateWarmUpReport report = templateEngine.warmUp("one", "two", "three");
+        Assertions.assertTrue(report.isSuccess());
+        Assertions.assertEquals(3, report.getResults().size());
+        Assertions.assertEquals(3, templateResolver.reads.get());
+
+        Assertions.assertEquals("<p>three</p>", templateEngine.process("three", new Context()));
+        Assertions.assertEquals(3, templateResolver.reads.get());
+
+    }
+
+
+
+
+    private static TestTemplateResolver createTemplateResolver() {
+        return new TestTemplateResolver() {
+            @Override
+            String getContents(final String template) {
+                return (template.startsWith("missing") ? null : "<p>" + template + "</p>");
+            }
+        };
+    }
+
+}
@@ -0,0 +1,93 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2011-2022, The THYMELEAF team (http://www.thymeleaf.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.thymeleaf.engine;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.thymeleaf.IEngineConfiguration;
+import org.thymeleaf.templateresolver.StringTemplateResolver;
+import org.thymeleaf.templateresource.ITemplateResource;
+
+
+/*
+ * Cacheable template resolver for tests, resolving templates from a map (or from any other source, by overriding
+ * getContents(String)) and counting the number of times template contents are read.
+ */
+class TestTemplateResolver extends StringTemplateResolver {
+
+    final Map<String,String> templates = new ConcurrentHashMap<String, String>();
+    final AtomicInteger reads = new AtomicInteger(0);
+
+
+    TestTemplateResolver() {
+        super();
+        setCacheable(true);
+    }
+
+
+    /*
+     * Returns the contents of the specified template, or null if it does not exist.
+     */
+    String getContents(final String template) {
+        return this.templates.get(template);
+    }
+
+
+    @Override
+    protected ITemplateResource computeTemplateResource(
+            final IEngineConfiguration configuration, final String ownerTemplate, final String template,
+            final Map<String, Object> templateResolutionAttributes) {
+        return new ITemplateResource() {
+
+            public String getDescription() {
+                return template;
+            }
+
+            public String getBaseName() {
+                return template;
+            }
+
+            public boolean exists() {
+                return getContents(template) != null;
+            }
+
+            public Reader reader() throws IOException {
+                final String contents = getContents(template);
+                if (contents == null) {
+                    throw new FileNotFoundException(template);
+                }
+                reads.incrementAndGet();
+                return new StringReader(contents);
+            }
+
+            public ITemplateResource relative(final String relativeLocation) {
+                throw new UnsupportedOperationException();
+            }
+
+        };
+    }
+
+}
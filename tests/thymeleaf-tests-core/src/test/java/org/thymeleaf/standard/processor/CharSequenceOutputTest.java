@@ -0,0 +1,65 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2011-2016, The THYMELEAF team (http://www.thymeleaf.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.thymeleaf.standard.processor;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.context.Context;
+
+
+public class CharSequenceOutputTest {
+
+
+    public CharSequenceOutputTest() {
+        super();
+    }
+
+
+
+    @Test
+    public void testCharSequenceResults() throws Exception {
+
+        final TemplateEngine templateEngine = new TemplateEngine();
+
+        final StringBuilder large = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            large.append("<b>").append(i).append("</b> & '");
+        }
+        final StringBuilder small = new StringBuilder("<i>small</i>");
+
+        final Context context = new Context();
+        context.setVariable("large", large);
+        context.setVariable("small", small);
+
+        final String template =
+                "<p th:text=\"${large}\">x</p><p th:text=\"${small}\">x</p>" +
+                "<p th:utext=\"${large}\">x</p><p th:utext=\"${small}\">x</p><p>[[${large}]]</p>";
+
+        final String escapedLarge = large.toString().replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("'", "&#39;");
+
+        Assertions.assertEquals(
+                "<p>" + escapedLarge + "</p><p>&lt;i&gt;small&lt;/i&gt;</p>" +
+                "<p>" + large + "</p><p>" + small + "</p><p>" + escapedLarge + "</p>",
+                templateEngine.process(template, context));
+
+    }
+
+}
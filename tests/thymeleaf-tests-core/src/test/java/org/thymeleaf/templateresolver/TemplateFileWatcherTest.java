@@ -0,0 +1,247 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2011-2022, The THYMELEAF team (http://www.thymeleaf.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.thymeleaf.templateresolver;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.context.Context;
+import org.thymeleaf.engine.TemplateManager;
+import org.thymeleaf.templateresource.ClassLoaderTemplateResource;
+import org.thymeleaf.templateresource.FileTemplateResource;
+
+
+public final class TemplateFileWatcherTest {
+
+
+
+    @Test
+    public void testChangedTemplateFileIsInvalidated() throws Exception {
+
+        final File directory = Files.createTempDirectory("thymeleaf-watch").toFile();
+        final File templateFile = new File(directory, "watched.html");
+        try {
+
+            writeFile(templateFile, "<p>one</p>");
+
+            final FileTemplateResolver templateResolver = new FileTemplateResolver();
+            templateResolver.setPrefix(directory.getAbsolutePath() + "/");
+            templateResolver.setSuffix(".html");
+            templateResolver.setWatchForChanges(true);
+
+            final TemplateEngine templateEngine = new TemplateEngine();
+            templateEngine.setTemplateResolver(templateResolver);
+
+            Assertions.assertEquals("<p>one</p>", templateEngine.process("watched", new Context()));
+
+            writeFile(templateFile, "<p>two</p>");
+
+            // Changes are notified asynchronously
+            String result = templateEngine.process("watched", new Context());
+            final long timeout = System.currentTimeMillis() + 20000L;
+            while (!"<p>two</p>".equals(result) && System.currentTimeMillis() < timeout) {
+                Thread.sleep(50L);
+                result = templateEngine.process("watched", new Context());
+            }
+            Assertions.assertEquals("<p>two</p>", result);
+
+            templateResolver.setWatchForChanges(false);
+
+        } finally {
+            templateFile.delete();
+            directory.delete();
+        }
+
+    }
+
+
+    @Test
+    public void testTemplateFileIsCachedIfNotWatched() throws Exception {
+
+        final File directory = Files.createTempDirectory("thymeleaf-watch").toFile();
+        final File templateFile = new File(directory, "unwatched.html");
+        try {
+
+            writeFile(templateFile, "<p>one</p>");
+
+            final FileTemplateResolver templateResolver = new FileTemplateResolver();
+            templateResolver.setPrefix(directory.getAbsolutePath() + "/");
+            templateResolver.setSuffix(".html");
+
+            final TemplateEngine templateEngine = new TemplateEngine();
+            templateEngine.setTemplateResolver(templateResolver);
+
+            Assertions.assertEquals("<p>one</p>", templateEngine.process("unwatched", new Context()));
+            writeFile(templateFile, "<p>two</p>");
+            Thread.sleep(200L);
+            Assertions.assertEquals("<p>one</p>", templateEngine.process("unwatched", new Context()));
+
+        } finally {
+            templateFile.delete();
+            directory.delete();
+        }
+
+    }
+
+
+
+
+    @Test
+    public void testTemplateResourceFileIsOnlyComputedOnce() throws Exception {
+
+        final File directory = Files.createTempDirectory("thymeleaf-watch").toFile();
+        final File templateFile = new File(directory, "classpath.html");
+        final AtomicInteger lookups = new AtomicInteger(0);
+        final URLClassLoader classLoader =
+                new URLClassLoader(new URL[] { directory.toURI().toURL() }, null) {
+                    @Override
+                    public URL getResource(final String name) {
+                        lookups.incrementAndGet();
+                        return super.getResource(name);
+                    }
+                };
+        final TemplateFileWatcher watcher = new TemplateFileWatcher(new ClassLoaderTemplateResolver(classLoader));
+        try {
+
+            writeFile(templateFile, "<p>one</p>");
+
+            final TemplateManager templateManager = new TemplateEngine().getConfiguration().getTemplateManager();
+            watcher.setEnabled(true);
+
+            for (int i = 0; i < 3; i++) {
+                watcher.register(
+                        templateManager, null, "classpath", new ClassLoaderTemplateResource(classLoader, "classpath.html", "UTF-8"));
+            }
+            Assertions.assertEquals(1, lookups.get());
+            Assertions.assertEquals(1, watcher.getRegistrationCount());
+            Assertions.assertEquals(1, watcher.getWatchedDirectories().size());
+
+            // Resources not backed by files are not looked up again either
+            for (int i = 0; i < 3; i++) {
+                watcher.register(
+                        templateManager, null, "missing", new ClassLoaderTemplateResource(classLoader, "missing.html", "UTF-8"));
+            }
+            Assertions.assertEquals(2, lookups.get());
+
+        } finally {
+            watcher.setEnabled(false);
+            classLoader.close();
+            templateFile.delete();
+            directory.delete();
+        }
+
+    }
+
+
+    @Test
+    public void testDeletedTemplateFileIsUnregistered() throws Exception {
+
+        final File directory = Files.createTempDirectory("thymeleaf-watch").toFile();
+        final File templateFile = new File(directory, "deleted.html");
+        final TemplateFileWatcher watcher = new TemplateFileWatcher(new FileTemplateResolver());
+        try {
+
+            writeFile(templateFile, "<p>one</p>");
+
+            final TemplateManager templateManager = new TemplateEngine().getConfiguration().getTemplateManager();
+            watcher.setEnabled(true);
+            watcher.register(templateManager, null, "deleted", new FileTemplateResource(templateFile, "UTF-8"));
+            Assertions.assertEquals(1, watcher.getRegistrationCount());
+            Assertions.assertEquals(1, watcher.getWatchedDirectories().size());
+
+            Assertions.assertTrue(templateFile.delete());
+
+            // Changes are notified asynchronously
+            final long timeout = System.currentTimeMillis() + 20000L;
+            while ((watcher.getRegistrationCount() > 0 || !watcher.getWatchedDirectories().isEmpty()) &&
+                        System.currentTimeMillis() < timeout) {
+                Thread.sleep(50L);
+            }
+            Assertions.assertEquals(0, watcher.getRegistrationCount());
+            Assertions.assertTrue(watcher.getWatchedDirectories().isEmpty());
+
+        } finally {
+            watcher.setEnabled(false);
+            templateFile.delete();
+            directory.delete();
+        }
+
+    }
+
+
+    @Test
+    public void testDisablingRemovesRegistrations() throws Exception {
+
+        final File directory = Files.createTempDirectory("thymeleaf-watch").toFile();
+        final File templateFile = new File(directory, "disabled.html");
+        final TemplateFileWatcher watcher = new TemplateFileWatcher(new FileTemplateResolver());
+        try {
+
+            writeFile(templateFile, "<p>one</p>");
+
+            final TemplateManager templateManager = new TemplateEngine().getConfiguration().getTemplateManager();
+            watcher.setEnabled(true);
+            watcher.register(templateManager, null, "disabled", new FileTemplateResource(templateFile, "UTF-8"));
+            Assertions.assertEquals(1, watcher.getRegistrationCount());
+
+            watcher.setEnabled(false);
+            Assertions.assertEquals(0, watcher.getRegistrationCount());
+            Assertions.assertTrue(watcher.getWatchedDirectories().isEmpty());
+
+            // Nothing is registered while disabled
+            watcher.register(templateManager, null, "disabled", new FileTemplateResource(templateFile, "UTF-8"));
+            Assertions.assertEquals(0, watcher.getRegistrationCount());
+
+            // ...but it can be enabled again
+            watcher.setEnabled(true);
+            watcher.register(templateManager, null, "disabled", new FileTemplateResource(templateFile, "UTF-8"));
+            Assertions.assertEquals(1, watcher.getRegistrationCount());
+            Assertions.assertEquals(1, watcher.getWatchedDirectories().size());
+
+        } finally {
+            watcher.setEnabled(false);
+            templateFile.delete();
+            directory.delete();
+        }
+
+    }
+
+
+
+
+    private static void writeFile(final File file, final String contents) throws IOException {
+        final Writer writer = new OutputStreamWriter(Files.newOutputStream(file.toPath()), "UTF-8");
+        try {
+            writer.write(contents);
+        } finally {
+            writer.close();
+        }
+    }
+
+}
@@ -0,0 +1,113 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2011-2022, The THYMELEAF team (http://www.thymeleaf.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.thymeleaf.util;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class EncodingWriterTest {
+
+
+    @Test
+    public void testEncoding() throws Exception {
+
+        final String text = "Hello, caf\u00E9 \u20AC \uD83D\uDE00 world";
+
+        for (final Charset charset : new Charset[] { StandardCharsets.UTF_8, StandardCharsets.ISO_8859_1, StandardCharsets.UTF_16 }) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final EncodingWriter writer = new EncodingWriter(out, charset);
+            writer.write(text);
+            writer.flush();
+            Assertions.assertArrayEquals(text.getBytes(charset), out.toByteArray(), charset.name());
+        }
+
+    }
+
+
+    @Test
+    public void testSurrogatePairsSplitAcrossWrites() throws Exception {
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final EncodingWriter writer = new EncodingWriter(out, StandardCharsets.UTF_8);
+
+        final StringBuilder expected = new StringBuilder();
+        // Large enough to fill the internal char buffer several times at different positions
+        for (int i = 0; i < 3000; i++) {
+            final String chunk = (i % 3 == 0 ? "a" : "") + "\uD83D\uDE00";
+            expected.append(chunk);
+            writer.write(chunk.charAt(0));
+            writer.write(chunk, 1, chunk.length() - 1);
+        }
+        writer.flush();
+
+        Assertions.assertEquals(expected.toString(), new String(out.toByteArray(), StandardCharsets.UTF_8));
+
+    }
+
+
+    @Test
+    public void testPreEncodedOutputIsKeptInOrder() throws Exception {
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final EncodingWriter writer = new EncodingWriter(Channels.newChannel(out), StandardCharsets.UTF_8);
+
+        final StringBuilder largeBuilder = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            largeBuilder.append("<p>\u00F1</p>");
+        }
+        final String large = largeBuilder.toString();
+        final byte[] largeEncoded = large.getBytes(StandardCharsets.UTF_8);
+
+        writer.write("<div>");
+        writer.writeEncoded(largeEncoded, 0, largeEncoded.length);
+        writer.write("\u00E1".toCharArray());
+        writer.writeEncoded(new byte[] { 'x', 'y', 'z' }, 1, 2);
+        writer.write("</div>");
+        writer.flush();
+
+        Assertions.assertEquals(
+                "<div>" + large + "\u00E1yz</div>", new String(out.toByteArray(), StandardCharsets.UTF_8));
+
+    }
+
+
+
+    @Test
+    public void testStatelessCharsets() throws Exception {
+
+        Assertions.assertTrue(EncodingWriter.isStatelessCharset(StandardCharsets.UTF_8));
+        Assertions.assertTrue(EncodingWriter.isStatelessCharset(StandardCharsets.US_ASCII));
+        Assertions.assertTrue(EncodingWriter.isStatelessCharset(StandardCharsets.ISO_8859_1));
+        Assertions.assertTrue(EncodingWriter.isStatelessCharset(Charset.forName("windows-1252")));
+        Assertions.assertFalse(EncodingWriter.isStatelessCharset(StandardCharsets.UTF_16));
+        Assertions.assertFalse(EncodingWriter.isStatelessCharset(StandardCharsets.UTF_16LE));
+        Assertions.assertFalse(EncodingWriter.isStatelessCharset(Charset.forName("ISO-2022-JP")));
+
+        Assertions.assertTrue(new EncodingWriter(new ByteArrayOutputStream(), StandardCharsets.UTF_8).isEncodedOutputSupported());
+        Assertions.assertFalse(new EncodingWriter(new ByteArrayOutputStream(), StandardCharsets.UTF_16).isEncodedOutputSupported());
+
+    }
+
+}
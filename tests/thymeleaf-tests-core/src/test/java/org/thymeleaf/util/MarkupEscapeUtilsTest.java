@@ -0,0 +1,137 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2011-2022, The THYMELEAF team (http://www.thymeleaf.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.thymeleaf.util;
+
+import java.io.StringWriter;
+import java.nio.CharBuffer;
+import java.util.Random;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.unbescape.html.HtmlEscape;
+import org.unbescape.xml.XmlEscape;
+
+public class MarkupEscapeUtilsTest {
+
+    private static final String ALPHABET =
+            "abc XYZ 019 <>&\"'\t\n\r\u0000\u0001\u007F\u0085\u009F\u00A0\u00E1\u00F1\u20AC\uD7FF\uE000" +
+            "\uFFFD\uFFFE\uFFFF\uD83D\uDE00\uD800\uDC00;#=/";
+
+
+    @Test
+    public void testSameResultsAsUnbescape() throws Exception {
+
+        final Random random = new Random(23);
+
+        for (int i = 0; i < 2000; i++) {
+
+            final String text = randomText(random, random.nextInt(600));
+
+            check(HtmlEscape.escapeHtml4Xml(text), text, false);
+            check(XmlEscape.escapeXml10(text), text, true);
+            Assertions.assertEquals(XmlEscape.escapeXml10Attribute(text), MarkupEscapeUtils.escapeXmlAttribute(text));
+            Assertions.assertEquals(
+                    XmlEscape.escapeXml10Attribute(text), MarkupEscapeUtils.escapeXmlAttribute(new StringBuilder(text)));
+
+        }
+
+    }
+
+
+    @Test
+    public void testXmlNonAsciiEscaping() throws Exception {
+
+        // Non-ASCII is escaped as hexadecimal references (as Unbescape does), and invalid chars are removed
+        final String text = "a\u00E1<b\uD83D\uDE00c\u0085\u0001\uD800d\uFFFE\n";
+        final String expected = "a&#xe1;&lt;b&#x1f600;c&#x85;d\n";
+        Assertions.assertEquals(expected, XmlEscape.escapeXml10(text));
+        check(expected, text, true);
+        Assertions.assertEquals("a&#xe1;&lt;b&#x1f600;c&#x85;d&#xa;", MarkupEscapeUtils.escapeXmlAttribute(text));
+
+    }
+
+
+    @Test
+    public void testNoEscapingNeeded() throws Exception {
+
+        final String text = "Nothing to escape here, not even in XML.";
+        Assertions.assertSame(text, MarkupEscapeUtils.escapeHtml(text));
+        Assertions.assertSame(text, MarkupEscapeUtils.escapeXml(text));
+        Assertions.assertSame(text, MarkupEscapeUtils.escapeXmlAttribute(text));
+
+        final String htmlText = "Non-ASCII is fine in HTML: \u00E1\u00F1\u20AC\n";
+        Assertions.assertSame(htmlText, MarkupEscapeUtils.escapeHtml(htmlText));
+
+        Assertions.assertNull(MarkupEscapeUtils.escapeHtml(null));
+        Assertions.assertNull(MarkupEscapeUtils.escapeXml(null));
+        Assertions.assertNull(MarkupEscapeUtils.escapeXmlAttribute(null));
+
+        final StringWriter writer = new StringWriter();
+        MarkupEscapeUtils.escapeHtml(null, writer);
+        MarkupEscapeUtils.escapeXml(null, writer);
+        MarkupEscapeUtils.write(null, writer);
+        Assertions.assertEquals("", writer.toString());
+
+    }
+
+
+
+
+    private static void check(final String expected, final String text, final boolean xml) throws Exception {
+
+        final CharSequence[] inputs =
+                new CharSequence[] { text, new StringBuilder(text), CharBuffer.wrap(text) };
+
+        for (final CharSequence input : inputs) {
+
+            Assertions.assertEquals(
+                    expected, (xml ? MarkupEscapeUtils.escapeXml(input) : MarkupEscapeUtils.escapeHtml(input)));
+
+            final StringWriter writer = new StringWriter();
+            if (xml) {
+                MarkupEscapeUtils.escapeXml(input, writer);
+            } else {
+                MarkupEscapeUtils.escapeHtml(input, writer);
+            }
+            Assertions.assertEquals(expected, writer.toString());
+
+            final StringWriter rawWriter = new StringWriter();
+            MarkupEscapeUtils.write(input, rawWriter);
+            Assertions.assertEquals(text, rawWriter.toString());
+
+        }
+
+    }
+
+
+    private static String randomText(final Random random, final int len) {
+        final StringBuilder strBuilder = new StringBuilder(len);
+        for (int i = 0; i < len; i++) {
+            // Make escapable chars sparse in some of the texts, so that long unescaped runs are also tested
+            if (len > 300 && random.nextInt(10) != 0) {
+                strBuilder.append((char) ('a' + random.nextInt(26)));
+            } else {
+                strBuilder.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+            }
+        }
+        return strBuilder.toString();
+    }
+
+}
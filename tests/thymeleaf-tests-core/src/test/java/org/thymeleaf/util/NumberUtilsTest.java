@@ -36,4 +36,28 @@ public void testSequence() {
     }
 
 
+    @Test
+    public void testSequenceStream() {
+
+        final int[][] arguments = new int[][] {
+                {1, 3, 1}, {1, 3, 2}, {3, 3, 1}, {3, 3, 2}, {-1, -3, -1}, {-1, -3, -2}, {-3, -3, -1},
+                {1, 3, -1}, {-1, -3, 1}, {1, 3, -2}, {-1, -3, 2}, {3, 1, 1}, {-3, -1, -1}, {3, 1, 2},
+                {-3, -1, -2}, {1, 10, 3}, {10, 1, -3}, {1, 11, 3}
+        };
+
+        for (final int[] args : arguments) {
+            final Integer from = Integer.valueOf(args[0]);
+            final Integer to = Integer.valueOf(args[1]);
+            final Integer step = Integer.valueOf(args[2]);
+            Assertions.assertArrayEquals(
+                    NumberUtils.sequence(from, to, step), NumberUtils.sequenceStream(from, to, step).boxed().toArray());
+        }
+
+        Assertions.assertArrayEquals(NumberUtils.sequence(-1, -3), NumberUtils.sequenceStream(-1, -3).boxed().toArray());
+        Assertions.assertArrayEquals(NumberUtils.sequence(1, 3), NumberUtils.sequenceStream(1, 3).boxed().toArray());
+        Assertions.assertEquals(5L, NumberUtils.sequenceStream(1, 9, 2).spliterator().getExactSizeIfKnown());
+
+    }
+
+
 }
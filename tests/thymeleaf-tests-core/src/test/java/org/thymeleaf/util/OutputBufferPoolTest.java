@@ -0,0 +1,212 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2011-2022, The THYMELEAF team (http://www.thymeleaf.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.thymeleaf.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class OutputBufferPoolTest {
+
+
+    @Test
+    public void testEstimates() throws Exception {
+
+        final OutputBufferPool pool = new OutputBufferPool();
+
+        Assertions.assertEquals(0, pool.getEstimatedSize("a"));
+
+        writeChars(pool, "a", 10000);
+        Assertions.assertEquals(10000, pool.getEstimatedSize("a"));
+
+        // Estimates grow immediately...
+        writeChars(pool, "a", 20000);
+        Assertions.assertEquals(20000, pool.getEstimatedSize("a"));
+
+        // ...but shrink slowly
+        writeChars(pool, "a", 4000);
+        Assertions.assertEquals(16000, pool.getEstimatedSize("a"));
+
+        writeBytes(pool, "b", 3000);
+        Assertions.assertEquals(3000, pool.getEstimatedSize("b"));
+        Assertions.assertEquals(16000, pool.getEstimatedSize("a"));
+
+        // No estimates are kept for null keys
+        writeChars(pool, null, 3000);
+        Assertions.assertEquals(0, pool.getEstimatedSize(null));
+
+    }
+
+
+    @Test
+    public void testMaxEstimates() throws Exception {
+
+        final OutputBufferPool pool = new OutputBufferPool(OutputBufferPool.DEFAULT_MAX_POOLED_SIZE, 8192L, 2);
+
+        writeChars(pool, "a", 100);
+        writeChars(pool, "b", 200);
+        writeChars(pool, "c", 300);
+
+        Assertions.assertEquals(100, pool.getEstimatedSize("a"));
+        Assertions.assertEquals(200, pool.getEstimatedSize("b"));
+        Assertions.assertEquals(0, pool.getEstimatedSize("c"));
+
+    }
+
+
+    @Test
+    public void testLongKeys() throws Exception {
+
+        final OutputBufferPool pool = new OutputBufferPool();
+
+        final StringBuilder keyBuilder = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            keyBuilder.append("<p>").append(i).append("</p>");
+        }
+        final String key = keyBuilder.toString();
+        Assertions.assertTrue(key.length() > OutputBufferPool.MAX_KEY_LENGTH);
+
+        // Estimates for long keys (like the contents of string templates) are kept for their hash
+        writeChars(pool, key, 5000);
+        Assertions.assertEquals(5000, pool.getEstimatedSize(new String(key)));
+        Assertions.assertEquals(0, pool.getEstimatedSize(key + "x"));
+
+    }
+
+
+    @Test
+    public void testMaxRetainedBytes() throws Exception {
+
+        final OutputBufferPool pool = new OutputBufferPool(OutputBufferPool.DEFAULT_MAX_POOLED_SIZE, 5000L, 10);
+
+        final CharOutputBuffer chars1 = pool.acquireCharBuffer(null);
+        final CharOutputBuffer chars2 = pool.acquireCharBuffer(null);
+        final ByteOutputBuffer bytes1 = pool.acquireByteBuffer(null);
+        final ByteOutputBuffer bytes2 = pool.acquireByteBuffer(null);
+        Assertions.assertEquals(0L, pool.getRetainedBytes());
+
+        // 1024 chars retain 2048 bytes, so only two of these arrays can be recycled
+        chars1.release();
+        Assertions.assertEquals(2048L, pool.getRetainedBytes());
+        chars2.release();
+        Assertions.assertEquals(4096L, pool.getRetainedBytes());
+        bytes1.release();
+        Assertions.assertEquals(4096L, pool.getRetainedBytes());
+        bytes2.release();
+        Assertions.assertEquals(4096L, pool.getRetainedBytes());
+
+        // Acquiring recycled arrays makes room for others
+        final ByteOutputBuffer bytes3 = pool.acquireByteBuffer(null);
+        final CharOutputBuffer chars3 = pool.acquireCharBuffer(null);
+        Assertions.assertEquals(2048L, pool.getRetainedBytes());
+        bytes3.release();
+        Assertions.assertEquals(3072L, pool.getRetainedBytes());
+        chars3.release();
+        Assertions.assertEquals(3072L, pool.getRetainedBytes());
+
+    }
+
+
+    @Test
+    public void testCharBuffer() throws Exception {
+
+        final OutputBufferPool pool = new OutputBufferPool();
+
+        final StringBuilder expected = new StringBuilder();
+        final CharOutputBuffer buffer = pool.acquireCharBuffer("a");
+        for (int i = 0; i < 5000; i++) {
+            final String text = "<p>" + i + "</p>";
+            expected.append(text).append('\n');
+            buffer.write(text);
+            buffer.write('\n');
+        }
+        buffer.write("abcdef".toCharArray(), 2, 3);
+        expected.append("cde");
+
+        Assertions.assertEquals(expected.length(), buffer.length());
+        Assertions.assertEquals(expected.toString(), buffer.toString());
+
+        final StringWriter writer = new StringWriter();
+        buffer.writeTo(writer);
+        Assertions.assertEquals(expected.toString(), writer.toString());
+
+        buffer.release();
+        buffer.release();
+        Assertions.assertThrows(IllegalStateException.class, () -> buffer.write('x'));
+
+        // The released buffer is reused, and its contents do not leak into the new one
+        final CharOutputBuffer buffer2 = pool.acquireCharBuffer("a");
+        Assertions.assertEquals(0, buffer2.length());
+        buffer2.write("x");
+        Assertions.assertEquals("x", buffer2.toString());
+        buffer2.release();
+
+    }
+
+
+    @Test
+    public void testByteBuffer() throws Exception {
+
+        final OutputBufferPool pool = new OutputBufferPool(4096, 8192L, 10);
+
+        final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        final ByteOutputBuffer buffer = pool.acquireByteBuffer("a");
+        for (int i = 0; i < 10000; i++) {
+            expected.write(i);
+            buffer.write(i);
+        }
+        final byte[] bytes = new byte[] { 1, 2, 3, 4 };
+        expected.write(bytes, 1, 2);
+        buffer.write(bytes, 1, 2);
+
+        Assertions.assertEquals(expected.size(), buffer.size());
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        buffer.writeTo(out);
+        Assertions.assertArrayEquals(expected.toByteArray(), out.toByteArray());
+
+        buffer.release();
+        Assertions.assertEquals(10002, pool.getEstimatedSize("a"));
+
+    }
+
+
+
+
+    private static void writeChars(final OutputBufferPool pool, final String key, final int size) {
+        final CharOutputBuffer buffer = pool.acquireCharBuffer(key);
+        for (int i = 0; i < size; i++) {
+            buffer.write('x');
+        }
+        buffer.release();
+    }
+
+
+    private static void writeBytes(final OutputBufferPool pool, final String key, final int size) {
+        final ByteOutputBuffer buffer = pool.acquireByteBuffer(key);
+        for (int i = 0; i < size; i++) {
+            buffer.write(1);
+        }
+        buffer.release();
+    }
+
+}
@@ -0,0 +1,294 @@
+/*
+ * =============================================================================
+ * 
+ *   Copyright (c) 2011-2022, The THYMELEAF team (http://www.thymeleaf.org)
+ * 
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ * =============================================================================
+ */
+package org.thymeleaf.spring6;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.core.io.buffer.PooledDataBuffer;
+import org.springframework.http.MediaType;
+import org.thymeleaf.context.Context;
+import org.thymeleaf.templateresolver.StringTemplateResolver;
+import reactor.core.publisher.Mono;
+
+
+public class CompositeDataBufferOutputStreamTest {
+
+
+
+    @Test
+    public void testWritesNeverExpandBuffers() throws Exception {
+
+        final TrackingDataBufferFactory bufferFactory = new TrackingDataBufferFactory();
+        final CompositeDataBufferOutputStream outputStream = new CompositeDataBufferOutputStream(bufferFactory, 8);
+
+        final byte[] expected = new byte[61];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = (byte) i;
+        }
+
+        // Single bytes, empty writes, writes ending exactly at a buffer boundary and writes spanning several buffers
+        outputStream.write(expected[0]);
+        outputStream.write(expected, 1, 0);
+        outputStream.write(expected, 1, 7);
+        outputStream.write(expected, 8, 5);
+        outputStream.write(expected, 13, 20);
+        outputStream.write(expected[33]);
+        outputStream.write(expected, 34, 27);
+
+        Assertions.assertEquals(expected.length, outputStream.size());
+        Assertions.assertEquals(8, bufferFactory.allocated.size());
+        for (final TrackedDataBuffer buffer : bufferFactory.allocated) {
+            Assertions.assertEquals(8, buffer.delegate.capacity());
+        }
+
+        final DataBuffer joined = outputStream.toDataBuffer();
+        Assertions.assertArrayEquals(expected, readAll(joined));
+
+    }
+
+
+    @Test
+    public void testJoin() throws Exception {
+
+        final TrackingDataBufferFactory bufferFactory = new TrackingDataBufferFactory();
+
+        // No output: an empty buffer is returned
+        final CompositeDataBufferOutputStream empty = new CompositeDataBufferOutputStream(bufferFactory, 8);
+        Assertions.assertEquals(0, empty.toDataBuffer().readableByteCount());
+
+        // Output fitting in one buffer: that buffer is returned as is, without joining
+        final CompositeDataBufferOutputStream single = new CompositeDataBufferOutputStream(bufferFactory, 8);
+        single.write(new byte[] { 1, 2, 3 }, 0, 3);
+        final DataBuffer singleBuffer = single.toDataBuffer();
+        Assertions.assertSame(bufferFactory.allocated.get(bufferFactory.allocated.size() - 1).proxy, singleBuffer);
+        Assertions.assertArrayEquals(new byte[] { 1, 2, 3 }, readAll(singleBuffer));
+
+        // Several buffers are joined in order
+        final CompositeDataBufferOutputStream several = new CompositeDataBufferOutputStream(bufferFactory, 4);
+        several.write("abcdefghij".getBytes(StandardCharsets.US_ASCII), 0, 10);
+        Assertions.assertEquals("abcdefghij", new String(readAll(several.toDataBuffer()), StandardCharsets.US_ASCII));
+
+    }
+
+
+    @Test
+    public void testReleaseOnError() throws Exception {
+
+        final TrackingDataBufferFactory bufferFactory = new TrackingDataBufferFactory();
+        final CompositeDataBufferOutputStream outputStream = new CompositeDataBufferOutputStream(bufferFactory, 8);
+        outputStream.write(new byte[20], 0, 20);
+        Assertions.assertEquals(3, bufferFactory.allocated.size());
+
+        outputStream.release();
+        for (final TrackedDataBuffer buffer : bufferFactory.allocated) {
+            Assertions.assertTrue(buffer.released);
+        }
+
+        // Releasing twice does not release buffers twice
+        outputStream.release();
+        for (final TrackedDataBuffer buffer : bufferFactory.allocated) {
+            Assertions.assertEquals(1, buffer.releaseCount);
+        }
+
+    }
+
+
+    @Test
+    public void testFullStreamOutput() throws Exception {
+
+        final StringBuilder templateBuilder = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            templateBuilder.append("<p class=\"item\">Item \u00E1\u20AC <span th:text=\"${one}\">x</span></p>\n");
+        }
+        final String template = templateBuilder.toString();
+
+        final SpringWebFluxTemplateEngine templateEngine = createEngine();
+        final Context context = new Context();
+        context.setVariable("one", "\u00F1 one");
+        final String expected = templateEngine.process(template, context);
+
+        // UTF-8 is written through byte output, UTF-16 (a stateful charset) through a Writer
+        for (final Charset charset : new Charset[] { StandardCharsets.UTF_8, StandardCharsets.UTF_16 }) {
+            final TrackingDataBufferFactory bufferFactory = new TrackingDataBufferFactory();
+            final DataBuffer output =
+                    Mono.from(
+                            templateEngine.processStream(
+                                    template, null, context, bufferFactory, MediaType.TEXT_HTML, charset)).block();
+            Assertions.assertEquals(expected, new String(readAll(output), charset));
+            Assertions.assertTrue(bufferFactory.allocated.size() > 1);
+        }
+
+    }
+
+
+    @Test
+    public void testFullStreamReleasesBuffersOnError() throws Exception {
+
+        final StringBuilder templateBuilder = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            templateBuilder.append("<p>Static text that will be output before the error happens</p>\n");
+        }
+        templateBuilder.append("<p th:text=\"${1 / 0}\">x</p>");
+
+        final SpringWebFluxTemplateEngine templateEngine = createEngine();
+        final TrackingDataBufferFactory bufferFactory = new TrackingDataBufferFactory();
+
+        Assertions.assertThrows(
+                RuntimeException.class,
+                () -> Mono.from(
+                        templateEngine.processStream(
+                                templateBuilder.toString(), null, new Context(), bufferFactory,
+                                MediaType.TEXT_HTML, StandardCharsets.UTF_8)).block());
+
+        Assertions.assertFalse(bufferFactory.allocated.isEmpty());
+        for (final TrackedDataBuffer buffer : bufferFactory.allocated) {
+            Assertions.assertTrue(buffer.released);
+        }
+
+    }
+
+
+
+
+    private static SpringWebFluxTemplateEngine createEngine() {
+        final SpringWebFluxTemplateEngine templateEngine = new SpringWebFluxTemplateEngine();
+        templateEngine.setTemplateResolver(new StringTemplateResolver());
+        return templateEngine;
+    }
+
+
+    private static byte[] readAll(final DataBuffer buffer) {
+        final byte[] bytes = new byte[buffer.readableByteCount()];
+        buffer.read(bytes);
+        return bytes;
+    }
+
+
+
+
+    /*
+     * Default data buffers are not pooled, so they are wrapped into proxies implementing PooledDataBuffer in
+     * order to check which of them get released.
+     */
+    private static final class TrackingDataBufferFactory implements DataBufferFactory {
+
+        private final DefaultDataBufferFactory delegate = new DefaultDataBufferFactory();
+        private final List<TrackedDataBuffer> allocated = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        @SuppressWarnings("deprecation")
+        public DataBuffer allocateBuffer() {
+            return track(this.delegate.allocateBuffer());
+        }
+
+        @Override
+        public DataBuffer allocateBuffer(final int initialCapacity) {
+            return track(this.delegate.allocateBuffer(initialCapacity));
+        }
+
+        @Override
+        public DataBuffer wrap(final ByteBuffer byteBuffer) {
+            return this.delegate.wrap(byteBuffer);
+        }
+
+        @Override
+        public DataBuffer wrap(final byte[] bytes) {
+            return this.delegate.wrap(bytes);
+        }
+
+        @Override
+        public DataBuffer join(final List<? extends DataBuffer> dataBuffers) {
+            // Copies the contents of the buffers and releases them
+            return this.delegate.join(dataBuffers);
+        }
+
+        @Override
+        public boolean isDirect() {
+            return this.delegate.isDirect();
+        }
+
+        private DataBuffer track(final DataBuffer buffer) {
+            final TrackedDataBuffer trackedBuffer = new TrackedDataBuffer(buffer);
+            this.allocated.add(trackedBuffer);
+            return trackedBuffer.proxy;
+        }
+
+    }
+
+
+    private static final class TrackedDataBuffer implements InvocationHandler {
+
+        private final DataBuffer delegate;
+        private final PooledDataBuffer proxy;
+        private volatile boolean released = false;
+        private volatile int releaseCount = 0;
+
+        TrackedDataBuffer(final DataBuffer delegate) {
+            super();
+            this.delegate = delegate;
+            this.proxy =
+                    (PooledDataBuffer) Proxy.newProxyInstance(
+                            CompositeDataBufferOutputStreamTest.class.getClassLoader(),
+                            new Class<?>[] { PooledDataBuffer.class }, this);
+        }
+
+        @Override
+        public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "release":
+                    this.released = true;
+                    this.releaseCount++;
+                    return Boolean.TRUE;
+                case "isAllocated":
+                    return Boolean.valueOf(!this.released);
+                case "retain":
+                case "touch":
+                    return proxy;
+                case "equals":
+                    return Boolean.valueOf(proxy == args[0]);
+                case "hashCode":
+                    return Integer.valueOf(System.identityHashCode(proxy));
+                default:
+                    try {
+                        final Object result = method.invoke(this.delegate, args);
+                        return (result == this.delegate ? proxy : result);
+                    } catch (final InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+            }
+        }
+
+    }
+
+}